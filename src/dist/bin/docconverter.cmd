@@ -0,0 +1,23 @@
+@echo off
+REM Startet DocConverter mit der mitgelieferten Laufzeit und dem CDS-Archiv
+REM Verwendung wie java -jar: docconverter.cmd [eingabe-datei] [ausgabe-datei] [profil]
+REM Weitere JVM-Optionen über DOCCONVERTER_JAVA_OPTS, z.B. -Xmx2g
+
+setlocal
+REM Vollständiger Pfad ohne "..", damit er zum Pfad beim Erstellen des Archivs passt
+for %%I in ("%~dp0..") do set "DIST_HOME=%%~fI"
+
+set "JAR=%DIST_HOME%\lib\docconverter-${project.version}.jar"
+set "ARCHIVE=%DIST_HOME%\lib\docconverter-${project.version}.jsa"
+set "JAVA=%DIST_HOME%\runtime\bin\java.exe"
+
+if not exist "%JAVA%" (
+    REM Ohne mitgelieferte Laufzeit passt das Archiv nicht
+    java %DOCCONVERTER_JAVA_OPTS% -jar "%JAR%" %*
+) else if exist "%ARCHIVE%" (
+    REM Passt das Archiv nicht mehr zum JAR, startet die JVM ohne es
+    "%JAVA%" -XX:SharedArchiveFile="%ARCHIVE%" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off %DOCCONVERTER_JAVA_OPTS% -jar "%JAR%" %*
+) else (
+    "%JAVA%" %DOCCONVERTER_JAVA_OPTS% -jar "%JAR%" %*
+)
+exit /b %ERRORLEVEL%
@@ -0,0 +1,38 @@
+package ch.std.doc.converter.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Trainingslauf für das Class-Data-Sharing-Archiv der Distribution.
+ *
+ * Der Build startet diese Klasse mit {@code -XX:ArchiveClassesAtExit}; beim
+ * Beenden schreibt die JVM alle bis dahin geladenen Klassen in das Archiv.
+ * Jede Beispieldatei wird deshalb über denselben Weg wie auf der
+ * Kommandozeile einmal zu PDF und einmal zu Markdown konvertiert, damit die
+ * Klassen von POI, XMLBeans und iText für alle Formate im Archiv landen.
+ */
+public final class CdsTrainingRun {
+
+    private CdsTrainingRun() {
+    }
+
+    /**
+     * @param args Ausgabeverzeichnis, danach die Beispieldateien
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Verwendung: CdsTrainingRun <ausgabe-verzeichnis> <datei>...");
+            System.exit(1);
+        }
+
+        Path outputDirectory = Files.createDirectories(Path.of(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            String name = new File(args[i]).getName();
+            DocumentConverterApp.main(new String[] {args[i], outputDirectory.resolve(name + ".pdf").toString()});
+            DocumentConverterApp.main(new String[] {args[i], outputDirectory.resolve(name + ".md").toString()});
+        }
+    }
+}
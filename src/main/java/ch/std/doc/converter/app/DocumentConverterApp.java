@@ -1,7 +1,13 @@
 package ch.std.doc.converter.app;
 
+import ch.std.doc.converter.core.AsyncDiagnosticsSink;
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
 import ch.std.doc.converter.core.DocumentConverterFactory;
+import ch.std.doc.converter.core.PdfOutputProfile;
+import ch.std.doc.converter.core.TextFormat;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -12,7 +18,7 @@ import java.util.Arrays;
 public class DocumentConverterApp {
     
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args.length < 2 || args.length > 3) {
             showUsage();
             System.exit(1);
         }
@@ -33,10 +39,30 @@ public class DocumentConverterApp {
             
             System.out.println("Verwende " + converter.getConverterName() + " für: " + inputFile);
             
-            converter.convertToPdf(inputFile, outputFile);
+            // Bei .txt/.md wird nur der Text extrahiert, ohne PDF zu erzeugen
+            TextFormat textFormat = getTextFormat(outputFile);
+            
+            ConversionResult result;
+            // Meldungen asynchron ausgeben, damit die Konvertierung nie auf die Konsole wartet
+            try (AsyncDiagnosticsSink sink = new AsyncDiagnosticsSink(DocumentConverterApp::printDiagnostic, 1024)) {
+                ConversionOptions options = new ConversionOptions().setDiagnosticsSink(sink);
+                if (args.length == 3) {
+                    options.setPdfOutputProfile(PdfOutputProfile.forName(args[2]));
+                }
+                if (textFormat != null) {
+                    result = converter.extractText(inputFile, outputFile, options.setTextFormat(textFormat));
+                } else {
+                    result = converter.convertToPdf(inputFile, outputFile, options);
+                }
+            }
             
             System.out.println("Konvertierung erfolgreich abgeschlossen!");
-            System.out.println("PDF erstellt: " + outputFile);
+            System.out.println((textFormat != null ? "Text erstellt: " : "PDF erstellt: ") + outputFile);
+            
+            ConversionDiagnostics diagnostics = result.getDiagnostics();
+            if (diagnostics.hasWarnings()) {
+                System.out.println(diagnostics.getSummary());
+            }
             
         } catch (IOException e) {
             System.err.println("Fehler bei der Konvertierung: " + e.getMessage());
@@ -49,16 +75,39 @@ public class DocumentConverterApp {
         }
     }
     
+    private static TextFormat getTextFormat(String outputFile) {
+        String lowerOutputFile = outputFile.toLowerCase();
+        if (lowerOutputFile.endsWith(".txt")) {
+            return TextFormat.PLAIN;
+        }
+        if (lowerOutputFile.endsWith(".md")) {
+            return TextFormat.MARKDOWN;
+        }
+        return null;
+    }
+    
+    private static void printDiagnostic(String category, String message) {
+        if (ConversionDiagnostics.INFO.equals(category)) {
+            System.out.println(message);
+        } else {
+            System.err.println("Warnung [" + category + "]: " + message);
+        }
+    }
+    
     private static void showUsage() {
         System.out.println("Document Converter - Factory-basierte Architektur");
         System.out.println("================================================");
         System.out.println();
-        System.out.println("Verwendung: java -jar docconverter.jar <eingabe-datei> <ausgabe-pdf>");
+        System.out.println("Verwendung: java -jar docconverter.jar <eingabe-datei> <ausgabe-pdf|ausgabe.txt|ausgabe.md> [default|small|fast]");
+        System.out.println();
+        System.out.println("Mit .txt oder .md wird nur der Text (bzw. Markdown) extrahiert, ohne PDF.");
+        System.out.println("Das PDF-Profil 'small' erzeugt kleinere Dateien, 'fast' braucht am wenigsten CPU.");
         System.out.println();
         System.out.println("Beispiele:");
         System.out.println("  java -jar docconverter.jar document.docx output.pdf");
         System.out.println("  java -jar docconverter.jar data.xlsx report.pdf");
-        System.out.println("  java -jar docconverter.jar legacy.doc converted.pdf");
+        System.out.println("  java -jar docconverter.jar legacy.doc converted.pdf small");
+        System.out.println("  java -jar docconverter.jar data.xlsx index.md");
         System.out.println();
         showSupportedFormats();
     }
@@ -1,5 +1,6 @@
 package ch.std.doc.converter.app;
 
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
 import ch.std.doc.converter.core.DocumentConverterFactory;
 
@@ -36,10 +37,14 @@ public class GeneralversammlungApp {
             System.out.println("⚙️  Konvertiere DOC zu PDF...");
             long startTime = System.currentTimeMillis();
             
-            converter.convertToPdf(inputPath, outputPath);
+            ConversionResult result = converter.convertToPdf(inputPath, outputPath);
             
             long duration = System.currentTimeMillis() - startTime;
             System.out.println("✅ Konvertierung abgeschlossen in " + duration + "ms");
+            if (result.getDiagnostics().hasWarnings()) {
+                System.out.println("⚠️  " + result.getDiagnostics().getSummary());
+                result.getDiagnostics().getSamples().forEach(w -> System.out.println("   " + w));
+            }
             
             // Ausgabe validieren
             File outputFile = new File(outputPath);
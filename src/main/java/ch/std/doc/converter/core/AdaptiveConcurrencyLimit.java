@@ -0,0 +1,212 @@
+package ch.std.doc.converter.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Anzahl gleichzeitiger Konvertierungen, die sich an der gemessenen Latenz
+ * ausrichtet.
+ *
+ * Der Startwert ergibt sich aus den Grenzen des Containers: den CPUs aus
+ * {@code cpu.max} bzw. {@code cpu.cfs_quota_us} der cgroup und dem Speicher
+ * aus {@code memory.max} bzw. {@code memory.limit_in_bytes}, höchstens aber
+ * dem maximalen Heap. Die Obergrenze ist das Doppelte der CPUs, weil
+ * Konvertierungen auch auf Dateien warten.
+ *
+ * Danach wird die Grenze nach jeder abgeschlossenen Konvertierung mit einem
+ * Gradientenverfahren nachgeführt: Die Latenz wird durch die geschätzten
+ * Kosten des Auftrags geteilt, damit grosse und kleine Dokumente vergleichbar
+ * sind, und als kurzfristiger und langfristiger gleitender Mittelwert geführt.
+ * Solange die kurzfristige Latenz nicht über dem 1,5-fachen der langfristigen
+ * liegt, wächst die Grenze um etwa ihre Wurzel; steigt sie darüber, der
+ * Durchsatz pro Konvertierung also sinkt, schrumpft sie im Verhältnis der
+ * beiden Werte, höchstens auf die Hälfte. Ist nicht einmal die Hälfte der
+ * Grenze belegt, sagt die Latenz nichts über die Grenze aus und sie bleibt
+ * unverändert. Die Klasse ist thread-sicher.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+
+    /** Heap, mit dem eine durchschnittliche Konvertierung für den Startwert gerechnet wird */
+    static final long BYTES_PER_CONVERSION = 256L * 1024 * 1024;
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SHORT_SMOOTHING = 0.2;
+    private static final double LONG_SMOOTHING = 0.01;
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double shortLatency = 0;
+    private double longLatency = 0;
+    private long samples = 0;
+
+    /**
+     * Erstellt eine Grenze mit Start- und Obergrenze aus den Grenzen des Containers
+     */
+    public AdaptiveConcurrencyLimit() {
+        this(CGROUP_ROOT, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory());
+    }
+
+    AdaptiveConcurrencyLimit(Path cgroupRoot, int availableProcessors, long maxHeap) {
+        this(initialLimit(cgroupRoot, availableProcessors, maxHeap), 1,
+             2 * detectCpuLimit(cgroupRoot, availableProcessors));
+    }
+
+    /**
+     * Erstellt eine Grenze mit festen Werten
+     *
+     * @param initialLimit Startwert
+     * @param minLimit Untergrenze, mindestens 1
+     * @param maxLimit Obergrenze
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Ungültige Grenzen: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Gibt die aktuelle Anzahl erlaubter gleichzeitiger Konvertierungen zurück
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Gibt die kurzfristig gemittelte Latenz pro Kosteneinheit in
+     * Nanosekunden zurück
+     */
+    public synchronized double getShortLatency() {
+        return shortLatency;
+    }
+
+    /**
+     * Gibt die langfristig gemittelte Latenz pro Kosteneinheit in
+     * Nanosekunden zurück
+     */
+    public synchronized double getLongLatency() {
+        return longLatency;
+    }
+
+    /**
+     * Gibt die Anzahl ausgewerteter Konvertierungen zurück
+     */
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * Wertet eine abgeschlossene Konvertierung aus und passt die Grenze an
+     *
+     * @param latencyNanos Dauer der Konvertierung
+     * @param cost Geschätzte Kosten, z.B. aus {@link ConversionScheduler#estimateCost(String)}
+     * @param inFlight Anzahl laufender Konvertierungen beim Abschluss, diese eingeschlossen
+     */
+    public synchronized void onCompleted(long latencyNanos, long cost, int inFlight) {
+        double latency = (double) Math.max(1, latencyNanos) / Math.max(1, cost);
+        samples++;
+        if (shortLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+            return;
+        }
+        shortLatency += (latency - shortLatency) * SHORT_SMOOTHING;
+        longLatency += (latency - longLatency) * LONG_SMOOTHING;
+        // Nach einer dauerhaften Verbesserung das langfristige Mittel schneller nachziehen
+        if (longLatency > 2 * shortLatency) {
+            longLatency *= 0.95;
+        }
+
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING));
+    }
+
+    /**
+     * Startwert: die CPUs, aber nicht mehr Konvertierungen, als der Speicher
+     * des Containers bzw. der Heap erlaubt
+     */
+    static int initialLimit(Path cgroupRoot, int availableProcessors, long maxHeap) {
+        long memory = Math.min(maxHeap, detectMemoryLimit(cgroupRoot));
+        long byMemory = Math.max(1, memory / BYTES_PER_CONVERSION);
+        return (int) Math.max(1, Math.min(detectCpuLimit(cgroupRoot, availableProcessors), byMemory));
+    }
+
+    /**
+     * Liest die CPU-Grenze der cgroup (v2 oder v1)
+     *
+     * @return Aufgerundete Anzahl CPUs, ohne Grenze die verfügbaren Prozessoren
+     */
+    static int detectCpuLimit(Path cgroupRoot, int availableProcessors) {
+        String cpuMax = read(cgroupRoot.resolve("cpu.max"));
+        long quota = -1;
+        long period = 0;
+        if (cpuMax != null) {
+            String[] parts = cpuMax.split("\\s+");
+            if (parts.length == 2 && !parts[0].equals("max")) {
+                quota = parseLong(parts[0]);
+                period = parseLong(parts[1]);
+            }
+        } else {
+            quota = parseLong(read(cgroupRoot.resolve("cpu/cpu.cfs_quota_us")));
+            period = parseLong(read(cgroupRoot.resolve("cpu/cpu.cfs_period_us")));
+        }
+        if (quota <= 0 || period <= 0) {
+            return availableProcessors;
+        }
+        return (int) Math.max(1, Math.min(availableProcessors, (quota + period - 1) / period));
+    }
+
+    /**
+     * Liest die Speichergrenze der cgroup (v2 oder v1)
+     *
+     * @return Grenze in Bytes, ohne Grenze {@link Long#MAX_VALUE}
+     */
+    static long detectMemoryLimit(Path cgroupRoot) {
+        String memoryMax = read(cgroupRoot.resolve("memory.max"));
+        if (memoryMax == null) {
+            memoryMax = read(cgroupRoot.resolve("memory/memory.limit_in_bytes"));
+        }
+        long limit = parseLong(memoryMax);
+        // v1 meldet "keine Grenze" als sehr grosse Zahl
+        return limit > 0 && limit < (1L << 62) ? limit : Long.MAX_VALUE;
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.isReadable(file) ? Files.readString(file, StandardCharsets.US_ASCII).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
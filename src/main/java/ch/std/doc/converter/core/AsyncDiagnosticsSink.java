@@ -0,0 +1,94 @@
+package ch.std.doc.converter.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Leitet Meldungen über eine begrenzte Queue an einen Hintergrund-Thread weiter.
+ * 
+ * Die Konvertierung wartet nie auf das Ziel: ist die Queue voll, wird die
+ * Meldung verworfen und nur gezählt. Die Zähler in {@link ConversionDiagnostics}
+ * bleiben davon unberührt.
+ */
+public final class AsyncDiagnosticsSink implements DiagnosticsSink, AutoCloseable {
+    
+    private static final String[] END = new String[0];
+    
+    private final DiagnosticsSink delegate;
+    private final BlockingQueue<String[]> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread worker;
+    private volatile boolean closed = false;
+    
+    /**
+     * Erstellt einen asynchronen Sink
+     * 
+     * @param delegate Eigentliches Ziel der Meldungen
+     * @param capacity Maximale Anzahl wartender Meldungen
+     */
+    public AsyncDiagnosticsSink(DiagnosticsSink delegate, int capacity) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Ziel darf nicht null sein");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Kapazität muss positiv sein: " + capacity);
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::deliver, "docconverter-diagnostics");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+    
+    @Override
+    public void log(String category, String message) {
+        if (closed || !queue.offer(new String[]{category, message})) {
+            dropped.increment();
+        }
+    }
+    
+    /**
+     * Gibt die Anzahl verworfener Meldungen zurück
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+    
+    /**
+     * Liefert alle wartenden Meldungen aus und beendet den Hintergrund-Thread
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void deliver() {
+        try {
+            while (true) {
+                String[] entry = queue.take();
+                if (entry == END) {
+                    return;
+                }
+                try {
+                    delegate.log(entry[0], entry[1]);
+                } catch (RuntimeException e) {
+                    // Fehler im Ziel dürfen die Auslieferung nicht beenden
+                    dropped.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
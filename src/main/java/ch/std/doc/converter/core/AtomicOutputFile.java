@@ -0,0 +1,334 @@
+package ch.std.doc.converter.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ausgabedatei, die erst nach vollständigem Schreiben sichtbar wird.
+ *
+ * Geschrieben wird über einen gepufferten {@link FileChannel} in eine
+ * versteckte Temporärdatei im selben Verzeichnis. {@link #commit()} ersetzt
+ * die Zieldatei per {@link StandardCopyOption#ATOMIC_MOVE}; Leser sehen damit
+ * entweder die alte oder die vollständige neue Datei. Ohne Commit löscht
+ * {@link #close()} die Temporärdatei wieder.
+ *
+ * Bricht der Prozess ab, bleibt die Temporärdatei liegen. Solange sie
+ * geschrieben wird, hält die Ausgabe deshalb eine exklusive {@link FileLock};
+ * {@link #create} löscht Temporärdateien derselben Zieldatei, die niemand mehr
+ * sperrt. Dateien, die dieser Prozess schreibt, werden dabei nicht geöffnet,
+ * denn unter POSIX hebt das Schliessen eines weiteren Kanals die Sperre auf.
+ *
+ * Verwendung:
+ * <pre>
+ * try (AtomicOutputFile output = AtomicOutputFile.create(path, durable)) {
+ *     write(output.getOutputStream());
+ *     output.commit();
+ * }
+ * </pre>
+ */
+public final class AtomicOutputFile implements Closeable {
+
+    /** Grösse des Schreibpuffers; grössere Blöcke werden direkt geschrieben */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    // Temporärdateien, die in diesem Prozess gerade geschrieben werden
+    private static final Set<Path> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private final Path target;
+    private final Path tempFile;
+    private final FileChannel channel;
+    private final boolean durable;
+    private final ChannelOutputStream outputStream;
+    private boolean committed = false;
+    private boolean closed = false;
+
+    private AtomicOutputFile(Path target, Path tempFile, FileChannel channel, boolean durable) {
+        this.target = target;
+        this.tempFile = tempFile;
+        this.channel = channel;
+        this.durable = durable;
+        this.outputStream = new ChannelOutputStream();
+    }
+
+    /**
+     * Legt die Temporärdatei neben der Zieldatei an und löscht verwaiste
+     * Temporärdateien früherer Prozesse für dieselbe Zieldatei
+     *
+     * @param outputFile Pfad der Zieldatei
+     * @param durable true um Daten und Verzeichniseintrag vor bzw. nach dem
+     *                Umbenennen mit {@code force} auf den Datenträger zu schreiben
+     * @return Geöffnete Ausgabe
+     * @throws IOException wenn die Temporärdatei nicht angelegt werden kann
+     */
+    public static AtomicOutputFile create(String outputFile, boolean durable) throws IOException {
+        Path target = Path.of(outputFile).toAbsolutePath();
+        Path directory = target.getParent();
+        String prefix = "." + target.getFileName() + ".";
+        deleteOrphanedTempFiles(directory, prefix);
+
+        while (true) {
+            Path tempFile = directory.resolve(prefix + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+            // Vor dem Anlegen eintragen, damit kein Thread dieses Prozesses die Datei öffnet
+            ACTIVE.add(tempFile);
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                // Ein anderer Prozess kann die Datei zwischen Anlegen und Sperren als verwaist gelöscht haben
+                if (lock(channel) && Files.exists(tempFile)) {
+                    return new AtomicOutputFile(target, tempFile, channel, durable);
+                }
+            } catch (FileAlreadyExistsException e) {
+                // Sehr unwahrscheinlich: neuen Namen versuchen
+            } catch (IOException | RuntimeException e) {
+                ACTIVE.remove(tempFile);
+                if (channel != null) {
+                    channel.close();
+                    Files.deleteIfExists(tempFile);
+                }
+                throw e;
+            }
+            ACTIVE.remove(tempFile);
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Gibt den gepufferten Stream in die Temporärdatei zurück. Schliessen des
+     * Streams leert nur den Puffer, damit z.B. ein PdfWriter ihn schliessen darf.
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Hängt den ganzen Inhalt einer Datei an, ohne ihn durch den Heap zu
+     * kopieren. {@link FileChannel#transferTo} überlässt das Kopieren dem
+     * Betriebssystem, unter Linux z.B. per {@code copy_file_range}.
+     *
+     * @param source Zu kopierende Datei, ab Position 0
+     * @throws IOException bei Lese- oder Schreibfehlern
+     */
+    public void transferFrom(FileChannel source) throws IOException {
+        outputStream.flushBuffer();
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+            position += source.transferTo(position, size - position, channel);
+        }
+        outputStream.written += size;
+    }
+
+    /**
+     * Gibt die Anzahl bisher in den Stream geschriebener Bytes zurück,
+     * einschliesslich der noch gepufferten
+     */
+    public long getWrittenBytes() {
+        return outputStream.written;
+    }
+
+    /**
+     * Gibt den Pfad der Temporärdatei zurück
+     */
+    public Path getTempFile() {
+        return tempFile;
+    }
+
+    /**
+     * Schreibt den Puffer, schliesst die Temporärdatei und ersetzt damit die Zieldatei
+     *
+     * @throws IOException wenn Schreiben oder Umbenennen fehlschlägt; die
+     *                     Zieldatei bleibt dann unverändert
+     */
+    public void commit() throws IOException {
+        if (closed) {
+            throw new IOException("Ausgabe ist bereits geschlossen: " + target);
+        }
+        outputStream.flushBuffer();
+        if (durable) {
+            channel.force(true);
+        }
+
+        // Umbenennen, solange die Sperre besteht; danach gilt die Datei nicht mehr als verwaist
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        closed = true;
+        ACTIVE.remove(tempFile);
+        channel.close();
+
+        if (durable) {
+            forceDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * Verwirft die Ausgabe, falls sie nicht mit {@link #commit()} übernommen wurde
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            try {
+                if (!committed) {
+                    Files.deleteIfExists(tempFile);
+                }
+            } finally {
+                ACTIVE.remove(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Sperrt die Temporärdatei exklusiv
+     *
+     * @return false, wenn ein anderer Prozess oder Kanal sie bereits sperrt
+     */
+    private static boolean lock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        } catch (IOException e) {
+            // Dateisystem ohne Sperren: ohne Schutz schreiben; das Aufräumen lässt solche Dateien liegen
+            return true;
+        }
+    }
+
+    /**
+     * Löscht Temporärdateien der Form {@code .<name>.<hex>.part}, die kein
+     * Prozess mehr sperrt
+     */
+    private static void deleteOrphanedTempFiles(Path directory, String prefix) {
+        DirectoryStream.Filter<Path> orphaned = file -> isTempFileName(file.getFileName().toString(), prefix)
+                                                        && !ACTIVE.contains(file);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, orphaned)) {
+            for (Path file : files) {
+                deleteIfUnlocked(file);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // Aufräumen ist optional; das Schreiben selbst soll daran nicht scheitern
+        }
+    }
+
+    private static boolean isTempFileName(String name, String prefix) {
+        if (!name.startsWith(prefix) || !name.endsWith(TEMP_SUFFIX)) {
+            return false;
+        }
+        int end = name.length() - TEMP_SUFFIX.length();
+        if (end <= prefix.length() || end - prefix.length() > 16) {
+            return false;
+        }
+        for (int i = prefix.length(); i < end; i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteIfUnlocked(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Die Sperre endet mit dem Schliessen des Kanals, nach dem Löschen
+            if (channel.tryLock() != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (OverlappingFileLockException | IOException e) {
+            // Wird gerade geschrieben, ist schon gelöscht oder lässt sich nicht sperren
+        }
+    }
+
+    /**
+     * Schreibt den Verzeichniseintrag nach dem Umbenennen auf den Datenträger.
+     * Nicht jedes System erlaubt das Öffnen von Verzeichnissen, z.B. Windows.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // Nicht unterstützt: Datei selbst ist bereits geschrieben
+        }
+    }
+
+    /**
+     * Puffert Schreibzugriffe in einem grossen Heap-Puffer und schreibt ihn
+     * blockweise in den Kanal
+     */
+    private final class ChannelOutputStream extends OutputStream {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long written = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            buffer.put((byte) b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            written += length;
+            if (length >= buffer.capacity()) {
+                flushBuffer();
+                ByteBuffer data = ByteBuffer.wrap(bytes, offset, length);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                return;
+            }
+            if (length > buffer.remaining()) {
+                flushBuffer();
+            }
+            buffer.put(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            // Der Puffer wird erst bei vollem Puffer oder beim Commit geschrieben
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                flushBuffer();
+            }
+        }
+
+        void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
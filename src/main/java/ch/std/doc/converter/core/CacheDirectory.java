@@ -0,0 +1,303 @@
+package ch.std.doc.converter.core;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Verzeichnis mit Cache-Einträgen, nach Grösse begrenzt und nach letzter
+ * Verwendung verdrängt. Gemeinsame Grundlage von {@link ConversionCache}
+ * und {@link SheetFragmentCache}.
+ *
+ * Ein Eintrag ist eine Datei {@code <schlüssel><endung>} mit optionaler
+ * Begleitdatei {@code <schlüssel><begleitendung>}. Die Dateien werden vom
+ * Aufrufer geschrieben, z.B. mit {@link AtomicOutputFile}, und danach mit
+ * {@link #add(String)} übernommen. Einträge werden unter der Sperre geöffnet;
+ * ein danach verdrängter Eintrag bleibt über den offenen Kanal lesbar.
+ */
+final class CacheDirectory {
+
+    private static final Map<Class<?>, String> BUILD_IDS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String entrySuffix;
+    private final String sidecarSuffix;
+    // Zugriffsreihenfolge: der älteste Eintrag wird zuerst verdrängt
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Öffnet das Verzeichnis und übernimmt vorhandene Einträge, nach ihrer
+     * letzten Verwendung geordnet
+     *
+     * @param directory Verzeichnis, wird bei Bedarf angelegt
+     * @param maxBytes Maximale Gesamtgrösse der Einträge
+     * @param entrySuffix Endung der Eintragsdateien, z.B. ".pdf"
+     * @param sidecarSuffix Endung der Begleitdateien oder null
+     * @throws IOException wenn das Verzeichnis nicht gelesen werden kann
+     */
+    CacheDirectory(Path directory, long maxBytes, String entrySuffix, String sidecarSuffix) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache-Verzeichnis darf nicht null sein");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache-Grösse muss positiv sein: " + maxBytes);
+        }
+        this.directory = Files.createDirectories(directory.toAbsolutePath());
+        this.maxBytes = maxBytes;
+        this.entrySuffix = entrySuffix;
+        this.sidecarSuffix = sidecarSuffix;
+        loadEntries();
+    }
+
+    /**
+     * Gibt den Pfad zurück, unter dem der Eintrag geschrieben wird
+     */
+    Path getFile(String key) {
+        return directory.resolve(key + entrySuffix);
+    }
+
+    /**
+     * Gibt den Pfad der Begleitdatei eines Eintrags zurück
+     */
+    Path getSidecarFile(String key) {
+        return directory.resolve(key + sidecarSuffix);
+    }
+
+    /**
+     * Öffnet einen vorhandenen Eintrag zum Lesen und markiert ihn als zuletzt verwendet
+     *
+     * @return Geöffneter Kanal oder null, wenn kein Eintrag vorhanden ist
+     */
+    FileChannel open(String key) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                channel = FileChannel.open(entry.file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // Ausserhalb des Caches gelöscht
+                entries.remove(key);
+                totalBytes -= entry.size;
+                return null;
+            }
+        }
+
+        // Letzte Verwendung auch für einen späteren Neustart festhalten
+        try {
+            Files.setLastModifiedTime(getFile(key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Nur die Reihenfolge nach einem Neustart ist betroffen
+        }
+        return channel;
+    }
+
+    /**
+     * Übernimmt einen unter {@link #getFile(String)} geschriebenen Eintrag und
+     * verdrängt bei Bedarf die am längsten nicht verwendeten Einträge. Ein
+     * Eintrag, der allein grösser als die Grenze ist, wird gleich wieder gelöscht.
+     */
+    void add(String key) throws IOException {
+        Path file = getFile(key);
+        Path sidecarFile = sidecarSuffix != null && Files.exists(getSidecarFile(key)) ? getSidecarFile(key) : null;
+        long size = Files.size(file);
+
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(file, sidecarFile, size));
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            totalBytes += size;
+            collectEvictions(evicted);
+        }
+        deleteEntries(evicted);
+    }
+
+    /**
+     * Gibt die Anzahl verdrängter Einträge zurück
+     */
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    synchronized long getSize() {
+        return totalBytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Beginnt einen Schlüssel mit allem, was ausser dem Inhalt das Ergebnis
+     * bestimmt: Konverter mit Version und Build, Standard-Locale und Optionen
+     *
+     * @return SHA-256, bereit für den Inhalt
+     */
+    static MessageDigest newKeyDigest(DocumentConverter converter, ConversionOptions options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 ist nicht verfügbar", e);
+        }
+
+        String description = converter.getClass().getName()
+                             + "\n" + converter.getVersion()
+                             + "\n" + BUILD_IDS.computeIfAbsent(converter.getClass(), CacheDirectory::getBuildId)
+                             + "\n" + Locale.getDefault().toLanguageTag()
+                             + "\n" + options.getOutputKey() + "\n";
+        digest.update(description.getBytes(StandardCharsets.UTF_8));
+        return digest;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Kennzeichnet den Build, aus dem ein Konverter geladen wurde, über Grösse
+     * und Änderungszeit seines JARs. Ein neu ausgeliefertes JAR ergibt damit
+     * neue Schlüssel, auch wenn die Version gleich bleibt.
+     */
+    private static String getBuildId(Class<?> converterClass) {
+        CodeSource codeSource = converterClass.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            return "unbekannt";
+        }
+        try {
+            Path location = Path.of(codeSource.getLocation().toURI());
+            if (!Files.isRegularFile(location)) {
+                return location.toString();
+            }
+            return Files.size(location) + "@" + Files.getLastModifiedTime(location).toMillis();
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return codeSource.getLocation().toString();
+        }
+    }
+
+    /**
+     * Entfernt die ältesten Einträge aus dem Index, bis die Grenze eingehalten
+     * ist. Gelöscht werden die Dateien ausserhalb der Sperre.
+     */
+    private void collectEvictions(List<Entry> evicted) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.size;
+            evicted.add(entry);
+        }
+    }
+
+    private void deleteEntries(List<Entry> evicted) {
+        for (Entry entry : evicted) {
+            evictions.incrementAndGet();
+            try {
+                Files.deleteIfExists(entry.file);
+                if (entry.sidecarFile != null) {
+                    Files.deleteIfExists(entry.sidecarFile);
+                }
+            } catch (IOException e) {
+                // Z.B. unter Windows noch geöffnet; wird beim nächsten Start erneut erfasst
+            }
+        }
+    }
+
+    /**
+     * Übernimmt die Einträge eines bestehenden Verzeichnisses und löscht
+     * Temporärdateien abgebrochener Schreibvorgänge
+     */
+    private void loadEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Set<String> sidecars = new HashSet<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(".") && name.endsWith(".part")) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(entrySuffix)) {
+                    files.add(file);
+                } else if (sidecarSuffix != null && name.endsWith(sidecarSuffix)) {
+                    sidecars.add(name);
+                }
+            }
+        }
+
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (Path file : files) {
+            lastUsed.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(lastUsed::get));
+
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String key = name.substring(0, name.length() - entrySuffix.length());
+                Path sidecarFile = sidecars.remove(key + sidecarSuffix) ? getSidecarFile(key) : null;
+                long size = Files.size(file);
+                entries.put(key, new Entry(file, sidecarFile, size));
+                totalBytes += size;
+            }
+            collectEvictions(evicted);
+        }
+        deleteEntries(evicted);
+
+        // Begleitdateien ohne zugehörigen Eintrag
+        for (String name : sidecars) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+    }
+
+    /**
+     * Gespeicherte Datei mit optionaler Begleitdatei
+     */
+    private static final class Entry {
+        private final Path file;
+        private final Path sidecarFile;
+        private final long size;
+
+        Entry(Path file, Path sidecarFile, long size) {
+            this.file = file;
+            this.sidecarFile = sidecarFile;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package ch.std.doc.converter.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache für PDF-Konvertierungen in einem lokalen Verzeichnis.
+ *
+ * Der Schlüssel ist ein SHA-256 über den Inhalt der Eingabedatei, den
+ * Konverter mit Version und Build, die Standard-Locale und alle Optionen,
+ * die das PDF beeinflussen. Dieselbe Datei unter anderem Namen, z.B. als
+ * weitergeleiteter Anhang, wird damit wiedererkannt. SHA-256 statt einer
+ * schnelleren, nicht kryptografischen Prüfsumme, weil eine Kollision stillschweigend
+ * das PDF eines anderen Dokuments ausliefern würde; mit Hardware-Unterstützung
+ * ist das Hashen gegenüber der Konvertierung vernachlässigbar.
+ *
+ * Treffer werden per {@link FileChannel#transferTo} ohne Umweg über den Heap
+ * in die Ausgabedatei kopiert. Wird der Cache grösser als erlaubt, werden die
+ * am längsten nicht verwendeten Einträge gelöscht. Gleichzeitige Anfragen mit
+ * demselben Schlüssel warten auf die bereits laufende Konvertierung, statt sie
+ * zu wiederholen. Die Warnungen der ursprünglichen Konvertierung werden bei
+ * einem Treffer wiederhergestellt.
+ *
+ * Aufgeteilte Ausgaben ({@link ConversionOptions#isSplitOutput()}) werden nicht
+ * gecacht. Das Verzeichnis darf nur von einer Cache-Instanz verwendet werden.
+ * Die Klasse ist thread-sicher.
+ */
+public final class ConversionCache {
+
+    private static final String ENTRY_SUFFIX = ".pdf";
+    private static final String WARNINGS_SUFFIX = ".warnings";
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+    private static final String WARN_STORE = "cache.store";
+
+    private final CacheDirectory entries;
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Öffnet den Cache und übernimmt vorhandene Einträge, nach ihrer letzten
+     * Verwendung geordnet
+     *
+     * @param directory Verzeichnis des Caches, wird bei Bedarf angelegt
+     * @param maxBytes Maximale Gesamtgrösse der gespeicherten PDFs
+     * @throws IOException wenn das Verzeichnis nicht gelesen werden kann
+     */
+    public ConversionCache(Path directory, long maxBytes) throws IOException {
+        this.entries = new CacheDirectory(directory, maxBytes, ENTRY_SUFFIX, WARNINGS_SUFFIX);
+    }
+
+    /**
+     * Konvertiert mit dem über {@link DocumentConverterFactory} gewählten
+     * Konverter oder kopiert ein gecachtes Ergebnis
+     *
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung oder null
+     * @return Ergebnis mit den Warnungen der ursprünglichen Konvertierung
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
+     */
+    public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options)
+            throws IOException {
+        DocumentConverter converter = DocumentConverterFactory.createConverter(inputFile);
+        if (converter == null) {
+            throw new IllegalArgumentException("Dateiformat wird nicht unterstützt: " + inputFile);
+        }
+        return convertToPdf(converter, inputFile, outputFile, options);
+    }
+
+    /**
+     * Konvertiert mit dem angegebenen Konverter oder kopiert ein gecachtes Ergebnis
+     *
+     * @param converter Konverter für die Eingabedatei
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung oder null
+     * @return Ergebnis mit den Warnungen der ursprünglichen Konvertierung
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
+     */
+    public ConversionResult convertToPdf(DocumentConverter converter, String inputFile, String outputFile,
+                                         ConversionOptions options) throws IOException {
+        converter.validateFiles(inputFile, outputFile);
+        if (options == null) {
+            options = new ConversionOptions();
+        }
+        if (options.isSplitOutput()) {
+            return converter.convertToPdf(inputFile, outputFile, options);
+        }
+
+        String key = computeKey(converter, inputFile, options);
+        while (true) {
+            ConversionResult cached = copyEntry(converter, key, inputFile, outputFile, options);
+            if (cached != null) {
+                return cached;
+            }
+
+            CompletableFuture<Void> conversion = new CompletableFuture<>();
+            CompletableFuture<Void> running = inFlight.putIfAbsent(key, conversion);
+            if (running != null) {
+                // Gleiches Dokument wird bereits konvertiert: auf das Ergebnis warten
+                awaitConversion(running);
+                continue;
+            }
+
+            try {
+                // Eintrag kann zwischen Nachschlagen und Anmelden entstanden sein
+                cached = copyEntry(converter, key, inputFile, outputFile, options);
+                if (cached != null) {
+                    return cached;
+                }
+                misses.incrementAndGet();
+                ConversionResult result = converter.convertToPdf(inputFile, outputFile, options);
+                try {
+                    storeEntry(key, Path.of(outputFile), result.getDiagnostics(), options.isDurableOutput());
+                } catch (IOException e) {
+                    // Die Ausgabe ist geschrieben; nur spätere Aufrufe profitieren nicht
+                    result.getDiagnostics().warn(WARN_STORE, "Ergebnis konnte nicht gecacht werden: " + e.getMessage());
+                }
+                return result;
+            } finally {
+                inFlight.remove(key, conversion);
+                conversion.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Gibt die Anzahl aus dem Cache bedienter Konvertierungen zurück
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gibt die Anzahl tatsächlich ausgeführter Konvertierungen zurück
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gibt die Anzahl verdrängter Einträge zurück
+     */
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+    /**
+     * Gibt die Anzahl gespeicherter Einträge zurück
+     */
+    public int getEntryCount() {
+        return entries.getEntryCount();
+    }
+
+    /**
+     * Gibt die Gesamtgrösse der gespeicherten PDFs in Bytes zurück
+     */
+    public long getSize() {
+        return entries.getSize();
+    }
+
+    private void awaitConversion(CompletableFuture<Void> running) throws IOException {
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Warten auf laufende Konvertierung unterbrochen");
+        } catch (ExecutionException e) {
+            // Wird immer normal abgeschlossen; Fehler erhält der Aufrufer der Konvertierung
+        }
+    }
+
+    /**
+     * Kopiert einen vorhandenen Eintrag in die Ausgabedatei
+     *
+     * @return Ergebnis oder null, wenn kein Eintrag vorhanden ist
+     */
+    private ConversionResult copyEntry(DocumentConverter converter, String key, String inputFile,
+                                       String outputFile, ConversionOptions options) throws IOException {
+        ConversionDiagnostics diagnostics = converter.createDiagnostics(options);
+        try (FileChannel source = entries.open(key)) {
+            if (source == null) {
+                return null;
+            }
+            try (AtomicOutputFile output = AtomicOutputFile.create(outputFile, options.isDurableOutput())) {
+                output.transferFrom(source);
+                output.commit();
+            }
+        }
+
+        hits.incrementAndGet();
+        diagnostics.info(String.format("[%s] '%s' aus dem Cache nach '%s' kopiert",
+                                       converter.getConverterName(), inputFile, outputFile));
+        restoreWarnings(entries.getSidecarFile(key), diagnostics);
+        return new ConversionResult(inputFile, outputFile, diagnostics);
+    }
+
+    /**
+     * Kopiert eine neu erzeugte Ausgabedatei in den Cache und verdrängt bei
+     * Bedarf die am längsten nicht verwendeten Einträge
+     */
+    private void storeEntry(String key, Path outputFile, ConversionDiagnostics diagnostics,
+                            boolean durable) throws IOException {
+        if (Files.size(outputFile) > entries.getMaxBytes()) {
+            return;
+        }
+
+        if (diagnostics.hasWarnings()) {
+            writeWarnings(entries.getSidecarFile(key), diagnostics, durable);
+        }
+        try (FileChannel source = FileChannel.open(outputFile, StandardOpenOption.READ);
+             AtomicOutputFile output = AtomicOutputFile.create(entries.getFile(key).toString(), durable)) {
+            output.transferFrom(source);
+            output.commit();
+        }
+        entries.add(key);
+    }
+
+    private String computeKey(DocumentConverter converter, String inputFile, ConversionOptions options)
+            throws IOException {
+        MessageDigest digest = CacheDirectory.newKeyDigest(converter, options);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel input = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ)) {
+            while (input.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return CacheDirectory.toHex(digest.digest());
+    }
+
+    private static void writeWarnings(Path file, ConversionDiagnostics diagnostics, boolean durable)
+            throws IOException {
+        try (AtomicOutputFile output = AtomicOutputFile.create(file.toString(), durable)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output.getOutputStream(), StandardCharsets.UTF_8));
+            for (Map.Entry<String, Long> count : diagnostics.getWarningCounts().entrySet()) {
+                writer.write("count\t" + clean(count.getKey()) + "\t" + count.getValue() + "\n");
+            }
+            for (ConversionDiagnostics.Warning warning : diagnostics.getSamples()) {
+                writer.write("sample\t" + clean(warning.getCategory()) + "\t" + clean(warning.getMessage()) + "\n");
+            }
+            writer.flush();
+            output.commit();
+        }
+    }
+
+    /**
+     * Meldet die Beispielwarnungen erneut und zählt die übrigen Warnungen dazu
+     */
+    private static void restoreWarnings(Path warningsFile, ConversionDiagnostics diagnostics) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(warningsFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        for (String line : lines) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length < 3) {
+                continue;
+            }
+            if (fields[0].equals("count")) {
+                counts.put(fields[1], Long.parseLong(fields[2]));
+            } else if (fields[0].equals("sample")) {
+                diagnostics.warn(fields[1], fields[2]);
+                counts.merge(fields[1], -1L, Long::sum);
+            }
+        }
+        counts.forEach(diagnostics::addWarnings);
+    }
+
+    private static String clean(String text) {
+        return text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,192 @@
+package ch.std.doc.converter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sammelt die Warnungen einer einzelnen Konvertierung.
+ * 
+ * Warnungen werden pro Kategorie gezählt; nur die ersten Meldungen werden als
+ * Beispiele aufbewahrt. Damit bleiben auch beschädigte Dokumente mit tausenden
+ * Warnungen günstig, statt jede Meldung synchronisiert auf die Konsole zu
+ * schreiben. Ein optionaler {@link DiagnosticsSink} erhält zusätzlich jede
+ * Meldung. Die Klasse ist thread-sicher.
+ */
+public final class ConversionDiagnostics {
+    
+    /** Kategorie für reine Informationsmeldungen, die nicht gezählt werden */
+    public static final String INFO = "info";
+    
+    /** Standardanzahl aufbewahrter Beispielmeldungen */
+    public static final int DEFAULT_SAMPLE_LIMIT = 20;
+    
+    private final int sampleLimit;
+    private final DiagnosticsSink sink;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicInteger reservedSamples = new AtomicInteger();
+    private final List<Warning> samples = Collections.synchronizedList(new ArrayList<>());
+    
+    /**
+     * Erstellt einen Sammler mit Standardlimit und ohne Sink
+     */
+    public ConversionDiagnostics() {
+        this(DEFAULT_SAMPLE_LIMIT, null);
+    }
+    
+    /**
+     * Erstellt einen Sammler
+     * 
+     * @param sampleLimit Anzahl aufbewahrter Beispielmeldungen
+     * @param sink Optionaler Empfänger aller Meldungen oder null
+     */
+    public ConversionDiagnostics(int sampleLimit, DiagnosticsSink sink) {
+        if (sampleLimit < 0) {
+            throw new IllegalArgumentException("Anzahl Beispiele darf nicht negativ sein: " + sampleLimit);
+        }
+        this.sampleLimit = sampleLimit;
+        this.sink = sink;
+    }
+    
+    /**
+     * Meldet eine Information. Wird nur an den Sink weitergegeben.
+     * 
+     * @param message Meldungstext
+     */
+    public void info(String message) {
+        if (sink != null) {
+            sink.log(INFO, message);
+        }
+    }
+    
+    /**
+     * Meldet eine Warnung
+     * 
+     * @param category Kategorie der Warnung, z.B. "doc.paragraph"
+     * @param message Meldungstext
+     */
+    public void warn(String category, String message) {
+        counts.computeIfAbsent(category, k -> new LongAdder()).increment();
+        
+        if (reservedSamples.get() < sampleLimit && reservedSamples.getAndIncrement() < sampleLimit) {
+            samples.add(new Warning(category, message));
+        }
+        if (sink != null) {
+            sink.log(category, message);
+        }
+    }
+    
+    /**
+     * Zählt Warnungen, ohne Beispiele aufzubewahren oder den Sink zu
+     * benachrichtigen, z.B. beim Wiederherstellen aus dem {@link ConversionCache}
+     * 
+     * @param category Kategorie der Warnungen
+     * @param count Anzahl
+     */
+    void addWarnings(String category, long count) {
+        if (count > 0) {
+            counts.computeIfAbsent(category, k -> new LongAdder()).add(count);
+        }
+    }
+    
+    /**
+     * Gibt die Anzahl Warnungen einer Kategorie zurück
+     */
+    public long getWarningCount(String category) {
+        LongAdder count = counts.get(category);
+        return count != null ? count.sum() : 0;
+    }
+    
+    /**
+     * Gibt die Gesamtzahl aller Warnungen zurück
+     */
+    public long getTotalWarnings() {
+        long total = 0;
+        for (LongAdder count : counts.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+    
+    /**
+     * Prüft ob Warnungen aufgetreten sind
+     */
+    public boolean hasWarnings() {
+        return !counts.isEmpty();
+    }
+    
+    /**
+     * Gibt die Anzahl Warnungen pro Kategorie zurück, alphabetisch sortiert
+     */
+    public Map<String, Long> getWarningCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((category, count) -> result.put(category, count.sum()));
+        return result;
+    }
+    
+    /**
+     * Gibt die aufbewahrten Beispielmeldungen in Auftrittsreihenfolge zurück
+     */
+    public List<Warning> getSamples() {
+        synchronized (samples) {
+            return List.copyOf(samples);
+        }
+    }
+    
+    /**
+     * Gibt eine einzeilige Zusammenfassung zurück, z.B.
+     * "3 Warnungen (doc.paragraph: 2, doc.image: 1)"
+     */
+    public String getSummary() {
+        if (!hasWarnings()) {
+            return "Keine Warnungen";
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(getTotalWarnings()).append(" Warnungen (");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : getWarningCounts().entrySet()) {
+            if (!first) {
+                summary.append(", ");
+            }
+            summary.append(entry.getKey()).append(": ").append(entry.getValue());
+            first = false;
+        }
+        return summary.append(')').toString();
+    }
+    
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+    
+    /**
+     * Eine aufbewahrte Warnung
+     */
+    public static final class Warning {
+        private final String category;
+        private final String message;
+        
+        Warning(String category, String message) {
+            this.category = category;
+            this.message = message;
+        }
+        
+        public String getCategory() {
+            return category;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        @Override
+        public String toString() {
+            return "[" + category + "] " + message;
+        }
+    }
+}
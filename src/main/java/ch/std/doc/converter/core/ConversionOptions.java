@@ -0,0 +1,512 @@
+package ch.std.doc.converter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Optionen für einen einzelnen Konvertierungsaufruf.
+ * 
+ * Die Optionen werden pro Aufruf übergeben, damit die Konverter selbst keinen
+ * Zustand halten. Nicht relevante Optionen werden von einem Konverter ignoriert.
+ */
+public class ConversionOptions {
+    
+    /** Standardmuster für die Namen der Teildateien, z.B. bericht-001.pdf */
+    public static final String DEFAULT_PART_NAME_PATTERN = "{name}-{part}.pdf";
+    
+    private FormulaStrategy formulaStrategy = FormulaStrategy.CACHED;
+    private boolean parallelRecalculation = false;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final List<Integer> sheetIndices = new ArrayList<>();
+    private final List<String> cellRanges = new ArrayList<>();
+    private boolean usePrintAreas = false;
+    private SharedStringsStorage sharedStringsStorage = SharedStringsStorage.HEAP;
+    private boolean memoryMappedInput = false;
+    private int pipelineQueueSize = 0;
+    private long imagePrefetchWindow = 0;
+    private TextFormat textFormat = TextFormat.PLAIN;
+    private PdfOutputProfile pdfOutputProfile = PdfOutputProfile.DEFAULT;
+    private boolean durableOutput = false;
+    private int maxPagesPerPart = 0;
+    private long maxBytesPerPart = 0;
+    private String partNamePattern = DEFAULT_PART_NAME_PATTERN;
+    private SheetFragmentCache sheetFragmentCache = null;
+    private DiagnosticsSink diagnosticsSink = null;
+    private int diagnosticsSampleLimit = ConversionDiagnostics.DEFAULT_SAMPLE_LIMIT;
+    
+    /**
+     * Gibt die Strategie für Excel-Formelzellen zurück
+     * 
+     * @return Formelstrategie, Standard ist {@link FormulaStrategy#CACHED}
+     */
+    public FormulaStrategy getFormulaStrategy() {
+        return formulaStrategy;
+    }
+    
+    /**
+     * Setzt die Strategie für Excel-Formelzellen
+     * 
+     * @param formulaStrategy Formelstrategie
+     * @return diese Optionen
+     */
+    public ConversionOptions setFormulaStrategy(FormulaStrategy formulaStrategy) {
+        if (formulaStrategy == null) {
+            throw new IllegalArgumentException("Formelstrategie darf nicht null sein");
+        }
+        this.formulaStrategy = formulaStrategy;
+        return this;
+    }
+    
+    /**
+     * Gibt zurück, ob unabhängige Arbeitsblätter parallel neu berechnet werden
+     * 
+     * @return true wenn parallele Neuberechnung aktiv ist
+     */
+    public boolean isParallelRecalculation() {
+        return parallelRecalculation;
+    }
+    
+    /**
+     * Aktiviert die parallele Neuberechnung von Arbeitsblättern ohne
+     * Bezüge auf andere Blätter (nur mit {@link FormulaStrategy#RECALCULATE})
+     * 
+     * @param parallelRecalculation true für parallele Neuberechnung
+     * @return diese Optionen
+     */
+    public ConversionOptions setParallelRecalculation(boolean parallelRecalculation) {
+        this.parallelRecalculation = parallelRecalculation;
+        return this;
+    }
+    
+    /**
+     * Wählt ein Arbeitsblatt über seinen Namen aus. Ohne Auswahl werden alle
+     * Arbeitsblätter konvertiert.
+     * 
+     * @param sheetName Name des Arbeitsblatts
+     * @return diese Optionen
+     */
+    public ConversionOptions addSheet(String sheetName) {
+        if (sheetName == null || sheetName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Blattname darf nicht null oder leer sein");
+        }
+        sheetNames.add(sheetName);
+        return this;
+    }
+    
+    /**
+     * Wählt ein Arbeitsblatt über seinen Index (0-basiert) aus
+     * 
+     * @param sheetIndex Index des Arbeitsblatts
+     * @return diese Optionen
+     */
+    public ConversionOptions addSheet(int sheetIndex) {
+        if (sheetIndex < 0) {
+            throw new IllegalArgumentException("Blattindex darf nicht negativ sein: " + sheetIndex);
+        }
+        sheetIndices.add(sheetIndex);
+        return this;
+    }
+    
+    /**
+     * Schränkt die Ausgabe auf einen Zellbereich ein, z.B. "A1:F20" für alle
+     * ausgewählten Blätter oder "'Umsatz 2024'!A1:F20" für ein bestimmtes Blatt.
+     * Ein Bereich mit Blattname wählt dieses Blatt automatisch aus.
+     * 
+     * @param cellRange Zellbereich in A1-Notation
+     * @return diese Optionen
+     */
+    public ConversionOptions addRange(String cellRange) {
+        if (cellRange == null || cellRange.trim().isEmpty()) {
+            throw new IllegalArgumentException("Zellbereich darf nicht null oder leer sein");
+        }
+        cellRanges.add(cellRange.trim());
+        return this;
+    }
+    
+    /**
+     * Verwendet die in der Arbeitsmappe definierten Druckbereiche, sofern für
+     * ein Blatt kein expliziter Zellbereich angegeben ist
+     * 
+     * @param usePrintAreas true um Druckbereiche zu verwenden
+     * @return diese Optionen
+     */
+    public ConversionOptions setUsePrintAreas(boolean usePrintAreas) {
+        this.usePrintAreas = usePrintAreas;
+        return this;
+    }
+    
+    public List<String> getSheetNames() {
+        return Collections.unmodifiableList(sheetNames);
+    }
+    
+    public List<Integer> getSheetIndices() {
+        return Collections.unmodifiableList(sheetIndices);
+    }
+    
+    public List<String> getCellRanges() {
+        return Collections.unmodifiableList(cellRanges);
+    }
+    
+    public boolean isUsePrintAreas() {
+        return usePrintAreas;
+    }
+    
+    /**
+     * Prüft ob Blätter, Bereiche oder Druckbereiche ausgewählt wurden
+     * 
+     * @return true wenn nur ein Teil der Arbeitsmappe konvertiert werden soll
+     */
+    public boolean hasSheetSelection() {
+        return !sheetNames.isEmpty() || !sheetIndices.isEmpty() || !cellRanges.isEmpty() || usePrintAreas;
+    }
+    
+    /**
+     * Gibt zurück, wo die Shared Strings einer XLSX-Datei gehalten werden
+     * 
+     * @return Speicherart, Standard ist {@link SharedStringsStorage#HEAP}
+     */
+    public SharedStringsStorage getSharedStringsStorage() {
+        return sharedStringsStorage;
+    }
+    
+    /**
+     * Legt fest, wo die Shared Strings einer XLSX-Datei gehalten werden
+     * 
+     * @param sharedStringsStorage Speicherart
+     * @return diese Optionen
+     */
+    public ConversionOptions setSharedStringsStorage(SharedStringsStorage sharedStringsStorage) {
+        if (sharedStringsStorage == null) {
+            throw new IllegalArgumentException("Speicherart darf nicht null sein");
+        }
+        this.sharedStringsStorage = sharedStringsStorage;
+        return this;
+    }
+    
+    /**
+     * Gibt zurück, ob DOC-Eingabedateien gemappt gelesen werden
+     * 
+     * @return true wenn gemappt, Standard ist false
+     */
+    public boolean isMemoryMappedInput() {
+        return memoryMappedInput;
+    }
+    
+    /**
+     * Legt fest, ob DOC-Eingabedateien (OLE2) in den Speicher gemappt statt
+     * sektorweise gelesen werden. POI mappt nur schreibbar geöffnete Dateien,
+     * die Eingabedatei muss daher beschreibbar sein; verändert wird sie nicht.
+     * DOCX- und XLSX-Dateien werden immer dateibasiert gelesen.
+     * 
+     * @param memoryMappedInput true um die Eingabedatei zu mappen
+     * @return diese Optionen
+     */
+    public ConversionOptions setMemoryMappedInput(boolean memoryMappedInput) {
+        this.memoryMappedInput = memoryMappedInput;
+        return this;
+    }
+    
+    /**
+     * Gibt zurück, wie viele Zeilen das Parsen dem Layout voraus sein darf
+     * 
+     * @return Zeilen in der Warteschlange, 0 wenn nicht parallel geparst wird
+     */
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+    
+    /**
+     * Parst XLSX-Blätter in einem eigenen Thread, während der aufrufende
+     * Thread die bereits gelesenen Zeilen setzt. Dazwischen liegt eine
+     * Warteschlange mit höchstens dieser Anzahl Zeilen, die den zusätzlichen
+     * Speicher begrenzt. Das PDF ist dasselbe wie ohne Pipelining.
+     * Wird derzeit nur mit {@link SharedStringsStorage#MEMORY_MAPPED}
+     * unterstützt, wo die Blätter per SAX gelesen werden.
+     * 
+     * @param pipelineQueueSize Zeilen in der Warteschlange, z.B. 256; 0 schaltet das Pipelining aus
+     * @return diese Optionen
+     */
+    public ConversionOptions setPipelineQueueSize(int pipelineQueueSize) {
+        if (pipelineQueueSize < 0) {
+            throw new IllegalArgumentException("Grösse der Warteschlange darf nicht negativ sein: " + pipelineQueueSize);
+        }
+        this.pipelineQueueSize = pipelineQueueSize;
+        return this;
+    }
+    
+    /**
+     * Gibt das Fenster für das Vorauslesen von Bildern zurück
+     * 
+     * @return Bytes, 0 wenn Bilder erst beim Setzen dekodiert werden
+     */
+    public long getImagePrefetchWindow() {
+        return imagePrefetchWindow;
+    }
+    
+    /**
+     * Dekodiert die Bilder von DOCX-Dokumenten in einem kleinen Thread-Pool,
+     * bevor das Layout bei ihnen ankommt. Das Fenster begrenzt die Bytes der
+     * Bilder, die vorbereitet auf das Layout warten. Das PDF ist dasselbe wie
+     * ohne Vorauslesen.
+     * 
+     * @param imagePrefetchWindow Bytes, z.B. 16 MB; 0 schaltet das Vorauslesen aus
+     * @return diese Optionen
+     */
+    public ConversionOptions setImagePrefetchWindow(long imagePrefetchWindow) {
+        if (imagePrefetchWindow < 0) {
+            throw new IllegalArgumentException("Fenster für Bilder darf nicht negativ sein: " + imagePrefetchWindow);
+        }
+        this.imagePrefetchWindow = imagePrefetchWindow;
+        return this;
+    }
+    
+    /**
+     * Gibt das Format der Textextraktion zurück
+     * 
+     * @return Textformat, Standard ist {@link TextFormat#PLAIN}
+     */
+    public TextFormat getTextFormat() {
+        return textFormat;
+    }
+    
+    /**
+     * Legt das Format für {@link DocumentConverter#extractText} fest
+     * 
+     * @param textFormat Textformat
+     * @return diese Optionen
+     */
+    public ConversionOptions setTextFormat(TextFormat textFormat) {
+        if (textFormat == null) {
+            throw new IllegalArgumentException("Textformat darf nicht null sein");
+        }
+        this.textFormat = textFormat;
+        return this;
+    }
+    
+    /**
+     * Gibt das Profil für die PDF-Ausgabe zurück
+     * 
+     * @return Profil, Standard ist {@link PdfOutputProfile#DEFAULT}
+     */
+    public PdfOutputProfile getPdfOutputProfile() {
+        return pdfOutputProfile;
+    }
+    
+    /**
+     * Legt fest, wie die PDF-Ausgabe komprimiert und geschrieben wird
+     * 
+     * @param pdfOutputProfile Profil, z.B. {@link PdfOutputProfile#SMALL} oder {@link PdfOutputProfile#FAST}
+     * @return diese Optionen
+     */
+    public ConversionOptions setPdfOutputProfile(PdfOutputProfile pdfOutputProfile) {
+        if (pdfOutputProfile == null) {
+            throw new IllegalArgumentException("PDF-Profil darf nicht null sein");
+        }
+        this.pdfOutputProfile = pdfOutputProfile;
+        return this;
+    }
+    
+    /**
+     * Gibt zurück, ob die Ausgabedatei vor dem Veröffentlichen auf den Datenträger geschrieben wird
+     * 
+     * @return true wenn dauerhaft, Standard ist false
+     */
+    public boolean isDurableOutput() {
+        return durableOutput;
+    }
+    
+    /**
+     * Legt fest, ob die Ausgabedatei und ihr Verzeichniseintrag mit {@code force}
+     * auf den Datenträger geschrieben werden. Die Ausgabe wird in jedem Fall
+     * atomar veröffentlicht; ohne diese Option kann sie nach einem Absturz des
+     * Betriebssystems aber noch fehlen.
+     * 
+     * @param durableOutput true für dauerhafte Ausgabe
+     * @return diese Optionen
+     */
+    public ConversionOptions setDurableOutput(boolean durableOutput) {
+        this.durableOutput = durableOutput;
+        return this;
+    }
+    
+    /**
+     * Gibt die Seitenzahl zurück, nach der eine neue Teildatei begonnen wird
+     * 
+     * @return Seiten pro Teil, 0 für keine Grenze
+     */
+    public int getMaxPagesPerPart() {
+        return maxPagesPerPart;
+    }
+    
+    /**
+     * Teilt die PDF-Ausgabe in Dateien mit höchstens dieser Seitenzahl auf.
+     * Geteilt wird nur zwischen Tabellenzeilen; eine Zeile, die höher ist als
+     * alle bisherigen, kann einen Teil um eine Seite verlängern.
+     * Wird derzeit nur vom Excel-Konverter unterstützt.
+     * 
+     * @param maxPagesPerPart Seiten pro Teil, 0 für keine Grenze
+     * @return diese Optionen
+     * @see #setPartNamePattern(String)
+     */
+    public ConversionOptions setMaxPagesPerPart(int maxPagesPerPart) {
+        if (maxPagesPerPart < 0) {
+            throw new IllegalArgumentException("Seiten pro Teil dürfen nicht negativ sein: " + maxPagesPerPart);
+        }
+        this.maxPagesPerPart = maxPagesPerPart;
+        return this;
+    }
+    
+    /**
+     * Gibt die Grösse zurück, nach der eine neue Teildatei begonnen wird
+     * 
+     * @return Bytes pro Teil, 0 für keine Grenze
+     */
+    public long getMaxBytesPerPart() {
+        return maxBytesPerPart;
+    }
+    
+    /**
+     * Beginnt eine neue Teildatei, sobald die geschriebenen Seiten diese Grösse
+     * erreichen. Geprüft wird zwischen Tabellenzeilen. Weil iText eine Seite erst
+     * schreibt, wenn die übernächste begonnen hat, wird ein Teil um höchstens
+     * drei Seiten und den Abschluss der Datei (Xref-Tabelle, Schriften) grösser.
+     * Wird derzeit nur vom Excel-Konverter unterstützt.
+     * 
+     * @param maxBytesPerPart Bytes pro Teil, 0 für keine Grenze
+     * @return diese Optionen
+     * @see #setPartNamePattern(String)
+     */
+    public ConversionOptions setMaxBytesPerPart(long maxBytesPerPart) {
+        if (maxBytesPerPart < 0) {
+            throw new IllegalArgumentException("Bytes pro Teil dürfen nicht negativ sein: " + maxBytesPerPart);
+        }
+        this.maxBytesPerPart = maxBytesPerPart;
+        return this;
+    }
+    
+    /**
+     * Prüft ob die Ausgabe in Teildateien aufgeteilt wird
+     * 
+     * @return true wenn eine Seiten- oder Grössengrenze gesetzt ist
+     */
+    public boolean isSplitOutput() {
+        return maxPagesPerPart > 0 || maxBytesPerPart > 0;
+    }
+    
+    /**
+     * Gibt das Muster für die Namen der Teildateien zurück
+     * 
+     * @return Muster, Standard ist {@link #DEFAULT_PART_NAME_PATTERN}
+     */
+    public String getPartNamePattern() {
+        return partNamePattern;
+    }
+    
+    /**
+     * Legt fest, wie die Teildateien einer aufgeteilten Ausgabe heissen. Sie
+     * liegen im Verzeichnis der Ausgabedatei; {@code {name}} steht für deren
+     * Namen ohne Endung, {@code {part}} für die mindestens dreistellige
+     * Teilnummer ab 001. Die Ausgabedatei selbst wird nicht geschrieben,
+     * stattdessen listet {@code {name}.index.txt} die Teile auf.
+     * 
+     * @param partNamePattern Muster, z.B. "{name}_teil{part}.pdf"
+     * @return diese Optionen
+     */
+    public ConversionOptions setPartNamePattern(String partNamePattern) {
+        if (partNamePattern == null || !partNamePattern.contains("{part}")) {
+            throw new IllegalArgumentException("Namensmuster muss {part} enthalten: " + partNamePattern);
+        }
+        if (partNamePattern.contains("/") || partNamePattern.contains("\\")) {
+            throw new IllegalArgumentException("Namensmuster darf kein Verzeichnis enthalten: " + partNamePattern);
+        }
+        this.partNamePattern = partNamePattern;
+        return this;
+    }
+    
+    /**
+     * Gibt den Cache für die PDF-Fragmente einzelner Arbeitsblätter zurück
+     * 
+     * @return Cache oder null, wenn immer die ganze Arbeitsmappe gerendert wird
+     */
+    public SheetFragmentCache getSheetFragmentCache() {
+        return sheetFragmentCache;
+    }
+    
+    /**
+     * Setzt einen Cache, damit bei einer erneuten Konvertierung nur geänderte
+     * Arbeitsblätter gerendert werden. Die übrigen Blätter werden aus dem Cache
+     * übernommen und das PDF aus den Fragmenten zusammengefügt, mit Seitenzahlen
+     * über alle Seiten. Wird bei aufgeteilter Ausgabe und bei
+     * {@link FormulaStrategy#RECALCULATE} nicht verwendet, weil das Ergebnis eines
+     * Blatts dann nicht mehr nur vom Blatt selbst abhängt.
+     * 
+     * @param sheetFragmentCache Cache oder null
+     * @return diese Optionen
+     */
+    public ConversionOptions setSheetFragmentCache(SheetFragmentCache sheetFragmentCache) {
+        this.sheetFragmentCache = sheetFragmentCache;
+        return this;
+    }
+    
+    /**
+     * Beschreibt alle Optionen, die das erzeugte PDF beeinflussen, als Teil des
+     * Schlüssels im {@link ConversionCache}. Neue Optionen mit Einfluss auf die
+     * Ausgabe müssen hier ergänzt werden.
+     * 
+     * @return Kanonische Beschreibung der Optionen
+     */
+    String getOutputKey() {
+        return "formula=" + formulaStrategy
+               + ";sheets=" + sheetNames
+               + ";sheetIndices=" + sheetIndices
+               + ";ranges=" + cellRanges
+               + ";printAreas=" + usePrintAreas
+               + ";sharedStrings=" + sharedStringsStorage
+               + ";profile=" + pdfOutputProfile
+               + ";sheetFragments=" + (sheetFragmentCache != null);
+    }
+    
+    /**
+     * Gibt den Empfänger für Meldungen der Konvertierung zurück
+     * 
+     * @return Sink oder null wenn Meldungen nur gesammelt werden
+     */
+    public DiagnosticsSink getDiagnosticsSink() {
+        return diagnosticsSink;
+    }
+    
+    /**
+     * Setzt einen Empfänger, der zusätzlich jede Meldung erhält
+     * 
+     * @param diagnosticsSink Sink, z.B. ein {@link AsyncDiagnosticsSink}, oder null
+     * @return diese Optionen
+     */
+    public ConversionOptions setDiagnosticsSink(DiagnosticsSink diagnosticsSink) {
+        this.diagnosticsSink = diagnosticsSink;
+        return this;
+    }
+    
+    /**
+     * Gibt zurück, wie viele Warnungen als Beispiele aufbewahrt werden
+     * 
+     * @return Anzahl Beispiele, Standard ist {@link ConversionDiagnostics#DEFAULT_SAMPLE_LIMIT}
+     */
+    public int getDiagnosticsSampleLimit() {
+        return diagnosticsSampleLimit;
+    }
+    
+    /**
+     * Legt fest, wie viele Warnungen als Beispiele aufbewahrt werden
+     * 
+     * @param diagnosticsSampleLimit Anzahl Beispiele
+     * @return diese Optionen
+     */
+    public ConversionOptions setDiagnosticsSampleLimit(int diagnosticsSampleLimit) {
+        if (diagnosticsSampleLimit < 0) {
+            throw new IllegalArgumentException("Anzahl Beispiele darf nicht negativ sein: " + diagnosticsSampleLimit);
+        }
+        this.diagnosticsSampleLimit = diagnosticsSampleLimit;
+        return this;
+    }
+}
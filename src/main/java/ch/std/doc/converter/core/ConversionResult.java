@@ -0,0 +1,67 @@
+package ch.std.doc.converter.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ergebnis einer Konvertierung
+ */
+public class ConversionResult {
+    
+    private final String inputFile;
+    private final String outputFile;
+    private final List<String> outputParts;
+    private final ConversionDiagnostics diagnostics;
+    
+    public ConversionResult(String inputFile, String outputFile, ConversionDiagnostics diagnostics) {
+        this(inputFile, outputFile,
+             outputFile != null ? List.of(outputFile) : Collections.emptyList(), diagnostics);
+    }
+    
+    /**
+     * Ergebnis einer in mehrere Dateien aufgeteilten Konvertierung
+     * 
+     * @param outputFile Pfad der Indexdatei
+     * @param outputParts Pfade der Teildateien in ihrer Reihenfolge
+     */
+    public ConversionResult(String inputFile, String outputFile, List<String> outputParts,
+                            ConversionDiagnostics diagnostics) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.outputParts = List.copyOf(outputParts);
+        this.diagnostics = diagnostics;
+    }
+    
+    /**
+     * Gibt den Pfad der Eingabedatei zurück
+     */
+    public String getInputFile() {
+        return inputFile;
+    }
+    
+    /**
+     * Gibt den Pfad der erstellten Ausgabedatei zurück
+     * 
+     * @return Pfad, bei aufgeteilter Ausgabe der Indexdatei, oder null,
+     *         wenn in einen Writer geschrieben wurde
+     */
+    public String getOutputFile() {
+        return outputFile;
+    }
+    
+    /**
+     * Gibt die erstellten Ausgabedateien zurück
+     * 
+     * @return Teildateien in ihrer Reihenfolge; ohne Aufteilung nur die Ausgabedatei
+     */
+    public List<String> getOutputParts() {
+        return outputParts;
+    }
+    
+    /**
+     * Gibt die während der Konvertierung gesammelten Warnungen zurück
+     */
+    public ConversionDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+}
@@ -0,0 +1,480 @@
+package ch.std.doc.converter.core;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verteilt Konvertierungen nach Priorität, Frist und Grösse auf eine feste
+ * Anzahl Worker-Threads.
+ *
+ * Aufträge werden in Spuren (Lanes) eingereiht, z.B. {@link #INTERACTIVE} für
+ * Vorschauen und {@link #BATCH} für Archivläufe. Die Spuren teilen sich die
+ * Worker nach ihrem Gewicht: jede Spur erhält Rechenzeit im Verhältnis ihres
+ * Gewichts, gemessen an den geschätzten Kosten der gestarteten Aufträge
+ * (Start-Time Fair Queueing). Eine Spur, die länger leer war, sammelt dabei
+ * kein Guthaben an.
+ *
+ * Innerhalb einer Spur startet zuerst der Auftrag mit der frühesten Frist;
+ * Aufträge ohne Frist folgen danach. Bei gleicher Frist entscheidet die
+ * Grössenordnung der Spur: {@link SizeOrder#SHORTEST_FIRST} lässt kleine
+ * Dokumente nicht hinter einer grossen Arbeitsmappe warten,
+ * {@link SizeOrder#LARGEST_FIRST} startet grosse Aufträge früh und verkürzt so
+ * die Gesamtdauer eines Stapels. Die Kosten werden aus Dateigrösse und -typ
+ * geschätzt ({@link #estimateCost(String)}).
+ *
+ * Mit einer {@link AdaptiveConcurrencyLimit} laufen nicht so viele
+ * Konvertierungen gleichzeitig, wie es Threads gibt, sondern so viele, wie
+ * die aus der gemessenen Latenz nachgeführte Grenze erlaubt.
+ *
+ * Pro Spur werden Warteschlangenlänge, Wartezeiten und verpasste Fristen
+ * gezählt. Die Klasse ist thread-sicher.
+ */
+public final class ConversionScheduler implements AutoCloseable {
+
+    /** Spur für interaktive Anfragen, Gewicht 4, kleinste Aufträge zuerst */
+    public static final String INTERACTIVE = "interactive";
+
+    /** Spur für Stapelverarbeitung, Gewicht 1, grösste Aufträge zuerst */
+    public static final String BATCH = "batch";
+
+    /**
+     * Reihenfolge der Aufträge gleicher Frist innerhalb einer Spur
+     */
+    public enum SizeOrder {
+        /** Kleinste geschätzte Kosten zuerst */
+        SHORTEST_FIRST,
+        /** Grösste geschätzte Kosten zuerst */
+        LARGEST_FIRST
+    }
+
+    // Expansion gegenüber der Dateigrösse: XLSX-Zellen sind gezippt und
+    // bestimmen mit ihrer Anzahl die Renderzeit
+    private static final Map<String, Integer> COST_FACTORS = Map.of(
+            ".xlsx", 10,
+            ".docx", 3,
+            ".doc", 1);
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final Thread[] workers;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private volatile MemoryAdmissionController admissionController;
+    private int running = 0;
+    private long sequence = 0;
+    private double virtualTime = 0;
+    private boolean closed = false;
+
+    /**
+     * Erstellt einen Scheduler mit den Spuren {@link #INTERACTIVE} und
+     * {@link #BATCH} und startet die Worker-Threads
+     *
+     * @param threads Anzahl gleichzeitiger Konvertierungen
+     */
+    public ConversionScheduler(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * Erstellt einen Scheduler, dessen Anzahl gleichzeitiger Konvertierungen
+     * der angegebenen Grenze folgt. Es werden so viele Worker-Threads
+     * gestartet, wie die Obergrenze erlaubt.
+     *
+     * @param concurrencyLimit Anpassbare Grenze, z.B. {@code new AdaptiveConcurrencyLimit()}
+     */
+    public ConversionScheduler(AdaptiveConcurrencyLimit concurrencyLimit) {
+        this(concurrencyLimit.getMaxLimit(), concurrencyLimit);
+    }
+
+    private ConversionScheduler(int threads, AdaptiveConcurrencyLimit concurrencyLimit) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Anzahl Threads muss positiv sein: " + threads);
+        }
+        this.concurrencyLimit = concurrencyLimit;
+        addLane(INTERACTIVE, 4, SizeOrder.SHORTEST_FIRST);
+        addLane(BATCH, 1, SizeOrder.LARGEST_FIRST);
+
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "docconverter-scheduler-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Fügt eine Spur hinzu oder ändert Gewicht und Reihenfolge einer
+     * bestehenden Spur. Wartende Aufträge bleiben erhalten.
+     *
+     * @param name Name der Spur
+     * @param weight Anteil an den Workern im Verhältnis zu den anderen Spuren
+     * @param sizeOrder Reihenfolge von Aufträgen gleicher Frist
+     * @return Dieser Scheduler
+     */
+    public synchronized ConversionScheduler addLane(String name, int weight, SizeOrder sizeOrder) {
+        if (name == null || sizeOrder == null) {
+            throw new IllegalArgumentException("Name und Reihenfolge der Spur dürfen nicht null sein");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Gewicht muss positiv sein: " + weight);
+        }
+        Lane previous = lanes.get(name);
+        Lane lane = new Lane(weight, sizeOrder);
+        if (previous != null) {
+            lane.queue.addAll(previous.queue);
+            lane.virtualTime = previous.virtualTime;
+            lane.statistics = previous.statistics;
+        }
+        lanes.put(name, lane);
+        return this;
+    }
+
+    /**
+     * Lässt gestartete Aufträge zusätzlich durch eine Heap-Zulassung laufen.
+     * Ein Worker wartet dann, bis der geschätzte Heap-Bedarf seines Auftrags
+     * ins Budget passt.
+     *
+     * @param admissionController Zulassung oder null für keine
+     * @return Dieser Scheduler
+     */
+    public ConversionScheduler setAdmissionController(MemoryAdmissionController admissionController) {
+        this.admissionController = admissionController;
+        return this;
+    }
+
+    /**
+     * Reiht eine Konvertierung ohne Frist ein
+     *
+     * @see #submit(String, DocumentConverter, String, String, ConversionOptions, Instant)
+     */
+    public CompletableFuture<ConversionResult> submit(String lane, String inputFile, String outputFile,
+                                                      ConversionOptions options) {
+        return submit(lane, inputFile, outputFile, options, null);
+    }
+
+    /**
+     * Reiht eine Konvertierung mit dem über {@link DocumentConverterFactory}
+     * gewählten Konverter ein
+     *
+     * @see #submit(String, DocumentConverter, String, String, ConversionOptions, Instant)
+     */
+    public CompletableFuture<ConversionResult> submit(String lane, String inputFile, String outputFile,
+                                                      ConversionOptions options, Instant deadline) {
+        DocumentConverter converter = DocumentConverterFactory.createConverter(inputFile);
+        if (converter == null) {
+            throw new IllegalArgumentException("Dateiformat wird nicht unterstützt: " + inputFile);
+        }
+        return submit(lane, converter, inputFile, outputFile, options, deadline);
+    }
+
+    /**
+     * Reiht eine Konvertierung ein. Ein Abbruch des zurückgegebenen Futures
+     * vor dem Start entfernt den Auftrag; eine laufende Konvertierung wird
+     * nicht unterbrochen.
+     *
+     * @param lane Name der Spur
+     * @param converter Konverter für die Eingabedatei
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung oder null
+     * @param deadline Spätester gewünschter Start oder null
+     * @return Future mit dem Ergebnis der Konvertierung
+     * @throws IllegalArgumentException wenn die Spur nicht existiert
+     * @throws IllegalStateException wenn der Scheduler geschlossen ist
+     */
+    public CompletableFuture<ConversionResult> submit(String lane, DocumentConverter converter, String inputFile,
+                                                      String outputFile, ConversionOptions options,
+                                                      Instant deadline) {
+        long cost = estimateCost(inputFile);
+        Job job = new Job(converter, inputFile, outputFile, options, deadline, cost);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler ist geschlossen");
+            }
+            Lane target = lanes.get(lane);
+            if (target == null) {
+                throw new IllegalArgumentException("Spur existiert nicht: " + lane);
+            }
+            if (target.queue.isEmpty()) {
+                // Eine leere Spur holt nicht nach, was sie während der Pause nicht beansprucht hat
+                target.virtualTime = Math.max(target.virtualTime, virtualTime);
+            }
+            job.sequence = sequence++;
+            job.submittedNanos = System.nanoTime();
+            target.queue.add(job);
+            notifyAll();
+        }
+        return job.result;
+    }
+
+    /**
+     * Schätzt die Kosten einer Konvertierung aus Grösse und Typ der Datei.
+     * Die Einheit ist beliebig, nur das Verhältnis zwischen Aufträgen zählt.
+     *
+     * @param inputFile Pfad zur Eingabedatei
+     * @return Geschätzte Kosten, mindestens 1
+     */
+    public static long estimateCost(String inputFile) {
+        String name = inputFile.toLowerCase(Locale.ROOT);
+        int factor = 1;
+        for (Map.Entry<String, Integer> entry : COST_FACTORS.entrySet()) {
+            if (name.endsWith(entry.getKey())) {
+                factor = entry.getValue();
+            }
+        }
+        return Math.max(1, new File(inputFile).length() * factor);
+    }
+
+    /**
+     * Gibt die Anzahl wartender Aufträge aller Spuren zurück
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes.values()) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Gibt die Anzahl wartender Aufträge einer Spur zurück
+     */
+    public synchronized int getQueueDepth(String lane) {
+        return getLane(lane).queue.size();
+    }
+
+    /**
+     * Gibt die Anzahl laufender Konvertierungen zurück
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Gibt die aktuell erlaubte Anzahl gleichzeitiger Konvertierungen zurück:
+     * den Wert der {@link AdaptiveConcurrencyLimit} oder die Anzahl Threads
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit != null ? concurrencyLimit.getLimit() : workers.length;
+    }
+
+    /**
+     * Gibt die Anzahl gestarteter Aufträge einer Spur zurück
+     */
+    public synchronized long getStartedCount(String lane) {
+        return getLane(lane).statistics.started;
+    }
+
+    /**
+     * Gibt die mittlere Wartezeit der gestarteten Aufträge einer Spur in
+     * Millisekunden zurück
+     */
+    public synchronized double getAverageWaitMillis(String lane) {
+        LaneStatistics statistics = getLane(lane).statistics;
+        return statistics.started == 0 ? 0 : statistics.totalWaitNanos / 1e6 / statistics.started;
+    }
+
+    /**
+     * Gibt die längste Wartezeit eines gestarteten Auftrags der Spur in
+     * Millisekunden zurück
+     */
+    public synchronized long getMaxWaitMillis(String lane) {
+        return TimeUnit.NANOSECONDS.toMillis(getLane(lane).statistics.maxWaitNanos);
+    }
+
+    /**
+     * Gibt die Wartezeit des ältesten wartenden Auftrags der Spur in
+     * Millisekunden zurück, 0 wenn keiner wartet
+     */
+    public synchronized long getOldestWaitMillis(String lane) {
+        long oldest = Long.MAX_VALUE;
+        for (Job job : getLane(lane).queue) {
+            oldest = Math.min(oldest, job.submittedNanos);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+
+    /**
+     * Gibt die Anzahl der Aufträge einer Spur zurück, die erst nach ihrer
+     * Frist gestartet wurden
+     */
+    public synchronized long getMissedDeadlineCount(String lane) {
+        return getLane(lane).statistics.missedDeadlines;
+    }
+
+    /**
+     * Nimmt keine Aufträge mehr an, arbeitet die wartenden ab und beendet
+     * die Worker-Threads
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Lane getLane(String name) {
+        Lane lane = lanes.get(name);
+        if (lane == null) {
+            throw new IllegalArgumentException("Spur existiert nicht: " + name);
+        }
+        return lane;
+    }
+
+    private void work() {
+        try {
+            Job job;
+            while ((job = next()) != null) {
+                long start = System.nanoTime();
+                job.run(admissionController);
+                finished(job, System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wartet auf den nächsten Auftrag: aus der Spur mit der kleinsten
+     * virtuellen Zeit, bei Gleichstand aus der zuerst angelegten. Mit einer
+     * {@link AdaptiveConcurrencyLimit} startet kein Auftrag, solange die
+     * Grenze erreicht ist.
+     *
+     * @return Nächster Auftrag oder null, wenn der Scheduler geschlossen und leer ist
+     */
+    private synchronized Job next() throws InterruptedException {
+        while (true) {
+            boolean atLimit = concurrencyLimit != null && running >= concurrencyLimit.getLimit();
+            boolean empty = true;
+            Lane selected = null;
+            for (Lane lane : lanes.values()) {
+                // Vor dem Start abgebrochene Aufträge verwerfen
+                while (!lane.queue.isEmpty() && lane.queue.peek().result.isDone()) {
+                    lane.queue.poll();
+                }
+                empty &= lane.queue.isEmpty();
+                if (!lane.queue.isEmpty() && (selected == null || lane.virtualTime < selected.virtualTime)) {
+                    selected = lane;
+                }
+            }
+
+            if (selected != null && !atLimit) {
+                Job job = selected.queue.poll();
+                virtualTime = selected.virtualTime;
+                selected.virtualTime += (double) job.cost / selected.weight;
+                selected.statistics.recordStart(job);
+                running++;
+                return job;
+            }
+            if (closed && empty) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Meldet die Dauer eines abgeschlossenen Auftrags an die Grenze und gibt
+     * seinen Platz frei
+     */
+    private synchronized void finished(Job job, long latencyNanos) {
+        if (concurrencyLimit != null) {
+            concurrencyLimit.onCompleted(latencyNanos, job.cost, running);
+        }
+        running--;
+        notifyAll();
+    }
+
+    /**
+     * Spur mit Gewicht und nach Frist und Grösse geordneter Warteschlange
+     */
+    private static final class Lane {
+        private final int weight;
+        private final PriorityQueue<Job> queue;
+        private double virtualTime = 0;
+        private LaneStatistics statistics = new LaneStatistics();
+
+        Lane(int weight, SizeOrder sizeOrder) {
+            this.weight = weight;
+            Comparator<Job> bySize = Comparator.comparingLong(job -> job.cost);
+            if (sizeOrder == SizeOrder.LARGEST_FIRST) {
+                bySize = bySize.reversed();
+            }
+            this.queue = new PriorityQueue<>(
+                    Comparator.comparing((Job job) -> job.deadline, Comparator.nullsLast(Comparator.naturalOrder()))
+                              .thenComparing(bySize)
+                              .thenComparingLong(job -> job.sequence));
+        }
+    }
+
+    /**
+     * Wartezeiten und Fristen der gestarteten Aufträge einer Spur
+     */
+    private static final class LaneStatistics {
+        private long started = 0;
+        private long totalWaitNanos = 0;
+        private long maxWaitNanos = 0;
+        private long missedDeadlines = 0;
+
+        void recordStart(Job job) {
+            long waitNanos = System.nanoTime() - job.submittedNanos;
+            started++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            if (job.deadline != null && Instant.now().isAfter(job.deadline)) {
+                missedDeadlines++;
+            }
+        }
+    }
+
+    /**
+     * Eingereihte Konvertierung
+     */
+    private static final class Job {
+        private final DocumentConverter converter;
+        private final String inputFile;
+        private final String outputFile;
+        private final ConversionOptions options;
+        private final Instant deadline;
+        private final long cost;
+        private final CompletableFuture<ConversionResult> result = new CompletableFuture<>();
+        private long sequence;
+        private long submittedNanos;
+
+        Job(DocumentConverter converter, String inputFile, String outputFile, ConversionOptions options,
+            Instant deadline, long cost) {
+            this.converter = converter;
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.options = options != null ? options : new ConversionOptions();
+            this.deadline = deadline;
+            this.cost = cost;
+        }
+
+        void run(MemoryAdmissionController admissionController) {
+            try {
+                result.complete(admissionController != null
+                                ? admissionController.convertToPdf(converter, inputFile, outputFile, options)
+                                : converter.convertToPdf(inputFile, outputFile, options));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
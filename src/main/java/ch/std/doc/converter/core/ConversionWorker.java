@@ -0,0 +1,138 @@
+package ch.std.doc.converter.core;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kindprozess eines {@link WorkerProcessPool}.
+ *
+ * Liest Aufträge von stdin und schreibt die Antworten auf stdout; alles, was
+ * die Konverter selbst ausgeben, landet auf stderr. Vor der ersten Antwort
+ * wird je ein kleines Excel- und Word-Dokument konvertiert, damit Klassen
+ * geladen und die häufigsten Pfade kompiliert sind, bevor der erste echte
+ * Auftrag kommt. Der Prozess endet, wenn stdin geschlossen wird, und nach
+ * einem OutOfMemoryError.
+ */
+public final class ConversionWorker {
+
+    private ConversionWorker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        System.setOut(new PrintStream(System.err, true));
+
+        warmUp();
+        out.writeInt(WorkerProtocol.READY);
+        out.flush();
+
+        while (true) {
+            ConversionOptions options = new ConversionOptions();
+            String[] files;
+            try {
+                files = WorkerProtocol.readRequest(in, options);
+            } catch (EOFException e) {
+                return;
+            }
+
+            List<String> infos = new ArrayList<>();
+            options.setDiagnosticsSink((category, message) -> {
+                if (ConversionDiagnostics.INFO.equals(category)) {
+                    infos.add(message);
+                }
+            });
+            try {
+                DocumentConverter converter = DocumentConverterFactory.createConverter(files[0]);
+                if (converter == null) {
+                    throw new IllegalArgumentException("Dateiformat wird nicht unterstützt: " + files[0]);
+                }
+                ConversionResult result = converter.convertToPdf(files[0], files[1], options);
+                WorkerProtocol.writeResult(out, result, infos, getRetainedHeap());
+            } catch (OutOfMemoryError e) {
+                // Der Heap ist in unbekanntem Zustand; der Pool startet einen neuen Prozess
+                WorkerProtocol.writeError(out, e, true, getRetainedHeap());
+                System.exit(3);
+            } catch (Exception | LinkageError | StackOverflowError e) {
+                WorkerProtocol.writeError(out, e, false, getRetainedHeap());
+            }
+        }
+    }
+
+    /**
+     * Gibt die nach der letzten Garbage Collection belegten Bytes aller
+     * Heap-Bereiche zurück, also das, was eine Konvertierung überlebt hat
+     */
+    static long getRetainedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void warmUp() {
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("docconverter-worker");
+            Path xlsx = directory.resolve("warmup.xlsx");
+            try (XSSFWorkbook workbook = new XSSFWorkbook();
+                 FileOutputStream stream = new FileOutputStream(xlsx.toFile())) {
+                XSSFSheet sheet = workbook.createSheet("Daten");
+                for (int r = 0; r < 20; r++) {
+                    XSSFRow row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("Zeile " + r);
+                    row.createCell(1).setCellValue(r * 1.5);
+                    row.createCell(2).setCellFormula("B" + (r + 1) + "*2");
+                }
+                workbook.write(stream);
+            }
+            Path docx = directory.resolve("warmup.docx");
+            try (XWPFDocument document = new XWPFDocument();
+                 FileOutputStream stream = new FileOutputStream(docx.toFile())) {
+                document.createParagraph().createRun().setText("Aufwärmen");
+                document.write(stream);
+            }
+            for (Path file : List.of(xlsx, docx)) {
+                DocumentConverterFactory.createConverter(file.toString())
+                        .convertToPdf(file.toString(), file + ".pdf", new ConversionOptions());
+            }
+        } catch (Exception e) {
+            System.err.println("Aufwärmen des Workers fehlgeschlagen: " + e.getMessage());
+        } finally {
+            if (directory != null) {
+                try (var files = Files.list(directory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                    Files.deleteIfExists(directory);
+                } catch (IOException e) {
+                    // Temporäre Dateien bleiben liegen
+                }
+            }
+        }
+    }
+}
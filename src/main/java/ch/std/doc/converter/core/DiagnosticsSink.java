@@ -0,0 +1,20 @@
+package ch.std.doc.converter.core;
+
+/**
+ * Empfänger für Meldungen einer Konvertierung, z.B. ein Logger.
+ * 
+ * Implementierungen werden im Konvertierungs-Thread aufgerufen und sollten
+ * deshalb nicht blockieren; für langsame Ziele {@link AsyncDiagnosticsSink}
+ * verwenden.
+ */
+@FunctionalInterface
+public interface DiagnosticsSink {
+    
+    /**
+     * Nimmt eine Meldung entgegen
+     * 
+     * @param category Kategorie, z.B. "doc.paragraph" oder {@link ConversionDiagnostics#INFO}
+     * @param message Meldungstext
+     */
+    void log(String category, String message);
+}
@@ -1,20 +1,106 @@
 package ch.std.doc.converter.core;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Abstrakte Basisklasse für alle Dokumentkonverter
+ * Abstrakte Basisklasse für alle Dokumentkonverter.
+ * 
+ * Konverter sind zustandslos und thread-sicher: Eine Instanz darf von
+ * beliebig vielen Threads gleichzeitig verwendet werden. Alles, was während
+ * einer Konvertierung anfällt (geöffnete Dokumente, Schriften, Warnungen),
+ * gehört zum einzelnen Aufruf; gemeinsam genutzte Caches sind selbst
+ * thread-sicher. Die übergebenen {@link ConversionOptions} werden nur gelesen.
+ * Implementierungen dürfen keine veränderlichen Felder haben.
  */
 public abstract class DocumentConverter {
     
+    /**
+     * Konvertiert ein Dokument zu PDF mit Standardoptionen
+     * 
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @return Ergebnis mit den gesammelten Warnungen
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
+     */
+    public ConversionResult convertToPdf(String inputFile, String outputFile) throws IOException {
+        return convertToPdf(inputFile, outputFile, new ConversionOptions());
+    }
+    
     /**
      * Konvertiert ein Dokument zu PDF
      * 
      * @param inputFile Pfad zur Eingabedatei
      * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung
+     * @return Ergebnis mit den gesammelten Warnungen
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
+     */
+    public abstract ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options) throws IOException;
+    
+    /**
+     * Extrahiert nur den Text eines Dokuments in eine UTF-8-Datei, ohne Layout
+     * und ohne PDF zu erzeugen
+     * 
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur Textdatei
+     * @param options Optionen, insbesondere {@link ConversionOptions#getTextFormat()}
+     * @return Ergebnis mit den gesammelten Warnungen
      * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
      */
-    public abstract void convertToPdf(String inputFile, String outputFile) throws IOException;
+    public ConversionResult extractText(String inputFile, String outputFile, ConversionOptions options) throws IOException {
+        validateFiles(inputFile, outputFile);
+        ConversionDiagnostics diagnostics = createDiagnostics(options);
+        logConversion(inputFile, outputFile, diagnostics);
+        
+        if (options == null) {
+            options = new ConversionOptions();
+        }
+        
+        // Unvollständige Textdateien werden nie sichtbar
+        try (AtomicOutputFile output = AtomicOutputFile.create(outputFile, options.isDurableOutput())) {
+            Writer out = new OutputStreamWriter(output.getOutputStream(), StandardCharsets.UTF_8);
+            writeText(inputFile, out, options, diagnostics);
+            out.flush();
+            output.commit();
+        }
+        return new ConversionResult(inputFile, outputFile, diagnostics);
+    }
+    
+    /**
+     * Extrahiert nur den Text eines Dokuments und schreibt ihn fortlaufend in
+     * den Writer. Der Writer wird nicht geschlossen.
+     * 
+     * @param inputFile Pfad zur Eingabedatei
+     * @param out Ziel des Texts
+     * @param options Optionen, insbesondere {@link ConversionOptions#getTextFormat()}
+     * @return Ergebnis mit den gesammelten Warnungen, ohne Ausgabedatei
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben
+     */
+    public ConversionResult extractText(String inputFile, Writer out, ConversionOptions options) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Writer darf nicht null sein");
+        }
+        validateInputFile(inputFile);
+        ConversionDiagnostics diagnostics = createDiagnostics(options);
+        writeText(inputFile, out, options != null ? options : new ConversionOptions(), diagnostics);
+        out.flush();
+        return new ConversionResult(inputFile, null, diagnostics);
+    }
+    
+    /**
+     * Schreibt den Text des Dokuments über den günstigsten Lesepfad von POI
+     * 
+     * @param inputFile Pfad zur Eingabedatei
+     * @param out Ziel des Texts
+     * @param options Optionen der Extraktion, nie null
+     * @param diagnostics Sammler der Extraktion
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben
+     */
+    protected abstract void writeText(String inputFile, Writer out, ConversionOptions options,
+                                      ConversionDiagnostics diagnostics) throws IOException;
     
     /**
      * Gibt die unterstützten Dateierweiterungen zurück
@@ -30,6 +116,18 @@ public abstract class DocumentConverter {
      */
     public abstract String getConverterName();
     
+    /**
+     * Gibt die Version des Konverters zurück. Sie ist Teil des Schlüssels im
+     * {@link ConversionCache}; ein Konverter, dessen Ausgabe sich ändert, muss
+     * eine neue Version melden.
+     * 
+     * @return Version aus dem Manifest des JARs oder "dev" ausserhalb eines JARs
+     */
+    public String getVersion() {
+        String version = getClass().getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+    
     /**
      * Gibt eine detaillierte Beschreibung des Konverters zurück
      * 
@@ -65,13 +163,23 @@ public abstract class DocumentConverter {
      * @throws IllegalArgumentException bei ungültigen Parametern
      */
     protected void validateFiles(String inputFile, String outputFile) {
-        if (inputFile == null || inputFile.trim().isEmpty()) {
-            throw new IllegalArgumentException("Eingabedatei darf nicht null oder leer sein");
-        }
+        validateInputFile(inputFile);
         
         if (outputFile == null || outputFile.trim().isEmpty()) {
             throw new IllegalArgumentException("Ausgabedatei darf nicht null oder leer sein");
         }
+    }
+    
+    /**
+     * Validiert die Eingabedatei
+     * 
+     * @param inputFile Eingabedatei
+     * @throws IllegalArgumentException bei ungültigem Pfad oder nicht unterstützter Erweiterung
+     */
+    protected void validateInputFile(String inputFile) {
+        if (inputFile == null || inputFile.trim().isEmpty()) {
+            throw new IllegalArgumentException("Eingabedatei darf nicht null oder leer sein");
+        }
         
         if (!supportsFile(inputFile)) {
             throw new IllegalArgumentException("Dateierweiterung wird nicht unterstützt: " + inputFile);
@@ -79,13 +187,27 @@ public abstract class DocumentConverter {
     }
     
     /**
-     * Loggt eine Konvertierungsmeldung
+     * Erstellt den Warnungssammler für eine Konvertierung
+     * 
+     * @param options Optionen der Konvertierung oder null
+     * @return Neuer Sammler
+     */
+    protected ConversionDiagnostics createDiagnostics(ConversionOptions options) {
+        if (options == null) {
+            return new ConversionDiagnostics();
+        }
+        return new ConversionDiagnostics(options.getDiagnosticsSampleLimit(), options.getDiagnosticsSink());
+    }
+    
+    /**
+     * Meldet den Start einer Konvertierung
      * 
      * @param inputFile Eingabedatei
      * @param outputFile Ausgabedatei
+     * @param diagnostics Sammler der Konvertierung
      */
-    protected void logConversion(String inputFile, String outputFile) {
-        System.out.println(String.format("[%s] Konvertiere '%s' zu '%s'", 
-                          getConverterName(), inputFile, outputFile));
+    protected void logConversion(String inputFile, String outputFile, ConversionDiagnostics diagnostics) {
+        diagnostics.info(String.format("[%s] Konvertiere '%s' zu '%s'", 
+                         getConverterName(), inputFile, outputFile));
     }
 }
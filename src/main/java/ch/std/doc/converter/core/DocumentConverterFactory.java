@@ -4,17 +4,21 @@ import ch.std.doc.converter.core.impl.DocxToPdfConverter;
 import ch.std.doc.converter.core.impl.ExcelToPdfConverter;
 import ch.std.doc.converter.core.impl.DocToPdfConverter;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Factory für die Erstellung von Dokumentkonvertern
+ * Factory für die Erstellung von Dokumentkonvertern.
+ * 
+ * Pro Dateiendung gibt es genau eine Konverter-Instanz, die alle Aufrufer
+ * gemeinsam verwenden, auch aus mehreren Threads gleichzeitig (siehe
+ * {@link DocumentConverter}).
  */
 public class DocumentConverterFactory {
     
-    private static final Map<String, DocumentConverter> converterRegistry = new HashMap<>();
+    private static final Map<String, DocumentConverter> converterRegistry = new ConcurrentHashMap<>();
     
     static {
         // Registriere alle verfügbaren Konverter
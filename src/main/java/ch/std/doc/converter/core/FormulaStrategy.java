@@ -0,0 +1,19 @@
+package ch.std.doc.converter.core;
+
+/**
+ * Legt fest, wie Ergebnisse von Excel-Formelzellen ermittelt werden
+ */
+public enum FormulaStrategy {
+    
+    /**
+     * Verwendet ausschliesslich das in der Datei gespeicherte Formelergebnis.
+     * Schnellster Modus, es wird nichts neu berechnet.
+     */
+    CACHED,
+    
+    /**
+     * Berechnet alle Formeln vor dem Rendern mit einem gemeinsamen
+     * FormulaEvaluator pro Arbeitsmappe neu.
+     */
+    RECALCULATE
+}
@@ -0,0 +1,439 @@
+package ch.std.doc.converter.core;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lässt Konvertierungen nur zu, solange ihr geschätzter Heap-Bedarf in ein
+ * gemeinsames Budget passt.
+ *
+ * Vor dem Start wird der Bedarf aus der Eingabedatei geschätzt
+ * ({@link #estimateHeapBytes(String, ConversionOptions)}) und aus einem
+ * globalen Semaphor reserviert; Konvertierungen, die nicht mehr hineinpassen,
+ * warten in der Reihenfolge ihrer Ankunft. Ein Auftrag, der allein grösser als
+ * das Budget ist, läuft, sobald das ganze Budget frei ist.
+ *
+ * Zusätzlich wird die Belegung des grössten Heap-Pools (Old Generation)
+ * überwacht: meldet der {@link MemoryPoolMXBean} das Überschreiten der
+ * Schwelle, werden keine neuen Konvertierungen zugelassen, bis die Belegung
+ * wieder darunter liegt. Laufende Konvertierungen sind davon nicht betroffen.
+ * Die Schwelle gilt für die ganze JVM; es sollte nur eine Instanz geben.
+ * Die Klasse ist thread-sicher.
+ */
+public final class MemoryAdmissionController implements AutoCloseable {
+
+    private static final long MB = 1024 * 1024;
+
+    // Gemessen mit POI 5.2.4 und iText 7.2.5: XSSFWorkbook mit Zellobjekten und
+    // vollständiger iText-Tabelle gegenüber dem zeilenweisen Streaming
+    private static final long HEAP_BYTES_PER_CELL = 3 * 1024;
+    private static final long STREAMING_BASE_BYTES = 32 * MB;
+    private static final long BASE_BYTES = 16 * MB;
+    private static final long DOCX_BYTES_PER_XML_BYTE = 30;
+    private static final long DOCX_BYTES_PER_MEDIA_BYTE = 10;
+    private static final long DOC_BYTES_PER_FILE_BYTE = 20;
+
+    private static final int DIMENSION_SCAN_BYTES = 4096;
+    private static final Pattern DIMENSION = Pattern.compile(
+            "<(?:\\w+:)?dimension\\s+ref=\"\\$?([A-Z]+)\\$?(\\d+)(?::\\$?([A-Z]+)\\$?(\\d+))?\"");
+    private static final long CHECK_INTERVAL_MILLIS = 100;
+
+    private final long budgetBytes;
+    private final Semaphore budget;
+    private final MemoryPoolMXBean pool;
+    private final long threshold;
+    private final long previousThreshold;
+    private final NotificationListener listener = this::handleNotification;
+
+    private volatile boolean paused = false;
+    private long gcCountAtPause = 0;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong pauses = new AtomicLong();
+
+    /**
+     * Erstellt einen Controller mit 60 % des maximalen Heaps als Budget und
+     * einer Schwelle von 85 % der Old Generation
+     */
+    public MemoryAdmissionController() {
+        this(Runtime.getRuntime().maxMemory() * 6 / 10, 0.85);
+    }
+
+    /**
+     * Erstellt einen Controller
+     *
+     * @param budgetBytes Summe der geschätzten Heap-Bedarfe aller gleichzeitig laufenden Konvertierungen
+     * @param usageThreshold Anteil der Old Generation, ab dem keine Konvertierungen mehr zugelassen werden
+     */
+    public MemoryAdmissionController(long budgetBytes, double usageThreshold) {
+        if (budgetBytes < 1024) {
+            throw new IllegalArgumentException("Budget muss mindestens 1 KB betragen: " + budgetBytes);
+        }
+        if (usageThreshold <= 0 || usageThreshold > 1) {
+            throw new IllegalArgumentException("Schwelle muss zwischen 0 und 1 liegen: " + usageThreshold);
+        }
+        this.budgetBytes = budgetBytes;
+        this.budget = new Semaphore(toPermits(budgetBytes), true);
+
+        this.pool = findOldGeneration();
+        if (pool != null) {
+            long max = pool.getUsage().getMax() > 0 ? pool.getUsage().getMax() : Runtime.getRuntime().maxMemory();
+            this.threshold = Math.max(1, (long) (max * usageThreshold));
+            this.previousThreshold = pool.getUsageThreshold();
+            pool.setUsageThreshold(threshold);
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold(threshold);
+            }
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                    .addNotificationListener(listener, null, null);
+        } else {
+            this.threshold = 0;
+            this.previousThreshold = 0;
+        }
+    }
+
+    /**
+     * Konvertiert, sobald der geschätzte Heap-Bedarf ins Budget passt
+     *
+     * @param converter Konverter für die Eingabedatei
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung oder null
+     * @return Ergebnis der Konvertierung
+     * @throws IOException bei Fehlern beim Lesen oder Schreiben der Dateien
+     * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+     */
+    public ConversionResult convertToPdf(DocumentConverter converter, String inputFile, String outputFile,
+                                         ConversionOptions options) throws IOException {
+        if (options == null) {
+            options = new ConversionOptions();
+        }
+        Permit permit;
+        try {
+            permit = acquire(inputFile, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Warten auf Heap-Budget unterbrochen");
+        }
+        try (permit) {
+            return converter.convertToPdf(inputFile, outputFile, options);
+        }
+    }
+
+    /**
+     * Reserviert den geschätzten Heap-Bedarf einer Konvertierung und wartet,
+     * bis er ins Budget passt und keine Pause aktiv ist
+     *
+     * @param inputFile Pfad zur Eingabedatei
+     * @param options Optionen der Konvertierung
+     * @return Reservierung, die nach der Konvertierung geschlossen werden muss
+     * @throws InterruptedException wenn der Thread beim Warten unterbrochen wird
+     */
+    public Permit acquire(String inputFile, ConversionOptions options) throws InterruptedException {
+        return tryAcquire(inputFile, options, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wie {@link #acquire(String, ConversionOptions)}, wartet aber höchstens
+     * die angegebene Zeit
+     *
+     * @return Reservierung oder null, wenn die Zeit abgelaufen ist
+     * @throws InterruptedException wenn der Thread beim Warten unterbrochen wird
+     */
+    public Permit tryAcquire(String inputFile, ConversionOptions options, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        int permits = toPermits(Math.min(estimateHeapBytes(inputFile, options), budgetBytes));
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+
+        waiting.incrementAndGet();
+        try {
+            if (deadline == Long.MAX_VALUE) {
+                budget.acquire(permits);
+            } else if (!budget.tryAcquire(permits, timeout, unit)) {
+                return null;
+            }
+
+            // Während einer Pause bleibt das Budget reserviert, damit die Reihenfolge erhalten bleibt
+            try {
+                while (paused && !checkRecovered()) {
+                    if (deadline != Long.MAX_VALUE && deadline - System.nanoTime() <= 0) {
+                        budget.release(permits);
+                        return null;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(CHECK_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                budget.release(permits);
+                throw e;
+            }
+            return new Permit(permits);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Schätzt den Heap-Bedarf einer Konvertierung. Für XLSX-Dateien werden
+     * die Zellbereiche aus den {@code <dimension>}-Elementen der Blätter
+     * gelesen, sonst die unkomprimierten Grössen der ZIP-Einträge; beides ohne
+     * die Datei zu entpacken. DOC-Dateien werden nach der Dateigrösse geschätzt.
+     *
+     * @param inputFile Pfad zur Eingabedatei
+     * @param options Optionen der Konvertierung
+     * @return Geschätzter Bedarf in Bytes
+     */
+    public static long estimateHeapBytes(String inputFile, ConversionOptions options) {
+        String name = inputFile.toLowerCase(Locale.ROOT);
+        long fileSize = new File(inputFile).length();
+        try {
+            if (name.endsWith(".xlsx")) {
+                boolean streaming = options != null
+                                    && options.getSharedStringsStorage() == SharedStringsStorage.MEMORY_MAPPED;
+                return estimateXlsx(inputFile, streaming);
+            }
+            if (name.endsWith(".docx")) {
+                return estimateDocx(inputFile);
+            }
+        } catch (IOException e) {
+            // Kein gültiges ZIP: der Konverter meldet den Fehler selbst
+        }
+        return BASE_BYTES + fileSize * DOC_BYTES_PER_FILE_BYTE;
+    }
+
+    /**
+     * Prüft ob gerade keine neuen Konvertierungen zugelassen werden
+     */
+    public boolean isPaused() {
+        return paused && !checkRecovered();
+    }
+
+    /**
+     * Gibt die Anzahl der Pausen wegen überschrittener Heap-Schwelle zurück
+     */
+    public long getPauseCount() {
+        return pauses.get();
+    }
+
+    /**
+     * Gibt die Anzahl der auf ihre Zulassung wartenden Konvertierungen zurück
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * Gibt das freie Budget in Bytes zurück
+     */
+    public long getAvailableBytes() {
+        return (long) budget.availablePermits() * 1024;
+    }
+
+    /**
+     * Gibt das Budget in Bytes zurück
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Meldet den Controller von den Heap-Benachrichtigungen ab und stellt
+     * die vorherige Schwelle wieder her
+     */
+    @Override
+    public void close() {
+        if (pool == null) {
+            return;
+        }
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+        } catch (ListenerNotFoundException e) {
+            return;
+        }
+        pool.setUsageThreshold(previousThreshold);
+        if (pool.isCollectionUsageThresholdSupported()) {
+            pool.setCollectionUsageThreshold(0);
+        }
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+            && !MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            return;
+        }
+        synchronized (this) {
+            if (!paused) {
+                gcCountAtPause = getGcCount();
+                paused = true;
+                pauses.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Hebt die Pause auf, sobald die Old Generation unter der Schwelle liegt,
+     * direkt oder nach einer seit der Pause gelaufenen Garbage Collection
+     */
+    private synchronized boolean checkRecovered() {
+        if (!paused) {
+            return true;
+        }
+        boolean recovered = pool.getUsage().getUsed() < threshold;
+        if (!recovered && pool.isCollectionUsageThresholdSupported() && getGcCount() > gcCountAtPause) {
+            recovered = pool.getCollectionUsage().getUsed() < threshold;
+        }
+        if (recovered) {
+            paused = false;
+        }
+        return recovered;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Sucht den grössten Heap-Pool mit Schwellen-Unterstützung, bei allen
+     * gängigen Collectors die Old Generation
+     */
+    private static MemoryPoolMXBean findOldGeneration() {
+        MemoryPoolMXBean largest = null;
+        for (MemoryPoolMXBean candidate : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (candidate.getType() == MemoryType.HEAP && candidate.isUsageThresholdSupported()
+                && (largest == null || candidate.getUsage().getMax() > largest.getUsage().getMax())) {
+                largest = candidate;
+            }
+        }
+        return largest;
+    }
+
+    private static long estimateXlsx(String inputFile, boolean streaming) throws IOException {
+        long otherBytes = 0;
+        long cells = 0;
+        try (ZipFile zip = new ZipFile(inputFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                long size = Math.max(0, entry.getSize());
+                if (!entry.getName().startsWith("xl/worksheets/") || !entry.getName().endsWith(".xml")) {
+                    otherBytes += size;
+                    continue;
+                }
+                long dimension = readDimension(zip, entry);
+                // Ohne Angabe: eine Zelle pro 40 Bytes XML
+                cells += dimension > 0 ? dimension : size / 40;
+            }
+        }
+        if (streaming) {
+            // Shared Strings liegen in der Temporärdatei, Zeilen werden laufend geschrieben
+            return STREAMING_BASE_BYTES + otherBytes * 2;
+        }
+        return BASE_BYTES + otherBytes * 4 + cells * HEAP_BYTES_PER_CELL;
+    }
+
+    private static long estimateDocx(String inputFile) throws IOException {
+        long xmlBytes = 0;
+        long mediaBytes = 0;
+        try (ZipFile zip = new ZipFile(inputFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                long size = Math.max(0, entry.getSize());
+                if (entry.getName().startsWith("word/media/")) {
+                    // Bilder werden zu Rohpixeln dekodiert
+                    mediaBytes += entry.getCompressedSize() > 0 ? entry.getCompressedSize() : size;
+                } else {
+                    xmlBytes += size;
+                }
+            }
+        }
+        return BASE_BYTES + xmlBytes * DOCX_BYTES_PER_XML_BYTE + mediaBytes * DOCX_BYTES_PER_MEDIA_BYTE;
+    }
+
+    /**
+     * Liest die Anzahl Zellen aus dem {@code <dimension>}-Element am Anfang
+     * eines Arbeitsblatts
+     *
+     * @return Anzahl Zellen oder 0, wenn das Element fehlt
+     */
+    private static long readDimension(ZipFile zip, ZipEntry entry) throws IOException {
+        byte[] head;
+        try (InputStream in = zip.getInputStream(entry)) {
+            head = in.readNBytes(DIMENSION_SCAN_BYTES);
+        }
+        Matcher matcher = DIMENSION.matcher(new String(head, StandardCharsets.UTF_8));
+        if (!matcher.find()) {
+            return 0;
+        }
+        if (matcher.group(3) == null) {
+            return 1;
+        }
+        long columns = Math.abs(columnNumber(matcher.group(3)) - columnNumber(matcher.group(1))) + 1;
+        long rows = Math.abs(Long.parseLong(matcher.group(4)) - Long.parseLong(matcher.group(2))) + 1;
+        return columns * rows;
+    }
+
+    private static long columnNumber(String letters) {
+        long column = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            column = column * 26 + (letters.charAt(i) - 'A' + 1);
+        }
+        return column;
+    }
+
+    private static int toPermits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + 1023) / 1024));
+    }
+
+    /**
+     * Reservierter Anteil am Budget; wird beim Schliessen freigegeben
+     */
+    public final class Permit implements AutoCloseable {
+        private final int permits;
+        private boolean released = false;
+
+        private Permit(int permits) {
+            this.permits = permits;
+        }
+
+        /**
+         * Gibt den reservierten Heap-Bedarf in Bytes zurück
+         */
+        public long getBytes() {
+            return (long) permits * 1024;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                budget.release(permits);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ch.std.doc.converter.core;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Legt fest, wie die PDF-Ausgabe geschrieben wird.
+ *
+ * Die vordefinierten Profile decken die üblichen Fälle ab; mit den
+ * {@code with...}-Methoden lassen sich einzelne Einstellungen abweichend
+ * festlegen. Profile sind unveränderlich.
+ */
+public final class PdfOutputProfile {
+
+    /**
+     * Verhalten von iText ohne besondere Einstellungen: Standardkompression,
+     * klassische Xref-Tabelle, keine Wiederverwendung gleicher Ressourcen.
+     */
+    public static final PdfOutputProfile DEFAULT =
+            new PdfOutputProfile("default", Deflater.DEFAULT_COMPRESSION, false, false, true);
+
+    /**
+     * Möglichst kleine Dateien für Ablage und Übertragung: höchste
+     * Kompression, Objekt- und Xref-Streams (PDF 1.5) und Smart Mode, der
+     * gleiche Ressourcen wie Bilder nur einmal schreibt.
+     */
+    public static final PdfOutputProfile SMALL =
+            new PdfOutputProfile("small", Deflater.BEST_COMPRESSION, true, true, true);
+
+    /**
+     * Möglichst wenig CPU für latenzkritische Aufrufe: schnellste
+     * Kompressionsstufe, kein Smart Mode und keine Objekt-Streams.
+     */
+    public static final PdfOutputProfile FAST =
+            new PdfOutputProfile("fast", Deflater.BEST_SPEED, false, false, true);
+
+    private final String name;
+    private final int compressionLevel;
+    private final boolean fullCompression;
+    private final boolean smartMode;
+    private final boolean fontSubsetting;
+
+    private PdfOutputProfile(String name, int compressionLevel, boolean fullCompression,
+                             boolean smartMode, boolean fontSubsetting) {
+        this.name = name;
+        this.compressionLevel = compressionLevel;
+        this.fullCompression = fullCompression;
+        this.smartMode = smartMode;
+        this.fontSubsetting = fontSubsetting;
+    }
+
+    /**
+     * Gibt das vordefinierte Profil zum Namen zurück
+     *
+     * @param name "default", "small" oder "fast", Gross-/Kleinschreibung egal
+     * @return Profil
+     * @throws IllegalArgumentException bei unbekanntem Namen
+     */
+    public static PdfOutputProfile forName(String name) {
+        switch (name == null ? "" : name.toLowerCase(Locale.ROOT)) {
+            case "default":
+                return DEFAULT;
+            case "small":
+                return SMALL;
+            case "fast":
+                return FAST;
+            default:
+                throw new IllegalArgumentException("Unbekanntes PDF-Profil: " + name);
+        }
+    }
+
+    /**
+     * Gibt den Namen des Profils zurück
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gibt die Deflate-Stufe für Inhalts- und Bildstreams zurück
+     *
+     * @return 0 (keine) bis 9 (beste) oder {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Gibt zurück, ob Objekte und Xref-Tabelle komprimiert in Streams geschrieben werden
+     */
+    public boolean isFullCompression() {
+        return fullCompression;
+    }
+
+    /**
+     * Gibt zurück, ob gleiche Ressourcen (Bilder, Fonts, Formulare) nur einmal geschrieben werden
+     */
+    public boolean isSmartMode() {
+        return smartMode;
+    }
+
+    /**
+     * Gibt zurück, ob eingebettete Schriften auf die verwendeten Zeichen
+     * reduziert werden. Die Standardschriften (Helvetica) werden nie
+     * eingebettet und sind davon nicht betroffen.
+     */
+    public boolean isFontSubsetting() {
+        return fontSubsetting;
+    }
+
+    /**
+     * Erstellt eine Kopie mit anderer Kompressionsstufe
+     *
+     * @param compressionLevel 0 bis 9 oder {@link Deflater#DEFAULT_COMPRESSION}
+     * @return neues Profil
+     */
+    public PdfOutputProfile withCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Ungültige Kompressionsstufe: " + compressionLevel);
+        }
+        return new PdfOutputProfile(name, compressionLevel, fullCompression, smartMode, fontSubsetting);
+    }
+
+    /**
+     * Erstellt eine Kopie mit bzw. ohne Objekt- und Xref-Streams
+     */
+    public PdfOutputProfile withFullCompression(boolean fullCompression) {
+        return new PdfOutputProfile(name, compressionLevel, fullCompression, smartMode, fontSubsetting);
+    }
+
+    /**
+     * Erstellt eine Kopie mit bzw. ohne Smart Mode
+     */
+    public PdfOutputProfile withSmartMode(boolean smartMode) {
+        return new PdfOutputProfile(name, compressionLevel, fullCompression, smartMode, fontSubsetting);
+    }
+
+    /**
+     * Erstellt eine Kopie mit bzw. ohne Font-Subsetting
+     */
+    public PdfOutputProfile withFontSubsetting(boolean fontSubsetting) {
+        return new PdfOutputProfile(name, compressionLevel, fullCompression, smartMode, fontSubsetting);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (Kompression %d, Objekt-Streams %s, Smart Mode %s, Subsetting %s)",
+                             name, compressionLevel, fullCompression ? "ja" : "nein",
+                             smartMode ? "ja" : "nein", fontSubsetting ? "ja" : "nein");
+    }
+}
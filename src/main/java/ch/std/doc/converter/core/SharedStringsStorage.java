@@ -0,0 +1,21 @@
+package ch.std.doc.converter.core;
+
+/**
+ * Legt fest, wo die Shared-Strings-Tabelle einer XLSX-Datei gehalten wird
+ */
+public enum SharedStringsStorage {
+    
+    /**
+     * Alle Strings werden von POI als Objekte im Heap gehalten (Standard).
+     * Volle Funktionalität inkl. Neuberechnung von Formeln.
+     */
+    HEAP,
+    
+    /**
+     * Die Strings werden in eine memory-mapped Temporärdatei mit kompaktem
+     * Offset-Index geschrieben und erst beim Rendern einer Zelle gelesen.
+     * Die Arbeitsblätter werden dabei zeilenweise gestreamt; Formeln werden
+     * immer mit ihren gespeicherten Ergebnissen dargestellt.
+     */
+    MEMORY_MAPPED
+}
@@ -0,0 +1,133 @@
+package ch.std.doc.converter.core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache für die PDF-Fragmente einzelner Arbeitsblätter.
+ *
+ * Arbeitsmappen, die regelmässig neu erzeugt werden, ändern sich oft nur in
+ * wenigen Blättern. Der Excel-Konverter rendert mit diesem Cache
+ * ({@link ConversionOptions#setSheetFragmentCache(SheetFragmentCache)}) jedes
+ * Blatt in ein eigenes PDF-Fragment, rendert bei einer erneuten Konvertierung
+ * nur die geänderten Blätter und fügt die Fragmente zum Gesamt-PDF zusammen.
+ *
+ * Der Schlüssel eines Fragments ist ein SHA-256 über einen Fingerabdruck des
+ * Blatts, den der Konverter liefert (das XML des Blatts mit den darin
+ * verwendeten Shared Strings und Zellstilen), sowie wie beim
+ * {@link ConversionCache} über Konverter, Version, Build, Locale und Optionen.
+ *
+ * Verdrängt werden die am längsten nicht verwendeten Fragmente. Das Verzeichnis
+ * darf nur von einer Cache-Instanz verwendet werden. Die Klasse ist thread-sicher.
+ */
+public final class SheetFragmentCache {
+
+    private static final String ENTRY_SUFFIX = ".pdf";
+
+    private final CacheDirectory entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Öffnet den Cache und übernimmt vorhandene Fragmente
+     *
+     * @param directory Verzeichnis des Caches, wird bei Bedarf angelegt
+     * @param maxBytes Maximale Gesamtgrösse der gespeicherten Fragmente
+     * @throws IOException wenn das Verzeichnis nicht gelesen werden kann
+     */
+    public SheetFragmentCache(Path directory, long maxBytes) throws IOException {
+        this.entries = new CacheDirectory(directory, maxBytes, ENTRY_SUFFIX, null);
+    }
+
+    /**
+     * Bildet den Schlüssel eines Fragments
+     *
+     * @param converter Konverter, der das Fragment rendert
+     * @param options Optionen der Konvertierung
+     * @param fingerprint Fingerabdruck des Blatts, vom Konverter berechnet
+     * @return Schlüssel als Hex-String
+     */
+    public String createKey(DocumentConverter converter, ConversionOptions options, byte[] fingerprint) {
+        MessageDigest digest = CacheDirectory.newKeyDigest(converter, options);
+        digest.update(fingerprint);
+        return CacheDirectory.toHex(digest.digest());
+    }
+
+    /**
+     * Öffnet ein gespeichertes Fragment. Der Kanal bleibt lesbar, auch wenn
+     * das Fragment danach verdrängt wird.
+     *
+     * @param key Schlüssel aus {@link #createKey}
+     * @return Geöffneter Kanal oder null, wenn das Blatt neu gerendert werden muss
+     * @throws IOException wenn das Fragment nicht geöffnet werden kann
+     */
+    public FileChannel open(String key) throws IOException {
+        FileChannel channel = entries.open(key);
+        if (channel != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return channel;
+    }
+
+    /**
+     * Gibt den Pfad zurück, unter den ein neu gerendertes Fragment geschrieben
+     * wird, z.B. mit {@link AtomicOutputFile}
+     *
+     * @param key Schlüssel aus {@link #createKey}
+     */
+    public String getFragmentFile(String key) {
+        return entries.getFile(key).toString();
+    }
+
+    /**
+     * Übernimmt ein unter {@link #getFragmentFile(String)} geschriebenes
+     * Fragment und verdrängt bei Bedarf ältere
+     *
+     * @param key Schlüssel aus {@link #createKey}
+     * @throws IOException wenn das Fragment nicht gelesen werden kann
+     */
+    public void add(String key) throws IOException {
+        entries.add(key);
+    }
+
+    /**
+     * Gibt die Anzahl aus dem Cache übernommener Fragmente zurück
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gibt die Anzahl neu gerenderter Fragmente zurück
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gibt die Anzahl verdrängter Fragmente zurück
+     */
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+    /**
+     * Gibt die Anzahl gespeicherter Fragmente zurück
+     */
+    public int getEntryCount() {
+        return entries.getEntryCount();
+    }
+
+    /**
+     * Gibt die Gesamtgrösse der gespeicherten Fragmente in Bytes zurück
+     */
+    public long getSize() {
+        return entries.getSize();
+    }
+}
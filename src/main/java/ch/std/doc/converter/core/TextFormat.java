@@ -0,0 +1,19 @@
+package ch.std.doc.converter.core;
+
+/**
+ * Ausgabeformat der Textextraktion
+ */
+public enum TextFormat {
+
+    /**
+     * Reiner Text (Standard). Ein Absatz pro Zeile, Tabellenzellen durch
+     * Tabulatoren getrennt.
+     */
+    PLAIN,
+
+    /**
+     * Markdown mit Überschriften, Aufzählungen und Pipe-Tabellen. Die erste
+     * Zeile einer Tabelle wird als Kopfzeile ausgegeben.
+     */
+    MARKDOWN
+}
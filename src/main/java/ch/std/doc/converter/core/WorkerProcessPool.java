@@ -0,0 +1,434 @@
+package ch.std.doc.converter.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Führt Konvertierungen in vorgestarteten Kind-JVMs aus.
+ *
+ * Jeder Worker ist ein eigener Prozess mit eigenem Heap: Garbage Collection
+ * eines grossen Dokuments hält die anderen Konvertierungen nicht an, und ein
+ * OutOfMemoryError oder Absturz trifft nur den einen Auftrag. Übergeben
+ * werden nur Ein- und Ausgabepfad und die Optionen über die Pipes des
+ * Prozesses (siehe {@link ConversionWorker}); die Dateien selbst liest und
+ * schreibt der Worker.
+ *
+ * Ein Worker wird nach einer festen Anzahl Aufträge ersetzt oder sobald nach
+ * einem Auftrag mehr als ein Anteil seines Heaps belegt bleibt, damit
+ * Fragmentierung und Caches wie der {@code ImageTranscodeCache} nicht
+ * unbegrenzt wachsen. Der Ersatz startet im Hintergrund, der Aufruf wartet
+ * nicht darauf; schlägt er fehl, startet der nächste Auftrag den fehlenden
+ * Worker selbst (siehe {@link #getStartFailureCount()}). Optional erhalten Aufträge, deren geschätzter Heap-Bedarf
+ * ({@link MemoryAdmissionController#estimateHeapBytes}) eine Schwelle
+ * überschreitet, einen eigenen Worker mit grösserem Heap.
+ *
+ * Der {@link SheetFragmentCache} der Optionen wird nicht übertragen; der
+ * {@link DiagnosticsSink} erhält die Meldungen erst nach dem Auftrag. Die
+ * Klasse ist thread-sicher; gleichzeitige Aufrufe warten auf einen freien
+ * Worker.
+ */
+public final class WorkerProcessPool implements AutoCloseable {
+
+    private static final long MB = 1024 * 1024;
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final Group standard;
+    private Group large;
+    private long largeThresholdBytes;
+    private int maxJobsPerWorker = 100;
+    private double recycleHeapFraction = 0.5;
+    private List<String> jvmOptions = List.of();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong recycledCount = new AtomicLong();
+    private final AtomicLong largeJobCount = new AtomicLong();
+    private final AtomicLong startFailureCount = new AtomicLong();
+    private volatile IOException lastStartFailure;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    /**
+     * Erstellt einen Pool; die Prozesse werden erst mit {@link #start()} gestartet
+     *
+     * @param workers Anzahl Worker-Prozesse
+     * @param heapMegabytes Maximaler Heap pro Worker (-Xmx) in MB
+     */
+    public WorkerProcessPool(int workers, int heapMegabytes) {
+        this.standard = new Group("Standard", workers, heapMegabytes);
+    }
+
+    /**
+     * Ersetzt einen Worker nach dieser Anzahl Aufträge
+     *
+     * @param maxJobsPerWorker Aufträge pro Prozess, mindestens 1
+     * @return dieser Pool
+     */
+    public WorkerProcessPool setMaxJobsPerWorker(int maxJobsPerWorker) {
+        if (maxJobsPerWorker < 1) {
+            throw new IllegalArgumentException("Aufträge pro Worker müssen positiv sein: " + maxJobsPerWorker);
+        }
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        return this;
+    }
+
+    /**
+     * Ersetzt einen Worker, wenn nach einem Auftrag mehr als dieser Anteil
+     * seines Heaps auch nach der Garbage Collection belegt ist
+     *
+     * @param recycleHeapFraction Anteil zwischen 0 (exklusiv) und 1 (inklusiv)
+     * @return dieser Pool
+     */
+    public WorkerProcessPool setRecycleHeapFraction(double recycleHeapFraction) {
+        if (!(recycleHeapFraction > 0 && recycleHeapFraction <= 1)) {
+            throw new IllegalArgumentException("Anteil muss zwischen 0 und 1 liegen: " + recycleHeapFraction);
+        }
+        this.recycleHeapFraction = recycleHeapFraction;
+        return this;
+    }
+
+    /**
+     * Startet zusätzlich einen Worker mit grösserem Heap für grosse Aufträge
+     *
+     * @param heapMegabytes Maximaler Heap dieses Workers in MB
+     * @param thresholdBytes Geschätzter Heap-Bedarf, ab dem ein Auftrag diesen Worker verwendet
+     * @return dieser Pool
+     */
+    public WorkerProcessPool setLargeWorker(int heapMegabytes, long thresholdBytes) {
+        requireNotStarted();
+        this.large = new Group("Gross", 1, heapMegabytes);
+        this.largeThresholdBytes = thresholdBytes;
+        return this;
+    }
+
+    /**
+     * Zusätzliche Optionen für die Kind-JVMs, z.B. "-XX:+UseSerialGC"
+     *
+     * @return dieser Pool
+     */
+    public WorkerProcessPool setJvmOptions(List<String> jvmOptions) {
+        requireNotStarted();
+        this.jvmOptions = List.copyOf(jvmOptions);
+        return this;
+    }
+
+    /**
+     * Startet alle Worker und wartet, bis sie aufgewärmt sind
+     *
+     * @return dieser Pool
+     * @throws IOException wenn ein Prozess nicht gestartet werden kann
+     */
+    public synchronized WorkerProcessPool start() throws IOException {
+        requireNotStarted();
+        started = true;
+        try {
+            for (Group group : getGroups()) {
+                for (int i = 0; i < group.size; i++) {
+                    group.live.incrementAndGet();
+                    group.idle.add(spawn(group));
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * Konvertiert eine Datei in einem Worker-Prozess
+     *
+     * @param inputFile Pfad zur Eingabedatei
+     * @param outputFile Pfad zur PDF-Ausgabedatei
+     * @param options Optionen für diese Konvertierung oder null
+     * @return Ergebnis der Konvertierung
+     * @throws IOException bei Fehlern der Konvertierung oder wenn der Worker abstürzt
+     * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+     * @throws IllegalArgumentException wenn das Dateiformat nicht unterstützt wird
+     */
+    public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options)
+            throws IOException {
+        if (!started || closed) {
+            throw new IllegalStateException("Worker-Pool läuft nicht");
+        }
+        if (DocumentConverterFactory.createConverter(inputFile) == null) {
+            throw new IllegalArgumentException("Dateiformat wird nicht unterstützt: " + inputFile);
+        }
+        if (options == null) {
+            options = new ConversionOptions();
+        }
+
+        Group group = standard;
+        if (large != null && MemoryAdmissionController.estimateHeapBytes(inputFile, options) > largeThresholdBytes) {
+            group = large;
+            largeJobCount.incrementAndGet();
+        }
+        Worker worker = take(group);
+        WorkerProtocol.Response response;
+        try {
+            // Der Worker erbt das Arbeitsverzeichnis, relative Pfade gelten unverändert
+            WorkerProtocol.writeRequest(worker.out, inputFile, outputFile, options);
+            response = WorkerProtocol.readResponse(worker.in, inputFile, options);
+        } catch (IOException e) {
+            int exitCode = worker.stop();
+            replace(worker);
+            throw new IOException("Worker-Prozess " + worker.process.pid() + " während der Konvertierung von "
+                                  + inputFile + " beendet (Exit-Code " + exitCode + ")", e);
+        }
+
+        worker.jobs++;
+        if (response.fatal || worker.jobs >= maxJobsPerWorker
+                || response.retainedHeap > recycleHeapFraction * group.heapMegabytes * MB) {
+            recycledCount.incrementAndGet();
+            worker.stop();
+            replace(worker);
+        } else {
+            group.idle.add(worker);
+        }
+        if (response.error != null) {
+            throw new IOException("Konvertierung von " + inputFile + " im Worker fehlgeschlagen: " + response.error);
+        }
+        return response.result;
+    }
+
+    /**
+     * Gibt die Anzahl bisher gestarteter Worker-Prozesse zurück
+     */
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /**
+     * Gibt die Anzahl wegen Auftragszahl, Heap-Belegung oder OutOfMemoryError
+     * ersetzter Worker zurück; abgestürzte Worker zählen nicht dazu
+     */
+    public long getRecycledCount() {
+        return recycledCount.get();
+    }
+
+    /**
+     * Gibt die Anzahl Aufträge zurück, die dem Worker mit grossem Heap
+     * zugeteilt wurden
+     */
+    public long getLargeJobCount() {
+        return largeJobCount.get();
+    }
+
+    /**
+     * Gibt die Anzahl Ersatz-Worker zurück, die im Hintergrund nicht
+     * gestartet werden konnten. Der nächste Auftrag der Gruppe versucht den
+     * Start erneut und erhält einen Fehler, falls er wieder scheitert.
+     */
+    public long getStartFailureCount() {
+        return startFailureCount.get();
+    }
+
+    /**
+     * Gibt den Fehler des letzten im Hintergrund gescheiterten Starts zurück
+     *
+     * @return Fehler oder null, wenn bisher jeder Ersatz-Worker gestartet werden konnte
+     */
+    public IOException getLastStartFailure() {
+        return lastStartFailure;
+    }
+
+    /**
+     * Gibt die Prozess-IDs der laufenden Worker zurück
+     */
+    public List<Long> getWorkerPids() {
+        List<Long> pids = new ArrayList<>();
+        for (Worker worker : workers) {
+            if (worker.process.isAlive()) {
+                pids.add(worker.process.pid());
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Beendet alle Worker. Laufende Aufträge haben dafür einige Sekunden Zeit,
+     * danach schlagen sie mit einer IOException fehl.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    private Worker take(Group group) throws IOException {
+        try {
+            while (true) {
+                Worker worker = group.idle.poll(100, TimeUnit.MILLISECONDS);
+                if (worker != null) {
+                    if (worker.process.isAlive()) {
+                        return worker;
+                    }
+                    // Im Leerlauf beendet, z.B. von aussen
+                    worker.stop();
+                    group.live.decrementAndGet();
+                } else if (closed) {
+                    throw new IOException("Worker-Pool wurde geschlossen");
+                }
+                // Fehlt ein Worker, weil sein Ersatz nicht starten konnte, hier erneut versuchen
+                if (group.live.incrementAndGet() <= group.size) {
+                    try {
+                        return spawn(group);
+                    } catch (IOException e) {
+                        group.live.decrementAndGet();
+                        throw e;
+                    }
+                }
+                group.live.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Warten auf freien Worker unterbrochen");
+        }
+    }
+
+    private void replace(Worker worker) {
+        Group group = worker.group;
+        Thread starter = new Thread(() -> {
+            try {
+                if (!closed) {
+                    group.idle.add(spawn(group));
+                    return;
+                }
+            } catch (IOException e) {
+                // Beim Schliessen abgebrochene Starts sind kein Fehler
+                if (!closed) {
+                    lastStartFailure = e;
+                    startFailureCount.incrementAndGet();
+                }
+            }
+            group.live.decrementAndGet();
+        }, "docconverter-worker-start");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    private Worker spawn(Group group) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + group.heapMegabytes + "m");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ConversionWorker.class.getName());
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        Worker worker = new Worker(group, process);
+        workers.add(worker);
+        try {
+            if (worker.in.readInt() != WorkerProtocol.READY) {
+                throw new IOException("Unerwartete Antwort beim Start");
+            }
+        } catch (IOException e) {
+            int exitCode = worker.stop();
+            throw new IOException("Worker-Prozess konnte nicht gestartet werden (Exit-Code " + exitCode + ")", e);
+        }
+        startedCount.incrementAndGet();
+        if (closed) {
+            worker.stop();
+            throw new IOException("Worker-Pool wurde geschlossen");
+        }
+        return worker;
+    }
+
+    private List<Group> getGroups() {
+        return large != null ? List.of(standard, large) : List.of(standard);
+    }
+
+    private void requireNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Worker-Pool wurde bereits gestartet");
+        }
+    }
+
+    /**
+     * Worker mit gleicher Heap-Grösse
+     */
+    private static final class Group {
+        final String name;
+        final int size;
+        final int heapMegabytes;
+        final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+        /** Laufende und startende Worker */
+        final AtomicInteger live = new AtomicInteger();
+
+        Group(String name, int size, int heapMegabytes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Anzahl Worker muss positiv sein: " + size);
+            }
+            if (heapMegabytes < 16) {
+                throw new IllegalArgumentException("Heap pro Worker muss mindestens 16 MB sein: " + heapMegabytes);
+            }
+            this.name = name;
+            this.size = size;
+            this.heapMegabytes = heapMegabytes;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size + " x " + heapMegabytes + " MB)";
+        }
+    }
+
+    private final class Worker {
+        final Group group;
+        final Process process;
+        final DataOutputStream out;
+        final DataInputStream in;
+        int jobs;
+
+        Worker(Group group, Process process) {
+            this.group = group;
+            this.process = process;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Schliesst stdin, worauf der Worker sich beendet, und erzwingt das
+         * Ende nach einer Wartezeit
+         *
+         * @return Exit-Code oder -1, wenn er nicht ermittelt werden konnte
+         */
+        int stop() {
+            workers.remove(this);
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Prozess ist bereits beendet
+            }
+            try {
+                if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                return process.isAlive() ? -1 : process.exitValue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+                return -1;
+            }
+        }
+    }
+}
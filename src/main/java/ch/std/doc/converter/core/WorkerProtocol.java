@@ -0,0 +1,231 @@
+package ch.std.doc.converter.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nachrichten zwischen {@link WorkerProcessPool} und {@link ConversionWorker}
+ * über die Pipes des Kindprozesses.
+ *
+ * Ein Auftrag besteht aus Ein- und Ausgabepfad und den übertragbaren
+ * Optionen; Objekte wie {@link SheetFragmentCache} und
+ * {@link DiagnosticsSink} gehören zum Elternprozess und werden nicht
+ * übertragen. Die Antwort enthält die Ausgabeteile, die Info-Meldungen und
+ * die Warnungen als Zähler und Beispiele, wie sie auch der
+ * {@link ConversionCache} speichert, sowie die nach der letzten Garbage
+ * Collection belegten Bytes des Kindprozesses.
+ */
+final class WorkerProtocol {
+
+    /** Meldet, dass der Kindprozess gestartet und aufgewärmt ist */
+    static final int READY = 0x44435752;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    /** Fehler, nach dem der Kindprozess sich beendet, z.B. OutOfMemoryError */
+    static final byte STATUS_FATAL = 2;
+
+    private WorkerProtocol() {
+    }
+
+    static void writeRequest(DataOutputStream out, String inputFile, String outputFile, ConversionOptions options)
+            throws IOException {
+        writeString(out, inputFile);
+        writeString(out, outputFile);
+        out.writeUTF(options.getFormulaStrategy().name());
+        out.writeBoolean(options.isParallelRecalculation());
+        writeStrings(out, options.getSheetNames());
+        out.writeInt(options.getSheetIndices().size());
+        for (int index : options.getSheetIndices()) {
+            out.writeInt(index);
+        }
+        writeStrings(out, options.getCellRanges());
+        out.writeBoolean(options.isUsePrintAreas());
+        out.writeUTF(options.getSharedStringsStorage().name());
+        out.writeBoolean(options.isMemoryMappedInput());
+        out.writeInt(options.getPipelineQueueSize());
+        out.writeLong(options.getImagePrefetchWindow());
+        PdfOutputProfile profile = options.getPdfOutputProfile();
+        out.writeUTF(profile.getName());
+        out.writeInt(profile.getCompressionLevel());
+        out.writeBoolean(profile.isFullCompression());
+        out.writeBoolean(profile.isSmartMode());
+        out.writeBoolean(profile.isFontSubsetting());
+        out.writeBoolean(options.isDurableOutput());
+        out.writeInt(options.getMaxPagesPerPart());
+        out.writeLong(options.getMaxBytesPerPart());
+        writeString(out, options.getPartNamePattern());
+        out.writeInt(options.getDiagnosticsSampleLimit());
+        out.flush();
+    }
+
+    /**
+     * Liest einen Auftrag
+     *
+     * @return Eingabe- und Ausgabepfad; die Optionen werden in {@code options} gesetzt
+     */
+    static String[] readRequest(DataInputStream in, ConversionOptions options) throws IOException {
+        String inputFile = readString(in);
+        String outputFile = readString(in);
+        options.setFormulaStrategy(FormulaStrategy.valueOf(in.readUTF()));
+        options.setParallelRecalculation(in.readBoolean());
+        for (String sheetName : readStrings(in)) {
+            options.addSheet(sheetName);
+        }
+        int indices = in.readInt();
+        for (int i = 0; i < indices; i++) {
+            options.addSheet(in.readInt());
+        }
+        for (String range : readStrings(in)) {
+            options.addRange(range);
+        }
+        options.setUsePrintAreas(in.readBoolean());
+        options.setSharedStringsStorage(SharedStringsStorage.valueOf(in.readUTF()));
+        options.setMemoryMappedInput(in.readBoolean());
+        options.setPipelineQueueSize(in.readInt());
+        options.setImagePrefetchWindow(in.readLong());
+        // Profile entstehen immer aus einem vordefinierten, dessen Namen sie behalten
+        PdfOutputProfile profile = PdfOutputProfile.forName(in.readUTF());
+        options.setPdfOutputProfile(profile.withCompressionLevel(in.readInt())
+                                           .withFullCompression(in.readBoolean())
+                                           .withSmartMode(in.readBoolean())
+                                           .withFontSubsetting(in.readBoolean()));
+        options.setDurableOutput(in.readBoolean());
+        int maxPages = in.readInt();
+        long maxBytes = in.readLong();
+        if (maxPages > 0) {
+            options.setMaxPagesPerPart(maxPages);
+        }
+        if (maxBytes > 0) {
+            options.setMaxBytesPerPart(maxBytes);
+        }
+        options.setPartNamePattern(readString(in));
+        options.setDiagnosticsSampleLimit(in.readInt());
+        return new String[]{inputFile, outputFile};
+    }
+
+    static void writeResult(DataOutputStream out, ConversionResult result, List<String> infos, long retainedHeap)
+            throws IOException {
+        out.writeByte(STATUS_OK);
+        writeString(out, result.getOutputFile() != null ? result.getOutputFile() : "");
+        writeStrings(out, result.getOutputParts());
+        writeStrings(out, infos);
+        ConversionDiagnostics diagnostics = result.getDiagnostics();
+        Map<String, Long> counts = diagnostics.getWarningCounts();
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            writeString(out, count.getKey());
+            out.writeLong(count.getValue());
+        }
+        List<ConversionDiagnostics.Warning> samples = diagnostics.getSamples();
+        out.writeInt(samples.size());
+        for (ConversionDiagnostics.Warning warning : samples) {
+            writeString(out, warning.getCategory());
+            writeString(out, warning.getMessage());
+        }
+        out.writeLong(retainedHeap);
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, Throwable error, boolean fatal, long retainedHeap)
+            throws IOException {
+        out.writeByte(fatal ? STATUS_FATAL : STATUS_ERROR);
+        writeString(out, error.getClass().getName());
+        writeString(out, error.getMessage() != null ? error.getMessage() : "");
+        out.writeLong(retainedHeap);
+        out.flush();
+    }
+
+    /**
+     * Liest eine Antwort und baut das Ergebnis im Elternprozess wieder auf.
+     * Der Sink der Optionen erhält die Info-Meldungen und die
+     * Beispielwarnungen; die übrigen Warnungen sind nur gezählt.
+     */
+    static Response readResponse(DataInputStream in, String inputFile, ConversionOptions options)
+            throws IOException {
+        byte status = in.readByte();
+        if (status != STATUS_OK) {
+            String type = readString(in);
+            String message = readString(in);
+            long retainedHeap = in.readLong();
+            return new Response(null, type + ": " + message, status == STATUS_FATAL, retainedHeap);
+        }
+
+        String outputFile = readString(in);
+        List<String> parts = readStrings(in);
+        ConversionDiagnostics diagnostics = new ConversionDiagnostics(options.getDiagnosticsSampleLimit(),
+                                                                      options.getDiagnosticsSink());
+        for (String info : readStrings(in)) {
+            diagnostics.info(info);
+        }
+        Map<String, Long> counts = new LinkedHashMap<>();
+        int categories = in.readInt();
+        for (int i = 0; i < categories; i++) {
+            counts.put(readString(in), in.readLong());
+        }
+        int samples = in.readInt();
+        for (int i = 0; i < samples; i++) {
+            String category = readString(in);
+            diagnostics.warn(category, readString(in));
+            counts.merge(category, -1L, Long::sum);
+        }
+        counts.forEach(diagnostics::addWarnings);
+        long retainedHeap = in.readLong();
+
+        ConversionResult result = new ConversionResult(inputFile, outputFile.isEmpty() ? null : outputFile,
+                                                       parts, diagnostics);
+        return new Response(result, null, false, retainedHeap);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    // writeUTF ist auf 64 KB begrenzt; Meldungen und Pfade können länger sein
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Antwort des Kindprozesses auf einen Auftrag
+     */
+    static final class Response {
+        final ConversionResult result;
+        final String error;
+        final boolean fatal;
+        final long retainedHeap;
+
+        Response(ConversionResult result, String error, boolean fatal, long retainedHeap) {
+            this.result = result;
+            this.error = error;
+            this.fatal = fatal;
+            this.retainedHeap = retainedHeap;
+        }
+    }
+}
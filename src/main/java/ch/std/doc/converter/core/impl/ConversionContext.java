@@ -0,0 +1,55 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.PdfOutputProfile;
+
+/**
+ * Zustand einer einzelnen Konvertierung.
+ *
+ * Die Konverter selbst haben keine veränderlichen Felder; alles, was während
+ * einer Konvertierung anfällt, hängt an diesem Objekt oder an lokalen
+ * Variablen der aufgerufenen Methoden. Ein Kontext gehört genau einem Aufruf
+ * und wird nicht zwischen Threads geteilt, ausser über die thread-sicheren
+ * {@link ConversionDiagnostics}. Die Optionen werden nur gelesen und dürfen
+ * deshalb vom Aufrufer für mehrere gleichzeitige Konvertierungen verwendet
+ * werden.
+ */
+final class ConversionContext {
+
+    private final String inputFile;
+    private final String outputFile;
+    private final ConversionOptions options;
+    private final ConversionDiagnostics diagnostics;
+
+    /**
+     * @param options Optionen des Aufrufs, nicht null
+     */
+    ConversionContext(String inputFile, String outputFile, ConversionOptions options,
+                      ConversionDiagnostics diagnostics) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.options = options;
+        this.diagnostics = diagnostics;
+    }
+
+    String getInputFile() {
+        return inputFile;
+    }
+
+    String getOutputFile() {
+        return outputFile;
+    }
+
+    ConversionOptions getOptions() {
+        return options;
+    }
+
+    ConversionDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    PdfOutputProfile getPdfOutputProfile() {
+        return options.getPdfOutputProfile();
+    }
+}
@@ -0,0 +1,112 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.ConversionDiagnostics;
+
+import org.apache.poi.hwpf.model.PicturesTable;
+import org.apache.poi.hwpf.usermodel.CharacterRun;
+import org.apache.poi.hwpf.usermodel.Picture;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.itextpdf.layout.element.Image;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bilder eines DOC-Dokuments, die erst beim Platzieren dekodiert werden.
+ *
+ * {@link PicturesTable#extractPicture(CharacterRun, boolean)} wird ohne Inhalt
+ * aufgerufen; die Bilddaten werden erst beim Einfügen gelesen. Gleiche Bilder
+ * werden über den SHA-256-Hash ihrer Rohdaten erkannt und nur einmal dekodiert
+ * und als XObject ins PDF geschrieben, alle weiteren Vorkommen referenzieren
+ * dieses XObject. Dekodiert und komprimiert wird über den
+ * {@link ImageTranscodeCache}, sodass wiederkehrende Bilder auch über
+ * Dokumente hinweg nur einmal verarbeitet werden.
+ */
+final class DocPictureCache {
+
+    private static final String WARN_IMAGE_FORMAT = "doc.imageFormat";
+
+    private final PicturesTable picturesTable;
+    private final PdfDocument pdfDocument;
+    private final ConversionDiagnostics diagnostics;
+    private final Map<String, PdfImageXObject> imagesByHash = new HashMap<>();
+    private final Set<String> unsupportedHashes = new HashSet<>();
+    private final MessageDigest digest;
+    private int placedCount = 0;
+
+    DocPictureCache(PicturesTable picturesTable, PdfDocument pdfDocument, ConversionDiagnostics diagnostics) {
+        this.picturesTable = picturesTable;
+        this.pdfDocument = pdfDocument;
+        this.diagnostics = diagnostics;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Prüft ob ein Zeichenabschnitt ein eingebettetes Bild enthält
+     */
+    boolean hasPicture(CharacterRun run) {
+        return picturesTable.hasPicture(run);
+    }
+
+    /**
+     * Erstellt das PDF-Bild für einen Zeichenabschnitt
+     *
+     * @param run Zeichenabschnitt mit Bild
+     * @return PDF-Bild oder null, wenn das Bildformat nicht unterstützt wird
+     */
+    Image createImage(CharacterRun run) {
+        Picture picture = picturesTable.extractPicture(run, false);
+        if (picture == null) {
+            return null;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest(picture.getRawContent()));
+        if (unsupportedHashes.contains(hash)) {
+            return null;
+        }
+
+        PdfImageXObject xObject = imagesByHash.get(hash);
+        if (xObject == null) {
+            try {
+                xObject = ImageTranscodeCache.getShared().createXObject(hash, picture::getContent, pdfDocument);
+            } catch (RuntimeException e) {
+                // z.B. WMF/EMF ohne Rasterbild
+                diagnostics.warn(WARN_IMAGE_FORMAT, "Bildformat nicht unterstützt (" + picture.getMimeType() + ")");
+                unsupportedHashes.add(hash);
+                return null;
+            }
+            imagesByHash.put(hash, xObject);
+        }
+
+        placedCount++;
+        Image image = new Image(xObject);
+        image.setAutoScale(true);
+        image.setMaxWidth(400);
+        image.setMaxHeight(300);
+        return image;
+    }
+
+    /**
+     * Gibt die Anzahl der platzierten Bilder zurück
+     */
+    int getPlacedCount() {
+        return placedCount;
+    }
+
+    /**
+     * Gibt die Anzahl der unterschiedlichen, dekodierten Bilder zurück
+     */
+    int getUniqueCount() {
+        return imagesByHash.size();
+    }
+}
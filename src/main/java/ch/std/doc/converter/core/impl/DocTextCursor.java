@@ -0,0 +1,167 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.model.CHPX;
+import org.apache.poi.hwpf.model.PAPX;
+import org.apache.poi.hwpf.model.StyleSheet;
+import org.apache.poi.hwpf.usermodel.CharacterProperties;
+import org.apache.poi.hwpf.usermodel.CharacterRun;
+import org.apache.poi.hwpf.usermodel.Range;
+
+import java.util.List;
+
+/**
+ * Vorwärts-Cursor über Absätze und Zeichenformatierungen eines DOC-Dokuments.
+ *
+ * Statt {@code Range.getParagraph(i)} und {@code Paragraph.getCharacterRun(j)},
+ * die für jeden Zugriff die Property-Knoten im Bereich neu suchen, werden die
+ * Absatz- (PAPX) und Zeichentabelle (CHPX) gleichzeitig genau einmal von vorne
+ * nach hinten durchlaufen. Der Text wird direkt aus dem Dokumenttext gelesen.
+ *
+ * Verwendung:
+ * <pre>
+ * while (cursor.nextParagraph()) {
+ *     while (cursor.nextRun()) { ... }
+ * }
+ * </pre>
+ */
+final class DocTextCursor {
+
+    private final HWPFDocument document;
+    private final StringBuilder text;
+    private final StyleSheet styleSheet;
+    private final List<PAPX> paragraphs;
+    private final List<CHPX> runs;
+    private final int rangeEnd;
+
+    private int paragraphIndex = -1;
+    private int paragraphStart;
+    private int paragraphEnd;
+    private short paragraphStyle;
+
+    private int runIndex = 0;
+    private int runStart;
+    private int runEnd;
+    private CHPX currentRun;
+
+    /**
+     * Erstellt einen Cursor über den Haupttext des Dokuments
+     */
+    DocTextCursor(HWPFDocument document) {
+        Range range = document.getRange();
+        this.document = document;
+        this.text = document.getText();
+        this.styleSheet = document.getStyleSheet();
+        this.paragraphs = document.getParagraphTable().getParagraphs();
+        this.runs = document.getCharacterTable().getTextRuns();
+        this.rangeEnd = Math.min(range.getEndOffset(), text.length());
+        this.paragraphEnd = range.getStartOffset();
+    }
+
+    /**
+     * Springt zum nächsten Absatz
+     *
+     * @return false wenn das Ende des Haupttexts erreicht ist
+     */
+    boolean nextParagraph() {
+        while (++paragraphIndex < paragraphs.size()) {
+            PAPX papx = paragraphs.get(paragraphIndex);
+            if (papx.getEnd() <= paragraphEnd) {
+                continue;
+            }
+            if (papx.getStart() >= rangeEnd) {
+                break;
+            }
+            paragraphStart = Math.max(papx.getStart(), paragraphEnd);
+            paragraphEnd = Math.min(papx.getEnd(), rangeEnd);
+            paragraphStyle = papx.getIstd();
+            runEnd = paragraphStart;
+            currentRun = null;
+            return true;
+        }
+        paragraphIndex = paragraphs.size();
+        return false;
+    }
+
+    /**
+     * Überspringt alle Absätze, die vor dem Offset beginnen, z.B. nach einer
+     * separat gerenderten Tabelle
+     *
+     * @param offset Zeichenposition im Dokument
+     * @return false wenn danach kein Absatz mehr folgt
+     */
+    boolean skipTo(int offset) {
+        boolean hasParagraph;
+        do {
+            hasParagraph = nextParagraph();
+        } while (hasParagraph && paragraphStart < offset);
+        return hasParagraph;
+    }
+
+    /**
+     * Springt zur nächsten Zeichenformatierung im aktuellen Absatz
+     *
+     * @return false wenn der Absatz keine weiteren Zeichen enthält
+     */
+    boolean nextRun() {
+        while (runIndex < runs.size() && runs.get(runIndex).getEnd() <= runEnd) {
+            runIndex++;
+        }
+        if (runIndex >= runs.size() || runEnd >= paragraphEnd) {
+            return false;
+        }
+        CHPX chpx = runs.get(runIndex);
+        if (chpx.getStart() >= paragraphEnd) {
+            return false;
+        }
+        runStart = Math.max(chpx.getStart(), runEnd);
+        runEnd = Math.min(chpx.getEnd(), paragraphEnd);
+        currentRun = chpx;
+        return true;
+    }
+
+    /**
+     * Gibt den Text des aktuellen Absatzes inkl. Absatzmarke zurück
+     */
+    String getParagraphText() {
+        return text.substring(paragraphStart, paragraphEnd);
+    }
+
+    /**
+     * Gibt den Text der aktuellen Zeichenformatierung zurück
+     */
+    String getRunText() {
+        return text.substring(runStart, runEnd);
+    }
+
+    /**
+     * Gibt die Zeichenformatierung des aktuellen Abschnitts zurück,
+     * aufgelöst gegen die Formatvorlage des Absatzes
+     */
+    CharacterProperties getRunProperties() {
+        return currentRun.getCharacterProperties(styleSheet, paragraphStyle);
+    }
+
+    /**
+     * Erstellt einen {@link CharacterRun} für den aktuellen Abschnitt. Nur für
+     * Sonderfälle wie Bilder gedacht, da dafür ein Range aufgebaut wird.
+     */
+    CharacterRun getCharacterRun() {
+        return new Range(runStart, runEnd, document).getCharacterRun(0);
+    }
+
+    /**
+     * Gibt den Index der Formatvorlage des aktuellen Absatzes zurück
+     */
+    short getParagraphStyle() {
+        return paragraphStyle;
+    }
+
+    int getParagraphStart() {
+        return paragraphStart;
+    }
+
+    int getParagraphEnd() {
+        return paragraphEnd;
+    }
+}
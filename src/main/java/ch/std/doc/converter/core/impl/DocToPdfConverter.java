@@ -1,27 +1,41 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.AtomicOutputFile;
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
 
 import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.apache.poi.hwpf.usermodel.Range;
+import org.apache.poi.hwpf.model.StyleDescription;
+import org.apache.poi.hwpf.model.StyleSheet;
+import org.apache.poi.hwpf.usermodel.CharacterProperties;
 import org.apache.poi.hwpf.usermodel.CharacterRun;
+import org.apache.poi.hwpf.usermodel.Table;
+import org.apache.poi.hwpf.usermodel.TableIterator;
+import org.apache.poi.hwpf.usermodel.TableRow;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Text;
+import com.itextpdf.layout.borders.SolidBorder;
+import com.itextpdf.layout.properties.UnitValue;
+import com.itextpdf.kernel.colors.DeviceRgb;
 import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.events.PdfDocumentEvent;
 import com.itextpdf.kernel.events.IEventHandler;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
 import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.io.font.constants.StandardFonts;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.regex.Pattern;
 
 /**
  * Spezialisierter Konverter für legacy Word-Dateien (.doc) zu PDF
@@ -30,13 +44,39 @@ public class DocToPdfConverter extends DocumentConverter {
     
     private static final String[] SUPPORTED_EXTENSIONS = {".doc"};
     private static final String CONVERTER_NAME = "Word-Doc-Konverter";
+    private static final char PICTURE_MARKER = '\u0001';
+    private static final char CELL_MARK = '\u0007';
+    private static final int TABLE_FLUSH_ROWS = 50;
+    private static final Pattern CONTROL_CHARS = Pattern.compile("[\\x00-\\x08\\x0c-\\x1f]");
+    
+    // Kategorien für Warnungen
+    private static final String WARN_FONT = "doc.font";
+    private static final String WARN_FALLBACK = "doc.fallback";
+    private static final String WARN_PARAGRAPH = "doc.paragraph";
+    private static final String WARN_CHARACTER_RUN = "doc.characterRun";
+    private static final String WARN_TABLE = "doc.table";
     
     @Override
-    public void convertToPdf(String inputFile, String outputFile) throws IOException {
+    public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options) throws IOException {
         validateFiles(inputFile, outputFile);
-        logConversion(inputFile, outputFile);
+        ConversionDiagnostics diagnostics = createDiagnostics(options);
+        logConversion(inputFile, outputFile, diagnostics);
+        
+        if (options == null) {
+            options = new ConversionOptions();
+        }
         
-        convertDocToPdf(inputFile, outputFile);
+        convertDocToPdf(new ConversionContext(inputFile, outputFile, options, diagnostics));
+        return new ConversionResult(inputFile, outputFile, diagnostics);
+    }
+    
+    @Override
+    protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                             ConversionDiagnostics diagnostics) throws IOException {
+        try (POIFSFileSystem fileSystem = InputFiles.openOle2(inputFile, options.isMemoryMappedInput());
+             HWPFDocument docFile = new HWPFDocument(fileSystem)) {
+            writeDocText(docFile, new TextOutput(out, options.getTextFormat()));
+        }
     }
     
     @Override
@@ -52,7 +92,7 @@ public class DocToPdfConverter extends DocumentConverter {
     @Override
     public String getDescription() {
         return "Konvertiert legacy Microsoft Word DOC-Dateien zu PDF. " +
-               "Extrahiert Text und grundlegende Formatierung aus älteren Word-Formaten. " +
+               "Extrahiert Text, grundlegende Formatierung, Tabellen und Bilder aus älteren Word-Formaten. " +
                "Fallback-Mechanismus für komplexe Dokumente mit reiner Textextraktion.";
     }
     
@@ -63,12 +103,12 @@ public class DocToPdfConverter extends DocumentConverter {
         private PdfFont font;
         private int totalPages;
         
-        public DocPageNumberEventHandler(int totalPages) {
+        public DocPageNumberEventHandler(int totalPages, ConversionContext context) {
             this.totalPages = totalPages;
             try {
-                this.font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+                this.font = PdfOutput.createFont(StandardFonts.HELVETICA, context.getPdfOutputProfile());
             } catch (Exception e) {
-                System.err.println("Fehler beim Laden der Schriftart: " + e.getMessage());
+                context.getDiagnostics().warn(WARN_FONT, "Fehler beim Laden der Schriftart: " + e.getMessage());
             }
         }
         
@@ -97,12 +137,15 @@ public class DocToPdfConverter extends DocumentConverter {
         }
     }
     
-    private void convertDocToPdf(String inputFile, String outputFile) throws IOException {
-        try (FileInputStream fis = new FileInputStream(inputFile);
-             HWPFDocument docFile = new HWPFDocument(fis);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+    private void convertDocToPdf(ConversionContext context) throws IOException {
+        ConversionOptions options = context.getOptions();
+        ConversionDiagnostics diagnostics = context.getDiagnostics();
+        // OLE2-Sektoren werden direkt aus der Datei gelesen statt den Container zu puffern
+        try (POIFSFileSystem fileSystem = InputFiles.openOle2(context.getInputFile(), options.isMemoryMappedInput());
+             HWPFDocument docFile = new HWPFDocument(fileSystem);
+             AtomicOutputFile output = AtomicOutputFile.create(context.getOutputFile(), options.isDurableOutput())) {
             
-            PdfWriter writer = new PdfWriter(fos);
+            PdfWriter writer = PdfOutput.createWriter(output.getOutputStream(), context.getPdfOutputProfile());
             PdfDocument pdfDoc = new PdfDocument(writer);
             Document document = new Document(pdfDoc, PageSize.A4);
             
@@ -110,77 +153,233 @@ public class DocToPdfConverter extends DocumentConverter {
             
             // Einfache Textextraktion für legacy .doc Dateien
             try {
-                Range range = docFile.getRange();
-                processDocRange(range, document);
+                processDocText(docFile, document, diagnostics);
             } catch (Exception e) {
                 // Fallback: Einfache Textextraktion
-                System.err.println("Warnung: Formatierte Extraktion fehlgeschlagen, verwende einfache Textextraktion: " + e.getMessage());
+                diagnostics.warn(WARN_FALLBACK, "Formatierte Extraktion fehlgeschlagen, verwende einfache Textextraktion: " + e.getMessage());
                 extractPlainText(docFile, document);
             }
             
             // Seitenzahlen hinzufügen
             int totalPages = pdfDoc.getNumberOfPages();
             if (totalPages > 0) {
-                pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new DocPageNumberEventHandler(totalPages));
+                pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new DocPageNumberEventHandler(totalPages, context));
             }
             
             document.close();
+            output.commit();
         }
     }
     
-    private void processDocRange(Range range, Document document) {
-        int numParagraphs = range.numParagraphs();
+    /**
+     * Verarbeitet den Haupttext in einem linearen Durchlauf über Absätze und
+     * Zeichenformatierungen. Tabellen werden beim Erreichen ihres Startoffsets
+     * als Ganzes gerendert, ihre Absätze danach übersprungen.
+     */
+    void processDocText(HWPFDocument docFile, Document document, ConversionDiagnostics diagnostics) {
+        DocTextCursor cursor = new DocTextCursor(docFile);
+        DocPictureCache pictures = new DocPictureCache(docFile.getPicturesTable(), document.getPdfDocument(), diagnostics);
+        TableIterator tables = new TableIterator(docFile.getRange());
+        Table nextTable = tables.hasNext() ? tables.next() : null;
         
-        for (int i = 0; i < numParagraphs; i++) {
-            try {
-                org.apache.poi.hwpf.usermodel.Paragraph para = range.getParagraph(i);
-                com.itextpdf.layout.element.Paragraph pdfParagraph = new com.itextpdf.layout.element.Paragraph();
-                
-                // Charaktere in diesem Absatz verarbeiten
-                int numCharacterRuns = para.numCharacterRuns();
-                for (int j = 0; j < numCharacterRuns; j++) {
+        boolean hasParagraph = cursor.nextParagraph();
+        while (hasParagraph) {
+            if (nextTable != null && cursor.getParagraphStart() >= nextTable.getStartOffset()) {
+                Table table = nextTable;
+                nextTable = tables.hasNext() ? tables.next() : null;
+                // Tabellen ohne Zeileninformationen werden als normale Absätze ausgegeben
+                if (table.numRows() > 0) {
                     try {
-                        CharacterRun run = para.getCharacterRun(j);
-                        String text = run.text();
-                        
-                        if (text != null && !text.trim().isEmpty()) {
-                            Text textElement = new Text(text);
-                            
-                            // Formatierung anwenden
-                            if (run.isBold()) {
-                                textElement.setBold();
-                            }
-                            if (run.isItalic()) {
-                                textElement.setItalic();
-                            }
-                            
-                            // Schriftgröße
-                            int fontSize = run.getFontSize() / 2; // POI gibt Schriftgröße in halben Punkten zurück
-                            if (fontSize > 6 && fontSize < 72) {
-                                textElement.setFontSize(fontSize);
+                        processTable(table, document);
+                    } catch (Exception e) {
+                        diagnostics.warn(WARN_TABLE, "Fehler beim Verarbeiten einer Tabelle: " + e.getMessage());
+                    }
+                    hasParagraph = cursor.skipTo(table.getEndOffset());
+                    continue;
+                }
+            }
+            
+            processParagraph(cursor, pictures, document, diagnostics);
+            hasParagraph = cursor.nextParagraph();
+        }
+        
+        if (pictures.getPlacedCount() > 0) {
+            diagnostics.info(String.format("Bilder: %d platziert, %d unterschiedlich",
+                                           pictures.getPlacedCount(), pictures.getUniqueCount()));
+        }
+    }
+    
+    private void processParagraph(DocTextCursor cursor, DocPictureCache pictures, Document document,
+                                  ConversionDiagnostics diagnostics) {
+        try {
+            com.itextpdf.layout.element.Paragraph pdfParagraph = new com.itextpdf.layout.element.Paragraph();
+            
+            // Charaktere in diesem Absatz verarbeiten
+            while (cursor.nextRun()) {
+                try {
+                    String text = cursor.getRunText();
+                    CharacterProperties props = cursor.getRunProperties();
+                    
+                    // Bildplatzhalter: Bild erst hier dekodieren
+                    if (props.isFSpec() && text.indexOf(PICTURE_MARKER) >= 0) {
+                        CharacterRun run = cursor.getCharacterRun();
+                        if (pictures.hasPicture(run)) {
+                            Image image = pictures.createImage(run);
+                            if (image != null) {
+                                pdfParagraph.add(image);
                             }
-                            
-                            pdfParagraph.add(textElement);
+                            continue;
                         }
-                    } catch (Exception e) {
-                        // Ignoriere problematische Character Runs
-                        System.err.println("Warnung: Fehler beim Verarbeiten eines Character Runs: " + e.getMessage());
                     }
+                    
+                    if (!text.trim().isEmpty()) {
+                        Text textElement = new Text(text);
+                        
+                        // Formatierung anwenden
+                        if (props.isFBold()) {
+                            textElement.setBold();
+                        }
+                        if (props.isFItalic()) {
+                            textElement.setItalic();
+                        }
+                        
+                        // Schriftgröße
+                        int fontSize = props.getHps() / 2; // Schriftgröße in halben Punkten
+                        if (fontSize > 6 && fontSize < 72) {
+                            textElement.setFontSize(fontSize);
+                        }
+                        
+                        pdfParagraph.add(textElement);
+                    }
+                } catch (Exception e) {
+                    // Ignoriere problematische Character Runs
+                    diagnostics.warn(WARN_CHARACTER_RUN, "Fehler beim Verarbeiten eines Character Runs: " + e.getMessage());
                 }
-                
-                // Nur nicht-leere Absätze hinzufügen
-                if (!pdfParagraph.isEmpty()) {
-                    document.add(pdfParagraph);
-                } else if (para.text() != null && !para.text().trim().isEmpty()) {
-                    // Fallback für Absätze ohne Character Runs
-                    document.add(new com.itextpdf.layout.element.Paragraph(para.text()));
+            }
+            
+            // Nur nicht-leere Absätze hinzufügen
+            if (!pdfParagraph.isEmpty()) {
+                document.add(pdfParagraph);
+            } else {
+                // Fallback für Absätze ohne Character Runs
+                String paragraphText = cursor.getParagraphText();
+                if (!paragraphText.trim().isEmpty()) {
+                    document.add(new com.itextpdf.layout.element.Paragraph(paragraphText));
                 }
+            }
+            
+        } catch (Exception e) {
+            // Ignoriere problematische Absätze
+            diagnostics.warn(WARN_PARAGRAPH, "Fehler beim Verarbeiten eines Absatzes: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Schreibt den Haupttext im selben linearen Durchlauf wie
+     * {@link #processDocText}, aber ohne Zeichenformatierungen, Bilder und
+     * Layout. Überschriften werden an der Formatvorlage des Absatzes erkannt.
+     */
+    void writeDocText(HWPFDocument docFile, TextOutput output) throws IOException {
+        DocTextCursor cursor = new DocTextCursor(docFile);
+        StyleSheet styleSheet = docFile.getStyleSheet();
+        TableIterator tables = new TableIterator(docFile.getRange());
+        Table nextTable = tables.hasNext() ? tables.next() : null;
+        
+        boolean hasParagraph = cursor.nextParagraph();
+        while (hasParagraph) {
+            if (nextTable != null && cursor.getParagraphStart() >= nextTable.getStartOffset()) {
+                Table table = nextTable;
+                nextTable = tables.hasNext() ? tables.next() : null;
+                if (table.numRows() > 0) {
+                    writeTable(table, output);
+                    hasParagraph = cursor.skipTo(table.getEndOffset());
+                    continue;
+                }
+            }
+            
+            String text = cleanParagraphText(cursor.getParagraphText());
+            StyleDescription style = styleSheet.getStyleDescription(cursor.getParagraphStyle());
+            int headingLevel = TextOutput.headingLevel(style != null ? style.getName() : null);
+            if (headingLevel > 0) {
+                output.heading(headingLevel, text);
+            } else {
+                output.paragraph(text);
+            }
+            hasParagraph = cursor.nextParagraph();
+        }
+        output.endTable();
+    }
+    
+    private void writeTable(Table table, TextOutput output) throws IOException {
+        int numCols = 1;
+        for (int r = 0; r < table.numRows(); r++) {
+            numCols = Math.max(numCols, table.getRow(r).numCells());
+        }
+        
+        String[] cells = new String[numCols];
+        for (int r = 0; r < table.numRows(); r++) {
+            TableRow row = table.getRow(r);
+            for (int c = 0; c < numCols; c++) {
+                cells[c] = c < row.numCells() ? cleanCellText(row.getCell(c).text()) : null;
+            }
+            output.tableRow(cells);
+        }
+        output.endTable();
+    }
+    
+    /**
+     * Entfernt Feldcodes, Absatzmarke und Steuerzeichen aus einem Absatztext
+     */
+    private static String cleanParagraphText(String text) {
+        String withoutFields = WordExtractor.stripFields(text).replace('\u000b', '\n');
+        return CONTROL_CHARS.matcher(withoutFields).replaceAll("").trim();
+    }
+    
+    /**
+     * Rendert eine Tabelle im Large-Table-Modus von iText, sodass bereits
+     * fertige Zeilen laufend geschrieben werden
+     */
+    private void processTable(Table table, Document document) {
+        int numCols = 1;
+        for (int r = 0; r < table.numRows(); r++) {
+            numCols = Math.max(numCols, table.getRow(r).numCells());
+        }
+        
+        com.itextpdf.layout.element.Table pdfTable =
+                new com.itextpdf.layout.element.Table(UnitValue.createPercentArray(numCols), true)
+                        .useAllAvailableWidth()
+                        .setMarginTop(10)
+                        .setMarginBottom(10);
+        document.add(pdfTable);
+        
+        for (int r = 0; r < table.numRows(); r++) {
+            TableRow row = table.getRow(r);
+            for (int c = 0; c < numCols; c++) {
+                String cellText = c < row.numCells() ? cleanCellText(row.getCell(c).text()) : "";
                 
-            } catch (Exception e) {
-                // Ignoriere problematische Absätze
-                System.err.println("Warnung: Fehler beim Verarbeiten eines Absatzes: " + e.getMessage());
+                Cell pdfCell = new Cell().add(new com.itextpdf.layout.element.Paragraph(cellText));
+                pdfCell.setPadding(6);
+                pdfCell.setBorder(new SolidBorder(0.5f));
+                if (row.isTableHeader()) {
+                    pdfCell.setBackgroundColor(new DeviceRgb(200, 200, 200));
+                    pdfCell.setBold();
+                }
+                pdfTable.addCell(pdfCell);
+            }
+            
+            if ((r + 1) % TABLE_FLUSH_ROWS == 0) {
+                pdfTable.flush();
             }
         }
+        
+        pdfTable.complete();
+    }
+    
+    /**
+     * Entfernt Zellende- und Absatzmarken aus einem Zelltext
+     */
+    private static String cleanCellText(String text) {
+        return text.replace(CELL_MARK, ' ').replace('\r', '\n').trim();
     }
     
     private void extractPlainText(HWPFDocument docFile, Document document) throws IOException {
@@ -0,0 +1,279 @@
+package ch.std.doc.converter.core.impl;
+
+import com.itextpdf.io.image.ImageData;
+
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFPicture;
+import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bereitet die Bilder eines DOCX-Dokuments vor, bevor das Layout sie braucht.
+ *
+ * Ohne Vorauslesen dekodiert der Layout-Thread jedes Bild erst, wenn er beim
+ * Absatz ankommt, und wartet dabei auf Inflate und Neukomprimierung. Der
+ * Prefetcher ermittelt zu Beginn aus {@link XWPFDocument#getAllPictures()} und
+ * den Absätzen, in welcher Reihenfolge die Bilder gesetzt werden, und lässt
+ * sie in einem kleinen Thread-Pool über den {@link ImageTranscodeCache}
+ * vorbereiten. Wie weit er vorausläuft, begrenzt ein Fenster in Bytes: es
+ * zählt die Bilder, die vorbereitet, aber noch nicht gesetzt sind. Ein
+ * einzelnes Bild über der Grenze wird vorbereitet, sobald sonst keines
+ * aussteht.
+ *
+ * Das XObject erstellt weiterhin der Layout-Thread, denn PdfDocument ist nicht
+ * thread-sicher; das PDF ist dasselbe wie ohne Vorauslesen. Mit einem Fenster
+ * von 0 wird jedes Bild erst beim Abholen im aufrufenden Thread dekodiert.
+ * Ein Prefetcher gehört zu einem Layout-Durchlauf und wird nur von dessen
+ * Thread aufgerufen.
+ */
+final class DocxImagePrefetcher implements AutoCloseable {
+
+    /** Obergrenze der Threads pro Durchlauf */
+    static final int MAX_THREADS = 4;
+
+    private final ImageTranscodeCache cache;
+    private final int compressionLevel;
+    private final long windowBytes;
+
+    // Bilder in der Reihenfolge, in der das Layout sie abholt, mit Wiederholungen
+    private final List<Slot> uses = new ArrayList<>();
+    private int cursor = 0;
+    private int next = 0;
+    private final AtomicLong reserved = new AtomicLong();
+    private final ExecutorService executor;
+
+    // Das Paket wird nur von einem Thread gleichzeitig gelesen
+    private final Object packageLock = new Object();
+    private boolean closed = false;
+
+    /**
+     * @param document Dokument, dessen Body-Absätze gesetzt werden
+     * @param cache Cache für die dekodierten Bilder
+     * @param compressionLevel Kompressionsstufe des Ziel-PDFs
+     * @param windowBytes Bytes, die höchstens vorbereitet auf das Layout warten; 0 schaltet das Vorauslesen aus
+     */
+    DocxImagePrefetcher(XWPFDocument document, ImageTranscodeCache cache, int compressionLevel, long windowBytes) {
+        this.cache = cache;
+        this.compressionLevel = compressionLevel;
+        this.windowBytes = windowBytes;
+
+        int pictures = windowBytes > 0 ? collectUses(document) : 0;
+        if (pictures > 0) {
+            int threads = Math.max(1, Math.min(Math.min(pictures, MAX_THREADS),
+                                               Runtime.getRuntime().availableProcessors()));
+            this.executor = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "docconverter-image-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fill();
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Gibt die Bilddaten eines Bilds zurück und wartet, falls es noch
+     * vorbereitet wird
+     *
+     * @return Bilddaten, oder null wenn die Bilddatei leer ist
+     * @throws RuntimeException wenn das Bildformat nicht unterstützt wird
+     * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+     */
+    ImageData take(XWPFPictureData picture) throws InterruptedIOException {
+        int index = find(picture);
+        if (index < 0) {
+            return prepare(picture);
+        }
+
+        // Bilder dazwischen hat das Layout übersprungen, etwa nach einem Fehler im selben Absatz
+        while (cursor < index) {
+            release(uses.get(cursor++), true);
+        }
+        Slot slot = uses.get(cursor++);
+
+        try {
+            if (slot.future == null || slot.consumed) {
+                // Nicht vorausgelesen, oder schon einmal gesetzt und damit im Cache
+                return prepare(picture);
+            }
+            try {
+                return slot.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Warten auf Bild wurde unterbrochen");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new IllegalStateException(e.getCause());
+            } finally {
+                release(slot, false);
+            }
+        } finally {
+            fill();
+        }
+    }
+
+    /**
+     * Gibt die Bytes zurück, die vorbereitet auf das Layout warten
+     */
+    long getReservedBytes() {
+        return reserved.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (packageLock) {
+            closed = true;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sammelt die Bilder der Absätze, die das Layout mit Bildern setzt
+     *
+     * @return Anzahl verschiedener Bilder
+     */
+    private int collectUses(XWPFDocument document) {
+        List<XWPFPictureData> all = document.getAllPictures();
+        if (all.isEmpty()) {
+            return 0;
+        }
+        Set<XWPFPictureData> known = Collections.newSetFromMap(new IdentityHashMap<>());
+        known.addAll(all);
+
+        Map<XWPFPictureData, Slot> slots = new IdentityHashMap<>();
+        for (IBodyElement element : document.getBodyElements()) {
+            if (!(element instanceof XWPFParagraph)) {
+                continue;
+            }
+            for (XWPFRun run : ((XWPFParagraph) element).getRuns()) {
+                for (XWPFPicture embedded : run.getEmbeddedPictures()) {
+                    XWPFPictureData picture = embedded.getPictureData();
+                    if (picture != null && known.contains(picture)) {
+                        uses.add(slots.computeIfAbsent(picture, Slot::new));
+                    }
+                }
+            }
+        }
+        return slots.size();
+    }
+
+    private int find(XWPFPictureData picture) {
+        for (int i = cursor; i < uses.size(); i++) {
+            if (uses.get(i).picture == picture) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Startet die nächsten Bilder, solange sie ins Fenster passen
+     */
+    private void fill() {
+        if (executor == null) {
+            return;
+        }
+        for (; next < uses.size(); next++) {
+            Slot slot = uses.get(next);
+            if (slot.future != null || slot.consumed) {
+                continue;
+            }
+            long estimate = estimateSize(slot.picture);
+            long current = reserved.get();
+            if (current > 0 && current + estimate > windowBytes) {
+                return;
+            }
+            slot.bytes = estimate;
+            reserved.addAndGet(estimate);
+            slot.future = executor.submit(() -> prepare(slot));
+        }
+    }
+
+    /**
+     * Gibt den Platz eines Bilds im Fenster frei, sobald es zum ersten Mal
+     * gesetzt oder übersprungen wurde
+     */
+    private void release(Slot slot, boolean skipped) {
+        if (slot.consumed) {
+            return;
+        }
+        slot.consumed = true;
+        if (slot.future != null) {
+            if (skipped) {
+                slot.future.cancel(false);
+            }
+            synchronized (slot) {
+                reserved.addAndGet(-slot.bytes);
+                slot.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Läuft im Pool; rechnet das Fenster auf die tatsächliche Grösse um
+     */
+    private ImageData prepare(Slot slot) {
+        ImageData image = prepare(slot.picture);
+        long actual = image != null ? ImageTranscodeCache.sizeOf(image) : 0;
+        synchronized (slot) {
+            // Nach dem Freigeben zählt das Bild nicht mehr zum Fenster
+            if (!slot.consumed) {
+                reserved.addAndGet(actual - slot.bytes);
+                slot.bytes = actual;
+            }
+        }
+        return image;
+    }
+
+    private ImageData prepare(XWPFPictureData picture) {
+        byte[] content;
+        synchronized (packageLock) {
+            if (closed) {
+                throw new IllegalStateException("Prefetcher ist geschlossen");
+            }
+            content = picture.getData();
+        }
+        if (content == null || content.length == 0) {
+            return null;
+        }
+        return cache.getImageData(ImageTranscodeCache.sha256(content), () -> content, compressionLevel);
+    }
+
+    private static long estimateSize(XWPFPictureData picture) {
+        long size = picture.getPackagePart().getSize();
+        return size > 0 ? size : 64 * 1024;
+    }
+
+    private static final class Slot {
+        final XWPFPictureData picture;
+        Future<ImageData> future;
+        long bytes;
+        volatile boolean consumed;
+
+        Slot(XWPFPictureData picture) {
+            this.picture = picture;
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.AtomicOutputFile;
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
+import ch.std.doc.converter.core.PdfOutputProfile;
 
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.xwpf.usermodel.*;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
@@ -14,7 +21,6 @@ import com.itextpdf.layout.element.AreaBreak;
 import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
 import com.itextpdf.layout.properties.AreaBreakType;
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.colors.DeviceRgb;
 import com.itextpdf.kernel.colors.Color;
 import com.itextpdf.kernel.geom.PageSize;
@@ -23,12 +29,13 @@ import com.itextpdf.kernel.events.IEventHandler;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
 import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageData;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -39,25 +46,44 @@ public class DocxToPdfConverter extends DocumentConverter {
     private static final String[] SUPPORTED_EXTENSIONS = {".docx"};
     private static final String CONVERTER_NAME = "DOCX-Konverter";
     
+    // Kategorien für Warnungen
+    private static final String WARN_FONT = "docx.font";
+    private static final String WARN_IMAGE = "docx.image";
+    
     @Override
-    public void convertToPdf(String inputFile, String outputFile) throws IOException {
+    public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options) throws IOException {
         validateFiles(inputFile, outputFile);
-        logConversion(inputFile, outputFile);
+        ConversionDiagnostics diagnostics = createDiagnostics(options);
+        logConversion(inputFile, outputFile, diagnostics);
+        
+        if (options == null) {
+            options = new ConversionOptions();
+        }
         
-        // Temporäre Datei für ersten Durchlauf
-        String tempFile = outputFile + ".temp";
+        ConversionContext context = new ConversionContext(inputFile, outputFile, options, diagnostics);
         
-        // Erster Durchlauf: Dokument erstellen ohne korrekte Seitenzahlen
-        int totalPages = createPdfDocument(inputFile, tempFile);
+        // Erster Durchlauf: nur die Gesamtseitenzahl ermitteln. Das PDF wird
+        // verworfen, daher ohne Datei und mit dem schnellsten Profil geschrieben
+        int totalPages = createPdfDocument(context, OutputStream.nullOutputStream(), PdfOutputProfile.FAST);
         
         // Zweiter Durchlauf: Seitenzahlen mit korrekter Gesamtseitenzahl
-        createFinalPdfWithPageNumbers(inputFile, outputFile, totalPages);
+        try (AtomicOutputFile output = AtomicOutputFile.create(outputFile, options.isDurableOutput())) {
+            createFinalPdfWithPageNumbers(context, output.getOutputStream(), totalPages);
+            output.commit();
+        }
         
-        // Temporäre Datei löschen
+        return new ConversionResult(inputFile, outputFile, diagnostics);
+    }
+    
+    @Override
+    protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                             ConversionDiagnostics diagnostics) throws IOException {
+        OPCPackage pkg = InputFiles.openPackage(inputFile, PackageAccess.READ_WRITE);
         try {
-            java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(tempFile));
-        } catch (Exception e) {
-            System.err.println("Warnung: Temporäre Datei konnte nicht gelöscht werden: " + e.getMessage());
+            XWPFDocument document = new XWPFDocument(pkg);
+            writeBodyText(document, new TextOutput(out, options.getTextFormat()));
+        } finally {
+            pkg.revert();
         }
     }
     
@@ -85,12 +111,12 @@ public class DocxToPdfConverter extends DocumentConverter {
         private PdfFont font;
         private int totalPages;
         
-        public PageNumberEventHandler(int totalPages) {
+        public PageNumberEventHandler(int totalPages, ConversionContext context) {
             this.totalPages = totalPages;
             try {
-                this.font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+                this.font = PdfOutput.createFont(StandardFonts.HELVETICA, context.getPdfOutputProfile());
             } catch (Exception e) {
-                System.err.println("Fehler beim Laden der Schriftart für Seitenzahlen: " + e.getMessage());
+                context.getDiagnostics().warn(WARN_FONT, "Fehler beim Laden der Schriftart für Seitenzahlen: " + e.getMessage());
             }
         }
         
@@ -122,47 +148,57 @@ public class DocxToPdfConverter extends DocumentConverter {
     /**
      * Erstellt das PDF-Dokument und gibt die Gesamtseitenzahl zurück
      */
-    private int createPdfDocument(String inputFile, String outputFile) throws IOException {
-        try (FileInputStream fis = new FileInputStream(inputFile);
-             XWPFDocument document = new XWPFDocument(fis);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+    private int createPdfDocument(ConversionContext context, OutputStream out, PdfOutputProfile profile)
+            throws IOException {
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), PackageAccess.READ_WRITE);
+        try {
+            XWPFDocument document = new XWPFDocument(pkg);
             
-            PdfWriter writer = new PdfWriter(fos);
+            PdfWriter writer = PdfOutput.createWriter(out, profile);
             PdfDocument pdfDoc = new PdfDocument(writer);
             Document doc = new Document(pdfDoc, PageSize.A4);
             
             doc.setMargins(72, 36, 90, 36);
             
             processHeadersAndFooters(document, doc);
-            processBodyElements(document, doc);
+            try (DocxImagePrefetcher images = createImagePrefetcher(document, pdfDoc, context)) {
+                processBodyElements(document, doc, images, context.getDiagnostics());
+            }
             
             int totalPages = pdfDoc.getNumberOfPages();
             doc.close();
             
             return totalPages;
+        } finally {
+            pkg.revert();
         }
     }
     
     /**
      * Erstellt das finale PDF mit korrekten Seitenzahlen
      */
-    private void createFinalPdfWithPageNumbers(String inputFile, String outputFile, int totalPages) throws IOException {
-        try (FileInputStream fis = new FileInputStream(inputFile);
-             XWPFDocument document = new XWPFDocument(fis);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+    private void createFinalPdfWithPageNumbers(ConversionContext context, OutputStream out, int totalPages)
+            throws IOException {
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), PackageAccess.READ_WRITE);
+        try {
+            XWPFDocument document = new XWPFDocument(pkg);
             
-            PdfWriter writer = new PdfWriter(fos);
+            PdfWriter writer = PdfOutput.createWriter(out, context.getPdfOutputProfile());
             PdfDocument pdfDoc = new PdfDocument(writer);
             Document doc = new Document(pdfDoc, PageSize.A4);
             
-            pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new PageNumberEventHandler(totalPages));
+            pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new PageNumberEventHandler(totalPages, context));
             
             doc.setMargins(72, 36, 90, 36);
             
             processHeadersAndFooters(document, doc);
-            processBodyElements(document, doc);
+            try (DocxImagePrefetcher images = createImagePrefetcher(document, pdfDoc, context)) {
+                processBodyElements(document, doc, images, context.getDiagnostics());
+            }
             
             doc.close();
+        } finally {
+            pkg.revert();
         }
     }
     
@@ -186,7 +222,18 @@ public class DocxToPdfConverter extends DocumentConverter {
         }
     }
     
-    private void processBodyElements(XWPFDocument document, Document doc) throws IOException {
+    /**
+     * Liest die Bilder des Dokuments im Voraus, wenn ein Fenster dafür gesetzt ist
+     */
+    private DocxImagePrefetcher createImagePrefetcher(XWPFDocument document, PdfDocument pdfDoc,
+                                                      ConversionContext context) {
+        return new DocxImagePrefetcher(document, ImageTranscodeCache.getShared(),
+                                       ImageTranscodeCache.getCompressionLevel(pdfDoc),
+                                       context.getOptions().getImagePrefetchWindow());
+    }
+    
+    private void processBodyElements(XWPFDocument document, Document doc, DocxImagePrefetcher images,
+                                     ConversionDiagnostics diagnostics) throws IOException {
         List<IBodyElement> bodyElements = document.getBodyElements();
         boolean isFirstElement = true;
         
@@ -198,7 +245,7 @@ public class DocxToPdfConverter extends DocumentConverter {
                     doc.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
                 }
                 
-                processParagraph(para, doc);
+                processParagraph(para, doc, images, diagnostics);
                 isFirstElement = false;
                 
             } else if (element instanceof XWPFTable) {
@@ -215,6 +262,67 @@ public class DocxToPdfConverter extends DocumentConverter {
         }
     }
     
+    /**
+     * Schreibt die Body-Elemente Absatz für Absatz in die Textausgabe.
+     * Im Gegensatz zu XWPFWordExtractor wird dabei kein Gesamttext aufgebaut.
+     */
+    private void writeBodyText(XWPFDocument document, TextOutput output) throws IOException {
+        XWPFStyles styles = document.getStyles();
+        
+        for (IBodyElement element : document.getBodyElements()) {
+            if (element instanceof XWPFParagraph) {
+                XWPFParagraph para = (XWPFParagraph) element;
+                String text = para.getText();
+                int headingLevel = getHeadingLevel(para, styles);
+                
+                if (headingLevel > 0) {
+                    output.heading(headingLevel, text);
+                } else if (para.getNumID() != null) {
+                    output.listItem(para.getNumIlvl() != null ? para.getNumIlvl().intValue() : 0, text);
+                } else {
+                    output.paragraph(text);
+                }
+                
+            } else if (element instanceof XWPFTable) {
+                writeTableText((XWPFTable) element, output);
+                
+            } else if (element instanceof XWPFSDT) {
+                output.paragraph(((XWPFSDT) element).getContent().getText());
+            }
+        }
+        output.endTable();
+    }
+    
+    private void writeTableText(XWPFTable table, TextOutput output) throws IOException {
+        int numCols = 0;
+        for (XWPFTableRow row : table.getRows()) {
+            numCols = Math.max(numCols, row.getTableCells().size());
+        }
+        if (numCols == 0) {
+            return;
+        }
+        
+        String[] cells = new String[numCols];
+        for (XWPFTableRow row : table.getRows()) {
+            List<XWPFTableCell> rowCells = row.getTableCells();
+            for (int c = 0; c < numCols; c++) {
+                cells[c] = c < rowCells.size() ? rowCells.get(c).getText() : null;
+            }
+            output.tableRow(cells);
+        }
+        output.endTable();
+    }
+    
+    private int getHeadingLevel(XWPFParagraph para, XWPFStyles styles) {
+        String styleId = para.getStyle();
+        if (styleId == null) {
+            return 0;
+        }
+        XWPFStyle style = styles != null ? styles.getStyle(styleId) : null;
+        int level = style != null ? TextOutput.headingLevel(style.getName()) : 0;
+        return level > 0 ? level : TextOutput.headingLevel(styleId);
+    }
+    
     private boolean shouldAddPageBreakBefore(XWPFParagraph para, boolean isFirstElement) {
         if (isFirstElement) return false;
         
@@ -232,11 +340,12 @@ public class DocxToPdfConverter extends DocumentConverter {
         return false;
     }
     
-    private void processParagraph(XWPFParagraph para, Document doc) {
+    private void processParagraph(XWPFParagraph para, Document doc, DocxImagePrefetcher images,
+                                  ConversionDiagnostics diagnostics) throws InterruptedIOException {
         String text = para.getText();
         
         if (hasImages(para)) {
-            processInlineImages(para, doc);
+            processInlineImages(para, doc, images, diagnostics);
             return;
         }
         
@@ -321,15 +430,15 @@ public class DocxToPdfConverter extends DocumentConverter {
         return false;
     }
     
-    private void processInlineImages(XWPFParagraph paragraph, Document doc) {
+    private void processInlineImages(XWPFParagraph paragraph, Document doc, DocxImagePrefetcher images,
+                                     ConversionDiagnostics diagnostics) throws InterruptedIOException {
         try {
             for (XWPFRun run : paragraph.getRuns()) {
                 for (XWPFPicture picture : run.getEmbeddedPictures()) {
-                    XWPFPictureData pictureData = picture.getPictureData();
-                    byte[] imageData = pictureData.getData();
+                    ImageData imageData = images.take(picture.getPictureData());
                     
-                    if (imageData != null && imageData.length > 0) {
-                        Image pdfImage = new Image(ImageDataFactory.create(imageData));
+                    if (imageData != null) {
+                        Image pdfImage = new Image(ImageTranscodeCache.createXObject(imageData));
                         pdfImage.setAutoScale(true);
                         pdfImage.setMaxWidth(400);
                         pdfImage.setMaxHeight(300);
@@ -339,8 +448,10 @@ public class DocxToPdfConverter extends DocumentConverter {
                     }
                 }
             }
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (Exception e) {
-            System.err.println("Fehler beim Verarbeiten der Bilder: " + e.getMessage());
+            diagnostics.warn(WARN_IMAGE, "Fehler beim Verarbeiten der Bilder: " + e.getMessage());
         }
     }
     
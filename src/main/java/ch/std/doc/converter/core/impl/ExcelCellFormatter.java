@@ -0,0 +1,180 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelStyleDateFormatter;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import java.math.BigDecimal;
+import java.text.Format;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formatiert numerische Excel-Zellwerte anhand des Zahlenformats der Zelle.
+ *
+ * Jedes Zahlenformat (Formatindex) wird nur einmal analysiert und als
+ * kompiliertes {@link Format} zwischengespeichert. Eine Instanz gehört zu genau
+ * einer Arbeitsmappe und einer Locale und ist nicht thread-sicher.
+ */
+final class ExcelCellFormatter {
+
+    /**
+     * Art eines kompilierten Zahlenformats
+     */
+    private enum Kind {
+        /** Datums-/Zeitformat mit vorbereitetem Formatter */
+        DATE,
+        /** Zahlenformat (inkl. "General") mit vorbereitetem Formatter */
+        NUMBER,
+        /** Mehrteilige oder bedingte Formate, werden an DataFormatter delegiert */
+        DELEGATE
+    }
+
+    /**
+     * Kompiliertes Zahlenformat eines Formatindex
+     */
+    private static final class CompiledFormat {
+        private final Kind kind;
+        private final int formatIndex;
+        private final String formatString;
+        private Format format;
+
+        CompiledFormat(Kind kind, int formatIndex, String formatString) {
+            this.kind = kind;
+            this.formatIndex = formatIndex;
+            this.formatString = formatString;
+        }
+    }
+
+    private final DataFormatter dataFormatter;
+    private final boolean use1904Windowing;
+    private final Map<Integer, CompiledFormat> compiledFormats = new HashMap<>();
+
+    ExcelCellFormatter(Locale locale, boolean use1904Windowing) {
+        this.dataFormatter = new DataFormatter(locale);
+        this.use1904Windowing = use1904Windowing;
+    }
+
+    /**
+     * Formatiert einen numerischen Wert mit dem Zahlenformat der Zelle
+     *
+     * @param cell Zelle, deren Stil das Zahlenformat bestimmt
+     * @param value Numerischer Wert (Zellwert oder Formelergebnis)
+     * @return Formatierter Text wie in Excel angezeigt
+     */
+    String formatNumeric(Cell cell, double value) {
+        CellStyle style = cell.getCellStyle();
+        if (style == null) {
+            return dataFormatter.formatRawCellContents(value, 0, "General", use1904Windowing);
+        }
+
+        CompiledFormat compiled = compiledFormats.get((int) style.getDataFormat());
+        if (compiled == null) {
+            compiled = compile(style.getDataFormat(), style.getDataFormatString());
+            compiledFormats.put(compiled.formatIndex, compiled);
+        }
+
+        switch (compiled.kind) {
+            case DATE:
+                if (!DateUtil.isValidExcelDate(value)) {
+                    break;
+                }
+                Format dateFormat = resolveFormat(compiled, cell);
+                if (dateFormat == null) {
+                    break;
+                }
+                if (dateFormat instanceof ExcelStyleDateFormatter) {
+                    ((ExcelStyleDateFormatter) dateFormat).setDateToBeFormatted(value);
+                }
+                return dateFormat.format(DateUtil.getJavaDate(value, use1904Windowing));
+            case NUMBER:
+                Format numberFormat = resolveFormat(compiled, cell);
+                if (numberFormat == null) {
+                    break;
+                }
+                // Gleiche Rundung wie DataFormatter: über die Excel-Textdarstellung des Werts
+                String textValue = NumberToTextConverter.toText(value);
+                if (textValue.indexOf('E') > -1) {
+                    return numberFormat.format(value);
+                }
+                return numberFormat.format(new BigDecimal(textValue));
+            default:
+                break;
+        }
+
+        return dataFormatter.formatRawCellContents(value, compiled.formatIndex,
+                                                   compiled.formatString, use1904Windowing);
+    }
+
+    /**
+     * Formatiert einen Rohwert ohne Zellobjekt, z.B. im Streaming-Modus.
+     * Die Formate werden dabei vom internen DataFormatter pro Formatstring
+     * zwischengespeichert.
+     *
+     * @param value Numerischer Wert
+     * @param formatIndex Index des Zahlenformats
+     * @param formatString Zahlenformat oder null für "General"
+     * @return Formatierter Text
+     */
+    String formatRaw(double value, int formatIndex, String formatString) {
+        if (formatString == null || formatString.trim().isEmpty()) {
+            formatString = "General";
+        }
+        return dataFormatter.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+    }
+
+    /**
+     * Gibt die Anzahl der bisher kompilierten Zahlenformate zurück
+     */
+    int getCompiledFormatCount() {
+        return compiledFormats.size();
+    }
+
+    private CompiledFormat compile(short formatIndex, String formatString) {
+        if (formatString == null || formatString.trim().isEmpty()) {
+            formatString = "General";
+        }
+
+        Kind kind;
+        if (isMultiSectionFormat(formatString)) {
+            kind = Kind.DELEGATE;
+        } else if (DateUtil.isADateFormat(formatIndex, formatString)) {
+            kind = Kind.DATE;
+        } else {
+            kind = Kind.NUMBER;
+        }
+        return new CompiledFormat(kind, formatIndex, formatString);
+    }
+
+    /**
+     * Erzeugt den Formatter beim ersten Gebrauch. DataFormatter benötigt dazu
+     * eine Zelle mit gültigem Wert, daher wird erst hier kompiliert.
+     */
+    private Format resolveFormat(CompiledFormat compiled, Cell cell) {
+        if (compiled.format == null) {
+            try {
+                compiled.format = dataFormatter.createFormat(cell);
+            } catch (RuntimeException e) {
+                // z.B. Formelzelle ohne numerisches Ergebnis: diesmal delegieren
+                return null;
+            }
+            if (compiled.format == null) {
+                compiled.format = dataFormatter.getDefaultFormat(cell);
+            }
+        }
+        return compiled.format;
+    }
+
+    /**
+     * Formate mit mehreren Abschnitten (positiv;negativ;null) oder Bedingungen
+     * sind wertabhängig und werden von DataFormatter selbst behandelt.
+     */
+    private static boolean isMultiSectionFormat(String formatString) {
+        return formatString.indexOf(';') >= 0
+                || formatString.contains("[<") || formatString.contains("[>") || formatString.contains("[=");
+    }
+}
@@ -1,33 +1,55 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.AtomicOutputFile;
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
+import ch.std.doc.converter.core.FormulaStrategy;
+import ch.std.doc.converter.core.PdfOutputProfile;
+import ch.std.doc.converter.core.SharedStringsStorage;
+import ch.std.doc.converter.core.SheetFragmentCache;
 
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.*;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.ss.usermodel.DateUtil;
+import com.itextpdf.io.source.FileChannelRandomAccessSource;
 import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.ReaderProperties;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
 import com.itextpdf.layout.element.Cell;
-import com.itextpdf.layout.element.AreaBreak;
 import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
-import com.itextpdf.layout.properties.AreaBreakType;
 import com.itextpdf.kernel.colors.DeviceRgb;
 import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.events.PdfDocumentEvent;
 import com.itextpdf.kernel.events.IEventHandler;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
 import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.io.font.constants.StandardFonts;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Spezialisierter Konverter für Excel-Dateien zu PDF
@@ -36,18 +58,45 @@ public class ExcelToPdfConverter extends DocumentConverter {
     
     private static final String[] SUPPORTED_EXTENSIONS = {".xlsx", ".xls"};
     private static final String CONVERTER_NAME = "Excel-Konverter";
+    private static final String WARN_FONT = "excel.font";
     
     @Override
-    public void convertToPdf(String inputFile, String outputFile) throws IOException {
+    public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options) throws IOException {
         validateFiles(inputFile, outputFile);
-        logConversion(inputFile, outputFile);
+        ConversionDiagnostics diagnostics = createDiagnostics(options);
+        logConversion(inputFile, outputFile, diagnostics);
         
-        if (inputFile.toLowerCase().endsWith(".xlsx")) {
-            convertXlsxToPdf(inputFile, outputFile);
-        } else if (inputFile.toLowerCase().endsWith(".xls")) {
+        if (options == null) {
+            options = new ConversionOptions();
+        }
+        
+        if (inputFile.toLowerCase().endsWith(".xls")) {
             // TODO: Implementierung für .xls Dateien
             throw new UnsupportedOperationException("XLS-Format wird noch nicht unterstützt");
         }
+        
+        List<String> parts = convertXlsxToPdf(new ConversionContext(inputFile, outputFile, options, diagnostics));
+        if (options.isSplitOutput()) {
+            return new ConversionResult(inputFile, PdfPartWriter.getIndexFile(outputFile), parts, diagnostics);
+        }
+        return new ConversionResult(inputFile, outputFile, diagnostics);
+    }
+    
+    @Override
+    protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                             ConversionDiagnostics diagnostics) throws IOException {
+        if (!inputFile.toLowerCase().endsWith(".xlsx")) {
+            throw new UnsupportedOperationException("XLS-Format wird noch nicht unterstützt");
+        }
+        
+        OPCPackage pkg = InputFiles.openPackage(inputFile, PackageAccess.READ);
+        try {
+            XlsxSheetSelection selection = XlsxSheetSelection.resolve(pkg, options);
+            new XlsxTextWriter(pkg, selection, options.getSharedStringsStorage())
+                    .write(new TextOutput(out, options.getTextFormat()));
+        } finally {
+            pkg.revert();
+        }
     }
     
     @Override
@@ -68,86 +117,385 @@ public class ExcelToPdfConverter extends DocumentConverter {
     }
     
     /**
-     * Event Handler für Seitenzahlen
+     * Event Handler für Seitenzahlen.
+     * 
+     * Wird beim Anlegen des Dokuments registriert, damit auch Seiten, die das
+     * Layout grosser Tabellen vorzeitig schreibt, eine Seitenzahl erhalten. Die
+     * Gesamtzahl ist dann noch unbekannt; jede Seite verweist deshalb auf ein
+     * gemeinsames XObject, das {@link #writeTotalPages} vor dem Schliessen füllt.
      */
     private static class ExcelPageNumberEventHandler implements IEventHandler {
         private PdfFont font;
-        private int totalPages;
+        private final PdfFormXObject totalPages;
         
-        public ExcelPageNumberEventHandler(int totalPages) {
-            this.totalPages = totalPages;
+        public ExcelPageNumberEventHandler(ConversionContext context) {
+            this.totalPages = new PdfFormXObject(new Rectangle(0, -3, 60, 15));
             try {
-                this.font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+                this.font = PdfOutput.createFont(StandardFonts.HELVETICA, context.getPdfOutputProfile());
             } catch (Exception e) {
-                System.err.println("Fehler beim Laden der Schriftart: " + e.getMessage());
+                context.getDiagnostics().warn(WARN_FONT, "Fehler beim Laden der Schriftart: " + e.getMessage());
             }
         }
         
         @Override
         public void handleEvent(com.itextpdf.kernel.events.Event event) {
             PdfDocumentEvent docEvent = (PdfDocumentEvent) event;
-            PdfCanvas canvas = new PdfCanvas(docEvent.getPage());
-            Rectangle pageSize = docEvent.getPage().getPageSize();
-            
-            if (font != null) {
-                int pageNumber = docEvent.getDocument().getPageNumber(docEvent.getPage());
-                String pageText = "Seite " + pageNumber + " von " + totalPages;
-                
-                float x = pageSize.getWidth() / 2;
-                float y = 20;
-                float textWidth = pageText.length() * 3.0f;
-                
-                canvas.beginText()
-                      .setFontAndSize(font, 9)
-                      .moveText(x - (textWidth / 2), y)
-                      .showText(pageText)
-                      .endText();
+            PdfPage page = docEvent.getPage();
+            int pageNumber = docEvent.getDocument().getPageNumber(page);
+            if (font == null) {
+                return;
             }
             
+            // Wie addPageNumber zentriert, mit gleich vielen Stellen für die Gesamtzahl
+            String pageText = "Seite " + pageNumber + " von ";
+            float textWidth = (pageText.length() + String.valueOf(pageNumber).length()) * 3.0f;
+            float x = page.getPageSize().getWidth() / 2 - textWidth / 2;
+            float y = 20;
+            
+            PdfCanvas canvas = new PdfCanvas(page);
+            canvas.beginText()
+                  .setFontAndSize(font, 9)
+                  .moveText(x, y)
+                  .showText(pageText)
+                  .endText();
+            // Ursprung des XObjects auf die Grundlinie, nicht die Ecke der Bounding Box
+            canvas.addXObjectWithTransformationMatrix(totalPages, 1, 0, 0, 1, x + font.getWidth(pageText, 9), y);
+            canvas.release();
+        }
+        
+        /**
+         * Schreibt die Seitenzahl des Dokuments in alle bisher nummerierten Seiten
+         */
+        void writeTotalPages(PdfDocument pdfDoc) {
+            if (font == null) {
+                return;
+            }
+            PdfCanvas canvas = new PdfCanvas(totalPages, pdfDoc);
+            canvas.beginText()
+                  .setFontAndSize(font, 9)
+                  .moveText(0, 0)
+                  .showText(String.valueOf(pdfDoc.getNumberOfPages()))
+                  .endText();
             canvas.release();
         }
     }
     
-    private void convertXlsxToPdf(String inputFile, String outputFile) throws IOException {
-        try (FileInputStream fis = new FileInputStream(inputFile);
-             XSSFWorkbook workbook = new XSSFWorkbook(fis);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+    /**
+     * Schreibt "Seite X von Y" unten in die Mitte einer Seite
+     * 
+     * @param font Schrift oder null, wenn sie nicht geladen werden konnte
+     */
+    private static void addPageNumber(PdfPage page, int pageNumber, int totalPages, PdfFont font) {
+        PdfCanvas canvas = new PdfCanvas(page);
+        Rectangle pageSize = page.getPageSize();
+        
+        if (font != null) {
+            String pageText = "Seite " + pageNumber + " von " + totalPages;
             
-            PdfWriter writer = new PdfWriter(fos);
-            PdfDocument pdfDoc = new PdfDocument(writer);
-            Document doc = new Document(pdfDoc, PageSize.A4.rotate()); // Querformat für Excel
+            float x = pageSize.getWidth() / 2;
+            float y = 20;
+            float textWidth = pageText.length() * 3.0f;
             
-            doc.setMargins(36, 36, 72, 36);
+            canvas.beginText()
+                  .setFontAndSize(font, 9)
+                  .moveText(x - (textWidth / 2), y)
+                  .showText(pageText)
+                  .endText();
+        }
+        
+        canvas.release();
+    }
+    
+    private List<String> convertXlsxToPdf(ConversionContext context) throws IOException {
+        ConversionOptions options = context.getOptions();
+        // Neuberechnete Formeln können von anderen Blättern abhängen
+        if (options.getSheetFragmentCache() != null && !options.isSplitOutput()
+                && options.getFormulaStrategy() == FormulaStrategy.CACHED) {
+            return convertWithFragmentCache(context);
+        }
+        
+        if (options.getSharedStringsStorage() == SharedStringsStorage.MEMORY_MAPPED) {
+            return convertXlsxStreaming(context);
+        }
+        
+        if (options.hasSheetSelection()) {
+            return convertSelectedSheetsToPdf(context);
+        }
+        
+        // Schreibbar geöffnet, damit POI fehlende Teile (z.B. Shared Strings) im
+        // Speicher ergänzen kann; das Paket wird nie gespeichert
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), PackageAccess.READ_WRITE);
+        try {
+            XSSFWorkbook workbook = new XSSFWorkbook(pkg);
+            return renderWorkbook(workbook, context, null);
+        } finally {
+            pkg.revert();
+        }
+    }
+    
+    /**
+     * Konvertiert nur die ausgewählten Blätter. Nicht ausgewählte Blätter
+     * werden aus dem Paket ausgeblendet und deshalb nie geparst.
+     */
+    private List<String> convertSelectedSheetsToPdf(ConversionContext context) throws IOException {
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), PackageAccess.READ_WRITE);
+        
+        try {
+            XlsxSheetSelection selection = XlsxSheetSelection.resolve(pkg, context.getOptions());
+            selection.removeUnselectedSheets(pkg);
             
-            // Alle Worksheets verarbeiten
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                XSSFSheet sheet = workbook.getSheetAt(i);
-                
-                if (i > 0) {
-                    doc.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+            XSSFWorkbook workbook = new XSSFWorkbook(pkg);
+            return renderWorkbook(workbook, context, selection);
+        } finally {
+            // Nie speichern: die entfernten Beziehungen dürfen nicht in die Datei gelangen
+            pkg.revert();
+        }
+    }
+    
+    /**
+     * Streaming-Konvertierung mit gemappten Shared Strings für sehr grosse
+     * Arbeitsmappen. Formeln werden mit ihren gespeicherten Ergebnissen dargestellt.
+     */
+    private List<String> convertXlsxStreaming(ConversionContext context) throws IOException {
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), PackageAccess.READ);
+        
+        try {
+            XlsxSheetSelection selection = XlsxSheetSelection.resolve(pkg, context.getOptions());
+            XlsxStreamingRenderer renderer = new XlsxStreamingRenderer(pkg, selection,
+                                                                       context.getOptions().getPipelineQueueSize());
+            return writePdf(context.getOutputFile(), renderer::render, context, true);
+        } finally {
+            pkg.revert();
+        }
+    }
+    
+    /**
+     * Rendert nur Blätter, deren Fingerabdruck sich geändert hat, in neue
+     * Fragmente und fügt sie mit den gecachten Fragmenten der übrigen Blätter
+     * zusammen. Ein Blatt beginnt auch in der vollständigen Konvertierung auf
+     * einer neuen Seite; die Seiten sind deshalb dieselben.
+     */
+    private List<String> convertWithFragmentCache(ConversionContext context) throws IOException {
+        ConversionOptions options = context.getOptions();
+        SheetFragmentCache cache = options.getSheetFragmentCache();
+        boolean streaming = options.getSharedStringsStorage() == SharedStringsStorage.MEMORY_MAPPED;
+        OPCPackage pkg = InputFiles.openPackage(context.getInputFile(), streaming ? PackageAccess.READ : PackageAccess.READ_WRITE);
+        Map<String, FileChannel> fragments = new LinkedHashMap<>();
+        
+        try {
+            XlsxSheetSelection selection = XlsxSheetSelection.resolve(pkg, options);
+            Map<String, String> keys = new LinkedHashMap<>();
+            for (Map.Entry<String, byte[]> fingerprint : XlsxSheetFingerprints.compute(pkg, selection).entrySet()) {
+                keys.put(fingerprint.getKey(), cache.createKey(this, options, fingerprint.getValue()));
+            }
+            
+            // Gecachte Fragmente gleich öffnen, damit sie beim Zusammenfügen noch lesbar sind
+            Set<String> changedSheets = new LinkedHashSet<>();
+            for (Map.Entry<String, String> key : keys.entrySet()) {
+                FileChannel fragment = cache.open(key.getValue());
+                fragments.put(key.getKey(), fragment);
+                if (fragment == null) {
+                    changedSheets.add(key.getKey());
+                }
+            }
+            
+            if (!changedSheets.isEmpty()) {
+                XlsxSheetSelection changed = selection.restrictTo(changedSheets);
+                XSSFWorkbook workbook = null;
+                if (!streaming) {
+                    changed.removeUnselectedSheets(pkg);
+                    workbook = new XSSFWorkbook(pkg);
+                }
+                for (String sheetName : changedSheets) {
+                    XlsxSheetSelection sheet = changed.restrictTo(Set.of(sheetName));
+                    XSSFWorkbook sheetWorkbook = workbook;
+                    PdfContent content = streaming
+                            ? new XlsxStreamingRenderer(pkg, sheet, options.getPipelineQueueSize())::render
+                            : parts -> renderSheets(sheetWorkbook, parts, sheet);
+                    String fragmentFile = cache.getFragmentFile(keys.get(sheetName));
+                    writePdf(fragmentFile, content, context, false);
+                    
+                    // Vor dem Übernehmen öffnen: ein zu grosses Fragment wird sofort verdrängt
+                    fragments.put(sheetName, FileChannel.open(Path.of(fragmentFile), StandardOpenOption.READ));
+                    cache.add(keys.get(sheetName));
+                }
+            }
+            context.getDiagnostics().info(String.format("[%s] %d von %d Arbeitsblättern neu gerendert",
+                                                        CONVERTER_NAME, changedSheets.size(), keys.size()));
+            
+            mergeFragments(fragments.values(), context);
+            return List.of(context.getOutputFile());
+        } finally {
+            for (FileChannel fragment : fragments.values()) {
+                if (fragment != null) {
+                    fragment.close();
+                }
+            }
+            // Nie speichern: die entfernten Beziehungen dürfen nicht in die Datei gelangen
+            pkg.revert();
+        }
+    }
+    
+    /**
+     * Fügt die Seiten der Fragmente in ihrer Reihenfolge zusammen und nummeriert sie durch
+     */
+    private void mergeFragments(Collection<FileChannel> fragments, ConversionContext context) throws IOException {
+        PdfOutputProfile profile = context.getPdfOutputProfile();
+        List<PdfDocument> sources = new ArrayList<>();
+        
+        try (AtomicOutputFile output = AtomicOutputFile.create(context.getOutputFile(),
+                                                               context.getOptions().isDurableOutput())) {
+            PdfDocument pdfDoc = new PdfDocument(PdfOutput.createWriter(output.getOutputStream(), profile));
+            try {
+                int totalPages = 0;
+                for (FileChannel fragment : fragments) {
+                    PdfReader reader = new PdfReader(new FileChannelRandomAccessSource(fragment), new ReaderProperties());
+                    PdfDocument source = new PdfDocument(reader);
+                    sources.add(source);
+                    totalPages += source.getNumberOfPages();
                 }
                 
-                // Worksheet-Titel
-                Paragraph sheetTitle = new Paragraph(sheet.getSheetName())
-                        .setFontSize(16)
-                        .setBold()
-                        .setMarginBottom(15);
-                doc.add(sheetTitle);
+                PdfFont font = null;
+                try {
+                    font = PdfOutput.createFont(StandardFonts.HELVETICA, profile);
+                } catch (Exception e) {
+                    context.getDiagnostics().warn(WARN_FONT, "Fehler beim Laden der Schriftart: " + e.getMessage());
+                }
                 
-                processExcelSheet(sheet, doc);
+                // Seiten jedes Fragments gleich nummerieren und schreiben
+                for (PdfDocument source : sources) {
+                    int firstPage = pdfDoc.getNumberOfPages() + 1;
+                    source.copyPagesTo(1, source.getNumberOfPages(), pdfDoc);
+                    for (int pageNumber = firstPage; pageNumber <= pdfDoc.getNumberOfPages(); pageNumber++) {
+                        PdfPage page = pdfDoc.getPage(pageNumber);
+                        addPageNumber(page, pageNumber, totalPages, font);
+                        page.flush();
+                    }
+                }
+            } finally {
+                for (PdfDocument source : sources) {
+                    source.close();
+                }
+            }
+            pdfDoc.close();
+            output.commit();
+        }
+    }
+    
+    private List<String> renderWorkbook(XSSFWorkbook workbook, ConversionContext context,
+                                        XlsxSheetSelection selection) throws IOException {
+        // Bei Neuberechnung landen die Ergebnisse als gespeicherte Werte in den Zellen
+        ConversionOptions options = context.getOptions();
+        if (options.getFormulaStrategy() == FormulaStrategy.RECALCULATE) {
+            new FormulaRecalculator(workbook).recalculate(options.isParallelRecalculation());
+        }
+        
+        return writePdf(context.getOutputFile(), parts -> renderSheets(workbook, parts, selection), context, true);
+    }
+    
+    /**
+     * Inhalt, der in die vorbereiteten PDF-Dokumente gerendert wird
+     */
+    @FunctionalInterface
+    private interface PdfContent {
+        void render(PdfPartWriter parts) throws IOException;
+    }
+    
+    /**
+     * Erstellt das PDF im Querformat, bei gesetzter Grenze aufgeteilt in
+     * mehrere Dateien, und fügt nach dem Inhalt die Seitenzahlen hinzu
+     * 
+     * @param pageNumbers false für Fragmente, die erst beim Zusammenfügen nummeriert werden
+     * @return Pfade der geschriebenen PDF-Dateien
+     */
+    private List<String> writePdf(String outputFile, PdfContent content, ConversionContext context,
+                                  boolean pageNumbers) throws IOException {
+        PdfPartWriter.Layout layout = new PdfPartWriter.Layout() {
+            private ExcelPageNumberEventHandler pageNumberHandler;
+            
+            @Override
+            public Document createDocument(PdfDocument pdfDoc) {
+                // Seitenzahlen pro Teil; vor dem Inhalt registrieren, damit jede geschriebene Seite nummeriert wird
+                if (pageNumbers) {
+                    pageNumberHandler = new ExcelPageNumberEventHandler(context);
+                    pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, pageNumberHandler);
+                }
+                Document doc = new Document(pdfDoc, PageSize.A4.rotate()); // Querformat für Excel
+                doc.setMargins(36, 36, 72, 36);
+                return doc;
+            }
+            
+            @Override
+            public void finishDocument(PdfDocument pdfDoc) {
+                if (pageNumberHandler != null) {
+                    pageNumberHandler.writeTotalPages(pdfDoc);
+                    pageNumberHandler = null;
+                }
+            }
+        };
+        
+        try (PdfPartWriter parts = new PdfPartWriter(outputFile, context.getOptions(), layout)) {
+            content.render(parts);
+            return parts.finish();
+        }
+    }
+    
+    private void renderSheets(XSSFWorkbook workbook, PdfPartWriter parts, XlsxSheetSelection selection)
+            throws IOException {
+        // Zahlenformate werden pro Arbeitsmappe nur einmal kompiliert
+        ExcelCellFormatter cellFormatter = new ExcelCellFormatter(Locale.getDefault(), workbook.isDate1904());
+        
+        // Alle (ausgewählten) Worksheets verarbeiten
+        boolean firstSheet = true;
+        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+            XSSFSheet sheet = workbook.getSheetAt(i);
+            if (selection != null && !selection.isSelected(sheet.getSheetName())) {
+                continue;
             }
             
-            // Seitenzahlen hinzufügen
-            int totalPages = pdfDoc.getNumberOfPages();
-            if (totalPages > 0) {
-                pdfDoc.addEventHandler(PdfDocumentEvent.END_PAGE, new ExcelPageNumberEventHandler(totalPages));
+            if (!firstSheet) {
+                parts.newPage();
             }
+            firstSheet = false;
             
-            doc.close();
+            // Worksheet-Titel
+            parts.getDocument().add(createSheetTitle(sheet.getSheetName()));
+            
+            List<CellRangeAddress> ranges = selection != null
+                    ? selection.getRanges(sheet.getSheetName())
+                    : Collections.emptyList();
+            if (ranges.isEmpty()) {
+                processExcelSheet(sheet, parts, cellFormatter, null);
+            } else {
+                for (CellRangeAddress range : ranges) {
+                    processExcelSheet(sheet, parts, cellFormatter, range);
+                }
+            }
         }
     }
     
-    private void processExcelSheet(XSSFSheet sheet, Document doc) {
+    static Paragraph createSheetTitle(String sheetName) {
+        return new Paragraph(sheetName)
+                .setFontSize(16)
+                .setBold()
+                .setMarginBottom(15);
+    }
+    
+    /**
+     * Titel am Anfang eines neuen Teils, wenn ein Blatt über mehrere Teile geht
+     */
+    static Paragraph createContinuationTitle(String sheetName) {
+        return createSheetTitle(sheetName + " (Fortsetzung)");
+    }
+    
+    /**
+     * Rendert ein Arbeitsblatt als Tabelle
+     * 
+     * @param range Zu rendernder Zellbereich oder null für das ganze Blatt
+     */
+    private void processExcelSheet(XSSFSheet sheet, PdfPartWriter parts, ExcelCellFormatter cellFormatter,
+                                   CellRangeAddress range) throws IOException {
+        Document doc = parts.getDocument();
         if (sheet.getPhysicalNumberOfRows() == 0) {
             doc.add(new Paragraph("(Leeres Arbeitsblatt)").setItalic());
             return;
@@ -155,6 +503,10 @@ public class ExcelToPdfConverter extends DocumentConverter {
         
         int firstRowNum = sheet.getFirstRowNum();
         int lastRowNum = sheet.getLastRowNum();
+        if (range != null) {
+            firstRowNum = Math.max(firstRowNum, range.getFirstRow());
+            lastRowNum = Math.min(lastRowNum, range.getLastRow());
+        }
         int maxCols = 0;
         
         // Finde die maximale Spaltenanzahl
@@ -165,34 +517,96 @@ public class ExcelToPdfConverter extends DocumentConverter {
             }
         }
         
-        if (maxCols == 0) {
+        int firstColNum = 0;
+        int lastColNum = maxCols - 1;
+        if (range != null) {
+            firstColNum = range.getFirstColumn();
+            lastColNum = Math.min(lastColNum, range.getLastColumn());
+        }
+        int numCols = lastColNum - firstColNum + 1;
+        
+        if (numCols <= 0) {
             doc.add(new Paragraph("(Keine Daten gefunden)").setItalic());
             return;
         }
         
-        // PDF-Tabelle erstellen
-        Table pdfTable = new Table(UnitValue.createPercentArray(maxCols))
-                .useAllAvailableWidth()
-                .setMarginBottom(20);
+        // PDF-Tabelle erstellen; bei aufgeteilter Ausgabe zeilenweise geschrieben,
+        // damit zwischen zwei Zeilen ein neuer Teil beginnen kann
+        boolean splitting = parts.isSplitting();
+        Table pdfTable = createTable(numCols, splitting);
+        if (splitting) {
+            doc.add(pdfTable);
+        }
+        
+        // Verbundene Zellen einmal indexieren statt pro Zelle alle Bereiche zu durchsuchen
+        MergedRegionIndex mergedRegions = MergedRegionIndex.create(sheet.getMergedRegions(),
+                new CellRangeAddress(firstRowNum, lastRowNum, firstColNum, lastColNum));
         
         // Zeilen verarbeiten
         for (int rowNum = firstRowNum; rowNum <= lastRowNum; rowNum++) {
             Row row = sheet.getRow(rowNum);
             
-            for (int colNum = 0; colNum < maxCols; colNum++) {
+            for (int colNum = firstColNum; colNum <= lastColNum; colNum++) {
+                // Von einem verbundenen Bereich überdeckte Zellen belegt iText über den Span
+                if (mergedRegions.isCovered(rowNum, colNum)) {
+                    continue;
+                }
+                
                 org.apache.poi.ss.usermodel.Cell excelCell = (row != null) ? row.getCell(colNum) : null;
-                String cellText = getExcelCellText(excelCell);
+                String cellText = getExcelCellText(excelCell, cellFormatter);
                 
-                Cell pdfCell = new Cell().add(new Paragraph(cellText));
+                CellRangeAddress region = mergedRegions.getRegionStartingAt(rowNum, colNum);
+                Cell pdfCell = region != null
+                        ? new Cell(region.getLastRow() - region.getFirstRow() + 1,
+                                   region.getLastColumn() - region.getFirstColumn() + 1)
+                        : new Cell();
+                pdfCell.add(new Paragraph(cellText));
                 formatExcelCell(excelCell, pdfCell, rowNum == firstRowNum);
                 pdfTable.addCell(pdfCell);
             }
+            
+            // Nicht innerhalb eines verbundenen Bereichs teilen
+            if (splitting) {
+                pdfTable.flush();
+                if (rowNum < lastRowNum && !mergedRegions.coversRow(rowNum + 1) && parts.isPartFull()) {
+                    pdfTable.complete();
+                    doc = parts.nextPart();
+                    doc.add(createContinuationTitle(sheet.getSheetName()));
+                    pdfTable = createTable(numCols, true);
+                    doc.add(pdfTable);
+                    addHeaderRow(pdfTable, sheet.getRow(firstRowNum), firstColNum, lastColNum, cellFormatter);
+                }
+            }
         }
         
-        doc.add(pdfTable);
+        if (splitting) {
+            pdfTable.complete();
+        } else {
+            doc.add(pdfTable);
+        }
+    }
+    
+    static Table createTable(int numCols, boolean largeTable) {
+        return new Table(UnitValue.createPercentArray(numCols), largeTable)
+                .useAllAvailableWidth()
+                .setMarginBottom(20);
+    }
+    
+    /**
+     * Wiederholt die Kopfzeile am Anfang eines neuen Teils. Verbundene Zellen
+     * werden dabei als einzelne Zellen dargestellt.
+     */
+    private void addHeaderRow(Table pdfTable, Row headerRow, int firstColNum, int lastColNum,
+                              ExcelCellFormatter cellFormatter) {
+        for (int colNum = firstColNum; colNum <= lastColNum; colNum++) {
+            org.apache.poi.ss.usermodel.Cell excelCell = (headerRow != null) ? headerRow.getCell(colNum) : null;
+            Cell pdfCell = new Cell().add(new Paragraph(getExcelCellText(excelCell, cellFormatter)));
+            formatExcelCell(excelCell, pdfCell, true);
+            pdfTable.addCell(pdfCell);
+        }
     }
     
-    private String getExcelCellText(org.apache.poi.ss.usermodel.Cell cell) {
+    private String getExcelCellText(org.apache.poi.ss.usermodel.Cell cell, ExcelCellFormatter cellFormatter) {
         if (cell == null) {
             return "";
         }
@@ -201,34 +615,53 @@ public class ExcelToPdfConverter extends DocumentConverter {
             case STRING:
                 return cell.getStringCellValue();
             case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    double numValue = cell.getNumericCellValue();
-                    if (numValue == Math.floor(numValue)) {
-                        return String.valueOf((long) numValue);
-                    } else {
-                        return String.format("%.2f", numValue);
-                    }
-                }
+                // Datum, Währung, Prozent etc. gemäss Zahlenformat der Zelle
+                return cellFormatter.formatNumeric(cell, cell.getNumericCellValue());
             case BOOLEAN:
                 return String.valueOf(cell.getBooleanCellValue());
             case FORMULA:
-                try {
-                    return String.valueOf(cell.getNumericCellValue());
-                } catch (Exception e) {
-                    try {
-                        return cell.getStringCellValue();
-                    } catch (Exception e2) {
-                        return cell.getCellFormula();
-                    }
-                }
+                return getFormulaResultText(cell, cellFormatter);
             default:
                 return "";
         }
     }
     
+    /**
+     * Liest das gespeicherte Formelergebnis anhand seines Typs, ohne Exceptions
+     * als Kontrollfluss zu verwenden
+     */
+    private String getFormulaResultText(org.apache.poi.ss.usermodel.Cell cell, ExcelCellFormatter cellFormatter) {
+        // Formel wurde nie berechnet (kein gespeicherter Wert): Formel anzeigen
+        if (cell instanceof XSSFCell && !((XSSFCell) cell).getCTCell().isSetV()) {
+            return cell.getCellFormula();
+        }
+        
+        switch (cell.getCachedFormulaResultType()) {
+            case NUMERIC:
+                return cellFormatter.formatNumeric(cell, cell.getNumericCellValue());
+            case STRING:
+                return cell.getStringCellValue();
+            case BOOLEAN:
+                return String.valueOf(cell.getBooleanCellValue());
+            case ERROR:
+                return FormulaError.forInt(cell.getErrorCellValue()).getString();
+            default:
+                return cell.getCellFormula();
+        }
+    }
+    
     private void formatExcelCell(org.apache.poi.ss.usermodel.Cell excelCell, Cell pdfCell, boolean isHeaderRow) {
+        applyCellStyle(pdfCell, excelCell != null ? excelCell.getCellStyle() : null, isHeaderRow);
+    }
+    
+    /**
+     * Überträgt Ausrichtung und Schriftstil einer Excel-Zelle auf eine PDF-Zelle
+     * 
+     * @param pdfCell Zu formatierende PDF-Zelle
+     * @param cellStyle Stil der Excel-Zelle oder null für leere Zellen
+     * @param isHeaderRow true für die Kopfzeile
+     */
+    static void applyCellStyle(Cell pdfCell, CellStyle cellStyle, boolean isHeaderRow) {
         pdfCell.setPadding(6);
         pdfCell.setBorder(new com.itextpdf.layout.borders.SolidBorder(0.5f));
         
@@ -238,9 +671,7 @@ public class ExcelToPdfConverter extends DocumentConverter {
             pdfCell.setBold();
         }
         
-        if (excelCell != null) {
-            CellStyle cellStyle = excelCell.getCellStyle();
-            
+        if (cellStyle != null) {
             // Textausrichtung
             HorizontalAlignment alignment = cellStyle.getAlignment();
             switch (alignment) {
@@ -257,12 +688,14 @@ public class ExcelToPdfConverter extends DocumentConverter {
             
             // Schriftformatierung
             try {
-                Font font = excelCell.getSheet().getWorkbook().getFontAt(cellStyle.getFontIndex());
-                if (font.getBold()) {
-                    pdfCell.setBold();
-                }
-                if (font.getItalic()) {
-                    pdfCell.setItalic();
+                if (cellStyle instanceof XSSFCellStyle) {
+                    XSSFFont font = ((XSSFCellStyle) cellStyle).getFont();
+                    if (font.getBold()) {
+                        pdfCell.setBold();
+                    }
+                    if (font.getItalic()) {
+                        pdfCell.setItalic();
+                    }
                 }
             } catch (Exception e) {
                 // Ignoriere Formatierungsfehler
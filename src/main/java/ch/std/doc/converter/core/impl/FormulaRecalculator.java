@@ -0,0 +1,154 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.formula.ExternSheetReferenceToken;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Berechnet die Formeln einer Arbeitsmappe vor dem Rendern neu.
+ *
+ * Die Ergebnisse werden als gespeicherte Formelergebnisse in die Zellen
+ * geschrieben, sodass der Renderer danach immer nur gespeicherte Werte liest.
+ * Alle Blätter teilen sich einen FormulaEvaluator und damit dessen
+ * Evaluationscache. Im parallelen Modus werden Blätter ohne Bezüge auf andere
+ * Blätter gleichzeitig berechnet, jedes mit einem eigenen Evaluator, da
+ * FormulaEvaluator nicht thread-sicher ist.
+ */
+final class FormulaRecalculator {
+
+    private final XSSFWorkbook workbook;
+
+    FormulaRecalculator(XSSFWorkbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * Berechnet alle Formelzellen der Arbeitsmappe neu
+     *
+     * @param parallel true um unabhängige Blätter parallel zu berechnen
+     */
+    void recalculate(boolean parallel) {
+        List<XSSFSheet> sheets = new ArrayList<>();
+        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+            sheets.add(workbook.getSheetAt(i));
+        }
+
+        if (parallel && sheets.size() > 1) {
+            List<XSSFSheet> independentSheets = new ArrayList<>();
+            List<XSSFSheet> dependentSheets = new ArrayList<>();
+            for (XSSFSheet sheet : sheets) {
+                if (isIndependent(sheet)) {
+                    independentSheets.add(sheet);
+                } else {
+                    dependentSheets.add(sheet);
+                }
+            }
+            recalculateInParallel(independentSheets);
+            sheets = dependentSheets;
+        }
+
+        FormulaEvaluator evaluator = XSSFFormulaEvaluator.create(workbook, null, null);
+        for (XSSFSheet sheet : sheets) {
+            recalculateSheet(sheet, evaluator);
+        }
+    }
+
+    private void recalculateInParallel(List<XSSFSheet> sheets) {
+        if (sheets.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.min(sheets.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (XSSFSheet sheet : sheets) {
+                futures.add(executor.submit(() ->
+                        recalculateSheet(sheet, XSSFFormulaEvaluator.create(workbook, null, null))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Neuberechnung wurde unterbrochen", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fehler bei der parallelen Neuberechnung", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void recalculateSheet(XSSFSheet sheet, FormulaEvaluator evaluator) {
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                if (cell.getCellType() != CellType.FORMULA) {
+                    continue;
+                }
+                try {
+                    evaluator.evaluateFormulaCell(cell);
+                } catch (RuntimeException e) {
+                    // Nicht unterstützte Funktion o.ä.: gespeichertes Ergebnis behalten
+                }
+            }
+        }
+    }
+
+    /**
+     * Prüft ob die Formeln eines Blatts nur Zellen desselben Blatts referenzieren
+     */
+    private boolean isIndependent(XSSFSheet sheet) {
+        XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+        int sheetIndex = workbook.getSheetIndex(sheet);
+
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                if (cell.getCellType() != CellType.FORMULA) {
+                    continue;
+                }
+                try {
+                    Ptg[] ptgs = FormulaParser.parse(cell.getCellFormula(), evaluationWorkbook,
+                                                     FormulaType.CELL, sheetIndex, row.getRowNum());
+                    for (Ptg ptg : ptgs) {
+                        if (referencesOtherSheets(ptg)) {
+                            return false;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean referencesOtherSheets(Ptg ptg) {
+        if (ptg instanceof Pxg || ptg instanceof ExternSheetReferenceToken
+                || ptg instanceof NamePtg || ptg instanceof NameXPtg) {
+            return true;
+        }
+        // INDIRECT kann zur Laufzeit beliebige Blätter referenzieren
+        return ptg instanceof AbstractFunctionPtg
+                && "INDIRECT".equals(((AbstractFunctionPtg) ptg).getName());
+    }
+}
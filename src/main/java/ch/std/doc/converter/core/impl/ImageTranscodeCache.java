@@ -0,0 +1,271 @@
+package ch.std.doc.converter.core.impl;
+
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.io.image.PngImageData;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * JVM-weiter Cache für dekodierte und neu komprimierte Bilder.
+ *
+ * Logos und Briefkopfbilder kommen in fast jedem Dokument vor. PNG mit
+ * Transparenz, GIF und BMP dekodiert iText beim Einlesen zu Rohpixeln und
+ * komprimiert diese beim Schreiben jedes PDFs erneut mit Flate. Dieser Cache
+ * hält das Ergebnis beider Schritte, also die fertig komprimierten Bilddaten
+ * mit Farbraum und Maske, unter dem SHA-256 des Bildinhalts und der
+ * Kompressionsstufe des Ziel-PDFs. Bilder, die iText unverändert übernimmt
+ * (JPEG, PNG ohne Transparenz), werden nur mit ihren Kopfdaten gecacht.
+ *
+ * Die Grösse ist über die gespeicherten Bytes begrenzt; verdrängt wird der am
+ * längsten nicht verwendete Eintrag. Einträge werden nicht auf die Platte
+ * ausgelagert: die komprimierten Bilder sind klein und schnell neu erzeugt,
+ * und für {@link ImageData} gibt es kein stabiles Dateiformat.
+ * Die Klasse ist thread-sicher.
+ */
+final class ImageTranscodeCache {
+
+    /** Grenze des gemeinsamen Caches */
+    static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final ImageTranscodeCache SHARED = new ImageTranscodeCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    // Zugriffsreihenfolge: der älteste Eintrag wird zuerst verdrängt
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ImageTranscodeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache-Grösse muss positiv sein: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gibt den gemeinsamen Cache aller Konvertierungen dieser JVM zurück
+     */
+    static ImageTranscodeCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Erstellt ein Bild-XObject für das Ziel-PDF
+     *
+     * @param content Inhalt der Bilddatei
+     * @param target Dokument, in das das Bild geschrieben wird
+     * @return Neues XObject auf Basis der gecachten Bilddaten
+     * @throws RuntimeException wenn das Bildformat nicht unterstützt wird
+     */
+    PdfImageXObject createXObject(byte[] content, PdfDocument target) {
+        return createXObject(sha256(content), () -> content, target);
+    }
+
+    /**
+     * Erstellt ein Bild-XObject für das Ziel-PDF, wenn der Hash des Inhalts
+     * bereits bekannt ist. Der Inhalt wird nur bei einem Fehltreffer gelesen.
+     *
+     * @param contentHash SHA-256 des Bildinhalts als Hex-String
+     * @param content Liefert den Inhalt der Bilddatei
+     * @param target Dokument, in das das Bild geschrieben wird
+     * @return Neues XObject auf Basis der gecachten Bilddaten
+     * @throws RuntimeException wenn das Bildformat nicht unterstützt wird
+     */
+    PdfImageXObject createXObject(String contentHash, Supplier<byte[]> content, PdfDocument target) {
+        return createXObject(getImageData(contentHash, content, getCompressionLevel(target)));
+    }
+
+    /**
+     * Gibt die dekodierten und komprimierten Bilddaten zurück, ohne ein
+     * Ziel-PDF zu berühren. Kann deshalb auch ausserhalb des Layout-Threads
+     * aufgerufen werden.
+     *
+     * @param contentHash SHA-256 des Bildinhalts als Hex-String
+     * @param content Liefert den Inhalt der Bilddatei
+     * @param compressionLevel Kompressionsstufe des Ziel-PDFs
+     * @return Bilddaten, auch wenn sie zu gross für den Cache sind
+     * @throws RuntimeException wenn das Bildformat nicht unterstützt wird
+     */
+    ImageData getImageData(String contentHash, Supplier<byte[]> content, int compressionLevel) {
+        String key = contentHash + ":" + compressionLevel;
+
+        ImageData image = lookup(key);
+        if (image != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            image = transcode(ImageDataFactory.create(content.get()), compressionLevel);
+            store(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Erstellt ein XObject aus Bilddaten von {@link #getImageData}
+     */
+    static PdfImageXObject createXObject(ImageData image) {
+        // Beim Erstellen ergänzt iText die Attribute der Bilddaten und ihrer Maske
+        synchronized (image) {
+            return new PdfImageXObject(image);
+        }
+    }
+
+    /**
+     * Gibt die Anzahl der Treffer zurück
+     */
+    long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gibt die Anzahl der dekodierten Bilder zurück
+     */
+    long getMissCount() {
+        return misses.get();
+    }
+
+    synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    synchronized long getSize() {
+        return totalBytes;
+    }
+
+    /**
+     * Leert den Cache
+     */
+    synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 ist nicht verfügbar", e);
+        }
+    }
+
+    private synchronized ImageData lookup(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.image : null;
+    }
+
+    /**
+     * Speichert einen Eintrag und verdrängt die ältesten, bis die Grenze
+     * eingehalten ist. Ein Eintrag über der Grenze wird nicht gespeichert.
+     */
+    private synchronized void store(String key, ImageData image) {
+        long size = sizeOf(image);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(image, size));
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        totalBytes += size;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Komprimiert die Rohpixel eines dekodierten Bilds mit der Stufe des
+     * Ziel-PDFs. Bilder mit eigenem Filter bleiben, wie sie sind.
+     */
+    private static ImageData transcode(ImageData image, int compressionLevel) {
+        if (image.getFilter() != null || image.isDeflated() || image.getData() == null) {
+            return image;
+        }
+        // Palette, Gamma und Farbort leitet iText erst beim Schreiben aus den PNG-Daten ab
+        if (image instanceof PngImageData) {
+            PngImageData png = (PngImageData) image;
+            if (png.isIndexed() || png.getGamma() != 1f || png.isHasCHRM()) {
+                return image;
+            }
+        }
+
+        try {
+            ImageData compressed = ImageDataFactory.create((int) image.getWidth(), (int) image.getHeight(),
+                                                           image.getColorEncodingComponentsNumber(), image.getBpc(),
+                                                           deflate(image.getData(), compressionLevel),
+                                                           image.getTransparency());
+            compressed.setDeflated(true);
+            compressed.setImageAttributes(image.getImageAttributes());
+            compressed.setDecode(image.getDecode());
+            compressed.setProfile(image.getProfile());
+            compressed.setInverted(image.isInverted());
+            compressed.setDpi(image.getDpiX(), image.getDpiY());
+            compressed.setXYRatio(image.getXYRatio());
+            compressed.setInterpolation(image.isInterpolation());
+            if (image.isMask()) {
+                compressed.makeMask();
+            }
+            if (image.getImageMask() != null) {
+                compressed.setImageMask(transcode(image.getImageMask(), compressionLevel));
+            }
+            return compressed;
+        } catch (RuntimeException e) {
+            // Ungewöhnliche Kombination von Komponenten und Transparenz
+            return image;
+        }
+    }
+
+    private static byte[] deflate(byte[] data, int compressionLevel) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater)) {
+            stream.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    static int getCompressionLevel(PdfDocument target) {
+        PdfWriter writer = target != null ? target.getWriter() : null;
+        return writer != null ? writer.getCompressionLevel() : Deflater.DEFAULT_COMPRESSION;
+    }
+
+    static long sizeOf(ImageData image) {
+        long size = 256 + (image.getData() != null ? image.getData().length : 0);
+        if (image.getImageMask() != null) {
+            size += sizeOf(image.getImageMask());
+        }
+        return size;
+    }
+
+    private static final class Entry {
+        private final ImageData image;
+        private final long size;
+
+        Entry(ImageData image, long size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Öffnet Eingabedateien dateibasiert statt über einen InputStream.
+ *
+ * Über einen InputStream muss POI den ganzen ZIP- bzw. OLE2-Container in den
+ * Speicher laden. Dateibasiert liest POI ZIP-Einträge über das zentrale
+ * Verzeichnis nur bei Bedarf und OLE2-Sektoren seitenweise von der Platte.
+ */
+final class InputFiles {
+
+    private InputFiles() {
+    }
+
+    /**
+     * Öffnet ein OOXML-Paket (DOCX, XLSX) direkt aus der Datei
+     *
+     * @param inputFile Pfad der Eingabedatei
+     * @param access Zugriffsart; bei {@link PackageAccess#READ_WRITE} darf das
+     *               Paket nur mit {@link OPCPackage#revert()} geschlossen werden
+     * @return Geöffnetes Paket
+     * @throws IOException wenn die Datei fehlt oder kein gültiges Paket ist
+     */
+    static OPCPackage openPackage(String inputFile, PackageAccess access) throws IOException {
+        File file = requireFile(inputFile);
+        try {
+            return OPCPackage.open(file, access);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Ungültige OOXML-Datei: " + inputFile, e);
+        }
+    }
+
+    /**
+     * Öffnet einen OLE2-Container (DOC) direkt aus der Datei
+     *
+     * @param inputFile Pfad der Eingabedatei
+     * @param memoryMapped true um die Datei zu mappen. POI mappt nur Dateien,
+     *                     die schreibbar geöffnet sind; die Datei wird dabei
+     *                     nicht verändert, muss aber beschreibbar sein.
+     * @return Geöffnetes Dateisystem
+     * @throws IOException wenn die Datei fehlt oder kein OLE2-Container ist
+     */
+    static POIFSFileSystem openOle2(String inputFile, boolean memoryMapped) throws IOException {
+        return new POIFSFileSystem(requireFile(inputFile), !memoryMapped);
+    }
+
+    private static File requireFile(String inputFile) throws FileNotFoundException {
+        File file = new File(inputFile);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Eingabedatei nicht gefunden: " + inputFile);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,345 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared-Strings-Tabelle in memory-mapped Temporärdateien.
+ *
+ * Beim Aufbau wird sharedStrings.xml einmal per SAX gelesen. Jeder String wird
+ * UTF-8-kodiert in eine Datendatei geschrieben, sein Start-Offset in eine
+ * Indexdatei (8 Bytes pro Eintrag). Beide Dateien werden gemappt, sodass im
+ * Heap keine String-Objekte verbleiben; {@link #getItemAt(int)} dekodiert den
+ * gewünschten Eintrag bei Bedarf. OOXML-Escapes wie {@code _x000D_} werden wie
+ * in POIs Shared-Strings-Tabellen schon beim Aufbau aufgelöst.
+ *
+ * Die Dateien werden mit {@link #close()} gelöscht. Unter Windows scheitert das,
+ * solange die Abbildung besteht; solche Dateien versucht {@link #create} erneut
+ * zu löschen. Reste abgestürzter Prozesse werden beim ersten Aufbau im Prozess
+ * entfernt, sobald sie älter als {@link #STALE_AGE_MILLIS} sind.
+ */
+final class MappedSharedStrings implements SharedStrings, Closeable {
+
+    /** Grösse eines gemappten Abschnitts der Datendatei */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final String FILE_PREFIX = "docconverter-sst";
+
+    /** Alter, ab dem eine Temporärdatei nicht mehr zu einer laufenden Konvertierung gehört */
+    static final long STALE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Pattern ESCAPE = Pattern.compile("_x([0-9A-Fa-f]{4})_");
+    private static final Pattern ESCAPE_START = Pattern.compile("_(?=x[0-9A-Fa-f]{4}_)");
+
+    // Dateien, die beim Schliessen noch gesperrt waren
+    private static final Set<Path> PENDING_DELETES = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean STALE_FILES_SWEPT = new AtomicBoolean();
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final MappedByteBuffer[] dataSegments;
+    private final LongBuffer offsets;
+    private final int uniqueCount;
+    private final int count;
+
+    private MappedSharedStrings(Path dataFile, Path indexFile, int uniqueCount, int count) throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.uniqueCount = uniqueCount;
+        this.count = count;
+
+        try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ);
+             FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = data.size();
+            int segmentCount = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            this.dataSegments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long position = i * SEGMENT_SIZE;
+                dataSegments[i] = data.map(FileChannel.MapMode.READ_ONLY, position,
+                                           Math.min(SEGMENT_SIZE, size - position));
+            }
+            this.offsets = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size()).asLongBuffer();
+        }
+    }
+
+    /**
+     * Liest sharedStrings.xml und baut die gemappte Tabelle auf
+     *
+     * @param sharedStringsData Inhalt von sharedStrings.xml oder null wenn nicht vorhanden
+     * @return Gemappte Tabelle
+     * @throws IOException bei Lese- oder Schreibfehlern
+     */
+    static MappedSharedStrings create(InputStream sharedStringsData) throws IOException {
+        deletePendingFiles();
+        if (STALE_FILES_SWEPT.compareAndSet(false, true)) {
+            deleteStaleFiles(Path.of(System.getProperty("java.io.tmpdir")), STALE_AGE_MILLIS);
+        }
+
+        Path dataFile = Files.createTempFile(FILE_PREFIX, ".dat");
+        Path indexFile = Files.createTempFile(FILE_PREFIX, ".idx");
+        try {
+            IndexingHandler handler;
+            try (OutputStream data = new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16);
+                 DataOutputStream index = new DataOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+                handler = new IndexingHandler(data, index);
+                if (sharedStringsData != null) {
+                    XMLReader reader = XMLHelper.newXMLReader();
+                    reader.setContentHandler(handler);
+                    reader.parse(new InputSource(sharedStringsData));
+                }
+                // Abschliessender Offset, damit jeder Eintrag ein Ende hat
+                index.writeLong(handler.position);
+            }
+            int count = handler.count >= 0 ? handler.count : handler.uniqueCount;
+            return new MappedSharedStrings(dataFile, indexFile, handler.uniqueCount, count);
+        } catch (SAXException | ParserConfigurationException e) {
+            deleteQuietly(dataFile);
+            deleteQuietly(indexFile);
+            throw new IOException("Shared Strings konnten nicht gelesen werden: " + e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            deleteQuietly(dataFile);
+            deleteQuietly(indexFile);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(dataFile);
+            deleteQuietly(indexFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        // XSSFRichTextString löst Escapes beim Lesen auf; Unterstriche im Text deshalb wieder schützen
+        return new XSSFRichTextString(ESCAPE_START.matcher(getString(idx)).replaceAll("_x005F_"));
+    }
+
+    /**
+     * Gibt den Text eines Eintrags zurück, ohne ein Rich-Text-Objekt zu erstellen
+     *
+     * @param idx Index des Eintrags
+     * @return Text mit aufgelösten Escapes
+     */
+    String getString(int idx) {
+        if (idx < 0 || idx >= uniqueCount) {
+            throw new IndexOutOfBoundsException("Shared-String-Index ausserhalb des Bereichs: " + idx);
+        }
+        long start = offsets.get(idx);
+        int length = (int) (offsets.get(idx + 1) - start);
+        return new String(read(start, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Löst OOXML-Escapes der Form {@code _xHHHH_} auf, wie es POI beim Lesen von
+     * Zelltexten tut
+     *
+     * @param value Text aus der XML-Datei
+     * @return Text mit den kodierten Zeichen
+     */
+    static String decodeEscapes(String value) {
+        if (value.indexOf("_x") < 0) {
+            return value;
+        }
+        Matcher matcher = ESCAPE.matcher(value);
+        StringBuilder decoded = null;
+        int end = 0;
+        while (matcher.find()) {
+            if (decoded == null) {
+                decoded = new StringBuilder(value.length());
+            }
+            decoded.append(value, end, matcher.start())
+                   .append((char) Integer.parseInt(matcher.group(1), 16));
+            end = matcher.end();
+        }
+        if (decoded == null) {
+            return value;
+        }
+        return decoded.append(value, end, value.length()).toString();
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    @Override
+    public void close() {
+        deleteQuietly(dataFile);
+        deleteQuietly(indexFile);
+    }
+
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long current = position + copied;
+            MappedByteBuffer segment = dataSegments[(int) (current / SEGMENT_SIZE)];
+            int offsetInSegment = (int) (current % SEGMENT_SIZE);
+            int chunk = Math.min(length - copied, segment.capacity() - offsetInSegment);
+            segment.get(offsetInSegment, bytes, copied, chunk);
+            copied += chunk;
+        }
+        return bytes;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Unter Windows ist eine gemappte Datei gesperrt, bis der Garbage Collector die Abbildung freigibt
+            PENDING_DELETES.add(file);
+        }
+    }
+
+    private static void deletePendingFiles() {
+        for (Path file : PENDING_DELETES) {
+            try {
+                Files.deleteIfExists(file);
+                PENDING_DELETES.remove(file);
+            } catch (IOException e) {
+                // Noch gemappt, beim nächsten Aufbau erneut versuchen
+            }
+        }
+    }
+
+    /**
+     * Löscht Temporärdateien, die älter als die angegebene Zeit sind. Laufende
+     * Konvertierungen schreiben ihre Dateien in einem Zug und sind deshalb jünger;
+     * noch gemappte Dateien lassen sich unter Windows nicht löschen und bleiben.
+     *
+     * @param directory Verzeichnis der Temporärdateien
+     * @param maxAgeMillis Alter seit der letzten Änderung, ab dem gelöscht wird
+     */
+    static void deleteStaleFiles(Path directory, long maxAgeMillis) {
+        long limit = System.currentTimeMillis() - maxAgeMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*.{dat,idx}")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < limit) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    // Gesperrt oder schon von einem anderen Prozess gelöscht
+                }
+            }
+        } catch (IOException e) {
+            // Aufräumen ist optional; das Verzeichnis ist nicht lesbar
+        }
+    }
+
+    /**
+     * SAX-Handler, der jeden &lt;si&gt;-Eintrag direkt in die Dateien schreibt
+     */
+    private static final class IndexingHandler extends DefaultHandler {
+        private final OutputStream data;
+        private final DataOutputStream index;
+        private final StringBuilder text = new StringBuilder();
+        private long position = 0;
+        private int uniqueCount = 0;
+        private int count = -1;
+        private boolean inItem = false;
+        private boolean inText = false;
+        private boolean inPhonetic = false;
+
+        IndexingHandler(OutputStream data, DataOutputStream index) {
+            this.data = data;
+            this.index = index;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "sst":
+                    String countValue = attributes.getValue("count");
+                    if (countValue != null) {
+                        count = Integer.parseInt(countValue);
+                    }
+                    break;
+                case "si":
+                    inItem = true;
+                    text.setLength(0);
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inText = inItem && !inPhonetic;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "si":
+                    writeItem();
+                    inItem = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void writeItem() {
+            byte[] bytes = decodeEscapes(text.toString()).getBytes(StandardCharsets.UTF_8);
+            try {
+                index.writeLong(position);
+                data.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += bytes.length;
+            uniqueCount++;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index der verbundenen Zellbereiche eines Arbeitsblatts.
+ *
+ * Die Bereiche werden einmal auf den sichtbaren Ausschnitt zugeschnitten und
+ * über ihre linke obere Zelle in einer primitiven Hash-Tabelle mit
+ * {@code long}-Schlüssel (Zeile, Spalte) abgelegt. Welche Zellen von einem
+ * bereits platzierten Bereich überdeckt werden, wird pro Spalte über die letzte
+ * überdeckte Zeile verfolgt. Beide Abfragen sind damit O(1), unabhängig von der
+ * Anzahl verbundener Bereiche.
+ *
+ * Die Abfragen müssen in Zeilen-Reihenfolge erfolgen, so wie die Zellen in die
+ * PDF-Tabelle eingefügt werden.
+ */
+final class MergedRegionIndex {
+
+    private static final long EMPTY = -1L;
+
+    private final int firstColumn;
+    private final long[] keys;
+    private final CellRangeAddress[] values;
+    private final int[] coveredUntilRow;
+    private int maxCoveredRow = -1;
+    private int size = 0;
+
+    private MergedRegionIndex(int firstColumn, int columnCount, int capacity) {
+        this.firstColumn = firstColumn;
+        this.keys = new long[capacity];
+        this.values = new CellRangeAddress[capacity];
+        this.coveredUntilRow = new int[columnCount];
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(coveredUntilRow, -1);
+    }
+
+    /**
+     * Erstellt den Index für den sichtbaren Ausschnitt eines Blatts
+     *
+     * @param mergedRegions Verbundene Bereiche des Blatts
+     * @param visibleArea Gerenderter Zellbereich
+     * @return Index mit den auf den Ausschnitt zugeschnittenen Bereichen
+     */
+    static MergedRegionIndex create(List<CellRangeAddress> mergedRegions, CellRangeAddress visibleArea) {
+        int capacity = Integer.highestOneBit(Math.max(4, mergedRegions.size() * 2 + 1)) << 1;
+        int columnCount = visibleArea.getLastColumn() - visibleArea.getFirstColumn() + 1;
+        MergedRegionIndex index = new MergedRegionIndex(visibleArea.getFirstColumn(), Math.max(0, columnCount), capacity);
+
+        for (CellRangeAddress region : mergedRegions) {
+            int firstRow = Math.max(region.getFirstRow(), visibleArea.getFirstRow());
+            int lastRow = Math.min(region.getLastRow(), visibleArea.getLastRow());
+            int firstCol = Math.max(region.getFirstColumn(), visibleArea.getFirstColumn());
+            int lastCol = Math.min(region.getLastColumn(), visibleArea.getLastColumn());
+            // Ausserhalb des Ausschnitts oder nach dem Zuschneiden nur noch eine Zelle
+            if (firstRow > lastRow || firstCol > lastCol || (firstRow == lastRow && firstCol == lastCol)) {
+                continue;
+            }
+            index.put(key(firstRow, firstCol), new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
+        }
+        return index;
+    }
+
+    /**
+     * Gibt den Bereich zurück, dessen linke obere Zelle an der Position liegt,
+     * und merkt sich die von ihm überdeckten Zellen
+     *
+     * @return Zugeschnittener Bereich oder null
+     */
+    CellRangeAddress getRegionStartingAt(int row, int col) {
+        if (size == 0) {
+            return null;
+        }
+        CellRangeAddress region = get(key(row, col));
+        if (region != null) {
+            for (int c = region.getFirstColumn(); c <= region.getLastColumn(); c++) {
+                coveredUntilRow[c - firstColumn] = region.getLastRow();
+            }
+            maxCoveredRow = Math.max(maxCoveredRow, region.getLastRow());
+        }
+        return region;
+    }
+
+    /**
+     * Prüft ob eine Zelle von einem bereits platzierten Bereich überdeckt wird
+     */
+    boolean isCovered(int row, int col) {
+        int offset = col - firstColumn;
+        return offset >= 0 && offset < coveredUntilRow.length && row <= coveredUntilRow[offset];
+    }
+
+    /**
+     * Prüft ob ein bereits platzierter Bereich in die Zeile hineinreicht.
+     * Vor einer solchen Zeile darf die Tabelle nicht getrennt werden.
+     */
+    boolean coversRow(int row) {
+        return row <= maxCoveredRow;
+    }
+
+    /**
+     * Gibt die Anzahl der Bereiche im sichtbaren Ausschnitt zurück
+     */
+    int size() {
+        return size;
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private void put(long key, CellRangeAddress region) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            size++;
+        }
+        keys[slot] = key;
+        values[slot] = region;
+    }
+
+    private CellRangeAddress get(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.PdfOutputProfile;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Erstellt Writer und Schriften gemäss dem {@link PdfOutputProfile} einer Konvertierung
+ */
+final class PdfOutput {
+
+    private PdfOutput() {
+    }
+
+    /**
+     * Erstellt einen PdfWriter mit den Einstellungen des Profils
+     *
+     * @param out Ziel der PDF-Daten
+     * @param profile Ausgabeprofil
+     * @return Writer
+     */
+    static PdfWriter createWriter(OutputStream out, PdfOutputProfile profile) {
+        WriterProperties properties = new WriterProperties()
+                .setCompressionLevel(profile.getCompressionLevel())
+                .setFullCompressionMode(profile.isFullCompression());
+        if (profile.isSmartMode()) {
+            properties.useSmartMode();
+        }
+        return new PdfWriter(out, properties);
+    }
+
+    /**
+     * Erstellt eine Schrift mit der Subsetting-Einstellung des Profils
+     *
+     * @param fontProgram Name der Schrift, z.B. {@code StandardFonts.HELVETICA}
+     * @param profile Ausgabeprofil
+     * @return Schrift
+     * @throws IOException wenn die Schrift nicht geladen werden kann
+     */
+    static PdfFont createFont(String fontProgram, PdfOutputProfile profile) throws IOException {
+        PdfFont font = PdfFontFactory.createFont(fontProgram);
+        font.setSubset(profile.isFontSubsetting());
+        return font;
+    }
+}
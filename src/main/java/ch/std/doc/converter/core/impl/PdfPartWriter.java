@@ -0,0 +1,246 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.AtomicOutputFile;
+import ch.std.doc.converter.core.ConversionOptions;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.layout.LayoutArea;
+import com.itextpdf.layout.properties.AreaBreakType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schreibt die PDF-Ausgabe einer Konvertierung, bei gesetzter Seiten- oder
+ * Grössengrenze aufgeteilt in mehrere Dateien.
+ *
+ * Ohne Grenze entsteht genau eine Datei unter dem angegebenen Pfad. Mit Grenze
+ * werden die Teile nach {@link ConversionOptions#getPartNamePattern()} benannt.
+ * Jeder Teil wird abgeschlossen und veröffentlicht, sobald der nächste beginnt;
+ * seine Seiten und Ressourcen werden damit freigegeben. Die Indexdatei wird
+ * zuletzt geschrieben und zeigt an, dass alle Teile vollständig sind.
+ *
+ * Die Renderer fragen an Stellen, an denen geteilt werden darf (zwischen
+ * Tabellenzeilen), {@link #isPartFull()} ab und setzen ihren Inhalt nach
+ * {@link #nextPart()} im neuen Dokument fort. Seitenumbrüche laufen über
+ * {@link #newPage()}, damit ein voller Teil dort ohne leere Seite endet.
+ */
+final class PdfPartWriter implements Closeable {
+
+    /** Endung der Indexdatei anstelle der Endung der Ausgabedatei */
+    static final String INDEX_SUFFIX = ".index.txt";
+
+    /**
+     * Richtet die Dokumente der einzelnen Teile ein
+     */
+    interface Layout {
+
+        /**
+         * Erstellt das Layout-Dokument für einen neuen Teil, z.B. mit Seitenformat und Rändern
+         */
+        Document createDocument(PdfDocument pdfDoc);
+
+        /**
+         * Wird vor dem Schliessen eines Teils aufgerufen, z.B. für Seitenzahlen
+         */
+        void finishDocument(PdfDocument pdfDoc);
+    }
+
+    private final Path outputFile;
+    private final ConversionOptions options;
+    private final Layout layout;
+    private final List<String> parts = new ArrayList<>();
+    private final StringBuilder index = new StringBuilder("# Teil\tDatei\tSeiten\tBytes\n");
+
+    private AtomicOutputFile output;
+    private PdfDocument pdfDoc;
+    private Document document;
+
+    // Höhe des grössten bisher platzierten Elements, um vor einer neuen Seite zu teilen
+    private int lastPageCount;
+    private float lastRemainingHeight = -1;
+    private float maxElementHeight = 0;
+
+    /**
+     * Beginnt den ersten Teil
+     *
+     * @param outputFile Ausgabedatei; bei aufgeteilter Ausgabe Basis für die Namen
+     * @param options Optionen mit Grenzen, Namensmuster und Ausgabeprofil
+     * @param layout Einrichtung der Dokumente
+     */
+    PdfPartWriter(String outputFile, ConversionOptions options, Layout layout) throws IOException {
+        this.outputFile = Path.of(outputFile).toAbsolutePath();
+        this.options = options;
+        this.layout = layout;
+        openPart();
+    }
+
+    /**
+     * Gibt den Pfad der Indexdatei einer aufgeteilten Ausgabe zurück
+     *
+     * @param outputFile Ausgabedatei, z.B. bericht.pdf
+     * @return z.B. bericht.index.txt
+     */
+    static String getIndexFile(String outputFile) {
+        Path output = Path.of(outputFile).toAbsolutePath();
+        return output.resolveSibling(baseName(output) + INDEX_SUFFIX).toString();
+    }
+
+    /**
+     * Gibt zurück, ob die Ausgabe aufgeteilt wird
+     */
+    boolean isSplitting() {
+        return options.isSplitOutput();
+    }
+
+    /**
+     * Gibt das Dokument des aktuellen Teils zurück. Nach {@link #nextPart()}
+     * ist das ein anderes Dokument.
+     */
+    Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Prüft nach einem vollständig gelayouteten Element, z.B. einer mit
+     * {@code flush()} geschriebenen Tabellenzeile, ob der aktuelle Teil voll ist.
+     *
+     * Für die Seitengrenze wird geteilt, sobald auf der letzten erlaubten Seite
+     * kein Platz mehr für das bisher höchste Element bleibt.
+     *
+     * @return true wenn der nächste Inhalt in einen neuen Teil gehört
+     */
+    boolean isPartFull() {
+        if (!isSplitting()) {
+            return false;
+        }
+        int pages = pdfDoc.getNumberOfPages();
+        LayoutArea area = document.getRenderer().getCurrentArea();
+        float remainingHeight = area != null ? area.getBBox().getHeight() : 0;
+        if (pages == lastPageCount && lastRemainingHeight >= 0) {
+            maxElementHeight = Math.max(maxElementHeight, lastRemainingHeight - remainingHeight);
+        }
+        lastPageCount = pages;
+        lastRemainingHeight = remainingHeight;
+
+        if (isSizeLimitReached()) {
+            return true;
+        }
+        int maxPages = options.getMaxPagesPerPart();
+        return maxPages > 0
+                && (pages > maxPages || (pages == maxPages && remainingHeight < maxElementHeight));
+    }
+
+    /**
+     * Beginnt eine neue Seite oder, wenn der aktuelle Teil seine Grenze
+     * erreicht hat, einen neuen Teil
+     *
+     * @return Dokument, in das weiter geschrieben wird
+     */
+    Document newPage() throws IOException {
+        int maxPages = options.getMaxPagesPerPart();
+        if (isSizeLimitReached() || (maxPages > 0 && pdfDoc.getNumberOfPages() >= maxPages)) {
+            return nextPart();
+        }
+        document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+        return document;
+    }
+
+    /**
+     * Schliesst den aktuellen Teil ab, veröffentlicht ihn und beginnt den nächsten
+     *
+     * @return Dokument des neuen Teils
+     */
+    Document nextPart() throws IOException {
+        closePart();
+        openPart();
+        return document;
+    }
+
+    /**
+     * Schliesst den letzten Teil ab und schreibt bei aufgeteilter Ausgabe die Indexdatei
+     *
+     * @return Pfade der geschriebenen PDF-Dateien in ihrer Reihenfolge
+     */
+    List<String> finish() throws IOException {
+        closePart();
+        if (isSplitting()) {
+            writeIndex();
+        }
+        return parts;
+    }
+
+    /**
+     * Verwirft einen nicht abgeschlossenen Teil. Bereits veröffentlichte Teile bleiben bestehen.
+     */
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    private boolean isSizeLimitReached() {
+        long maxBytes = options.getMaxBytesPerPart();
+        // Position des Writers statt der Bytes im Stream: iText puffert vor dem Weitergeben mehrere Seiten
+        return maxBytes > 0 && pdfDoc.getWriter().getCurrentPos() >= maxBytes;
+    }
+
+    private void openPart() throws IOException {
+        Path file = isSplitting() ? getPartFile(parts.size() + 1) : outputFile;
+        output = AtomicOutputFile.create(file.toString(), options.isDurableOutput());
+        pdfDoc = new PdfDocument(PdfOutput.createWriter(output.getOutputStream(), options.getPdfOutputProfile()));
+        document = layout.createDocument(pdfDoc);
+        lastPageCount = 0;
+        lastRemainingHeight = -1;
+    }
+
+    private void closePart() throws IOException {
+        layout.finishDocument(pdfDoc);
+        int pages = pdfDoc.getNumberOfPages();
+        document.close();
+        long bytes = output.getWrittenBytes();
+        output.commit();
+
+        Path file = isSplitting() ? getPartFile(parts.size() + 1) : outputFile;
+        parts.add(file.toString());
+        index.append(parts.size()).append('\t').append(file.getFileName())
+             .append('\t').append(pages).append('\t').append(bytes).append('\n');
+
+        output = null;
+        pdfDoc = null;
+        document = null;
+    }
+
+    private Path getPartFile(int number) {
+        String name = options.getPartNamePattern()
+                .replace("{name}", baseName(outputFile))
+                .replace("{part}", String.format("%03d", number));
+        return outputFile.resolveSibling(name);
+    }
+
+    private void writeIndex() throws IOException {
+        try (AtomicOutputFile indexOutput = AtomicOutputFile.create(getIndexFile(outputFile.toString()),
+                                                                     options.isDurableOutput())) {
+            Writer writer = new OutputStreamWriter(indexOutput.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(index.toString());
+            writer.flush();
+            indexOutput.commit();
+        }
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
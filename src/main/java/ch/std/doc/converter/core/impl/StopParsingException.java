@@ -0,0 +1,18 @@
+package ch.std.doc.converter.core.impl;
+
+/**
+ * Bricht das SAX-Parsen eines Arbeitsblatts ab, sobald alle benötigten
+ * Informationen vorliegen.
+ *
+ * Ungeprüft, weil POIs {@code SheetContentsHandler} keine geprüften Ausnahmen
+ * werfen darf; der SAX-Parser gibt sie unverändert an den Aufrufer von
+ * {@code parse} weiter. Ohne Stacktrace, da sie zum normalen Ablauf gehört.
+ */
+final class StopParsingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    StopParsingException() {
+        super("Parsen beendet", null, false, false);
+    }
+}
@@ -0,0 +1,154 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.TextFormat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Schreibt extrahierten Text als reinen Text oder Markdown direkt in einen
+ * Writer. Die Konverter rufen die Methoden in Dokumentreihenfolge auf, es wird
+ * nichts zwischengespeichert.
+ */
+final class TextOutput {
+
+    /** Formatvorlagen wie "heading 2", "Heading2" oder "Überschrift 2" */
+    private static final Pattern HEADING_STYLE = Pattern.compile("(?:heading|überschrift|berschrift)\\s*([1-6])");
+
+    private final Writer out;
+    private final boolean markdown;
+    private boolean inTable = false;
+
+    TextOutput(Writer out, TextFormat format) {
+        this.out = out;
+        this.markdown = format == TextFormat.MARKDOWN;
+    }
+
+    /**
+     * Schreibt eine Überschrift
+     *
+     * @param level Ebene 1 bis 6
+     * @param text Text der Überschrift
+     */
+    void heading(int level, String text) throws IOException {
+        endTable();
+        if (text.isBlank()) {
+            return;
+        }
+        if (markdown) {
+            out.write("#".repeat(Math.max(1, Math.min(6, level))));
+            out.write(' ');
+            out.write(singleLine(text));
+            out.write("\n\n");
+        } else {
+            out.write(text);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Schreibt einen Absatz. Leere Absätze werden übersprungen.
+     */
+    void paragraph(String text) throws IOException {
+        endTable();
+        if (text.isBlank()) {
+            return;
+        }
+        out.write(text);
+        out.write(markdown ? "\n\n" : "\n");
+    }
+
+    /**
+     * Schreibt einen Aufzählungspunkt
+     *
+     * @param level Einrückungsebene ab 0
+     * @param text Text des Punkts
+     */
+    void listItem(int level, String text) throws IOException {
+        endTable();
+        if (text.isBlank()) {
+            return;
+        }
+        if (markdown) {
+            out.write("  ".repeat(Math.max(0, level)));
+            out.write("- ");
+            out.write(singleLine(text));
+        } else {
+            out.write(text);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Schreibt eine Tabellenzeile. Die erste Zeile nach {@link #endTable()}
+     * wird in Markdown als Kopfzeile ausgegeben; alle Zeilen einer Tabelle
+     * müssen dieselbe Anzahl Zellen haben.
+     *
+     * @param cells Zelltexte, null für leere Zellen
+     */
+    void tableRow(String[] cells) throws IOException {
+        if (markdown) {
+            writeMarkdownRow(cells);
+            if (!inTable) {
+                out.write('|');
+                for (int i = 0; i < cells.length; i++) {
+                    out.write(" --- |");
+                }
+                out.write('\n');
+            }
+        } else {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) {
+                    out.write('\t');
+                }
+                if (cells[i] != null) {
+                    out.write(singleLine(cells[i]));
+                }
+            }
+            out.write('\n');
+        }
+        inTable = true;
+    }
+
+    /**
+     * Beendet die aktuelle Tabelle
+     */
+    void endTable() throws IOException {
+        if (inTable && markdown) {
+            out.write('\n');
+        }
+        inTable = false;
+    }
+
+    /**
+     * Ermittelt die Überschriftenebene aus dem Namen oder der ID einer Formatvorlage
+     *
+     * @return Ebene 1 bis 6 oder 0 wenn die Vorlage keine Überschrift ist
+     */
+    static int headingLevel(String styleName) {
+        if (styleName == null) {
+            return 0;
+        }
+        Matcher matcher = HEADING_STYLE.matcher(styleName.toLowerCase(Locale.ROOT));
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    private void writeMarkdownRow(String[] cells) throws IOException {
+        out.write('|');
+        for (String cell : cells) {
+            out.write(' ');
+            if (cell != null) {
+                out.write(singleLine(cell).replace("|", "\\|"));
+            }
+            out.write(" |");
+        }
+        out.write('\n');
+    }
+
+    private static String singleLine(String text) {
+        return text.replace('\r', ' ').replace('\n', ' ').replace('\t', ' ').trim();
+    }
+}
@@ -0,0 +1,191 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.xmlbeans.XmlException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Berechnet Fingerabdrücke der ausgewählten Blätter einer XLSX-Datei für den
+ * {@link ch.std.doc.converter.core.SheetFragmentCache}.
+ *
+ * Ein Fingerabdruck umfasst alles, wovon das gerenderte Blatt abhängt: Name
+ * und Bereiche, das Datumssystem, das XML des Blatts sowie die darin
+ * verwendeten Shared Strings und Zellstile mit den Eigenschaften, die der
+ * Konverter überträgt. Änderungen an anderen Blättern oder an nicht verwendeten
+ * Strings und Stilen lassen ihn deshalb unverändert. Das XML wird dabei
+ * einmal per SAX gelesen; das ist um ein Vielfaches schneller als das Rendern.
+ */
+final class XlsxSheetFingerprints {
+
+    private XlsxSheetFingerprints() {
+    }
+
+    /**
+     * Berechnet die Fingerabdrücke aller ausgewählten Blätter
+     *
+     * @param pkg Geöffnetes XLSX-Paket
+     * @param selection Ausgewählte Blätter und Bereiche
+     * @return SHA-256 pro Blattname, in der Reihenfolge der Arbeitsmappe
+     * @throws IOException bei Lesefehlern
+     */
+    static Map<String, byte[]> compute(OPCPackage pkg, XlsxSheetSelection selection) throws IOException {
+        Map<String, byte[]> fingerprints = new LinkedHashMap<>();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            boolean date1904 = XlsxStreamingRenderer.isDate1904(reader);
+
+            try (InputStream sharedStringsData = reader.getSharedStringsData();
+                 MappedSharedStrings strings = MappedSharedStrings.create(sharedStringsData)) {
+
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                while (sheets.hasNext()) {
+                    try (InputStream sheetData = sheets.next()) {
+                        String sheetName = sheets.getSheetName();
+                        if (!selection.isSelected(sheetName)) {
+                            continue;
+                        }
+
+                        MessageDigest digest = newDigest();
+                        StringBuilder header = new StringBuilder(sheetName).append('\n').append(date1904);
+                        for (CellRangeAddress range : selection.getRanges(sheetName)) {
+                            header.append('\n').append(range.formatAsString());
+                        }
+                        update(digest, header.append('\n').toString());
+
+                        DependencyHandler dependencies = new DependencyHandler();
+                        parse(new DigestInputStream(sheetData, digest), dependencies);
+
+                        BitSet used = dependencies.strings;
+                        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+                            String text = i < strings.getUniqueCount() ? strings.getItemAt(i).getString() : "";
+                            update(digest, "s" + i + "\t" + text + "\n");
+                        }
+                        used = dependencies.styles;
+                        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+                            update(digest, "x" + i + "\t" + describeStyle(styles, i) + "\n");
+                        }
+                        fingerprints.put(sheetName, digest.digest());
+                    }
+                }
+            }
+        } catch (OpenXML4JException | XmlException e) {
+            throw new IOException("XLSX-Datei konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Beschreibt die Eigenschaften eines Zellstils, die ins PDF übernommen werden
+     */
+    private static String describeStyle(StylesTable styles, int index) {
+        if (styles == null || index >= styles.getNumCellStyles()) {
+            return "";
+        }
+        XSSFCellStyle style = styles.getStyleAt(index);
+        return style.getAlignment()
+               + "\t" + style.getFont().getBold()
+               + "\t" + style.getFont().getItalic()
+               + "\t" + style.getDataFormatString();
+    }
+
+    /**
+     * Liest das XML bis zum Ende; der Parser prüft auch, dass nach dem
+     * Wurzelelement nichts mehr folgt, damit geht jedes Byte in den Fingerabdruck ein
+     */
+    private static void parse(InputStream sheetData, DefaultHandler handler) throws IOException {
+        try {
+            XMLReader reader = XMLHelper.newXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(new InputSource(sheetData));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Arbeitsblatt konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 ist nicht verfügbar", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sammelt die Indizes der verwendeten Shared Strings und Zellstile.
+     * Zellen ohne Stil verwenden den Stil 0.
+     */
+    private static final class DependencyHandler extends DefaultHandler {
+        private final BitSet strings = new BitSet();
+        private final BitSet styles = new BitSet();
+        private final StringBuilder value = new StringBuilder();
+        private boolean sharedString;
+        private boolean inValue;
+
+        DependencyHandler() {
+            styles.set(0);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "c":
+                    sharedString = "s".equals(attributes.getValue("t"));
+                    String style = attributes.getValue("s");
+                    if (style != null) {
+                        styles.set(Integer.parseInt(style));
+                    }
+                    break;
+                case "v":
+                    inValue = sharedString;
+                    value.setLength(0);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (inValue && localName.equals("v")) {
+                inValue = false;
+                String index = value.toString().trim();
+                if (!index.isEmpty()) {
+                    strings.set(Integer.parseInt(index));
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+    }
+}
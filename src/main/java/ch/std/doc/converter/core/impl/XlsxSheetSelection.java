@@ -0,0 +1,279 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.ConversionOptions;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.AreaReference;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedName;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+
+import static org.apache.poi.ooxml.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Auswahl von Arbeitsblättern und Zellbereichen einer XLSX-Datei.
+ *
+ * Die Blattliste und die Druckbereiche werden über {@link XSSFReader} aus der
+ * workbook.xml gelesen, ohne Blattinhalte zu parsen. Vor dem Laden der
+ * Arbeitsmappe werden die Beziehungen zu nicht ausgewählten Blättern entfernt,
+ * sodass POI deren XML-Teile gar nicht erst einliest.
+ */
+final class XlsxSheetSelection {
+
+    private static final String PRINT_AREA_NAME = "_xlnm.Print_Area";
+
+    private final Map<String, PackagePartName> sheetPartByName;
+    private final Map<String, String> printAreaBySheet;
+    private final Set<String> selectedSheets;
+    private final Map<String, List<CellRangeAddress>> sheetRanges;
+    private final List<CellRangeAddress> commonRanges;
+    private final boolean usePrintAreas;
+
+    private XlsxSheetSelection(Map<String, PackagePartName> sheetPartByName,
+                               Map<String, String> printAreaBySheet,
+                               Set<String> selectedSheets,
+                               Map<String, List<CellRangeAddress>> sheetRanges,
+                               List<CellRangeAddress> commonRanges,
+                               boolean usePrintAreas) {
+        this.sheetPartByName = sheetPartByName;
+        this.printAreaBySheet = printAreaBySheet;
+        this.selectedSheets = selectedSheets;
+        this.sheetRanges = sheetRanges;
+        this.commonRanges = commonRanges;
+        this.usePrintAreas = usePrintAreas;
+    }
+
+    /**
+     * Ermittelt die ausgewählten Blätter anhand der Optionen
+     *
+     * @param pkg Geöffnetes XLSX-Paket
+     * @param options Konvertierungsoptionen mit Blatt- und Bereichsauswahl
+     * @return Aufgelöste Auswahl
+     * @throws IllegalArgumentException wenn ein Blatt oder Bereich ungültig ist
+     */
+    static XlsxSheetSelection resolve(OPCPackage pkg, ConversionOptions options) throws IOException {
+        Map<String, PackagePartName> sheetPartByName = new LinkedHashMap<>();
+        Map<String, String> printAreaBySheet = new LinkedHashMap<>();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                // Der Stream wird nur geöffnet, nicht gelesen
+                sheets.next().close();
+                sheetPartByName.put(sheets.getSheetName(), sheets.getSheetPart().getPartName());
+            }
+            if (options.isUsePrintAreas()) {
+                readPrintAreas(reader, printAreaBySheet);
+            }
+        } catch (OpenXML4JException | XmlException e) {
+            throw new IOException("Arbeitsblätter konnten nicht gelesen werden: " + e.getMessage(), e);
+        }
+        List<String> sheetNames = new ArrayList<>(sheetPartByName.keySet());
+
+        Set<String> selected = new HashSet<>();
+        for (String name : options.getSheetNames()) {
+            selected.add(findSheet(sheetNames, name));
+        }
+        for (int index : options.getSheetIndices()) {
+            if (index >= sheetNames.size()) {
+                throw new IllegalArgumentException("Arbeitsblatt-Index existiert nicht: " + index);
+            }
+            selected.add(sheetNames.get(index));
+        }
+
+        Map<String, List<CellRangeAddress>> sheetRanges = new LinkedHashMap<>();
+        List<CellRangeAddress> commonRanges = new ArrayList<>();
+        for (String range : options.getCellRanges()) {
+            int separator = range.lastIndexOf('!');
+            CellRangeAddress address = parseRange(separator >= 0 ? range.substring(separator + 1) : range);
+            if (separator >= 0) {
+                String sheetName = findSheet(sheetNames, unquote(range.substring(0, separator)));
+                selected.add(sheetName);
+                sheetRanges.computeIfAbsent(sheetName, k -> new ArrayList<>()).add(address);
+            } else {
+                commonRanges.add(address);
+            }
+        }
+
+        // Nur Bereiche oder Druckbereiche angegeben: alle Blätter
+        if (selected.isEmpty()) {
+            selected.addAll(sheetNames);
+        }
+
+        return new XlsxSheetSelection(sheetPartByName, printAreaBySheet, selected,
+                                      sheetRanges, commonRanges, options.isUsePrintAreas());
+    }
+
+    /**
+     * Prüft ob ein Blatt ausgewählt ist
+     */
+    boolean isSelected(String sheetName) {
+        return selectedSheets.contains(sheetName);
+    }
+
+    /**
+     * Schränkt die Auswahl auf einige der ausgewählten Blätter ein, mit
+     * unveränderten Bereichen
+     *
+     * @param sheetNames Blätter, die ausgewählt bleiben
+     * @return Neue Auswahl
+     */
+    XlsxSheetSelection restrictTo(Set<String> sheetNames) {
+        Set<String> selected = new HashSet<>(selectedSheets);
+        selected.retainAll(sheetNames);
+        return new XlsxSheetSelection(sheetPartByName, printAreaBySheet, selected,
+                                      sheetRanges, commonRanges, usePrintAreas);
+    }
+
+    /**
+     * Entfernt die Beziehungen der Arbeitsmappe zu nicht ausgewählten Blättern.
+     * Das Paket muss schreibbar geöffnet sein und darf danach nicht gespeichert,
+     * sondern nur mit {@link OPCPackage#revert()} geschlossen werden.
+     *
+     * @param pkg Geöffnetes XLSX-Paket
+     */
+    void removeUnselectedSheets(OPCPackage pkg) throws IOException {
+        Set<PackagePartName> unselectedParts = new HashSet<>();
+        for (Map.Entry<String, PackagePartName> entry : sheetPartByName.entrySet()) {
+            if (!selectedSheets.contains(entry.getKey())) {
+                unselectedParts.add(entry.getValue());
+            }
+        }
+        if (unselectedParts.isEmpty()) {
+            return;
+        }
+
+        try {
+            PackagePart workbookPart = getWorkbookPart(pkg);
+            List<String> relationshipIds = new ArrayList<>();
+            for (PackageRelationship relationship : workbookPart.getRelationships()) {
+                if (relationship.getTargetMode() == TargetMode.EXTERNAL) {
+                    continue;
+                }
+                PackagePartName target = PackagingURIHelper.createPartName(
+                        PackagingURIHelper.resolvePartUri(workbookPart.getPartName().getURI(),
+                                                          relationship.getTargetURI()));
+                if (unselectedParts.contains(target)) {
+                    relationshipIds.add(relationship.getId());
+                }
+            }
+            for (String id : relationshipIds) {
+                workbookPart.removeRelationship(id);
+            }
+        } catch (InvalidFormatException e) {
+            throw new IOException("Arbeitsmappe konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gibt die zu rendernden Bereiche eines Blatts zurück. Explizite Bereiche
+     * haben Vorrang vor Druckbereichen; eine leere Liste bedeutet ganzes Blatt.
+     *
+     * @param sheetName Name des Blatts
+     * @return Liste der Zellbereiche
+     */
+    List<CellRangeAddress> getRanges(String sheetName) {
+        List<CellRangeAddress> ranges = new ArrayList<>(commonRanges);
+        ranges.addAll(sheetRanges.getOrDefault(sheetName, List.of()));
+        if (!ranges.isEmpty() || !usePrintAreas) {
+            return ranges;
+        }
+
+        String printArea = printAreaBySheet.get(sheetName);
+        if (printArea != null) {
+            for (AreaReference area : AreaReference.generateContiguous(SpreadsheetVersion.EXCEL2007, printArea)) {
+                ranges.add(toRange(area));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Liest die Druckbereiche aus den definierten Namen der workbook.xml.
+     * Druckbereiche sind über den ursprünglichen Blattindex (localSheetId) zugeordnet.
+     */
+    private static void readPrintAreas(XSSFReader reader, Map<String, String> printAreaBySheet)
+            throws IOException, InvalidFormatException, XmlException {
+        CTWorkbook ctWorkbook;
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            ctWorkbook = WorkbookDocument.Factory.parse(workbookData, DEFAULT_XML_OPTIONS).getWorkbook();
+        }
+        if (ctWorkbook.getDefinedNames() == null) {
+            return;
+        }
+        for (CTDefinedName definedName : ctWorkbook.getDefinedNames().getDefinedNameArray()) {
+            if (PRINT_AREA_NAME.equalsIgnoreCase(definedName.getName()) && definedName.isSetLocalSheetId()) {
+                int sheetIndex = (int) definedName.getLocalSheetId();
+                if (sheetIndex < ctWorkbook.getSheets().sizeOfSheetArray()) {
+                    String sheetName = ctWorkbook.getSheets().getSheetArray(sheetIndex).getName();
+                    printAreaBySheet.put(sheetName, definedName.getStringValue());
+                }
+            }
+        }
+    }
+
+    private static PackagePart getWorkbookPart(OPCPackage pkg) throws InvalidFormatException {
+        PackageRelationshipCollection relationships =
+                pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (relationships.size() == 0) {
+            relationships = pkg.getRelationshipsByType(PackageRelationshipTypes.STRICT_CORE_DOCUMENT);
+        }
+        if (relationships.size() == 0) {
+            throw new InvalidFormatException("Keine Arbeitsmappe im Paket gefunden");
+        }
+        return pkg.getPart(relationships.getRelationship(0));
+    }
+
+    private static String findSheet(List<String> sheetNames, String name) {
+        for (String sheetName : sheetNames) {
+            if (sheetName.equalsIgnoreCase(name)) {
+                return sheetName;
+            }
+        }
+        throw new IllegalArgumentException("Arbeitsblatt nicht gefunden: " + name);
+    }
+
+    private static CellRangeAddress parseRange(String reference) {
+        try {
+            return toRange(new AreaReference(reference, SpreadsheetVersion.EXCEL2007));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Ungültiger Zellbereich: " + reference, e);
+        }
+    }
+
+    private static CellRangeAddress toRange(AreaReference area) {
+        CellReference first = area.getFirstCell();
+        CellReference last = area.getLastCell();
+        return new CellRangeAddress(first.getRow(), last.getRow(), first.getCol(), last.getCol());
+    }
+
+    private static String unquote(String sheetName) {
+        if (sheetName.length() >= 2 && sheetName.startsWith("'") && sheetName.endsWith("'")) {
+            return sheetName.substring(1, sheetName.length() - 1).replace("''", "'");
+        }
+        return sheetName;
+    }
+}
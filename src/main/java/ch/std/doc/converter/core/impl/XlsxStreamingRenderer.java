@@ -0,0 +1,713 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.xmlbeans.XmlException;
+import ch.std.doc.converter.core.ConversionOptions;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.poi.ooxml.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
+
+/**
+ * Rendert XLSX-Arbeitsblätter zeilenweise per SAX, ohne die Arbeitsmappe als
+ * Objektmodell zu laden.
+ *
+ * Shared Strings werden über {@link MappedSharedStrings} erst beim Rendern
+ * einer Zelle aufgelöst, die PDF-Tabellen im iText-Modus für grosse Tabellen
+ * laufend geschrieben. Formeln werden mit ihren gespeicherten Ergebnissen
+ * dargestellt. Bei aufgeteilter Ausgabe wird jede Zeile einzeln geschrieben
+ * und ein neuer Teil beginnt vor der nächsten Zeile, sobald der aktuelle voll ist.
+ *
+ * Mit einer Warteschlange ({@link ConversionOptions#setPipelineQueueSize})
+ * parst ein eigener Thread das Blatt und löst Shared Strings und Zahlenformate
+ * auf, während der aufrufende Thread die fertigen Zeilen setzt und schreibt.
+ * iText wird dabei nur vom aufrufenden Thread verwendet.
+ */
+final class XlsxStreamingRenderer {
+
+    /** Anzahl Zeilen, nach denen die PDF-Tabelle geschrieben wird */
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final OPCPackage pkg;
+    private final XlsxSheetSelection selection;
+    private final int pipelineQueueSize;
+
+    /**
+     * @param pipelineQueueSize Zeilen zwischen Parser- und Layout-Thread, 0 für beides im aufrufenden Thread
+     */
+    XlsxStreamingRenderer(OPCPackage pkg, XlsxSheetSelection selection, int pipelineQueueSize) {
+        this.pkg = pkg;
+        this.selection = selection;
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    /**
+     * Rendert alle ausgewählten Blätter in die Ausgabe
+     *
+     * @param parts Ziel-Dokumente
+     * @throws IOException bei Lese- oder Schreibfehlern
+     */
+    void render(PdfPartWriter parts) throws IOException {
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            ExcelCellFormatter cellFormatter = new ExcelCellFormatter(Locale.getDefault(), isDate1904(reader));
+
+            try (InputStream sharedStringsData = reader.getSharedStringsData();
+                 MappedSharedStrings strings = MappedSharedStrings.create(sharedStringsData)) {
+
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                boolean firstSheet = true;
+                while (sheets.hasNext()) {
+                    // Der Stream wird nur für den Iterator geöffnet; gelesen wird über den Part
+                    sheets.next().close();
+                    String sheetName = sheets.getSheetName();
+                    if (!selection.isSelected(sheetName)) {
+                        continue;
+                    }
+
+                    if (!firstSheet) {
+                        parts.newPage();
+                    }
+                    firstSheet = false;
+                    parts.getDocument().add(ExcelToPdfConverter.createSheetTitle(sheetName));
+
+                    SheetContext context = new SheetContext(sheetName, sheets.getSheetPart(), styles, strings,
+                                                            cellFormatter);
+                    List<CellRangeAddress> ranges = selection.getRanges(sheetName);
+                    if (ranges.isEmpty()) {
+                        renderSheet(context, parts, null);
+                    } else {
+                        for (CellRangeAddress range : ranges) {
+                            renderSheet(context, parts, range);
+                        }
+                    }
+                }
+            }
+        } catch (OpenXML4JException | XmlException e) {
+            throw new IOException("XLSX-Datei konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+    }
+
+    private void renderSheet(SheetContext context, PdfPartWriter parts, CellRangeAddress range) throws IOException {
+        int firstRowNum = range != null ? range.getFirstRow() : 0;
+        int lastRowNum = range != null ? range.getLastRow() : Integer.MAX_VALUE;
+
+        // Erster Durchlauf: Zeilen und Spalten im Bereich sowie verbundene Bereiche ermitteln
+        ExtentHandler extent = new ExtentHandler(firstRowNum, lastRowNum);
+        parse(context.part, extent);
+
+        Document doc = parts.getDocument();
+        if (!extent.hasRows) {
+            doc.add(new Paragraph("(Leeres Arbeitsblatt)").setItalic());
+            return;
+        }
+
+        int firstColNum = range != null ? range.getFirstColumn() : 0;
+        int lastColNum = range != null ? Math.min(extent.lastColumn, range.getLastColumn()) : extent.lastColumn;
+        int numCols = lastColNum - firstColNum + 1;
+        if (numCols <= 0) {
+            doc.add(new Paragraph("(Keine Daten gefunden)").setItalic());
+            return;
+        }
+
+        // Tabelle im Large-Table-Modus: Zeilen werden laufend geschrieben
+        Table pdfTable = ExcelToPdfConverter.createTable(numCols, true);
+        doc.add(pdfTable);
+
+        // Verbundene Bereiche wie im Objektmodell auf die vorhandenen Zeilen zuschneiden
+        MergedRegionIndex mergedRegions = MergedRegionIndex.create(extent.mergedRegions,
+                new CellRangeAddress(extent.firstRow, extent.lastRow, firstColNum, lastColNum));
+        TableWriter table = new TableWriter(context.sheetName, parts, pdfTable, mergedRegions,
+                                            extent.firstRow, firstColNum, numCols);
+        if (pipelineQueueSize > 0) {
+            RowQueue queue = new RowQueue(pipelineQueueSize);
+            parsePipelined(context.part, new RowHandler(context, queue, firstRowNum, lastRowNum, firstColNum, numCols),
+                           queue, table);
+        } else {
+            parse(context.part, new RowHandler(context, table, firstRowNum, lastRowNum, firstColNum, numCols));
+        }
+
+        table.pdfTable.complete();
+    }
+
+    /**
+     * Parst das Blatt in einem eigenen Thread und setzt die Zeilen im
+     * aufrufenden Thread, sobald sie in der Warteschlange ankommen
+     */
+    private static void parsePipelined(PackagePart part, RowHandler rows, RowQueue queue, TableWriter table)
+            throws IOException {
+        Thread parser = new Thread(() -> {
+            try {
+                parse(part, rows);
+            } catch (IOException | RuntimeException | Error e) {
+                queue.failure = e;
+            } finally {
+                queue.end();
+            }
+        }, "docconverter-xlsx-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        boolean completed = false;
+        try {
+            for (ParsedRow row = queue.take(); row != RowQueue.END; row = queue.take()) {
+                table.addRow(row.texts, row.styles, row.isHeaderRow);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                queue.cancel();
+            }
+            // Der Parser liest aus dem Paket, das der Aufrufer danach schliesst
+            awaitTermination(parser);
+        }
+
+        Throwable failure = queue.failure;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private static void awaitTermination(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ermittelt die letzte Spalte eines Blatts aus den vorhandenen Zellen
+     *
+     * @return Index der letzten Spalte oder -1 für ein Blatt ohne Zeilen
+     */
+    static int findLastColumn(PackagePart part) throws IOException {
+        ExtentHandler extent = new ExtentHandler(0, Integer.MAX_VALUE);
+        parse(part, extent);
+        return extent.hasRows ? extent.lastColumn : -1;
+    }
+
+    private static void parse(PackagePart part, DefaultHandler handler) throws IOException {
+        try (InputStream sheetData = part.getInputStream()) {
+            XMLReader reader = XMLHelper.newXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(new InputSource(sheetData));
+        } catch (StopParsingException e) {
+            // Gewollter Abbruch nach dem Lesen der benötigten Informationen
+        } catch (SAXException e) {
+            // Schreibfehler beim Beginnen eines neuen Teils unverändert weitergeben
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw new IOException("Arbeitsblatt konnte nicht gelesen werden: " + e.getMessage(), e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Arbeitsblatt konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+    }
+
+    static boolean isDate1904(XSSFReader reader) throws IOException, OpenXML4JException, XmlException {
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            CTWorkbook workbook = WorkbookDocument.Factory.parse(workbookData, DEFAULT_XML_OPTIONS).getWorkbook();
+            return workbook.isSetWorkbookPr() && workbook.getWorkbookPr().getDate1904();
+        }
+    }
+
+    /**
+     * Gemeinsame Daten für das Rendern eines Blatts
+     */
+    private static final class SheetContext {
+        private final String sheetName;
+        private final PackagePart part;
+        private final StylesTable styles;
+        private final MappedSharedStrings strings;
+        private final ExcelCellFormatter cellFormatter;
+        private final Map<Integer, XSSFCellStyle> styleCache = new HashMap<>();
+
+        SheetContext(String sheetName, PackagePart part, StylesTable styles, MappedSharedStrings strings,
+                     ExcelCellFormatter cellFormatter) {
+            this.sheetName = sheetName;
+            this.part = part;
+            this.styles = styles;
+            this.strings = strings;
+            this.cellFormatter = cellFormatter;
+        }
+
+        XSSFCellStyle getStyle(int styleIndex) {
+            if (styles == null) {
+                return null;
+            }
+            return styleCache.computeIfAbsent(styleIndex, styles::getStyleAt);
+        }
+    }
+
+    /**
+     * Ermittelt die vorhandenen Zeilen und die letzte Spalte in einem Bereich
+     * aus den Zellreferenzen, wie das Objektmodell über {@code getLastCellNum()},
+     * und sammelt die verbundenen Bereiche des Blatts.
+     * Das &lt;dimension&gt;-Element wird nicht verwendet, weil viele Programme
+     * es veraltet oder nur als {@code A1} schreiben.
+     *
+     * Die &lt;mergeCells&gt; stehen nach den Zeilen, deshalb wird das Blatt
+     * auch bei einem Bereich bis dorthin gelesen.
+     */
+    private static final class ExtentHandler extends DefaultHandler {
+        private final int firstRowNum;
+        private final int lastRowNum;
+        private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+        private int firstRow = -1;
+        private int lastRow = -1;
+        private int lastColumn = -1;
+        private boolean hasRows = false;
+        private int currentRow = -1;
+        private boolean rowInRange = false;
+        private int currentCol = -1;
+
+        ExtentHandler(int firstRowNum, int lastRowNum) {
+            this.firstRowNum = firstRowNum;
+            this.lastRowNum = lastRowNum;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            switch (localName) {
+                case "row":
+                    hasRows = true;
+                    String rowRef = attributes.getValue("r");
+                    currentRow = rowRef != null ? Integer.parseInt(rowRef) - 1 : currentRow + 1;
+                    rowInRange = currentRow >= firstRowNum && currentRow <= lastRowNum;
+                    if (rowInRange) {
+                        if (firstRow < 0) {
+                            firstRow = currentRow;
+                        }
+                        lastRow = currentRow;
+                    }
+                    currentCol = -1;
+                    break;
+                case "c":
+                    if (!rowInRange) {
+                        break;
+                    }
+                    String cellRef = attributes.getValue("r");
+                    currentCol = cellRef != null ? new CellReference(cellRef).getCol() : currentCol + 1;
+                    lastColumn = Math.max(lastColumn, currentCol);
+                    break;
+                case "mergeCell":
+                    String ref = attributes.getValue("ref");
+                    if (ref != null) {
+                        mergedRegions.add(CellRangeAddress.valueOf(ref));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            // Nach den verbundenen Bereichen folgt nichts mehr, was benötigt wird
+            if ("mergeCells".equals(localName)) {
+                throw new StopParsingException();
+            }
+        }
+    }
+
+    /**
+     * Empfänger der gelesenen Zeilen
+     */
+    private interface RowSink {
+        /**
+         * @param rowTexts Zelltexte; werden nach dem Aufruf wiederverwendet
+         * @param rowStyles Zellstile; werden nach dem Aufruf wiederverwendet
+         */
+        void addRow(String[] rowTexts, XSSFCellStyle[] rowStyles, boolean isHeaderRow) throws IOException;
+    }
+
+    /**
+     * Liest Zeilen und Zellen und gibt sie an einen {@link RowSink} weiter
+     */
+    private static final class RowHandler extends DefaultHandler {
+        private final SheetContext context;
+        private final RowSink sink;
+        private final int firstRowNum;
+        private final int lastRowNum;
+        private final int firstColNum;
+        private final String[] texts;
+        private final XSSFCellStyle[] cellStyles;
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private int currentRow = -1;
+        private int nextRow = -1;
+        private boolean rowInRange = false;
+        private int currentCol = -1;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasFormula;
+        private boolean inValue;
+        private boolean inFormula;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+
+        RowHandler(SheetContext context, RowSink sink, int firstRowNum, int lastRowNum, int firstColNum,
+                   int numCols) {
+            this.context = context;
+            this.sink = sink;
+            this.firstRowNum = firstRowNum;
+            this.lastRowNum = lastRowNum;
+            this.firstColNum = firstColNum;
+            this.texts = new String[numCols];
+            this.cellStyles = new XSSFCellStyle[numCols];
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            switch (localName) {
+                case "row":
+                    String rowRef = attributes.getValue("r");
+                    currentRow = rowRef != null ? Integer.parseInt(rowRef) - 1 : currentRow + 1;
+                    if (currentRow > lastRowNum) {
+                        throw new StopParsingException();
+                    }
+                    rowInRange = currentRow >= firstRowNum;
+                    currentCol = -1;
+                    Arrays.fill(texts, null);
+                    Arrays.fill(cellStyles, null);
+                    break;
+                case "c":
+                    String cellRef = attributes.getValue("r");
+                    currentCol = cellRef != null ? new CellReference(cellRef).getCol() : currentCol + 1;
+                    cellType = attributes.getValue("t");
+                    String style = attributes.getValue("s");
+                    styleIndex = style != null ? Integer.parseInt(style) : 0;
+                    hasFormula = false;
+                    value.setLength(0);
+                    formula.setLength(0);
+                    break;
+                case "v":
+                    inValue = true;
+                    break;
+                case "f":
+                    hasFormula = true;
+                    inFormula = true;
+                    break;
+                case "is":
+                    inInlineString = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inValue = inInlineString && !inPhonetic;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "f":
+                    inFormula = false;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    int index = currentCol - firstColNum;
+                    if (rowInRange && index >= 0 && index < texts.length) {
+                        texts[index] = getCellText();
+                        cellStyles[index] = context.getStyle(styleIndex);
+                    }
+                    break;
+                case "row":
+                    if (rowInRange) {
+                        // Lücken zwischen vorhandenen Zeilen wie im Objektmodell als leere Zeilen
+                        if (nextRow >= 0) {
+                            for (int gap = nextRow; gap < currentRow; gap++) {
+                                addRow(new String[texts.length], new XSSFCellStyle[texts.length], false);
+                            }
+                        }
+                        addRow(texts, cellStyles, nextRow < 0);
+                        nextRow = currentRow + 1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            } else if (inFormula) {
+                formula.append(ch, start, length);
+            }
+        }
+
+        private String getCellText() {
+            String type = cellType != null ? cellType : "n";
+            switch (type) {
+                case "s":
+                    if (value.length() == 0) {
+                        return "";
+                    }
+                    return context.strings.getString(Integer.parseInt(value.toString().trim()));
+                case "b":
+                    return String.valueOf("1".equals(value.toString().trim()));
+                case "inlineStr":
+                case "str":
+                    return MappedSharedStrings.decodeEscapes(value.toString());
+                case "e":
+                case "d":
+                    return value.toString();
+                default:
+                    if (value.length() == 0) {
+                        // Formel ohne gespeichertes Ergebnis: Formel anzeigen
+                        return hasFormula ? formula.toString() : "";
+                    }
+                    double number = Double.parseDouble(value.toString());
+                    XSSFCellStyle style = context.getStyle(styleIndex);
+                    if (style == null) {
+                        return context.cellFormatter.formatRaw(number, 0, null);
+                    }
+                    return context.cellFormatter.formatRaw(number, style.getDataFormat(), style.getDataFormatString());
+            }
+        }
+
+        private void addRow(String[] rowTexts, XSSFCellStyle[] rowStyles, boolean isHeaderRow) throws SAXException {
+            try {
+                sink.addRow(rowTexts, rowStyles, isHeaderRow);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+
+    /**
+     * Fügt Zeilen der PDF-Tabelle hinzu und beginnt bei aufgeteilter Ausgabe
+     * neue Teile. Läuft immer im aufrufenden Thread.
+     *
+     * Die Zeilen kommen lückenlos ab der ersten vorhandenen Zeile des Bereichs,
+     * daher wird die Zeilennummer für die verbundenen Bereiche hier mitgezählt.
+     */
+    private static final class TableWriter implements RowSink {
+        private final String sheetName;
+        private final PdfPartWriter parts;
+        private final MergedRegionIndex mergedRegions;
+        private final int firstColNum;
+        private final int numCols;
+        private Table pdfTable;
+        private int rowNum;
+        private int rowsSinceFlush = 0;
+        private boolean partFull = false;
+        private String[] headerTexts;
+        private XSSFCellStyle[] headerStyles;
+
+        TableWriter(String sheetName, PdfPartWriter parts, Table pdfTable, MergedRegionIndex mergedRegions,
+                    int firstRowNum, int firstColNum, int numCols) {
+            this.sheetName = sheetName;
+            this.parts = parts;
+            this.pdfTable = pdfTable;
+            this.mergedRegions = mergedRegions;
+            this.rowNum = firstRowNum;
+            this.firstColNum = firstColNum;
+            this.numCols = numCols;
+        }
+
+        @Override
+        public void addRow(String[] rowTexts, XSSFCellStyle[] rowStyles, boolean isHeaderRow) throws IOException {
+            // Erst wenn eine weitere Zeile folgt, damit am Ende kein leerer Teil entsteht
+            if (partFull) {
+                startNextPart();
+                partFull = false;
+            }
+            if (isHeaderRow) {
+                headerTexts = rowTexts.clone();
+                headerStyles = rowStyles.clone();
+            }
+
+            addCells(rowTexts, rowStyles, isHeaderRow);
+            rowNum++;
+
+            if (parts.isSplitting()) {
+                pdfTable.flush();
+                // Nicht innerhalb eines verbundenen Bereichs teilen
+                partFull = !mergedRegions.coversRow(rowNum) && parts.isPartFull();
+            } else if (++rowsSinceFlush >= FLUSH_INTERVAL) {
+                pdfTable.flush();
+                rowsSinceFlush = 0;
+            }
+        }
+
+        private void addCells(String[] rowTexts, XSSFCellStyle[] rowStyles, boolean isHeaderRow) {
+            for (int i = 0; i < rowTexts.length; i++) {
+                int colNum = firstColNum + i;
+                // Von einem verbundenen Bereich überdeckte Zellen belegt iText über den Span
+                if (mergedRegions.isCovered(rowNum, colNum)) {
+                    continue;
+                }
+                CellRangeAddress region = mergedRegions.getRegionStartingAt(rowNum, colNum);
+                Cell pdfCell = region != null
+                        ? new Cell(region.getLastRow() - region.getFirstRow() + 1,
+                                   region.getLastColumn() - region.getFirstColumn() + 1)
+                        : new Cell();
+                addCell(pdfCell, rowTexts[i], rowStyles[i], isHeaderRow);
+            }
+        }
+
+        private void addCell(Cell pdfCell, String text, XSSFCellStyle style, boolean isHeaderRow) {
+            pdfCell.add(new Paragraph(text != null ? text : ""));
+            ExcelToPdfConverter.applyCellStyle(pdfCell, style, isHeaderRow);
+            pdfTable.addCell(pdfCell);
+        }
+
+        /**
+         * Schliesst die Tabelle im vollen Teil ab und setzt sie mit Titel und
+         * Kopfzeile im nächsten Teil fort. Verbundene Zellen der Kopfzeile
+         * werden dabei wie im Objektmodell als einzelne Zellen dargestellt.
+         */
+        private void startNextPart() throws IOException {
+            pdfTable.complete();
+            Document doc = parts.nextPart();
+            doc.add(ExcelToPdfConverter.createContinuationTitle(sheetName));
+            pdfTable = ExcelToPdfConverter.createTable(numCols, true);
+            doc.add(pdfTable);
+            if (headerTexts != null) {
+                for (int i = 0; i < headerTexts.length; i++) {
+                    addCell(new Cell(), headerTexts[i], headerStyles[i], true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gelesene Zeile auf dem Weg vom Parser- zum Layout-Thread
+     */
+    private static final class ParsedRow {
+        private final String[] texts;
+        private final XSSFCellStyle[] styles;
+        private final boolean isHeaderRow;
+
+        ParsedRow(String[] texts, XSSFCellStyle[] styles, boolean isHeaderRow) {
+            this.texts = texts;
+            this.styles = styles;
+            this.isHeaderRow = isHeaderRow;
+        }
+    }
+
+    /**
+     * Begrenzte Warteschlange zwischen Parser- und Layout-Thread. Bricht das
+     * Layout ab, gibt der Parser beim nächsten Einreihen auf.
+     */
+    private static final class RowQueue implements RowSink {
+        private static final ParsedRow END = new ParsedRow(null, null, false);
+        private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+        private final BlockingQueue<ParsedRow> rows;
+        private volatile boolean cancelled = false;
+        /** Fehler des Parsers; sichtbar für den Layout-Thread nach {@link #END} */
+        private Throwable failure;
+
+        RowQueue(int capacity) {
+            this.rows = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void addRow(String[] rowTexts, XSSFCellStyle[] rowStyles, boolean isHeaderRow) throws IOException {
+            if (!put(new ParsedRow(rowTexts.clone(), rowStyles.clone(), isHeaderRow))) {
+                throw new IOException("Layout abgebrochen");
+            }
+        }
+
+        void end() {
+            try {
+                put(END);
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        ParsedRow take() throws InterruptedIOException {
+            try {
+                return rows.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Warten auf gelesene Zeilen unterbrochen");
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * @return false, wenn das Layout abgebrochen wurde
+         */
+        private boolean put(ParsedRow row) throws InterruptedIOException {
+            try {
+                while (!rows.offer(row, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Einreihen der gelesenen Zeilen unterbrochen");
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ch.std.doc.converter.core.impl;
+
+import ch.std.doc.converter.core.SharedStringsStorage;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Schreibt den Text der ausgewählten XLSX-Blätter über das Event-Modell von
+ * POI ({@link XSSFSheetXMLHandler}). Es wird weder ein Objektmodell der
+ * Arbeitsmappe aufgebaut noch ein Layout berechnet; jede Zeile wird nach dem
+ * Lesen sofort geschrieben. Formeln werden mit ihren gespeicherten Ergebnissen
+ * ausgegeben.
+ */
+final class XlsxTextWriter {
+
+    private final OPCPackage pkg;
+    private final XlsxSheetSelection selection;
+    private final SharedStringsStorage sharedStringsStorage;
+
+    XlsxTextWriter(OPCPackage pkg, XlsxSheetSelection selection, SharedStringsStorage sharedStringsStorage) {
+        this.pkg = pkg;
+        this.selection = selection;
+        this.sharedStringsStorage = sharedStringsStorage;
+    }
+
+    /**
+     * Schreibt alle ausgewählten Blätter, jeweils mit dem Blattnamen als Überschrift
+     *
+     * @param output Ziel des Texts
+     * @throws IOException bei Lese- oder Schreibfehlern
+     */
+    void write(TextOutput output) throws IOException {
+        MappedSharedStrings mappedStrings = null;
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter(Locale.getDefault());
+
+            SharedStrings strings;
+            if (sharedStringsStorage == SharedStringsStorage.MEMORY_MAPPED) {
+                try (InputStream sharedStringsData = reader.getSharedStringsData()) {
+                    mappedStrings = MappedSharedStrings.create(sharedStringsData);
+                }
+                strings = mappedStrings;
+            } else {
+                strings = new ReadOnlySharedStringsTable(pkg, false);
+            }
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                // Der Stream wird nur für den Iterator geöffnet; gelesen wird über den Part
+                sheets.next().close();
+                String sheetName = sheets.getSheetName();
+                if (!selection.isSelected(sheetName)) {
+                    continue;
+                }
+
+                output.heading(1, sheetName);
+                PackagePart part = sheets.getSheetPart();
+                List<CellRangeAddress> ranges = selection.getRanges(sheetName);
+                if (ranges.isEmpty()) {
+                    writeSheet(part, styles, strings, formatter, output, null);
+                } else {
+                    for (CellRangeAddress range : ranges) {
+                        writeSheet(part, styles, strings, formatter, output, range);
+                    }
+                }
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("XLSX-Datei konnte nicht gelesen werden: " + e.getMessage(), e);
+        } finally {
+            if (mappedStrings != null) {
+                mappedStrings.close();
+            }
+        }
+    }
+
+    private void writeSheet(PackagePart part, StylesTable styles, SharedStrings strings, DataFormatter formatter,
+                            TextOutput output, CellRangeAddress range) throws IOException {
+        int lastColumn = XlsxStreamingRenderer.findLastColumn(part);
+        if (lastColumn < 0) {
+            return;
+        }
+
+        int firstColNum = range != null ? range.getFirstColumn() : 0;
+        int lastColNum = range != null ? Math.min(lastColumn, range.getLastColumn()) : lastColumn;
+        if (lastColNum < firstColNum) {
+            return;
+        }
+        int firstRowNum = range != null ? range.getFirstRow() : 0;
+        int lastRowNum = range != null ? range.getLastRow() : Integer.MAX_VALUE;
+
+        RowWriter rows = new RowWriter(output, firstRowNum, lastRowNum, firstColNum, lastColNum - firstColNum + 1);
+        try (InputStream sheetData = part.getInputStream()) {
+            XMLReader reader = XMLHelper.newXMLReader();
+            reader.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, rows, formatter, false));
+            reader.parse(new InputSource(sheetData));
+        } catch (StopParsingException e) {
+            // Gewollter Abbruch nach der letzten Zeile des Bereichs
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Arbeitsblatt konnte nicht gelesen werden: " + e.getMessage(), e);
+        }
+        output.endTable();
+    }
+
+    /**
+     * Sammelt die Zellen einer Zeile und schreibt sie am Zeilenende
+     */
+    private static final class RowWriter implements SheetContentsHandler {
+        private final TextOutput output;
+        private final int firstRowNum;
+        private final int lastRowNum;
+        private final int firstColNum;
+        private final String[] cells;
+        private boolean rowInRange = false;
+        private boolean rowHasValues = false;
+
+        RowWriter(TextOutput output, int firstRowNum, int lastRowNum, int firstColNum, int numCols) {
+            this.output = output;
+            this.firstRowNum = firstRowNum;
+            this.lastRowNum = lastRowNum;
+            this.firstColNum = firstColNum;
+            this.cells = new String[numCols];
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (rowNum > lastRowNum) {
+                throw new StopParsingException();
+            }
+            rowInRange = rowNum >= firstRowNum;
+            rowHasValues = false;
+            Arrays.fill(cells, null);
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!rowInRange || !rowHasValues) {
+                return;
+            }
+            try {
+                output.tableRow(cells);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (!rowInRange || cellReference == null || formattedValue == null) {
+                return;
+            }
+            int index = new CellReference(cellReference).getCol() - firstColNum;
+            if (index >= 0 && index < cells.length) {
+                cells[index] = formattedValue;
+                rowHasValues |= !formattedValue.isEmpty();
+            }
+        }
+    }
+}
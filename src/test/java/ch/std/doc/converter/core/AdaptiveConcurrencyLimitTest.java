@@ -0,0 +1,158 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests für AdaptiveConcurrencyLimit
+ */
+@DisplayName("AdaptiveConcurrencyLimit Tests")
+public class AdaptiveConcurrencyLimitTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    @DisplayName("Grenze wächst bei gleichbleibender und schrumpft bei steigender Latenz")
+    public void testGradient() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 32);
+
+        // Gleiche Latenz pro Kosteneinheit, unabhängig von der Grösse des Dokuments
+        for (int i = 0; i < 50; i++) {
+            long cost = i % 2 == 0 ? 1000 : 10_000;
+            limit.onCompleted(cost * 1000, cost, limit.getLimit());
+        }
+        int grown = limit.getLimit();
+        System.out.println("Nach gleichbleibender Latenz: " + grown);
+        assertEquals(32, grown);
+
+        // Überlast: jede Konvertierung dauert viermal so lang
+        for (int i = 0; i < 20; i++) {
+            limit.onCompleted(4_000_000, 1000, limit.getLimit());
+        }
+        System.out.println("Nach steigender Latenz: " + limit.getLimit());
+        assertTrue(limit.getLimit() < grown / 2, "Grenze muss deutlich sinken: " + limit.getLimit());
+        assertTrue(limit.getShortLatency() > limit.getLongLatency());
+
+        // Kaum ausgelastet: die Latenz sagt nichts über die Grenze aus
+        int current = limit.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limit.onCompleted(1_000_000, 1000, 1);
+        }
+        assertEquals(current, limit.getLimit());
+        assertEquals(90, limit.getSampleCount());
+    }
+
+    @Test
+    @DisplayName("Startwert folgt den CPU- und Speichergrenzen der cgroup")
+    public void testContainerLimits() throws IOException {
+        Path v2 = Files.createDirectories(tempDir.resolve("v2"));
+        Files.writeString(v2.resolve("cpu.max"), "150000 100000\n");
+        Files.writeString(v2.resolve("memory.max"), "max\n");
+        assertEquals(2, AdaptiveConcurrencyLimit.detectCpuLimit(v2, 32));
+        assertEquals(Long.MAX_VALUE, AdaptiveConcurrencyLimit.detectMemoryLimit(v2));
+        assertEquals(2, AdaptiveConcurrencyLimit.initialLimit(v2, 32, 8 * GB));
+        assertEquals(4, new AdaptiveConcurrencyLimit(v2, 32, 8 * GB).getMaxLimit());
+
+        Files.writeString(v2.resolve("cpu.max"), "max 100000\n");
+        Files.writeString(v2.resolve("memory.max"), String.valueOf(GB));
+        assertEquals(32, AdaptiveConcurrencyLimit.detectCpuLimit(v2, 32));
+        assertEquals(4, AdaptiveConcurrencyLimit.initialLimit(v2, 32, 8 * GB), "1 GB reicht für 4 Konvertierungen");
+
+        Path v1 = Files.createDirectories(tempDir.resolve("v1/cpu"));
+        Files.writeString(v1.resolve("cpu.cfs_quota_us"), "400000");
+        Files.writeString(v1.resolve("cpu.cfs_period_us"), "100000");
+        Files.createDirectories(tempDir.resolve("v1/memory"));
+        Files.writeString(tempDir.resolve("v1/memory/memory.limit_in_bytes"), "9223372036854771712");
+        assertEquals(4, AdaptiveConcurrencyLimit.detectCpuLimit(tempDir.resolve("v1"), 32));
+        assertEquals(Long.MAX_VALUE, AdaptiveConcurrencyLimit.detectMemoryLimit(tempDir.resolve("v1")));
+        assertEquals(2, AdaptiveConcurrencyLimit.initialLimit(tempDir.resolve("v1"), 32, GB / 2),
+                     "Der Heap begrenzt stärker als die CPUs");
+
+        Path none = tempDir.resolve("keine-cgroup");
+        assertEquals(8, AdaptiveConcurrencyLimit.detectCpuLimit(none, 8));
+    }
+
+    @Test
+    @DisplayName("Scheduler startet nie mehr Konvertierungen als die Grenze erlaubt")
+    public void testSchedulerRespectsLimit() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 2, 6);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+        DocumentConverter converter = new DocumentConverter() {
+            @Override
+            public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options)
+                    throws IOException {
+                int now = active.incrementAndGet();
+                maxActive.accumulateAndGet(now, Math::max);
+                // Bei gleichbleibender Latenz wächst die Grenze nur
+                if (now > limit.getLimit()) {
+                    violations.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                return new ConversionResult(inputFile, outputFile, createDiagnostics(options));
+            }
+
+            @Override
+            protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                                     ConversionDiagnostics diagnostics) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String[] getSupportedExtensions() {
+                return new String[]{".dat"};
+            }
+
+            @Override
+            public String getConverterName() {
+                return "Test-Konverter";
+            }
+
+            @Override
+            public String getDescription() {
+                return "Zählt gleichzeitige Aufrufe";
+            }
+        };
+
+        Path input = Files.write(tempDir.resolve("eingabe.dat"), new byte[100]);
+        List<CompletableFuture<ConversionResult>> results = new ArrayList<>();
+        // 6 Worker-Threads, aber zu Beginn nur 2 erlaubte Konvertierungen
+        ConversionScheduler scheduler = new ConversionScheduler(limit);
+        assertEquals(2, scheduler.getConcurrencyLimit());
+        for (int i = 0; i < 24; i++) {
+            results.add(scheduler.submit(ConversionScheduler.BATCH, converter, input.toString(),
+                                         tempDir.resolve(i + ".pdf").toString(), null, null));
+        }
+        for (CompletableFuture<ConversionResult> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        scheduler.close();
+
+        System.out.println("Grenze am Ende: " + limit.getLimit() + ", höchstens gleichzeitig: " + maxActive.get());
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(0, violations.get());
+        assertTrue(maxActive.get() >= 2);
+        assertEquals(24, limit.getSampleCount());
+    }
+}
@@ -0,0 +1,110 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests für AtomicOutputFile
+ */
+@DisplayName("AtomicOutputFile Tests")
+public class AtomicOutputFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Zieldatei erscheint erst beim Commit, ohne Temporärdatei")
+    public void testCommit() throws Exception {
+        Path target = tempDir.resolve("ausgabe.pdf");
+        Files.writeString(target, "alt");
+
+        // Grösser als der Puffer, damit auch direkt geschriebene Blöcke geprüft werden
+        byte[] large = new byte[AtomicOutputFile.BUFFER_SIZE + 17];
+        Arrays.fill(large, (byte) 'x');
+
+        try (AtomicOutputFile output = AtomicOutputFile.create(target.toString(), true)) {
+            OutputStream out = output.getOutputStream();
+            out.write("neu".getBytes(StandardCharsets.US_ASCII));
+            out.write(large);
+            out.write('!');
+            // Schliessen durch einen PdfWriter darf den Commit nicht verhindern
+            out.close();
+
+            assertEquals("alt", Files.readString(target), "Vor dem Commit bleibt die alte Datei sichtbar");
+            assertTrue(output.getTempFile().getFileName().toString().startsWith(".ausgabe.pdf."));
+            assertEquals(tempDir, output.getTempFile().getParent(), "Temporärdatei liegt neben der Zieldatei");
+
+            output.commit();
+        }
+
+        byte[] written = Files.readAllBytes(target);
+        assertEquals(3 + large.length + 1, written.length);
+        assertEquals('n', written[0]);
+        assertEquals('!', written[written.length - 1]);
+        assertEquals(List.of("ausgabe.pdf"), listFiles());
+    }
+
+    @Test
+    @DisplayName("Ohne Commit bleibt die Zieldatei unverändert und nichts bleibt liegen")
+    public void testDiscardWithoutCommit() throws Exception {
+        Path target = tempDir.resolve("ausgabe.pdf");
+        Files.writeString(target, "alt");
+
+        assertThrows(IllegalStateException.class, () -> {
+            try (AtomicOutputFile output = AtomicOutputFile.create(target.toString(), false)) {
+                output.getOutputStream().write(new byte[1000]);
+                throw new IllegalStateException("Konvertierung fehlgeschlagen");
+            }
+        });
+
+        assertEquals("alt", Files.readString(target));
+        assertEquals(List.of("ausgabe.pdf"), listFiles());
+    }
+
+    @Test
+    @DisplayName("Verwaiste Temporärdateien werden beim nächsten Schreiben entfernt")
+    public void testOrphanedTempFilesAreRemoved() throws Exception {
+        Path target = tempDir.resolve("ausgabe.pdf");
+        // Reste eines abgebrochenen Prozesses und fremde Dateien mit ähnlichem Namen
+        Files.writeString(tempDir.resolve(".ausgabe.pdf.3f9a0c17b2e4d865.part"), "abgebrochen");
+        Files.writeString(tempDir.resolve(".ausgabe.pdf.notizen.part"), "fremd");
+        Files.writeString(tempDir.resolve(".andere.pdf.1234.part"), "andere Zieldatei");
+
+        try (AtomicOutputFile running = AtomicOutputFile.create(target.toString(), false)) {
+            running.getOutputStream().write("laufend".getBytes(StandardCharsets.US_ASCII));
+
+            try (AtomicOutputFile output = AtomicOutputFile.create(target.toString(), false)) {
+                output.getOutputStream().write("neu".getBytes(StandardCharsets.US_ASCII));
+                output.commit();
+            }
+
+            assertTrue(Files.exists(running.getTempFile()), "Laufende Ausgabe darf nicht gelöscht werden");
+            assertEquals(Stream.of(".andere.pdf.1234.part", ".ausgabe.pdf.notizen.part",
+                                   running.getTempFile().getFileName().toString(), "ausgabe.pdf")
+                               .sorted().collect(Collectors.toList()), listFiles());
+
+            running.commit();
+        }
+
+        assertEquals("laufend", Files.readString(target));
+        assertEquals(List.of(".andere.pdf.1234.part", ".ausgabe.pdf.notizen.part", "ausgabe.pdf"), listFiles());
+    }
+}
@@ -0,0 +1,202 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests für ConversionCache
+ */
+@DisplayName("ConversionCache Tests")
+public class ConversionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Schreibt den Eingabetext als "PDF" und zählt die Aufrufe
+     */
+    private static final class CountingConverter extends DocumentConverter {
+        private final AtomicInteger conversions = new AtomicInteger();
+        private final long delayMillis;
+
+        CountingConverter(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options)
+                throws IOException {
+            conversions.incrementAndGet();
+            ConversionDiagnostics diagnostics = createDiagnostics(options);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String content = Files.readString(Path.of(inputFile));
+            if (content.contains("defekt")) {
+                diagnostics.warn("test.defekt", "Defekter Absatz");
+            }
+            Files.writeString(Path.of(outputFile), "PDF:" + content + ":" + options.getPdfOutputProfile().getName());
+            return new ConversionResult(inputFile, outputFile, diagnostics);
+        }
+
+        @Override
+        protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                                 ConversionDiagnostics diagnostics) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSupportedExtensions() {
+            return new String[]{".dat"};
+        }
+
+        @Override
+        public String getConverterName() {
+            return "Test-Konverter";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Zählt Konvertierungen";
+        }
+    }
+
+    private String createInput(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content).toString();
+    }
+
+    private String output(String name) {
+        return tempDir.resolve(name).toString();
+    }
+
+    @Test
+    @DisplayName("Gleicher Inhalt wird unabhängig vom Namen aus dem Cache kopiert")
+    public void testHitByContent() throws Exception {
+        CountingConverter converter = new CountingConverter(0);
+        ConversionCache cache = new ConversionCache(tempDir.resolve("cache"), 1024 * 1024);
+
+        String original = createInput("vertrag.dat", "Vertrag defekt");
+        String forwarded = createInput("WG_ vertrag (1).dat", "Vertrag defekt");
+
+        ConversionResult first = cache.convertToPdf(converter, original, output("a.pdf"), null);
+        ConversionResult second = cache.convertToPdf(converter, forwarded, output("b.pdf"), null);
+
+        assertEquals(1, converter.conversions.get(), "Zweiter Aufruf sollte aus dem Cache kommen");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(Files.readString(Path.of(output("a.pdf"))), Files.readString(Path.of(output("b.pdf"))));
+        assertEquals(first.getDiagnostics().getSummary(), second.getDiagnostics().getSummary(),
+                     "Warnungen der ursprünglichen Konvertierung werden wiederhergestellt");
+        assertEquals("Defekter Absatz", second.getDiagnostics().getSamples().get(0).getMessage());
+
+        // Andere Optionen ergeben einen anderen Schlüssel
+        cache.convertToPdf(converter, forwarded, output("c.pdf"),
+                           new ConversionOptions().setPdfOutputProfile(PdfOutputProfile.SMALL));
+        assertEquals(2, converter.conversions.get());
+        assertTrue(Files.readString(Path.of(output("c.pdf"))).endsWith(":small"));
+
+        // Ein neu geöffneter Cache übernimmt die Einträge
+        ConversionCache reopened = new ConversionCache(tempDir.resolve("cache"), 1024 * 1024);
+        assertEquals(2, reopened.getEntryCount());
+        reopened.convertToPdf(converter, original, output("d.pdf"), null);
+        assertEquals(2, converter.conversions.get());
+        assertEquals(1, reopened.getHitCount());
+    }
+
+    @Test
+    @DisplayName("Am längsten nicht verwendete Einträge werden nach Grösse verdrängt")
+    public void testLruEviction() throws Exception {
+        CountingConverter converter = new CountingConverter(0);
+        // Jedes Ergebnis ist 4 + 100 + 8 Bytes gross, es passen zwei Einträge
+        ConversionCache cache = new ConversionCache(tempDir.resolve("cache"), 250);
+
+        String a = createInput("a.dat", "a".repeat(100));
+        String b = createInput("b.dat", "b".repeat(100));
+        String c = createInput("c.dat", "c".repeat(100));
+
+        cache.convertToPdf(converter, a, output("a.pdf"), null);
+        cache.convertToPdf(converter, b, output("b.pdf"), null);
+        cache.convertToPdf(converter, a, output("a2.pdf"), null); // a zuletzt verwendet
+        cache.convertToPdf(converter, c, output("c.pdf"), null);  // verdrängt b
+
+        assertEquals(3, converter.conversions.get());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getEntryCount());
+        assertTrue(cache.getSize() <= 250);
+
+        cache.convertToPdf(converter, a, output("a3.pdf"), null);
+        assertEquals(3, converter.conversions.get(), "a sollte noch im Cache sein");
+        cache.convertToPdf(converter, b, output("b2.pdf"), null);
+        assertEquals(4, converter.conversions.get(), "b sollte verdrängt worden sein");
+    }
+
+    @Test
+    @DisplayName("Gleichzeitige Anfragen für dasselbe Dokument konvertieren nur einmal")
+    public void testConcurrentRequestsConvertOnce() throws Exception {
+        CountingConverter converter = new CountingConverter(300);
+        ConversionCache cache = new ConversionCache(tempDir.resolve("cache"), 1024 * 1024);
+        String input = createInput("anhang.dat", "Rundschreiben");
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ConversionResult>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String outputFile = output("ausgabe-" + i + ".pdf");
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.convertToPdf(converter, input, outputFile, null);
+                }));
+            }
+            start.countDown();
+            for (Future<ConversionResult> result : results) {
+                String content = Files.readString(Path.of(result.get(10, TimeUnit.SECONDS).getOutputFile()),
+                                                  StandardCharsets.UTF_8);
+                assertEquals("PDF:Rundschreiben:default", content);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, converter.conversions.get(), "Nur eine Konvertierung sollte laufen");
+        assertEquals(threads - 1, cache.getHitCount());
+        System.out.println(threads + " gleichzeitige Anfragen, " + converter.conversions.get() + " Konvertierung");
+    }
+
+    @Test
+    @DisplayName("Echte Konvertierung wird byte-identisch aus dem Cache geliefert")
+    public void testRealConverter() throws Exception {
+        File inputFile = new File("/workspaces/docconverter/test-verkaufsdaten.xlsx");
+        assumeTrue(inputFile.exists(), "test-verkaufsdaten.xlsx nicht gefunden");
+        ConversionCache cache = new ConversionCache(tempDir.resolve("cache"), 16 * 1024 * 1024);
+
+        cache.convertToPdf(inputFile.getAbsolutePath(), output("erst.pdf"), null);
+        cache.convertToPdf(inputFile.getAbsolutePath(), output("zweit.pdf"), null);
+
+        assertEquals(1, cache.getHitCount());
+        assertArrayEquals(Files.readAllBytes(Path.of(output("erst.pdf"))),
+                          Files.readAllBytes(Path.of(output("zweit.pdf"))));
+        assertEquals(Files.size(Path.of(output("erst.pdf"))), cache.getSize());
+    }
+}
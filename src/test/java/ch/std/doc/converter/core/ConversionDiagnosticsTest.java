@@ -0,0 +1,97 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests für ConversionDiagnostics und AsyncDiagnosticsSink
+ */
+@DisplayName("ConversionDiagnostics Tests")
+public class ConversionDiagnosticsTest {
+    
+    @Test
+    @DisplayName("Warnungen werden pro Kategorie gezählt, nur die ersten als Beispiele behalten")
+    public void testCountsAndSamples() {
+        ConversionDiagnostics diagnostics = new ConversionDiagnostics(3, null);
+        for (int i = 0; i < 1000; i++) {
+            diagnostics.warn("doc.paragraph", "Absatz " + i);
+        }
+        diagnostics.warn("doc.font", "Schrift fehlt");
+        diagnostics.info("Nur Information");
+        
+        assertEquals(1000, diagnostics.getWarningCount("doc.paragraph"));
+        assertEquals(1, diagnostics.getWarningCount("doc.font"));
+        assertEquals(0, diagnostics.getWarningCount(ConversionDiagnostics.INFO), "Infos werden nicht gezählt");
+        assertEquals(1001, diagnostics.getTotalWarnings());
+        
+        List<ConversionDiagnostics.Warning> samples = diagnostics.getSamples();
+        assertEquals(3, samples.size());
+        assertEquals("Absatz 0", samples.get(0).getMessage());
+        assertEquals("1001 Warnungen (doc.font: 1, doc.paragraph: 1000)", diagnostics.getSummary());
+    }
+    
+    @Test
+    @DisplayName("Parallele Warnungen gehen nicht verloren")
+    public void testConcurrentWarnings() throws Exception {
+        ConversionDiagnostics diagnostics = new ConversionDiagnostics(5, null);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    diagnostics.warn("excel.cell", "Zelle " + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(40000, diagnostics.getWarningCount("excel.cell"));
+        assertEquals(5, diagnostics.getSamples().size());
+    }
+    
+    @Test
+    @DisplayName("Asynchroner Sink liefert Meldungen im Hintergrund aus")
+    public void testAsyncSink() throws Exception {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        try (AsyncDiagnosticsSink sink = new AsyncDiagnosticsSink((category, message) -> delivered.add(message), 100)) {
+            ConversionDiagnostics diagnostics = new ConversionDiagnostics(0, sink);
+            diagnostics.info("Start");
+            diagnostics.warn("doc.paragraph", "Defekt");
+        }
+        
+        assertEquals(List.of("Start", "Defekt"), delivered, "Beim Schliessen werden alle Meldungen ausgeliefert");
+    }
+    
+    @Test
+    @DisplayName("Volle Queue verwirft Meldungen statt zu blockieren")
+    public void testAsyncSinkDropsWhenFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncDiagnosticsSink sink = new AsyncDiagnosticsSink((category, message) -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2);
+        
+        sink.log("test", "wird ausgeliefert");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            sink.log("test", "Meldung " + i);
+        }
+        
+        assertEquals(8, sink.getDroppedCount(), "Nur zwei Meldungen passen in die Queue");
+        release.countDown();
+        sink.close();
+    }
+}
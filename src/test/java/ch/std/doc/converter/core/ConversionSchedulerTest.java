@@ -0,0 +1,185 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests für ConversionScheduler
+ */
+@DisplayName("ConversionScheduler Tests")
+public class ConversionSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Hält die Reihenfolge der Konvertierungen fest. Die Datei "sperre.dat"
+     * blockiert den Worker, bis {@link #release} geöffnet wird.
+     */
+    private static final class RecordingConverter extends DocumentConverter {
+        private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public ConversionResult convertToPdf(String inputFile, String outputFile, ConversionOptions options)
+                throws IOException {
+            String name = Path.of(inputFile).getFileName().toString().replace(".dat", "");
+            if (name.equals("sperre")) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                order.add(name);
+            }
+            Files.writeString(Path.of(outputFile), "PDF:" + name);
+            return new ConversionResult(inputFile, outputFile, createDiagnostics(options));
+        }
+
+        @Override
+        protected void writeText(String inputFile, Writer out, ConversionOptions options,
+                                 ConversionDiagnostics diagnostics) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSupportedExtensions() {
+            return new String[]{".dat"};
+        }
+
+        @Override
+        public String getConverterName() {
+            return "Test-Konverter";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Hält die Reihenfolge fest";
+        }
+    }
+
+    private final RecordingConverter converter = new RecordingConverter();
+
+    private CompletableFuture<ConversionResult> submit(ConversionScheduler scheduler, String lane, String name,
+                                                       int size, Instant deadline) throws IOException {
+        Path input = Files.write(tempDir.resolve(name + ".dat"), new byte[size]);
+        return scheduler.submit(lane, converter, input.toString(), tempDir.resolve(name + ".pdf").toString(),
+                                null, deadline);
+    }
+
+    /**
+     * Belegt den einzigen Worker, damit sich die Aufträge zuerst anstauen
+     */
+    private void block(ConversionScheduler scheduler) throws Exception {
+        submit(scheduler, ConversionScheduler.INTERACTIVE, "sperre", 1, null);
+        assertTrue(converter.blocked.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Interaktive Spur: früheste Frist zuerst, danach kleinste Aufträge")
+    public void testInteractiveLaneOrder() throws Exception {
+        try (ConversionScheduler scheduler = new ConversionScheduler(1)) {
+            block(scheduler);
+            submit(scheduler, ConversionScheduler.INTERACTIVE, "gross", 3000, null);
+            submit(scheduler, ConversionScheduler.INTERACTIVE, "klein", 100, null);
+            submit(scheduler, ConversionScheduler.INTERACTIVE, "spaete-frist", 100, Instant.now().plusSeconds(7200));
+            submit(scheduler, ConversionScheduler.INTERACTIVE, "mittel", 1000, null);
+            submit(scheduler, ConversionScheduler.INTERACTIVE, "frist", 3000, Instant.now().plusSeconds(3600));
+            assertEquals(5, scheduler.getQueueDepth(ConversionScheduler.INTERACTIVE));
+            converter.release.countDown();
+        }
+
+        assertEquals(List.of("frist", "spaete-frist", "klein", "mittel", "gross"), converter.order);
+    }
+
+    @Test
+    @DisplayName("Batch-Spur: grösste Aufträge zuerst")
+    public void testBatchLaneOrder() throws Exception {
+        try (ConversionScheduler scheduler = new ConversionScheduler(1)) {
+            block(scheduler);
+            submit(scheduler, ConversionScheduler.BATCH, "klein", 100, null);
+            submit(scheduler, ConversionScheduler.BATCH, "gross", 3000, null);
+            submit(scheduler, ConversionScheduler.BATCH, "mittel", 1000, null);
+            converter.release.countDown();
+        }
+
+        assertEquals(List.of("gross", "mittel", "klein"), converter.order);
+    }
+
+    @Test
+    @DisplayName("Spuren teilen sich die Worker nach Gewicht und liefern Kennzahlen")
+    public void testWeightedSharingAndMetrics() throws Exception {
+        List<CompletableFuture<ConversionResult>> results = new ArrayList<>();
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        block(scheduler);
+        for (int i = 0; i < 10; i++) {
+            results.add(submit(scheduler, ConversionScheduler.BATCH, "b" + i, 100, null));
+            results.add(submit(scheduler, ConversionScheduler.INTERACTIVE, "i" + i, 100, null));
+        }
+        results.add(submit(scheduler, ConversionScheduler.BATCH, "verpasst", 100, Instant.now().minusSeconds(1)));
+        assertEquals(21, scheduler.getQueueDepth());
+        assertEquals(11, scheduler.getQueueDepth(ConversionScheduler.BATCH));
+        Thread.sleep(20);
+        assertTrue(scheduler.getOldestWaitMillis(ConversionScheduler.BATCH) >= 20);
+
+        converter.release.countDown();
+        scheduler.close();
+
+        for (CompletableFuture<ConversionResult> result : results) {
+            assertTrue(result.isDone() && !result.isCompletedExceptionally());
+        }
+        assertThrows(IllegalStateException.class,
+                     () -> submit(scheduler, ConversionScheduler.BATCH, "zu-spaet", 1, null));
+
+        // Gewicht 4:1 bei gleichen Kosten; der verpasste Auftrag läuft wegen seiner Frist zuerst
+        List<String> first = converter.order.subList(1, 11);
+        long interactive = first.stream().filter(name -> name.startsWith("i")).count();
+        System.out.println("Reihenfolge: " + String.join(" ", converter.order));
+        assertEquals("verpasst", converter.order.get(0));
+        assertEquals(8, interactive, "Erwartet 8 interaktive von 10: " + first);
+
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(11, scheduler.getStartedCount(ConversionScheduler.INTERACTIVE));
+        assertEquals(11, scheduler.getStartedCount(ConversionScheduler.BATCH));
+        assertEquals(1, scheduler.getMissedDeadlineCount(ConversionScheduler.BATCH));
+        assertEquals(0, scheduler.getMissedDeadlineCount(ConversionScheduler.INTERACTIVE));
+        assertTrue(scheduler.getMaxWaitMillis(ConversionScheduler.BATCH) >= 20);
+        assertTrue(scheduler.getAverageWaitMillis(ConversionScheduler.BATCH) > 0);
+        System.out.println("Mittlere Wartezeit: interaktiv "
+                           + scheduler.getAverageWaitMillis(ConversionScheduler.INTERACTIVE) + " ms, batch "
+                           + scheduler.getAverageWaitMillis(ConversionScheduler.BATCH) + " ms");
+    }
+
+    @Test
+    @DisplayName("Unbekannte Spuren und ungültige Gewichte werden abgelehnt")
+    public void testInvalidLanes() throws Exception {
+        try (ConversionScheduler scheduler = new ConversionScheduler(1)) {
+            assertThrows(IllegalArgumentException.class,
+                         () -> submit(scheduler, "unbekannt", "x", 1, null));
+            assertThrows(IllegalArgumentException.class,
+                         () -> scheduler.addLane("archiv", 0, ConversionScheduler.SizeOrder.LARGEST_FIRST));
+
+            scheduler.addLane("archiv", 2, ConversionScheduler.SizeOrder.LARGEST_FIRST);
+            CompletableFuture<ConversionResult> result = submit(scheduler, "archiv", "x", 1, null);
+            assertEquals(tempDir.resolve("x.pdf").toString(), result.get(10, TimeUnit.SECONDS).getOutputFile());
+        }
+        assertEquals(List.of("x"), converter.order);
+    }
+}
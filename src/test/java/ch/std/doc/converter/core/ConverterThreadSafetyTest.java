@@ -0,0 +1,158 @@
+package ch.std.doc.converter.core;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prüft, dass die gemeinsam genutzten Konverter-Instanzen gleichzeitig
+ * verwendet werden können
+ */
+@DisplayName("Thread-Sicherheit der Konverter")
+public class ConverterThreadSafetyTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 3;
+
+    private static final List<File> SAMPLES = List.of(
+            new File("/workspaces/docconverter/test-verkaufsdaten.xlsx"),
+            new File("/workspaces/docconverter/beispiel.docx"),
+            new File("/workspaces/docconverter/komplexes-dokument.docx"),
+            new File("/workspaces/docconverter/Generalversammlung.doc"));
+
+    @Test
+    @DisplayName("Konverter haben keine Instanzfelder")
+    public void testConvertersAreStateless() {
+        for (DocumentConverter converter : DocumentConverterFactory.getRegisteredConverters()) {
+            for (Class<?> type = converter.getClass(); type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    assertTrue(Modifier.isStatic(field.getModifiers()),
+                               "Instanzfeld in " + type.getSimpleName() + ": " + field.getName());
+                    if (!field.isSynthetic()) {
+                        assertTrue(Modifier.isFinal(field.getModifiers()),
+                                   "Veränderliches statisches Feld in " + type.getSimpleName() + ": "
+                                   + field.getName());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Gleichzeitige Konvertierungen liefern dieselben PDFs wie nacheinander")
+    public void testConcurrentConversionsMatchSequential() throws Exception {
+        List<File> samples = new ArrayList<>();
+        for (File sample : SAMPLES) {
+            if (sample.exists()) {
+                samples.add(sample);
+            }
+        }
+        assumeFalse(samples.isEmpty(), "Keine Beispieldateien gefunden");
+
+        // Referenz: jede Datei einmal im eigenen Thread
+        Map<File, Snapshot> expected = new LinkedHashMap<>();
+        for (File sample : samples) {
+            expected.put(sample, convert(sample, tempDir.resolve("referenz-" + sample.getName() + ".pdf")));
+        }
+
+        // Alle Threads beginnen gleichzeitig, jeder in eigener Reihenfolge
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    List<File> order = new ArrayList<>(samples);
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        Collections.shuffle(order, new Random(thread * 31L + round));
+                        for (File sample : order) {
+                            Path output = tempDir.resolve(thread + "-" + round + "-" + sample.getName() + ".pdf");
+                            Snapshot actual = convert(sample, output);
+                            expected.get(sample).assertSame(actual, sample.getName() + " in Thread " + thread);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println(THREADS * ROUNDS * samples.size() + " gleichzeitige Konvertierungen von "
+                           + samples.size() + " Dateien entsprechen der Referenz");
+    }
+
+    /**
+     * Konvertiert mit der gemeinsamen Instanz der Factory und hält fest, was
+     * zwischen zwei Läufen gleich sein muss
+     */
+    private static Snapshot convert(File input, Path output) throws IOException {
+        DocumentConverter converter = DocumentConverterFactory.createConverter(input.getPath());
+        ConversionResult result = converter.convertToPdf(input.getPath(), output.toString(), null);
+
+        // Erstellungsdatum und Dokument-ID unterscheiden sich, der Seiteninhalt nicht
+        List<byte[]> pages = new ArrayList<>();
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(output.toFile()))) {
+            for (int i = 1; i <= pdf.getNumberOfPages(); i++) {
+                pages.add(pdf.getPage(i).getContentBytes());
+            }
+        }
+
+        StringWriter text = new StringWriter();
+        converter.extractText(input.getPath(), text, null);
+        return new Snapshot(pages, result.getDiagnostics().getWarningCounts(), text.toString());
+    }
+
+    private static final class Snapshot {
+        final List<byte[]> pages;
+        final Map<String, Long> warnings;
+        final String text;
+
+        Snapshot(List<byte[]> pages, Map<String, Long> warnings, String text) {
+            this.pages = pages;
+            this.warnings = warnings;
+            this.text = text;
+        }
+
+        void assertSame(Snapshot actual, String label) {
+            assertEquals(pages.size(), actual.pages.size(), "Seitenzahl von " + label);
+            for (int i = 0; i < pages.size(); i++) {
+                assertArrayEquals(pages.get(i), actual.pages.get(i), "Seite " + (i + 1) + " von " + label);
+            }
+            assertEquals(warnings, actual.warnings, "Warnungen von " + label);
+            assertEquals(text, actual.text, "Text von " + label);
+        }
+    }
+}
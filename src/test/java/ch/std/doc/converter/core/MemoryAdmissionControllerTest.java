@@ -0,0 +1,106 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests für MemoryAdmissionController
+ */
+@DisplayName("MemoryAdmissionController Tests")
+public class MemoryAdmissionControllerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String createWorkbook(String name, int rows, int columns) throws Exception {
+        Path file = tempDir.resolve(name);
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            XSSFSheet sheet = workbook.createSheet("Daten");
+            for (int r = 0; r < rows; r++) {
+                XSSFRow row = sheet.createRow(r);
+                for (int c = 0; c < columns; c++) {
+                    row.createCell(c).setCellValue(r * columns + c);
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+                workbook.write(out);
+            }
+        }
+        return file.toString();
+    }
+
+    @Test
+    @DisplayName("Heap-Bedarf wird aus den Blattdimensionen geschätzt")
+    public void testEstimateFromDimensions() throws Exception {
+        String small = createWorkbook("klein.xlsx", 10, 5);
+        String large = createWorkbook("gross.xlsx", 1000, 10);
+
+        long smallHeap = MemoryAdmissionController.estimateHeapBytes(small, new ConversionOptions());
+        long largeHeap = MemoryAdmissionController.estimateHeapBytes(large, new ConversionOptions());
+        long largeStreaming = MemoryAdmissionController.estimateHeapBytes(large,
+                new ConversionOptions().setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED));
+        System.out.println("Schätzung: klein " + (smallHeap >> 20) + " MB, gross " + (largeHeap >> 20)
+                           + " MB, gross gestreamt " + (largeStreaming >> 20) + " MB");
+
+        assertTrue(largeHeap - smallHeap >= 9950L * 1024, "10'000 Zellen müssen ins Gewicht fallen");
+        assertTrue(largeStreaming < largeHeap, "Streaming braucht weniger Heap");
+    }
+
+    @Test
+    @DisplayName("Konvertierungen warten, bis ihr Bedarf ins Budget passt")
+    public void testBudget() throws Exception {
+        String workbook = createWorkbook("daten.xlsx", 100, 10);
+        ConversionOptions options = new ConversionOptions();
+        long estimate = MemoryAdmissionController.estimateHeapBytes(workbook, options);
+
+        try (MemoryAdmissionController controller = new MemoryAdmissionController(estimate * 2, 1.0)) {
+            MemoryAdmissionController.Permit first = controller.acquire(workbook, options);
+            MemoryAdmissionController.Permit second = controller.acquire(workbook, options);
+            assertTrue(controller.getAvailableBytes() < estimate);
+            assertNull(controller.tryAcquire(workbook, options, 50, TimeUnit.MILLISECONDS),
+                       "Dritte Konvertierung passt nicht mehr ins Budget");
+
+            first.close();
+            MemoryAdmissionController.Permit third = controller.tryAcquire(workbook, options, 1, TimeUnit.SECONDS);
+            assertNotNull(third);
+            second.close();
+            third.close();
+            third.close();
+            assertEquals(controller.getBudgetBytes(), controller.getAvailableBytes(), 1024);
+
+            // Grösser als das ganze Budget: läuft allein
+            try (MemoryAdmissionController tiny = new MemoryAdmissionController(4096, 1.0);
+                 MemoryAdmissionController.Permit permit = tiny.acquire(workbook, options)) {
+                assertEquals(4096, permit.getBytes());
+                assertEquals(0, tiny.getAvailableBytes());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Überschrittene Heap-Schwelle hält neue Zulassungen an")
+    public void testThresholdPausesAdmissions() throws Exception {
+        String workbook = createWorkbook("daten.xlsx", 10, 5);
+        // Schwelle praktisch bei 0: jede Belegung nach einer GC überschreitet sie
+        try (MemoryAdmissionController controller = new MemoryAdmissionController(1L << 30, 1e-12)) {
+            for (int i = 0; i < 50 && controller.getPauseCount() == 0; i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            assertTrue(controller.getPauseCount() > 0, "Benachrichtigung der Old Generation erwartet");
+            assertTrue(controller.isPaused());
+            assertNull(controller.tryAcquire(workbook, new ConversionOptions(), 300, TimeUnit.MILLISECONDS));
+            assertEquals(1L << 30, controller.getAvailableBytes(), "Abgelaufene Wartezeit gibt das Budget frei");
+        }
+    }
+}
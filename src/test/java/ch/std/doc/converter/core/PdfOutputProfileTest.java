@@ -0,0 +1,68 @@
+package ch.std.doc.converter.core;
+
+import ch.std.doc.converter.utils.PdfContentValidator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+
+/**
+ * Tests für PdfOutputProfile und dessen Anwendung in den Konvertern
+ */
+@DisplayName("PdfOutputProfile Tests")
+public class PdfOutputProfileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Profile werden über den Namen gefunden und sind unveränderlich")
+    public void testProfiles() {
+        assertSame(PdfOutputProfile.SMALL, PdfOutputProfile.forName("Small"));
+        assertSame(PdfOutputProfile.FAST, PdfOutputProfile.forName("fast"));
+        assertThrows(IllegalArgumentException.class, () -> PdfOutputProfile.forName("winzig"));
+
+        PdfOutputProfile custom = PdfOutputProfile.SMALL.withSmartMode(false).withCompressionLevel(5);
+        assertFalse(custom.isSmartMode());
+        assertEquals(5, custom.getCompressionLevel());
+        assertTrue(custom.isFullCompression());
+        assertTrue(PdfOutputProfile.SMALL.isSmartMode(), "Vordefiniertes Profil bleibt unverändert");
+        assertEquals(Deflater.BEST_COMPRESSION, PdfOutputProfile.SMALL.getCompressionLevel());
+
+        assertThrows(IllegalArgumentException.class, () -> PdfOutputProfile.DEFAULT.withCompressionLevel(10));
+        assertThrows(IllegalArgumentException.class, () -> new ConversionOptions().setPdfOutputProfile(null));
+    }
+
+    @Test
+    @DisplayName("Profil 'small' schreibt Objekt-Streams und kleinere Dateien")
+    public void testSmallProfile() throws Exception {
+        File inputFile = new File("/workspaces/docconverter/komplexes-dokument.docx");
+        assumeTrue(inputFile.exists(), "komplexes-dokument.docx nicht gefunden");
+        DocumentConverter converter = DocumentConverterFactory.createConverter(inputFile.getName());
+
+        File defaultPdf = tempDir.resolve("default.pdf").toFile();
+        File smallPdf = tempDir.resolve("small.pdf").toFile();
+        converter.convertToPdf(inputFile.getAbsolutePath(), defaultPdf.getAbsolutePath());
+        converter.convertToPdf(inputFile.getAbsolutePath(), smallPdf.getAbsolutePath(),
+                new ConversionOptions().setPdfOutputProfile(PdfOutputProfile.SMALL));
+
+        String defaultRaw = new String(Files.readAllBytes(defaultPdf.toPath()), StandardCharsets.ISO_8859_1);
+        String smallRaw = new String(Files.readAllBytes(smallPdf.toPath()), StandardCharsets.ISO_8859_1);
+        assertFalse(defaultRaw.contains("/ObjStm"), "Standard schreibt eine klassische Xref-Tabelle");
+        assertTrue(smallRaw.contains("/ObjStm"), "Profil 'small' schreibt Objekt-Streams");
+        assertTrue(smallPdf.length() < defaultPdf.length(),
+                   "Profil 'small' sollte kleiner sein: " + smallPdf.length() + " vs " + defaultPdf.length());
+
+        assertEquals(PdfContentValidator.extractTextFromPdf(defaultPdf),
+                     PdfContentValidator.extractTextFromPdf(smallPdf), "Inhalt bleibt gleich");
+        System.out.println("PDF-Grösse default: " + defaultPdf.length() + " Bytes, small: " + smallPdf.length() + " Bytes");
+    }
+}
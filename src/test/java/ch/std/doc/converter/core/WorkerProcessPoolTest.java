@@ -0,0 +1,160 @@
+package ch.std.doc.converter.core;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests für WorkerProcessPool
+ */
+@DisplayName("WorkerProcessPool Tests")
+public class WorkerProcessPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final File XLSX = new File("/workspaces/docconverter/test-verkaufsdaten.xlsx");
+    private static final File DOCX = new File("/workspaces/docconverter/beispiel.docx");
+
+    @Test
+    @DisplayName("Konvertierung im Worker-Prozess entspricht der im eigenen Prozess")
+    public void testConvertInWorker() throws Exception {
+        assumeTrue(XLSX.exists(), "test-verkaufsdaten.xlsx nicht gefunden");
+        assumeTrue(DOCX.exists(), "beispiel.docx nicht gefunden");
+
+        List<String> messages = new CopyOnWriteArrayList<>();
+        ConversionOptions options = new ConversionOptions()
+                .setPdfOutputProfile(PdfOutputProfile.SMALL.withFontSubsetting(false))
+                .setDiagnosticsSink((category, message) -> messages.add(category + ": " + message));
+
+        try (WorkerProcessPool pool = new WorkerProcessPool(2, 256).start()) {
+            assertEquals(0, pool.getLargeJobCount());
+            assertEquals(2, pool.getWorkerPids().size());
+            assertFalse(pool.getWorkerPids().contains(ProcessHandle.current().pid()));
+
+            for (File input : List.of(XLSX, DOCX)) {
+                String pooled = tempDir.resolve(input.getName() + ".worker.pdf").toString();
+                String local = tempDir.resolve(input.getName() + ".lokal.pdf").toString();
+                ConversionResult result = pool.convertToPdf(input.getPath(), pooled, options);
+                ConversionResult expected = DocumentConverterFactory.createConverter(input.getPath())
+                        .convertToPdf(input.getPath(), local, new ConversionOptions()
+                                .setPdfOutputProfile(PdfOutputProfile.SMALL.withFontSubsetting(false)));
+
+                System.out.println(input.getName() + ": " + Files.size(Path.of(pooled)) + " Bytes im Worker, "
+                                   + Files.size(Path.of(local)) + " Bytes lokal");
+                assertEquals(pooled, result.getOutputFile());
+                assertEquals(List.of(pooled), result.getOutputParts());
+                assertEquals(expected.getDiagnostics().getWarningCounts(),
+                             result.getDiagnostics().getWarningCounts());
+                // Zeitstempel und Dokument-ID unterscheiden sich, die Grösse kaum
+                assertEquals(Files.size(Path.of(local)), Files.size(Path.of(pooled)), 256);
+            }
+            assertFalse(messages.isEmpty(), "Info-Meldungen des Workers erreichen den Sink");
+            assertEquals(2, pool.getStartedCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Worker werden nach der maximalen Anzahl Aufträge ersetzt")
+    public void testRecycleAfterMaxJobs() throws Exception {
+        assumeTrue(DOCX.exists(), "beispiel.docx nicht gefunden");
+
+        try (WorkerProcessPool pool = new WorkerProcessPool(1, 128).setMaxJobsPerWorker(2).start()) {
+            long firstPid = pool.getWorkerPids().get(0);
+            for (int i = 0; i < 5; i++) {
+                pool.convertToPdf(DOCX.getPath(), tempDir.resolve(i + ".pdf").toString(), null);
+            }
+            System.out.println("Gestartet: " + pool.getStartedCount() + ", ersetzt: " + pool.getRecycledCount());
+            assertEquals(2, pool.getRecycledCount());
+            assertTrue(pool.getStartedCount() >= 3);
+            assertFalse(ProcessHandle.of(firstPid).map(ProcessHandle::isAlive).orElse(false),
+                        "Ersetzter Worker muss beendet sein");
+        }
+    }
+
+    @Test
+    @DisplayName("Abgestürzte Worker und fehlerhafte Dateien treffen nur den eigenen Auftrag")
+    public void testCrashIsolation() throws Exception {
+        assumeTrue(DOCX.exists(), "beispiel.docx nicht gefunden");
+
+        try (WorkerProcessPool pool = new WorkerProcessPool(1, 128).start()) {
+            // Im Leerlauf von aussen beendet: der nächste Auftrag erhält einen neuen Worker
+            long pid = pool.getWorkerPids().get(0);
+            ProcessHandle worker = ProcessHandle.of(pid).orElseThrow();
+            worker.destroyForcibly();
+            worker.onExit().get(10, TimeUnit.SECONDS);
+            ConversionResult result = pool.convertToPdf(DOCX.getPath(), tempDir.resolve("a.pdf").toString(), null);
+            assertTrue(new File(result.getOutputFile()).length() > 0);
+            assertNotEquals(pid, pool.getWorkerPids().get(0));
+
+            // Beschädigte Datei: Fehler wird gemeldet, der Worker arbeitet weiter
+            Path broken = Files.writeString(tempDir.resolve("kaputt.docx"), "kein ZIP");
+            long workerPid = pool.getWorkerPids().get(0);
+            IOException error = assertThrows(IOException.class,
+                    () -> pool.convertToPdf(broken.toString(), tempDir.resolve("b.pdf").toString(), null));
+            System.out.println("Fehler: " + error.getMessage());
+            assertTrue(error.getMessage().contains("kaputt.docx"));
+            assertEquals(List.of(workerPid), pool.getWorkerPids());
+            pool.convertToPdf(DOCX.getPath(), tempDir.resolve("c.pdf").toString(), null);
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> pool.convertToPdf("bild.png", tempDir.resolve("d.pdf").toString(), null));
+        }
+    }
+
+    @Test
+    @DisplayName("Fehlgeschlagener Start eines Ersatz-Workers wird gezählt statt ausgegeben")
+    public void testReplacementStartFailure() throws Exception {
+        assumeTrue(DOCX.exists(), "beispiel.docx nicht gefunden");
+
+        // Ohne die Argumentdatei kann die JVM nicht mehr starten
+        Path argFile = Files.writeString(tempDir.resolve("worker.args"), "-Xss1m");
+        try (WorkerProcessPool pool = new WorkerProcessPool(1, 128)
+                .setJvmOptions(List.of("@" + argFile))
+                .setMaxJobsPerWorker(1)
+                .start()) {
+            Files.delete(argFile);
+            pool.convertToPdf(DOCX.getPath(), tempDir.resolve("a.pdf").toString(), null);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (pool.getStartFailureCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, pool.getStartFailureCount());
+            System.out.println("Startfehler: " + pool.getLastStartFailure().getMessage());
+            assertTrue(pool.getLastStartFailure().getMessage().contains("Exit-Code 1"));
+
+            // Der nächste Auftrag startet den fehlenden Worker selbst und erhält den Fehler
+            assertThrows(IOException.class,
+                    () -> pool.convertToPdf(DOCX.getPath(), tempDir.resolve("b.pdf").toString(), null));
+            assertEquals(1, pool.getStartFailureCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Grosse Aufträge laufen im Worker mit grossem Heap")
+    public void testLargeWorker() throws Exception {
+        assumeTrue(DOCX.exists(), "beispiel.docx nicht gefunden");
+
+        try (WorkerProcessPool pool = new WorkerProcessPool(1, 64)
+                .setLargeWorker(256, 1)
+                .setMaxJobsPerWorker(1)
+                .start()) {
+            assertEquals(2, pool.getWorkerPids().size());
+            // Jeder Auftrag überschreitet die Schwelle von 1 Byte und ersetzt danach den grossen Worker
+            pool.convertToPdf(DOCX.getPath(), tempDir.resolve("gross.pdf").toString(), null);
+            assertEquals(1, pool.getLargeJobCount());
+            assertEquals(1, pool.getRecycledCount());
+        }
+    }
+}
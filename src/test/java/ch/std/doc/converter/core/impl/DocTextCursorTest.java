@@ -0,0 +1,55 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.usermodel.CharacterRun;
+import org.apache.poi.hwpf.usermodel.Paragraph;
+import org.apache.poi.hwpf.usermodel.Range;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+@DisplayName("DocTextCursor Tests")
+public class DocTextCursorTest {
+
+    private final File inputFile = new File("/workspaces/docconverter/Generalversammlung.doc");
+
+    @Test
+    @DisplayName("Cursor liefert dieselben Absätze und Runs wie die Range-API")
+    public void testCursorMatchesRangeApi() throws Exception {
+        assumeTrue(inputFile.exists(), "Generalversammlung.doc nicht gefunden");
+
+        try (FileInputStream fis = new FileInputStream(inputFile);
+             HWPFDocument document = new HWPFDocument(fis)) {
+            Range range = document.getRange();
+            DocTextCursor cursor = new DocTextCursor(document);
+
+            int paragraphCount = 0;
+            int runCount = 0;
+            for (int i = 0; i < range.numParagraphs(); i++) {
+                Paragraph paragraph = range.getParagraph(i);
+                assertTrue(cursor.nextParagraph(), "Absatz " + i + " fehlt");
+                assertEquals(paragraph.text(), cursor.getParagraphText(), "Absatztext " + i);
+
+                for (int j = 0; j < paragraph.numCharacterRuns(); j++) {
+                    CharacterRun run = paragraph.getCharacterRun(j);
+                    assertTrue(cursor.nextRun(), "Run " + j + " in Absatz " + i + " fehlt");
+                    assertEquals(run.text(), cursor.getRunText());
+                    assertEquals(run.isBold(), cursor.getRunProperties().isFBold());
+                    assertEquals(run.isItalic(), cursor.getRunProperties().isFItalic());
+                    assertEquals(run.getFontSize(), cursor.getRunProperties().getHps());
+                    runCount++;
+                }
+                assertFalse(cursor.nextRun(), "Zusätzlicher Run in Absatz " + i);
+                paragraphCount++;
+            }
+            assertFalse(cursor.nextParagraph(), "Zusätzlicher Absatz nach dem Haupttext");
+
+            System.out.println("Cursor validiert - " + paragraphCount + " Absätze, " + runCount + " Runs");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.ConversionDiagnostics;
+import ch.std.doc.converter.core.ConversionOptions;
 import ch.std.doc.converter.core.DocumentConverter;
 import ch.std.doc.converter.core.DocumentConverterFactory;
 import ch.std.doc.converter.utils.PdfContentValidator;
@@ -9,9 +11,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.usermodel.Table;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 @DisplayName("DocToPdfConverter Tests")
 public class DocToPdfConverterTest {
@@ -148,4 +161,77 @@ public class DocToPdfConverterTest {
         System.out.println("DOC-PDF Struktur: " + pageCount + " Seite(n), erste Seite: " + 
                           firstPageText.length() + " Zeichen");
     }
+    
+    @Test
+    @DisplayName("DOC-Tabellen werden als PDF-Tabellen gerendert")
+    public void testDocTables() throws Exception {
+        File docFile = new File("/workspaces/docconverter/Generalversammlung.doc");
+        assumeTrue(docFile.exists(), "Generalversammlung.doc nicht gefunden");
+        
+        try (FileInputStream fis = new FileInputStream(docFile);
+             HWPFDocument document = new HWPFDocument(fis)) {
+            // HWPF kann Tabellen nur im Speicher zuverlässig erzeugen
+            Table table = document.getRange().insertTableBefore((short) 3, 2);
+            for (int r = 0; r < table.numRows(); r++) {
+                for (int c = 0; c < table.getRow(r).numCells(); c++) {
+                    table.getRow(r).getCell(c).getParagraph(0).insertBefore("Zelle-" + r + "-" + c);
+                }
+            }
+            
+            try (PdfDocument pdfDoc = new PdfDocument(new PdfWriter(outputFile));
+                 Document pdf = new Document(pdfDoc)) {
+                ((DocToPdfConverter) converter).processDocText(document, pdf, new ConversionDiagnostics());
+            }
+        }
+        
+        List<String> lines = PdfContentValidator.extractLines(outputFile);
+        assertTrue(lines.stream().anyMatch(line -> line.contains("Zelle-0-0") && line.contains("Zelle-0-2")),
+                   "Zellen einer Zeile sollten nebeneinander stehen");
+        assertTrue(lines.stream().anyMatch(line -> line.contains("Zelle-1-2")));
+        assertTrue(PdfContentValidator.containsText(outputFile, "Generalversammlung"),
+                   "Text nach der Tabelle fehlt");
+    }
+    
+    @Test
+    @DisplayName("Gemappte DOC-Eingabe liefert denselben Text und bleibt unverändert")
+    public void testMemoryMappedInput() throws Exception {
+        File docFile = new File("/workspaces/docconverter/Generalversammlung.doc");
+        assumeTrue(docFile.exists(), "Generalversammlung.doc nicht gefunden");
+        
+        // Kopie, da gemappte Dateien schreibbar geöffnet werden
+        Path input = tempDir.resolve("mapped.doc");
+        Files.copy(docFile.toPath(), input);
+        byte[] before = Files.readAllBytes(input);
+        
+        File mappedOutput = tempDir.resolve("mapped.pdf").toFile();
+        converter.convertToPdf(docFile.getAbsolutePath(), outputFile.getAbsolutePath());
+        converter.convertToPdf(input.toString(), mappedOutput.getAbsolutePath(),
+                               new ConversionOptions().setMemoryMappedInput(true));
+        
+        assertEquals(PdfContentValidator.extractTextFromPdf(outputFile),
+                     PdfContentValidator.extractTextFromPdf(mappedOutput));
+        assertArrayEquals(before, Files.readAllBytes(input), "Eingabedatei darf nicht verändert werden");
+    }
+    
+    @Test
+    @DisplayName("Textextraktion liefert den Absatztext ohne PDF")
+    public void testTextExtraction() throws Exception {
+        File docFile = new File("/workspaces/docconverter/Generalversammlung.doc");
+        assumeTrue(docFile.exists(), "Generalversammlung.doc nicht gefunden");
+        
+        File textFile = tempDir.resolve("text.txt").toFile();
+        converter.extractText(docFile.getAbsolutePath(), textFile.getAbsolutePath(), new ConversionOptions());
+        
+        List<String> lines = Files.readAllLines(textFile.toPath());
+        assertTrue(lines.contains("Generalversammlung SIMTECH AG 2025"));
+        assertTrue(lines.contains("Die Jahresrechnung 2024 wird vorbehaltlos genehmigt."));
+        assertTrue(lines.stream().noneMatch(String::isBlank), "Leere Absätze werden übersprungen");
+        assertTrue(lines.stream().noneMatch(line -> line.chars().anyMatch(ch -> ch < 0x09)),
+                   "Keine Steuerzeichen im Text");
+        
+        File missingOutput = tempDir.resolve("fehlt.txt").toFile();
+        assertThrows(IOException.class, () -> converter.extractText("/workspaces/docconverter/nonexistent.doc",
+                                                                    missingOutput.getAbsolutePath(), null));
+        assertFalse(missingOutput.exists(), "Keine Textdatei für nicht existierende Eingabe");
+    }
 }
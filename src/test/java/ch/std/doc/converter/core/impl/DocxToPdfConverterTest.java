@@ -1,7 +1,10 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
 import ch.std.doc.converter.core.DocumentConverterFactory;
+import ch.std.doc.converter.core.TextFormat;
 import ch.std.doc.converter.utils.PdfContentValidator;
 
 import org.junit.jupiter.api.Test;
@@ -9,9 +12,39 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.Document;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFPictureData;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @DisplayName("DocxToPdfConverter Tests")
 public class DocxToPdfConverterTest {
@@ -163,4 +196,220 @@ public class DocxToPdfConverterTest {
         
         System.out.println("PDF-Inhalt validiert - Text enthält " + pdfText.length() + " Zeichen");
     }
+    
+    @Test
+    @DisplayName("Textextraktion erkennt Überschriften, Aufzählungen und Tabellen")
+    public void testTextExtraction() throws Exception {
+        File docxFile = tempDir.resolve("text.docx").toFile();
+        try (XWPFDocument document = new XWPFDocument();
+             FileOutputStream fos = new FileOutputStream(docxFile)) {
+            XWPFParagraph title = document.createParagraph();
+            title.setStyle("Heading2");
+            title.createRun().setText("Einleitung");
+            document.createParagraph().createRun().setText("Erster Absatz");
+            XWPFParagraph item = document.createParagraph();
+            item.setNumID(BigInteger.ONE);
+            item.createRun().setText("Punkt");
+            XWPFTable table = document.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("Name");
+            table.getRow(0).getCell(1).setText("Wert|1");
+            table.getRow(1).getCell(0).setText("A");
+            document.write(fos);
+        }
+        
+        StringWriter markdown = new StringWriter();
+        converter.extractText(docxFile.getAbsolutePath(), markdown,
+                new ConversionOptions().setTextFormat(TextFormat.MARKDOWN));
+        assertEquals("## Einleitung\n\n"
+                     + "Erster Absatz\n\n"
+                     + "- Punkt\n"
+                     + "| Name | Wert\\|1 |\n"
+                     + "| --- | --- |\n"
+                     + "| A |  |\n\n", markdown.toString());
+        
+        StringWriter plain = new StringWriter();
+        converter.extractText(docxFile.getAbsolutePath(), plain, new ConversionOptions());
+        assertEquals("Einleitung\nErster Absatz\nPunkt\nName\tWert|1\nA\t\n", plain.toString());
+    }
+    
+    @Test
+    @DisplayName("Konvertierung hinterlässt nur die fertige PDF-Datei")
+    public void testNoTemporaryFilesRemain() throws Exception {
+        assumeTrue(inputFile.exists(), "beispiel.docx nicht gefunden");
+        
+        converter.convertToPdf(inputFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().setDurableOutput(true));
+        
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(outputFile.getName()),
+                         files.map(file -> file.getFileName().toString()).collect(Collectors.toList()),
+                         "Weder .temp- noch .part-Dateien dürfen liegen bleiben");
+        }
+        assertTrue(PdfContentValidator.getPageCount(outputFile) > 0);
+    }
+    
+    @Test
+    @DisplayName("Wiederkehrende Bilder werden aus dem Bild-Cache übernommen")
+    public void testImageTranscodeCache() throws Exception {
+        // Eindeutiges Bild mit Transparenz, damit frühere Tests keinen Eintrag hinterlassen haben
+        BufferedImage logo = new BufferedImage(320, 120, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = logo.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(200, 0, 0, 40), 320, 120,
+                                            new Color(0, 0, (int) (System.nanoTime() & 0xFF), 255)));
+        graphics.fillRect(0, 0, 320, 120);
+        graphics.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(logo, "png", png);
+        
+        File docxFile = tempDir.resolve("logo.docx").toFile();
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("Briefkopf");
+            document.createParagraph().createRun().addPicture(new ByteArrayInputStream(png.toByteArray()),
+                    Document.PICTURE_TYPE_PNG, "logo.png", Units.toEMU(240), Units.toEMU(90));
+            try (FileOutputStream out = new FileOutputStream(docxFile)) {
+                document.write(out);
+            }
+        }
+        
+        ImageTranscodeCache cache = ImageTranscodeCache.getShared();
+        File firstPdf = tempDir.resolve("erste.pdf").toFile();
+        File secondPdf = tempDir.resolve("zweite.pdf").toFile();
+        
+        long misses = cache.getMissCount();
+        converter.convertToPdf(docxFile.getAbsolutePath(), firstPdf.getAbsolutePath(), new ConversionOptions());
+        assertTrue(cache.getMissCount() > misses, "Das neue Bild muss dekodiert werden");
+        
+        misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+        converter.convertToPdf(docxFile.getAbsolutePath(), secondPdf.getAbsolutePath(), new ConversionOptions());
+        assertEquals(misses, cache.getMissCount(), "Die zweite Konvertierung darf nichts neu dekodieren");
+        assertTrue(cache.getHitCount() > hits);
+        
+        System.out.println("Bild-Cache: " + cache.getEntryCount() + " Einträge, " + cache.getSize() + " Bytes");
+        assertEquals(firstPdf.length(), secondPdf.length(), "Gleiches Bild muss gleich gross ausgegeben werden");
+        assertTrue(PdfContentValidator.containsText(secondPdf, "Briefkopf"));
+    }
+    
+    @Test
+    @DisplayName("Vorausgelesene Bilder ergeben dasselbe PDF wie das Dekodieren beim Setzen")
+    public void testImagePrefetch() throws Exception {
+        File docxFile = createImageReport(tempDir.resolve("bilder.docx").toFile(), 12);
+        
+        List<byte[]> expected = null;
+        Map<String, Long> expectedWarnings = null;
+        for (long window : new long[] {0, 1, 64 * 1024, 64L << 20}) {
+            File pdf = tempDir.resolve("bilder-" + window + ".pdf").toFile();
+            ConversionResult result = converter.convertToPdf(docxFile.getAbsolutePath(), pdf.getAbsolutePath(),
+                                                             new ConversionOptions().setImagePrefetchWindow(window));
+            List<byte[]> pages = new ArrayList<>();
+            try (PdfDocument document = new PdfDocument(new PdfReader(pdf))) {
+                for (int i = 1; i <= document.getNumberOfPages(); i++) {
+                    pages.add(document.getPage(i).getContentBytes());
+                }
+            }
+            System.out.println("Fenster " + window + ": " + pages.size() + " Seiten, " + pdf.length() + " Bytes, "
+                               + result.getDiagnostics().getWarningCounts());
+            
+            if (expected == null) {
+                expected = pages;
+                expectedWarnings = result.getDiagnostics().getWarningCounts();
+                assertTrue(expectedWarnings.getOrDefault("docx.image", 0L) > 0, "Das defekte Bild muss gemeldet werden");
+            } else {
+                assertEquals(expected.size(), pages.size());
+                for (int i = 0; i < pages.size(); i++) {
+                    assertArrayEquals(expected.get(i), pages.get(i), "Seite " + (i + 1) + " mit Fenster " + window);
+                }
+                assertEquals(expectedWarnings, result.getDiagnostics().getWarningCounts());
+            }
+        }
+        assertNoPrefetchThreads();
+    }
+    
+    @Test
+    @DisplayName("Das Vorauslesen von Bildern bleibt im Fenster")
+    public void testImagePrefetchWindow() throws Exception {
+        File docxFile = createImageReport(tempDir.resolve("fenster.docx").toFile(), 8);
+        long window = 16 * 1024;
+        
+        try (XWPFDocument document = new XWPFDocument(OPCPackage.open(docxFile, PackageAccess.READ))) {
+            List<XWPFPictureData> pictures = new ArrayList<>();
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                paragraph.getRuns().forEach(run -> run.getEmbeddedPictures()
+                        .forEach(picture -> pictures.add(picture.getPictureData())));
+            }
+            
+            // Eigener Cache, damit jedes Bild tatsächlich dekodiert wird
+            ImageTranscodeCache cache = new ImageTranscodeCache(ImageTranscodeCache.DEFAULT_MAX_BYTES);
+            long largest = 0;
+            long largestImage = 0;
+            try (DocxImagePrefetcher prefetcher = new DocxImagePrefetcher(document, cache, 6, window)) {
+                for (XWPFPictureData picture : pictures) {
+                    largest = Math.max(largest, prefetcher.getReservedBytes());
+                    try {
+                        largestImage = Math.max(largestImage, ImageTranscodeCache.sizeOf(prefetcher.take(picture)));
+                    } catch (RuntimeException e) {
+                        assertArrayEquals(BROKEN_IMAGE, picture.getData(), "Nur das defekte Bild darf fehlschlagen");
+                    }
+                }
+                assertEquals(0, prefetcher.getReservedBytes(), "Alle Bilder sind gesetzt");
+            }
+            System.out.println("Höchstens " + largest + " von " + window + " Bytes vorbereitet, "
+                               + cache.getMissCount() + " Bilder dekodiert, " + cache.getHitCount() + " Treffer");
+            // Ein Bild darf das Fenster überschreiten, wenn es beim Start noch Platz hatte
+            assertTrue(largest <= window + largestImage, "Fenster überschritten: " + largest);
+            assertEquals(8 + 2, cache.getMissCount(), "Jedes Bild und das Logo einmal, dazu das defekte");
+            assertEquals(1, cache.getHitCount(), "Das wiederholte Logo kommt aus dem Cache");
+        }
+        assertNoPrefetchThreads();
+    }
+    
+    private static final byte[] BROKEN_IMAGE = "kein PNG".getBytes(StandardCharsets.US_ASCII);
+    
+    /**
+     * Erstellt ein Dokument mit verschiedenen PNG-Bildern mit Transparenz, einem
+     * wiederholten Logo und einem defekten Bild
+     */
+    private static File createImageReport(File docxFile, int images) throws Exception {
+        try (XWPFDocument document = new XWPFDocument()) {
+            byte[] logo = createPng(0, 0);
+            document.createParagraph().createRun().addPicture(new ByteArrayInputStream(logo),
+                    Document.PICTURE_TYPE_PNG, "logo.png", Units.toEMU(240), Units.toEMU(90));
+            for (int i = 1; i <= images; i++) {
+                document.createParagraph().createRun().setText("Abbildung " + i);
+                document.createParagraph().createRun().addPicture(new ByteArrayInputStream(createPng(i, 17 * i)),
+                        Document.PICTURE_TYPE_PNG, "bild" + i + ".png", Units.toEMU(240), Units.toEMU(90));
+                if (i == images / 2) {
+                    document.createParagraph().createRun().addPicture(new ByteArrayInputStream(BROKEN_IMAGE),
+                            Document.PICTURE_TYPE_PNG, "defekt.png", Units.toEMU(240), Units.toEMU(90));
+                }
+            }
+            document.createParagraph().createRun().addPicture(new ByteArrayInputStream(logo),
+                    Document.PICTURE_TYPE_PNG, "logo.png", Units.toEMU(240), Units.toEMU(90));
+            try (FileOutputStream out = new FileOutputStream(docxFile)) {
+                document.write(out);
+            }
+        }
+        return docxFile;
+    }
+    
+    private static byte[] createPng(int seed, int blue) throws Exception {
+        BufferedImage image = new BufferedImage(320, 120, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(200, seed * 9 % 256, 0, 40), 320, 120,
+                                            new Color(0, 0, blue % 256, 255)));
+        graphics.fillRect(0, 0, 320, 120);
+        graphics.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+    
+    private static void assertNoPrefetchThreads() throws InterruptedException {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("docconverter-image-prefetch")) {
+                thread.join(5000);
+                assertFalse(thread.isAlive(), "Prefetch-Thread läuft nach der Konvertierung weiter");
+            }
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+@DisplayName("ExcelCellFormatter Tests")
+public class ExcelCellFormatterTest {
+
+    private XSSFWorkbook workbook;
+    private XSSFSheet sheet;
+    private ExcelCellFormatter formatter;
+
+    @BeforeEach
+    void setUp() {
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet("Formate");
+        formatter = new ExcelCellFormatter(Locale.US, workbook.isDate1904());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    private Cell createCell(int rowNum, double value, String format) {
+        Row row = sheet.createRow(rowNum);
+        Cell cell = row.createCell(0);
+        cell.setCellValue(value);
+        if (format != null) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat(format));
+            cell.setCellStyle(style);
+        }
+        return cell;
+    }
+
+    @Test
+    @DisplayName("Standardformat gibt Zahlen wie Excel aus")
+    public void testGeneralFormat() {
+        assertEquals("42", formatter.formatNumeric(createCell(0, 42, null), 42));
+        assertEquals("3.5", formatter.formatNumeric(createCell(1, 3.5, null), 3.5));
+    }
+
+    @Test
+    @DisplayName("Währungs- und Prozentformate werden berücksichtigt")
+    public void testCurrencyAndPercentFormats() {
+        Cell currency = createCell(0, 4499.95, "€#,##0.00");
+        assertEquals("€4,499.95", formatter.formatNumeric(currency, currency.getNumericCellValue()));
+
+        Cell percent = createCell(1, 0.125, "0.0%");
+        assertEquals("12.5%", formatter.formatNumeric(percent, percent.getNumericCellValue()));
+    }
+
+    @Test
+    @DisplayName("Datumsformate werden statt Date.toString() verwendet")
+    public void testDateFormat() {
+        Row row = sheet.createRow(0);
+        Cell cell = row.createCell(0);
+        cell.setCellValue(LocalDate.of(2024, 3, 15));
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.createDataFormat().getFormat("dd.mm.yyyy"));
+        cell.setCellStyle(style);
+
+        assertEquals("15.03.2024", formatter.formatNumeric(cell, cell.getNumericCellValue()));
+    }
+
+    @Test
+    @DisplayName("Mehrteilige Formate werden wertabhängig formatiert")
+    public void testMultiSectionFormat() {
+        Cell positive = createCell(0, 5, "0.00;(0.00)");
+        Cell negative = createCell(1, -5, "0.00;(0.00)");
+
+        assertEquals("5.00", formatter.formatNumeric(positive, 5));
+        assertEquals("(5.00)", formatter.formatNumeric(negative, -5));
+    }
+
+    @Test
+    @DisplayName("Jedes Zahlenformat wird nur einmal kompiliert")
+    public void testFormatsAreCompiledOnce() {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+
+        for (int i = 0; i < 100; i++) {
+            Cell cell = sheet.createRow(i).createCell(0);
+            cell.setCellValue(i * 1.5);
+            cell.setCellStyle(style);
+            formatter.formatNumeric(cell, cell.getNumericCellValue());
+        }
+
+        assertEquals(1, formatter.getCompiledFormatCount(), "Nur ein Format sollte kompiliert werden");
+    }
+}
@@ -1,6 +1,12 @@
 package ch.std.doc.converter.core.impl;
 
+import ch.std.doc.converter.core.ConversionOptions;
+import ch.std.doc.converter.core.ConversionResult;
 import ch.std.doc.converter.core.DocumentConverter;
+import ch.std.doc.converter.core.FormulaStrategy;
+import ch.std.doc.converter.core.SharedStringsStorage;
+import ch.std.doc.converter.core.SheetFragmentCache;
+import ch.std.doc.converter.core.TextFormat;
 import ch.std.doc.converter.core.DocumentConverterFactory;
 import ch.std.doc.converter.utils.PdfContentValidator;
 
@@ -10,8 +16,31 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 @DisplayName("ExcelToPdfConverter Tests")
 public class ExcelToPdfConverterTest {
@@ -168,4 +197,632 @@ public class ExcelToPdfConverterTest {
         
         System.out.println("Verkaufsdaten-PDF validiert - " + pdfText.length() + " Zeichen");
     }
+    
+    /**
+     * Erstellt eine Arbeitsmappe mit unberechneten Formeln (ohne gespeicherte Ergebnisse)
+     */
+    private File createFormulaWorkbook() throws Exception {
+        File file = tempDir.resolve("formeln.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(file)) {
+            for (String name : new String[]{"Januar", "Februar"}) {
+                XSSFSheet sheet = workbook.createSheet(name);
+                Row row = sheet.createRow(0);
+                row.createCell(0).setCellValue(20);
+                row.createCell(1).setCellValue(22);
+                row.createCell(2).setCellFormula("A1+B1");
+            }
+            XSSFSheet summary = workbook.createSheet("Summe");
+            summary.createRow(0).createCell(0).setCellFormula("Januar!C1+Februar!C1");
+            workbook.write(fos);
+        }
+        return file;
+    }
+    
+    @Test
+    @DisplayName("Gespeicherte Formelergebnisse werden ohne Neuberechnung verwendet")
+    public void testCachedFormulaStrategy() throws Exception {
+        File formulaFile = createFormulaWorkbook();
+        
+        converter.convertToPdf(formulaFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().setFormulaStrategy(FormulaStrategy.CACHED));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("A1+B1"), "Unberechnete Formel sollte als Formeltext erscheinen");
+        assertFalse(pdfText.contains("84"), "Ohne Neuberechnung gibt es kein Ergebnis");
+    }
+    
+    @Test
+    @DisplayName("Formeln werden mit gemeinsamem Evaluator neu berechnet")
+    public void testRecalculateFormulaStrategy() throws Exception {
+        File formulaFile = createFormulaWorkbook();
+        
+        converter.convertToPdf(formulaFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().setFormulaStrategy(FormulaStrategy.RECALCULATE));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("42"), "Blattinterne Formel sollte berechnet sein");
+        assertTrue(pdfText.contains("84"), "Blattübergreifende Formel sollte berechnet sein");
+    }
+    
+    @Test
+    @DisplayName("Parallele Neuberechnung liefert dieselben Ergebnisse")
+    public void testParallelRecalculation() throws Exception {
+        File formulaFile = createFormulaWorkbook();
+        
+        converter.convertToPdf(formulaFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions()
+                        .setFormulaStrategy(FormulaStrategy.RECALCULATE)
+                        .setParallelRecalculation(true));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("42"), "Blattinterne Formel sollte berechnet sein");
+        assertTrue(pdfText.contains("84"), "Blattübergreifende Formel sollte berechnet sein");
+    }
+    
+    /**
+     * Erstellt eine Arbeitsmappe mit drei Blättern; das zweite hat einen Druckbereich
+     */
+    private File createMultiSheetWorkbook() throws Exception {
+        File file = tempDir.resolve("mehrere-blaetter.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(file)) {
+            String[] names = {"Umsatz", "Kosten", "Archiv"};
+            for (String name : names) {
+                XSSFSheet sheet = workbook.createSheet(name);
+                for (int r = 0; r < 5; r++) {
+                    Row row = sheet.createRow(r);
+                    for (int c = 0; c < 4; c++) {
+                        row.createCell(c).setCellValue(name + "-" + r + "-" + c);
+                    }
+                }
+            }
+            workbook.setPrintArea(1, "A1:B2");
+            workbook.write(fos);
+        }
+        return file;
+    }
+    
+    /**
+     * Kopiert eine XLSX-Datei und ersetzt das dritte Arbeitsblatt durch ungültiges XML
+     */
+    private File corruptThirdSheet(File source) throws Exception {
+        File target = tempDir.resolve("beschaedigt.xlsx").toFile();
+        try (ZipFile zip = new ZipFile(source);
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                if (entry.getName().equals("xl/worksheets/sheet3.xml")) {
+                    out.write("<kein gültiges xml".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    zip.getInputStream(entry).transferTo(out);
+                }
+                out.closeEntry();
+            }
+        }
+        return target;
+    }
+    
+    @Test
+    @DisplayName("Blätter werden über Name und Index ausgewählt")
+    public void testSheetSelection() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        
+        converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().addSheet("umsatz").addSheet(2));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("Umsatz-0-0"), "Ausgewähltes Blatt per Name fehlt");
+        assertTrue(pdfText.contains("Archiv-0-0"), "Ausgewähltes Blatt per Index fehlt");
+        assertFalse(pdfText.contains("Kosten-0-0"), "Nicht ausgewähltes Blatt darf nicht erscheinen");
+    }
+    
+    @Test
+    @DisplayName("Nicht ausgewählte Blätter werden nicht geparst")
+    public void testUnselectedSheetsAreNotParsed() throws Exception {
+        File corrupted = corruptThirdSheet(createMultiSheetWorkbook());
+        
+        assertThrows(Exception.class, () -> {
+            converter.convertToPdf(corrupted.getAbsolutePath(), outputFile.getAbsolutePath());
+        }, "Ohne Auswahl muss das beschädigte Blatt gelesen werden");
+        
+        converter.convertToPdf(corrupted.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().addSheet("Umsatz"));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("Umsatz-4-3"), "Ausgewähltes Blatt sollte vollständig sein");
+    }
+    
+    @Test
+    @DisplayName("Zellbereiche und Druckbereiche schränken die Ausgabe ein")
+    public void testRangesAndPrintAreas() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        
+        converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().addRange("Umsatz!B2:C3"));
+        String rangeText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(rangeText.contains("Umsatz-1-1") && rangeText.contains("Umsatz-2-2"));
+        assertFalse(rangeText.contains("Umsatz-0-0"), "Zellen ausserhalb des Bereichs erscheinen");
+        assertFalse(rangeText.contains("Kosten"), "Nur das Blatt des Bereichs wird konvertiert");
+        
+        converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().addSheet("Kosten").setUsePrintAreas(true));
+        String printAreaText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(printAreaText.contains("Kosten-1-1"), "Druckbereich sollte gerendert werden");
+        assertFalse(printAreaText.contains("Kosten-2-2"), "Zellen ausserhalb des Druckbereichs erscheinen");
+    }
+    
+    @Test
+    @DisplayName("Unbekannte Blätter werden abgelehnt")
+    public void testUnknownSheetSelection() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        
+        assertThrows(IllegalArgumentException.class, () -> {
+            converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                    new ConversionOptions().addSheet("Gibt es nicht"));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                    new ConversionOptions().addSheet(7));
+        });
+    }
+    
+    @Test
+    @DisplayName("Streaming mit gemappten Shared Strings liefert denselben Text")
+    public void testMemoryMappedSharedStrings() throws Exception {
+        converter.convertToPdf(inputFile.getAbsolutePath(), outputFile.getAbsolutePath());
+        String heapText = PdfContentValidator.extractTextFromPdf(outputFile);
+        
+        File mappedOutput = tempDir.resolve("mapped.pdf").toFile();
+        converter.convertToPdf(inputFile.getAbsolutePath(), mappedOutput.getAbsolutePath(),
+                new ConversionOptions().setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED));
+        String mappedText = PdfContentValidator.extractTextFromPdf(mappedOutput);
+        
+        assertEquals(heapText, mappedText, "Beide Speicherarten sollten denselben Text erzeugen");
+        System.out.println("Gemappte Shared Strings validiert - " + mappedText.length() + " Zeichen");
+    }
+    
+    @Test
+    @DisplayName("Streaming berücksichtigt Blatt- und Bereichsauswahl")
+    public void testMemoryMappedSheetSelection() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        
+        converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions()
+                        .setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED)
+                        .addRange("Umsatz!B2:C3")
+                        .addSheet("Kosten")
+                        .setUsePrintAreas(true));
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("Umsatz-1-1") && pdfText.contains("Umsatz-2-2"));
+        assertFalse(pdfText.contains("Umsatz-0-0"), "Zellen ausserhalb des Bereichs erscheinen");
+        assertTrue(pdfText.contains("Kosten-1-1"), "Druckbereich sollte gerendert werden");
+        assertFalse(pdfText.contains("Kosten-2-2"), "Zellen ausserhalb des Druckbereichs erscheinen");
+        assertFalse(pdfText.contains("Archiv"), "Nicht ausgewähltes Blatt darf nicht erscheinen");
+    }
+    
+    /**
+     * Erstellt eine Arbeitsmappe mit Daten bis E20, deren &lt;dimension&gt; nur A1 angibt,
+     * wie sie manche Programme schreiben
+     */
+    private File createStaleDimensionWorkbook() throws Exception {
+        File source = tempDir.resolve("dimension-quelle.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(source)) {
+            XSSFSheet sheet = workbook.createSheet("Daten");
+            for (int r = 0; r < 20; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < 5; c++) {
+                    row.createCell(c).setCellValue("Wert-" + r + "-" + c);
+                }
+            }
+            workbook.write(fos);
+        }
+        
+        File target = tempDir.resolve("dimension-a1.xlsx").toFile();
+        try (ZipFile zip = new ZipFile(source);
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                if (entry.getName().equals("xl/worksheets/sheet1.xml")) {
+                    String xml = new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8);
+                    assertTrue(xml.contains("<dimension ref=\"A1:E20\"/>"), "Vorlage sollte die Dimension enthalten");
+                    out.write(xml.replace("<dimension ref=\"A1:E20\"/>", "<dimension ref=\"A1\"/>")
+                                 .getBytes(StandardCharsets.UTF_8));
+                } else {
+                    zip.getInputStream(entry).transferTo(out);
+                }
+                out.closeEntry();
+            }
+        }
+        return target;
+    }
+    
+    @Test
+    @DisplayName("Streaming verwendet die Zellen statt einer veralteten Dimension")
+    public void testMemoryMappedIgnoresStaleDimension() throws Exception {
+        File workbookFile = createStaleDimensionWorkbook();
+        
+        converter.convertToPdf(workbookFile.getAbsolutePath(), outputFile.getAbsolutePath());
+        String heapText = PdfContentValidator.extractTextFromPdf(outputFile);
+        
+        File mappedOutput = tempDir.resolve("mapped.pdf").toFile();
+        converter.convertToPdf(workbookFile.getAbsolutePath(), mappedOutput.getAbsolutePath(),
+                new ConversionOptions().setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED));
+        String mappedText = PdfContentValidator.extractTextFromPdf(mappedOutput);
+        
+        assertTrue(mappedText.contains("Wert-19-4"), "Spalte E fehlt trotz Dimension A1");
+        assertEquals(heapText, mappedText, "Beide Speicherarten sollten denselben Text erzeugen");
+        
+        StringWriter text = new StringWriter();
+        converter.extractText(workbookFile.getAbsolutePath(), text, new ConversionOptions()
+                .setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED));
+        assertTrue(text.toString().contains("Wert-19-0\tWert-19-1\tWert-19-2\tWert-19-3\tWert-19-4"),
+                   "Textextraktion sollte alle Spalten enthalten");
+    }
+    
+    @Test
+    @DisplayName("Verbundene Zellen werden als Spans gerendert")
+    public void testMergedCells() throws Exception {
+        File mergedFile = createMergedWorkbook();
+        
+        converter.convertToPdf(mergedFile.getAbsolutePath(), outputFile.getAbsolutePath());
+        
+        String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+        assertTrue(pdfText.contains("Zelle-0-0"), "Inhalt der linken oberen Zelle fehlt");
+        assertFalse(pdfText.contains("Zelle-0-1"), "Überdeckte Zelle darf nicht erscheinen");
+        assertFalse(pdfText.contains("Zelle-1-1"), "Überdeckte Zelle darf nicht erscheinen");
+        assertTrue(pdfText.contains("Zelle-1-2") && pdfText.contains("Zelle-2-0"));
+    }
+    
+    @Test
+    @DisplayName("Verbundene Zellen werden auch beim Streaming als Spans gerendert")
+    public void testMergedCellsMemoryMapped() throws Exception {
+        File mergedFile = createMergedWorkbook();
+        
+        for (String range : new String[] {null, "A2:C3"}) {
+            ConversionOptions heap = new ConversionOptions();
+            ConversionOptions mapped = new ConversionOptions()
+                    .setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED);
+            if (range != null) {
+                heap.addRange(range);
+                mapped.addRange(range);
+            }
+            File heapOutput = tempDir.resolve("heap.pdf").toFile();
+            converter.convertToPdf(mergedFile.getAbsolutePath(), heapOutput.getAbsolutePath(), heap);
+            converter.convertToPdf(mergedFile.getAbsolutePath(), outputFile.getAbsolutePath(), mapped);
+            
+            String pdfText = PdfContentValidator.extractTextFromPdf(outputFile);
+            assertEquals(PdfContentValidator.extractTextFromPdf(heapOutput), pdfText,
+                         "Beide Speicherarten sollten denselben Text erzeugen");
+            assertFalse(pdfText.contains("Zelle-1-1"), "Überdeckte Zelle darf nicht erscheinen");
+            assertTrue(pdfText.contains("Zelle-1-2") && pdfText.contains("Zelle-2-0"));
+        }
+    }
+    
+    private File createMergedWorkbook() throws Exception {
+        File mergedFile = tempDir.resolve("verbunden.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(mergedFile)) {
+            XSSFSheet sheet = workbook.createSheet("Verbunden");
+            for (int r = 0; r < 3; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < 3; c++) {
+                    row.createCell(c).setCellValue("Zelle-" + r + "-" + c);
+                }
+            }
+            sheet.addMergedRegion(CellRangeAddress.valueOf("A1:B2"));
+            workbook.write(fos);
+        }
+        return mergedFile;
+    }
+    
+    @Test
+    @DisplayName("Konvertierungsergebnis enthält die Diagnose")
+    public void testConversionResultDiagnostics() throws Exception {
+        List<String> messages = new ArrayList<>();
+        ConversionResult result = converter.convertToPdf(inputFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                new ConversionOptions().setDiagnosticsSink((category, message) -> messages.add(message)));
+        
+        assertEquals(outputFile.getAbsolutePath(), result.getOutputFile());
+        assertNotNull(result.getDiagnostics());
+        assertFalse(result.getDiagnostics().hasWarnings(), "Gültige Datei sollte keine Warnungen erzeugen");
+        assertTrue(messages.stream().anyMatch(m -> m.contains("Konvertiere")), "Startmeldung geht an den Sink");
+    }
+    
+    @Test
+    @DisplayName("Textextraktion schreibt ausgewählte Blätter als Markdown-Tabellen")
+    public void testTextExtraction() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        StringWriter text = new StringWriter();
+        
+        ConversionResult result = converter.extractText(workbookFile.getAbsolutePath(), text,
+                new ConversionOptions().setTextFormat(TextFormat.MARKDOWN).addSheet("Umsatz").addRange("A1:B2"));
+        
+        assertNull(result.getOutputFile());
+        assertEquals("# Umsatz\n\n"
+                     + "| Umsatz-0-0 | Umsatz-0-1 |\n"
+                     + "| --- | --- |\n"
+                     + "| Umsatz-1-0 | Umsatz-1-1 |\n\n", text.toString());
+        
+        File textFile = tempDir.resolve("umsatz.txt").toFile();
+        converter.extractText(workbookFile.getAbsolutePath(), textFile.getAbsolutePath(), new ConversionOptions());
+        List<String> lines = Files.readAllLines(textFile.toPath());
+        assertTrue(lines.contains("Kosten-4-0\tKosten-4-1\tKosten-4-2\tKosten-4-3"), "Zellen durch Tabulator getrennt");
+        assertEquals(3 + 3 * 5, lines.size(), "Drei Blatttitel und je fünf Zeilen");
+    }
+    
+    @Test
+    @DisplayName("Ausgabe wird nach Seitenzahl in Teile mit Index aufgeteilt")
+    public void testSplitOutput() throws Exception {
+        File tableFile = tempDir.resolve("lang.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(tableFile)) {
+            XSSFSheet sheet = workbook.createSheet("Lang");
+            for (int r = 0; r < 300; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r == 0 ? "Nummer" : "Zeile-" + r);
+                row.createCell(1).setCellValue(r == 0 ? "Betrag" : String.valueOf(r * 10));
+            }
+            workbook.write(fos);
+        }
+        
+        for (SharedStringsStorage storage : SharedStringsStorage.values()) {
+            Path directory = Files.createDirectory(tempDir.resolve(storage.name()));
+            File splitOutput = directory.resolve("bericht.pdf").toFile();
+            ConversionResult result = converter.convertToPdf(tableFile.getAbsolutePath(), splitOutput.getAbsolutePath(),
+                    new ConversionOptions().setSharedStringsStorage(storage).setMaxPagesPerPart(3));
+            
+            assertFalse(splitOutput.exists(), "Ohne Aufteilung geschriebene Datei darf nicht entstehen");
+            assertEquals(directory.resolve("bericht.index.txt").toString(), result.getOutputFile());
+            List<String> parts = result.getOutputParts();
+            assertTrue(parts.size() > 1, "Mehrere Teile erwartet: " + parts);
+            assertEquals(directory.resolve("bericht-001.pdf").toString(), parts.get(0));
+            
+            List<String> index = Files.readAllLines(Path.of(result.getOutputFile()));
+            assertEquals(parts.size() + 1, index.size(), "Kopfzeile und eine Zeile pro Teil");
+            
+            StringBuilder allText = new StringBuilder();
+            for (int i = 0; i < parts.size(); i++) {
+                File part = new File(parts.get(i));
+                int pages = PdfContentValidator.getPageCount(part);
+                assertTrue(pages <= 3, part.getName() + " hat " + pages + " Seiten");
+                assertEquals((i + 1) + "\t" + part.getName() + "\t" + pages + "\t" + part.length(), index.get(i + 1));
+                
+                assertPageNumbers(part);
+                String text = PdfContentValidator.extractTextFromPdf(part);
+                if (i > 0) {
+                    assertTrue(text.contains("Lang (Fortsetzung)"), "Fortsetzungstitel fehlt in " + part.getName());
+                    assertTrue(text.contains("Nummer"), "Kopfzeile fehlt in " + part.getName());
+                }
+                allText.append(text);
+            }
+            for (int r = 1; r < 300; r++) {
+                assertTrue(allText.indexOf("Zeile-" + r + "\n") >= 0 || allText.indexOf("Zeile-" + r + " ") >= 0,
+                           "Zeile " + r + " fehlt");
+            }
+            System.out.println(storage + ": " + parts.size() + " Teile à höchstens 3 Seiten");
+        }
+    }
+    
+    /**
+     * Prüft, dass jede Seite eines Teils die Fusszeile "Seite X von Y" mit der Seitenzahl des Teils trägt
+     */
+    private static void assertPageNumbers(File part) throws IOException {
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(part))) {
+            int pages = pdf.getNumberOfPages();
+            for (int page = 1; page <= pages; page++) {
+                String text = PdfTextExtractor.getTextFromPage(pdf.getPage(page));
+                assertTrue(text.contains("Seite " + page + " von " + pages),
+                           "Seitenzahl fehlt auf Seite " + page + " von " + part.getName());
+            }
+        }
+    }
+    
+    @Test
+    @DisplayName("Ausgabe wird nach Grösse aufgeteilt, jede Seite ist nummeriert")
+    public void testSplitOutputBySize() throws Exception {
+        File tableFile = tempDir.resolve("gross.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(tableFile)) {
+            XSSFSheet sheet = workbook.createSheet("Gross");
+            for (int r = 0; r < 1500; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r == 0 ? "Nummer" : "Zeile-" + r);
+                row.createCell(1).setCellValue(r == 0 ? "Betrag" : String.valueOf(r * 10));
+            }
+            workbook.write(fos);
+        }
+        
+        long maxBytes = 15_000;
+        for (SharedStringsStorage storage : SharedStringsStorage.values()) {
+            Path directory = Files.createDirectory(tempDir.resolve("groesse-" + storage.name()));
+            ConversionResult result = converter.convertToPdf(tableFile.getAbsolutePath(),
+                    directory.resolve("bericht.pdf").toString(),
+                    new ConversionOptions().setSharedStringsStorage(storage).setMaxBytesPerPart(maxBytes));
+            
+            List<String> parts = result.getOutputParts();
+            assertEquals(parts.size() + 1, Files.readAllLines(Path.of(result.getOutputFile())).size());
+            
+            long totalBytes = 0;
+            int totalPages = 0;
+            for (String part : parts) {
+                totalBytes += new File(part).length();
+                totalPages += PdfContentValidator.getPageCount(new File(part));
+            }
+            // Geteilt wird erst nach Erreichen der Grenze: alle Teile ausser dem letzten sind mindestens so gross
+            assertTrue(parts.size() >= 2 && parts.size() <= totalBytes / maxBytes + 1,
+                       parts.size() + " Teile für " + totalBytes + " Bytes");
+            
+            long pageBytes = 2 * totalBytes / totalPages;
+            for (int i = 0; i < parts.size(); i++) {
+                File part = new File(parts.get(i));
+                int objects;
+                try (PdfDocument pdf = new PdfDocument(new PdfReader(part))) {
+                    objects = pdf.getNumberOfPdfObjects();
+                }
+                // Dokumentierte Überschreitung: drei Seiten und der Abschluss mit 20 Bytes pro Xref-Eintrag
+                long bound = maxBytes + 3 * pageBytes + 20L * objects + 1024;
+                assertTrue(part.length() <= bound, part.getName() + ": " + part.length() + " > " + bound);
+                if (i < parts.size() - 1) {
+                    assertTrue(part.length() >= maxBytes, part.getName() + " wurde vor der Grenze geteilt");
+                }
+                assertPageNumbers(part);
+            }
+            System.out.println(storage + ": " + parts.size() + " Teile, " + totalBytes + " Bytes");
+        }
+    }
+    
+    @Test
+    @DisplayName("Mit Fragment-Cache werden nur geänderte Blätter neu gerendert")
+    public void testSheetFragmentCache() throws Exception {
+        File original = createMultiSheetWorkbook();
+        File changed = tempDir.resolve("geaendert.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(original));
+             FileOutputStream fos = new FileOutputStream(changed)) {
+            workbook.getSheet("Kosten").getRow(2).getCell(2).setCellValue("Kosten neu");
+            workbook.write(fos);
+        }
+        
+        for (SharedStringsStorage storage : SharedStringsStorage.values()) {
+            SheetFragmentCache cache = new SheetFragmentCache(tempDir.resolve("fragmente-" + storage), 16 * 1024 * 1024);
+            ConversionOptions options = new ConversionOptions().setSharedStringsStorage(storage)
+                    .setSheetFragmentCache(cache);
+            
+            converter.convertToPdf(original.getAbsolutePath(), outputFile.getAbsolutePath(), options);
+            assertEquals(3, cache.getMissCount(), "Beim ersten Mal werden alle Blätter gerendert");
+            
+            File fragmentOutput = tempDir.resolve("fragmente-" + storage + ".pdf").toFile();
+            converter.convertToPdf(changed.getAbsolutePath(), fragmentOutput.getAbsolutePath(), options);
+            assertEquals(4, cache.getMissCount(), "Nur das geänderte Blatt sollte neu gerendert werden");
+            assertEquals(2, cache.getHitCount());
+            
+            File fullOutput = tempDir.resolve("vollstaendig-" + storage + ".pdf").toFile();
+            converter.convertToPdf(changed.getAbsolutePath(), fullOutput.getAbsolutePath(),
+                    new ConversionOptions().setSharedStringsStorage(storage));
+            
+            // Beide Wege nummerieren jede Seite
+            String fragmentText = PdfContentValidator.extractTextFromPdf(fragmentOutput);
+            assertEquals(PdfContentValidator.extractTextFromPdf(fullOutput), fragmentText,
+                         "Zusammengefügtes PDF sollte der vollständigen Konvertierung entsprechen");
+            assertTrue(fragmentText.contains("Kosten neu"));
+            for (int page = 1; page <= 3; page++) {
+                assertTrue(fragmentText.contains("Seite " + page + " von 3"), "Seitenzahl fehlt auf Seite " + page);
+            }
+            System.out.println(storage + ": " + cache.getHitCount() + " Fragmente aus dem Cache übernommen");
+        }
+    }
+    
+    @Test
+    @DisplayName("Parsen im eigenen Thread liefert dieselben Teile wie ohne Pipelining")
+    public void testPipelinedStreaming() throws Exception {
+        File tableFile = tempDir.resolve("pipeline.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(tableFile)) {
+            for (String name : List.of("Erstes", "Zweites")) {
+                XSSFSheet sheet = workbook.createSheet(name);
+                for (int r = 0; r < 400; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue(r == 0 ? "Nummer" : name + "-" + r);
+                    row.createCell(1).setCellValue(r * 1.25);
+                }
+            }
+            workbook.write(fos);
+        }
+        
+        List<String> expected = new ArrayList<>();
+        List<String> actual = new ArrayList<>();
+        for (int queueSize : new int[]{0, 1, 64}) {
+            Path directory = Files.createDirectory(tempDir.resolve("queue-" + queueSize));
+            ConversionResult result = converter.convertToPdf(tableFile.getAbsolutePath(),
+                    directory.resolve("bericht.pdf").toString(),
+                    new ConversionOptions().setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED)
+                            .setMaxPagesPerPart(4)
+                            .setPipelineQueueSize(queueSize));
+            List<String> texts = queueSize == 0 ? expected : actual;
+            texts.clear();
+            for (String part : result.getOutputParts()) {
+                texts.add(PdfContentValidator.extractTextFromPdf(new File(part)));
+            }
+            if (queueSize > 0) {
+                assertEquals(expected, actual, "Teile mit Warteschlange " + queueSize + " weichen ab");
+            }
+        }
+        System.out.println("Pipelining: " + expected.size() + " identische Teile");
+        assertTrue(expected.size() > 2);
+    }
+    
+    @Test
+    @DisplayName("Verbundene Bereiche werden nicht auf zwei Teile verteilt")
+    public void testSplitKeepsMergedRegions() throws Exception {
+        File tableFile = tempDir.resolve("gruppen.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             FileOutputStream fos = new FileOutputStream(tableFile)) {
+            XSSFSheet sheet = workbook.createSheet("Gruppen");
+            sheet.createRow(0).createCell(0).setCellValue("Gruppe");
+            for (int r = 1; r <= 300; r++) {
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue("Gruppe[" + (r - 1) / 4 + "]");
+                row.createCell(1).setCellValue("Wert[" + r + "]");
+                if (r % 4 == 1) {
+                    sheet.addMergedRegion(new CellRangeAddress(r, r + 3, 0, 0));
+                }
+            }
+            workbook.write(fos);
+        }
+        
+        Pattern value = Pattern.compile("Wert\\[(\\d+)]");
+        for (SharedStringsStorage storage : SharedStringsStorage.values()) {
+            Path directory = Files.createDirectory(tempDir.resolve("gruppen-" + storage));
+            ConversionResult result = converter.convertToPdf(tableFile.getAbsolutePath(),
+                    directory.resolve("gruppen.pdf").toString(),
+                    new ConversionOptions().setSharedStringsStorage(storage).setMaxPagesPerPart(2));
+            assertTrue(result.getOutputParts().size() > 1, storage + ": Ausgabe sollte aufgeteilt sein");
+            
+            for (String part : result.getOutputParts()) {
+                String partText = PdfContentValidator.extractTextFromPdf(new File(part));
+                Matcher matcher = value.matcher(partText);
+                while (matcher.find()) {
+                    String group = "Gruppe[" + (Integer.parseInt(matcher.group(1)) - 1) / 4 + "]";
+                    assertTrue(partText.contains(group), storage + ": " + group + " wurde zwischen zwei Teilen getrennt");
+                    assertEquals(partText.indexOf(group), partText.lastIndexOf(group),
+                                 storage + ": " + group + " wurde nicht als eine Zelle gerendert");
+                }
+            }
+        }
+    }
+    
+    @Test
+    @DisplayName("Lesefehler im Parser-Thread erreichen den Aufrufer")
+    public void testPipelinedParseError() throws Exception {
+        File workbookFile = createMultiSheetWorkbook();
+        File brokenFile = tempDir.resolve("kaputt.xlsx").toFile();
+        // Zeilen des ersten Blatts abschneiden: die Dimension ist lesbar, die Zeilen nicht
+        try (ZipFile zip = new ZipFile(workbookFile);
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(brokenFile))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                byte[] data = zip.getInputStream(entry).readAllBytes();
+                if (entry.getName().equals("xl/worksheets/sheet1.xml")) {
+                    String xml = new String(data, StandardCharsets.UTF_8);
+                    data = xml.substring(0, xml.indexOf("</row>") + 6).concat("<row r=\"2\"><c")
+                              .getBytes(StandardCharsets.UTF_8);
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+        
+        ConversionOptions options = new ConversionOptions()
+                .setSharedStringsStorage(SharedStringsStorage.MEMORY_MAPPED)
+                .setPipelineQueueSize(1);
+        IOException error = assertThrows(IOException.class,
+                () -> converter.convertToPdf(brokenFile.getAbsolutePath(), outputFile.getAbsolutePath(), options));
+        System.out.println("Fehler aus dem Parser-Thread: " + error.getMessage());
+        assertFalse(outputFile.exists());
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                           .noneMatch(t -> t.getName().equals("docconverter-xlsx-parser")),
+                   "Parser-Thread muss beendet sein");
+    }
 }
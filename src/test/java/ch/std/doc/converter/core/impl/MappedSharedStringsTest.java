@@ -0,0 +1,95 @@
+package ch.std.doc.converter.core.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+@DisplayName("MappedSharedStrings Tests")
+public class MappedSharedStringsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String SST_XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"5\" uniqueCount=\"3\">"
+            + "<si><t>Umsatz</t></si>"
+            + "<si><r><t>Grüezi </t></r><r><rPr><b/></rPr><t>Zürich</t></r></si>"
+            + "<si><t>東京</t><rPh sb=\"0\" eb=\"2\"><t>トウキョウ</t></rPh></si>"
+            + "</sst>";
+
+    private static InputStream sst() {
+        return new ByteArrayInputStream(SST_XML.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Einträge werden aus der gemappten Datei gelesen")
+    public void testItemsAreReadOnDemand() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.create(sst())) {
+            assertEquals(3, strings.getUniqueCount());
+            assertEquals(5, strings.getCount());
+            assertEquals("Umsatz", strings.getItemAt(0).getString());
+            assertEquals("Grüezi Zürich", strings.getItemAt(1).getString(), "Rich-Text-Runs werden zusammengefügt");
+            assertEquals("東京", strings.getItemAt(2).getString(), "Phonetische Angaben werden ignoriert");
+        }
+    }
+
+    @Test
+    @DisplayName("Ungültige Indizes werden abgelehnt")
+    public void testInvalidIndex() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.create(sst())) {
+            assertThrows(IndexOutOfBoundsException.class, () -> strings.getItemAt(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> strings.getItemAt(-1));
+        }
+    }
+
+    @Test
+    @DisplayName("Arbeitsmappe ohne Shared Strings ergibt leere Tabelle")
+    public void testMissingSharedStrings() throws Exception {
+        try (MappedSharedStrings strings = MappedSharedStrings.create(null)) {
+            assertEquals(0, strings.getUniqueCount());
+        }
+    }
+
+    @Test
+    @DisplayName("OOXML-Escapes werden wie in POI aufgelöst")
+    public void testEscapesAreDecoded() throws Exception {
+        String xml = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" uniqueCount=\"2\">"
+                     + "<si><t>Zeile 1_x000D_Zeile 2</t></si>"
+                     + "<si><t>_x005F_x0041__x005F_x0042_</t></si>"
+                     + "</sst>";
+        try (MappedSharedStrings strings = MappedSharedStrings.create(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals("Zeile 1\rZeile 2", strings.getString(0));
+            assertEquals("_x0041__x0042_", strings.getString(1), "Geschützte Unterstriche bleiben erhalten");
+            assertEquals(strings.getString(0), strings.getItemAt(0).getString());
+            assertEquals(strings.getString(1), strings.getItemAt(1).getString(), "Kein zweites Auflösen");
+        }
+    }
+
+    @Test
+    @DisplayName("Veraltete Temporärdateien werden entfernt, aktuelle bleiben")
+    public void testStaleFilesAreDeleted() throws Exception {
+        Path stale = Files.createFile(tempDir.resolve("docconverter-sst123.dat"));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(
+                System.currentTimeMillis() - MappedSharedStrings.STALE_AGE_MILLIS - 60_000));
+        Path current = Files.createFile(tempDir.resolve("docconverter-sst456.idx"));
+        Path other = Files.createFile(tempDir.resolve("andere-datei.dat"));
+        Files.setLastModifiedTime(other, FileTime.fromMillis(0));
+
+        MappedSharedStrings.deleteStaleFiles(tempDir, MappedSharedStrings.STALE_AGE_MILLIS);
+
+        assertFalse(Files.exists(stale), "Rest einer abgebrochenen Konvertierung");
+        assertTrue(Files.exists(current), "Datei einer laufenden Konvertierung");
+        assertTrue(Files.exists(other), "Fremde Dateien bleiben unberührt");
+    }
+}
@@ -0,0 +1,71 @@
+package ch.std.doc.converter.core.impl;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@DisplayName("MergedRegionIndex Tests")
+public class MergedRegionIndexTest {
+
+    @Test
+    @DisplayName("Linke obere Zelle liefert den Bereich, überdeckte Zellen werden erkannt")
+    public void testAnchorAndCoveredCells() {
+        MergedRegionIndex index = MergedRegionIndex.create(
+                List.of(CellRangeAddress.valueOf("B2:C3")), CellRangeAddress.valueOf("A1:D5"));
+
+        assertNull(index.getRegionStartingAt(0, 1));
+        assertFalse(index.isCovered(1, 0));
+
+        CellRangeAddress region = index.getRegionStartingAt(1, 1);
+        assertNotNull(region);
+        assertEquals("B2:C3", region.formatAsString());
+
+        assertTrue(index.isCovered(1, 2), "Zelle rechts vom Anker ist überdeckt");
+        assertTrue(index.isCovered(2, 1), "Zelle unter dem Anker ist überdeckt");
+        assertTrue(index.isCovered(2, 2));
+        assertFalse(index.isCovered(2, 3), "Zelle neben dem Bereich ist frei");
+        assertFalse(index.isCovered(3, 1), "Zelle unter dem Bereich ist frei");
+    }
+
+    @Test
+    @DisplayName("Bereiche werden auf den sichtbaren Ausschnitt zugeschnitten")
+    public void testClippingToVisibleArea() {
+        MergedRegionIndex index = MergedRegionIndex.create(
+                List.of(CellRangeAddress.valueOf("A1:C3"), CellRangeAddress.valueOf("E1:F1")),
+                CellRangeAddress.valueOf("B2:E4"));
+
+        assertEquals(1, index.size(), "E1:F1 liegt ausserhalb, E1 allein wäre nur eine Zelle");
+        CellRangeAddress region = index.getRegionStartingAt(1, 1);
+        assertEquals("B2:C3", region.formatAsString());
+    }
+
+    @Test
+    @DisplayName("Tausende Bereiche werden ohne quadratischen Aufwand indexiert")
+    public void testManyRegions() {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        for (int row = 0; row < 20000; row += 2) {
+            regions.add(new CellRangeAddress(row, row + 1, 0, 1));
+        }
+        MergedRegionIndex index = MergedRegionIndex.create(regions, new CellRangeAddress(0, 19999, 0, 2));
+        assertEquals(10000, index.size());
+
+        int anchors = 0;
+        int covered = 0;
+        for (int row = 0; row < 20000; row++) {
+            for (int col = 0; col <= 2; col++) {
+                if (index.isCovered(row, col)) {
+                    covered++;
+                } else if (index.getRegionStartingAt(row, col) != null) {
+                    anchors++;
+                }
+            }
+        }
+        assertEquals(10000, anchors);
+        assertEquals(30000, covered);
+    }
+}
@@ -0,0 +1,230 @@
+package ch.std.doc.converter.tools;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Random;
+
+/**
+ * Vergleicht den maximalen Heap-Verbrauch beim Öffnen grosser Dateien über
+ * einen InputStream und direkt aus der Datei.
+ *
+ * Ohne Argumente werden eine XLSX- und eine OLE2-Datei mit je ca. 100 MB im
+ * temporären Verzeichnis erzeugt. Gemessen wird der Spitzenwert aller
+ * Heap-Speicherbereiche während Öffnen und vollständigem Lesen des grössten
+ * Pakets bzw. aller Streams sowie der bei geöffneter Datei gehaltene Heap.
+ *
+ * Verwendung: java OpenModeBenchmark [datei.xlsx datei.doc] [--mb N]
+ */
+public class OpenModeBenchmark {
+
+    private static final Random RANDOM = new Random(42);
+
+    private static long baseline;
+    private static long retained;
+
+    public static void main(String[] args) throws Exception {
+        int targetMb = 100;
+        String xlsxFile = null;
+        String ole2File = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--mb".equals(args[i]) && i + 1 < args.length) {
+                targetMb = Integer.parseInt(args[++i]);
+            } else if (xlsxFile == null) {
+                xlsxFile = args[i];
+            } else {
+                ole2File = args[i];
+            }
+        }
+
+        if (xlsxFile == null) {
+            xlsxFile = createXlsx(targetMb).getAbsolutePath();
+        }
+        if (ole2File == null) {
+            ole2File = createOle2(targetMb).getAbsolutePath();
+        }
+
+        // Über einen InputStream lehnt POI Einträge über 100 MB sonst ab
+        IOUtils.setByteArrayMaxOverride(1 << 30);
+
+        System.out.printf("XLSX %s (%d MB)%n", xlsxFile, new File(xlsxFile).length() >> 20);
+        final String xlsx = xlsxFile;
+        measure("OPCPackage.open(InputStream)", () -> {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(xlsx))) {
+                OPCPackage pkg = OPCPackage.open(in);
+                readLargestPart(pkg);
+                checkpoint();
+                pkg.revert();
+            }
+        });
+        measure("OPCPackage.open(File, READ)", () -> {
+            OPCPackage pkg = OPCPackage.open(new File(xlsx), PackageAccess.READ);
+            readLargestPart(pkg);
+            checkpoint();
+            pkg.revert();
+        });
+
+        System.out.printf("OLE2 %s (%d MB)%n", ole2File, new File(ole2File).length() >> 20);
+        final String ole2 = ole2File;
+        measure("POIFSFileSystem(InputStream)", () -> {
+            try (InputStream in = new FileInputStream(ole2);
+                 POIFSFileSystem fs = new POIFSFileSystem(in)) {
+                readAllDocuments(fs);
+                checkpoint();
+            }
+        });
+        measure("POIFSFileSystem(File, readOnly)", () -> {
+            try (POIFSFileSystem fs = new POIFSFileSystem(new File(ole2), true)) {
+                readAllDocuments(fs);
+                checkpoint();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static void measure(String name, Task task) throws Exception {
+        System.gc();
+        baseline = currentHeap();
+        retained = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+
+        long start = System.nanoTime();
+        task.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("  %-32s Spitze %6d MB, gehalten %6d MB, %6d ms%n",
+                          name, (peak - baseline) >> 20, retained >> 20, millis);
+    }
+
+    /**
+     * Misst nach einer GC, wie viel Heap bei geöffneter Datei belegt bleibt.
+     * Die Spitze enthält auch kurzlebige Lesepuffer.
+     */
+    private static void checkpoint() {
+        System.gc();
+        retained = Math.max(retained, currentHeap() - baseline);
+    }
+
+    private static long currentHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void readLargestPart(OPCPackage pkg) throws Exception {
+        PackagePart largest = null;
+        for (PackagePart part : pkg.getParts()) {
+            if (largest == null || part.getSize() > largest.getSize()) {
+                largest = part;
+            }
+        }
+        if (largest != null) {
+            try (InputStream in = largest.getInputStream()) {
+                drain(in);
+            }
+        }
+    }
+
+    private static void readAllDocuments(POIFSFileSystem fs) throws IOException {
+        for (String name : fs.getRoot().getEntryNames()) {
+            try (DocumentInputStream in = fs.createDocumentInputStream(name)) {
+                drain(in);
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (in.read(buffer) != -1) {
+            // nur lesen
+        }
+    }
+
+    private static File createXlsx(int targetMb) throws IOException {
+        File file = File.createTempFile("openmode-", ".xlsx");
+        file.deleteOnExit();
+        System.out.println("Erzeuge " + targetMb + " MB XLSX ...");
+
+        long targetBytes = (long) targetMb << 20;
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+            workbook.setCompressTempFiles(true);
+            Sheet sheet = workbook.createSheet("Daten");
+            // Zufällige Zeichen komprimieren schlecht, 10 Zellen à 32 Zeichen ergeben
+            // komprimiert ca. 280 Bytes pro Zeile
+            long rows = targetBytes / 280;
+            for (int r = 0; r < rows; r++) {
+                Row row = sheet.createRow(r);
+                for (int c = 0; c < 10; c++) {
+                    row.createCell(c).setCellValue(randomText(32));
+                }
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+            workbook.dispose();
+        }
+        return file;
+    }
+
+    private static File createOle2(int targetMb) throws IOException {
+        File file = File.createTempFile("openmode-", ".doc");
+        file.deleteOnExit();
+        System.out.println("Erzeuge " + targetMb + " MB OLE2 ...");
+
+        try (POIFSFileSystem fs = new POIFSFileSystem()) {
+            byte[] chunk = new byte[8 << 20];
+            for (int i = 0; i * 8 < targetMb; i++) {
+                RANDOM.nextBytes(chunk);
+                fs.createDocument(new ByteArrayInputStream(chunk), "Daten" + i);
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                fs.writeFilesystem(out);
+            }
+        }
+        return file;
+    }
+
+    private static String randomText(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + RANDOM.nextInt(26));
+        }
+        return new String(chars);
+    }
+}